@@ -0,0 +1,54 @@
+package org.slim3.json.test;
+
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slim3.repackaged.org.json.JSONArray;
+
+/**
+ * Run explicitly; the default test run includes only *Test classes.
+ * 
+ */
+public class PrimitiveAttrsModelArrayBenchmark {
+    @Test
+    public void jsonToModels() throws Exception {
+        for(int size : new int[]{1024 * 1024, 10 * 1024 * 1024}){
+            String json = createJson(size);
+            meta.jsonToModels(json);
+            new JSONArray(json);
+            long start = System.nanoTime();
+            JSONArray array = new JSONArray(json);
+            for(int i = 0; i < array.length(); i++){
+                meta.jsonToModel(array.getJSONObject(i).toString());
+            }
+            long tree = System.nanoTime() - start;
+            start = System.nanoTime();
+            PrimitiveAttrsModel[] ms = meta.jsonToModels(new StringReader(json));
+            long pull = System.nanoTime() - start;
+            Assert.assertEquals(array.length(), ms.length);
+            System.out.println("json:" + json.length() / 1024 + "KB"
+                + " JSONObject tree:" + tree / 1000000 + "ms"
+                + " pull parser:" + pull / 1000000 + "ms");
+        }
+    }
+
+    private String createJson(int size){
+        PrimitiveAttrsModel m = new PrimitiveAttrsModel();
+        m.setBooleanAttr(true);
+        m.setShortAttr((short) 100);
+        m.setIntAttr(1000);
+        m.setLongAttr(10000);
+        m.setFloatAttr(1.1f);
+        m.setDoubleAttr(2.2);
+        String element = meta.modelToJson(m);
+        StringBuilder b = new StringBuilder(size + element.length() + 2);
+        b.append('[').append(element);
+        while(b.length() < size){
+            b.append(',').append(element);
+        }
+        return b.append(']').toString();
+    }
+
+    private PrimitiveAttrsModelMeta meta = PrimitiveAttrsModelMeta.get();
+}
@@ -1,7 +1,13 @@
 package org.slim3.json.test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.slim3.repackaged.org.json.JSONArray;
 
 public class PrimitiveAttrsModelArrayTest {
     @Test
@@ -34,6 +40,45 @@ public class PrimitiveAttrsModelArrayTest {
             , json);
     }
 
+    @Test
+    public void modelsToJsonWithWriter() throws Exception {
+        PrimitiveAttrsModel[] m = {
+            new PrimitiveAttrsModel(){{
+                setBooleanAttr(true);
+                setShortAttr((short) 100);
+            }}
+            , new PrimitiveAttrsModel(){{
+                setIntAttr(1000);
+                setLongAttr(10000);
+            }}
+        };
+        StringWriter writer = new StringWriter();
+        meta.modelsToJson(Arrays.asList(m), writer);
+        Assert.assertEquals(meta.modelsToJson(m), writer.toString());
+    }
+
+    @Test
+    public void modelsToJsonWithOutputStream() throws Exception {
+        PrimitiveAttrsModel[] m = {
+            new PrimitiveAttrsModel(){{
+                setIntAttr(1000);
+            }}
+            , new PrimitiveAttrsModel(){{
+                setLongAttr(10000);
+            }}
+        };
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        meta.modelsToJson(Arrays.asList(m), os);
+        Assert.assertEquals(meta.modelsToJson(m), os.toString("UTF-8"));
+    }
+
+    @Test
+    public void modelsToJsonWithWriterForEmpty() throws Exception {
+        StringWriter writer = new StringWriter();
+        meta.modelsToJson(Arrays.asList(new PrimitiveAttrsModel[0]), writer);
+        Assert.assertEquals("[]", writer.toString());
+    }
+
     @Test
     public void jsonToModels() throws Exception {
         PrimitiveAttrsModel[] ms = meta.jsonToModels(
@@ -71,5 +116,61 @@ public class PrimitiveAttrsModelArrayTest {
         Assert.assertEquals(1.1, m.getFloatAttr(), 0.1);
     }
 
+    @Test
+    public void jsonToModelsWithReader() throws Exception {
+        PrimitiveAttrsModel[] ms = meta.jsonToModels(new StringReader(
+                "[{\"booleanAttr\":true,\"shortAttr\":100},"
+                + " null, 1,"
+                + "{\"intAttr\":1000,\"longAttr\":10000,\"doubleAttr\":2.2}]"
+                ));
+        Assert.assertEquals(4, ms.length);
+        Assert.assertEquals(true, ms[0].isBooleanAttr());
+        Assert.assertEquals(100, ms[0].getShortAttr());
+        Assert.assertNull(ms[1]);
+        Assert.assertNull(ms[2]);
+        Assert.assertEquals(1000, ms[3].getIntAttr());
+        Assert.assertEquals(10000, ms[3].getLongAttr());
+        Assert.assertEquals(2.2, ms[3].getDoubleAttr(), 0.1);
+    }
+
+    @Test
+    public void jsonToModelWithReader() throws Exception {
+        PrimitiveAttrsModel m = meta.jsonToModel(new StringReader(
+                "{\"intAttr\":1000,\"floatAttr\":1.1}"));
+        Assert.assertEquals(1000, m.getIntAttr());
+        Assert.assertEquals(1.1, m.getFloatAttr(), 0.1);
+    }
+
+    @Test
+    public void jsonToModelsWithReaderForManyElements() throws Exception {
+        String json = createJson(100);
+        JSONArray array = new JSONArray(json);
+        PrimitiveAttrsModel[] ms = meta.jsonToModels(new StringReader(json));
+        Assert.assertEquals(100, array.length());
+        Assert.assertEquals(array.length(), ms.length);
+        for(int i = 0; i < ms.length; i++){
+            PrimitiveAttrsModel m =
+                meta.jsonToModel(array.getJSONObject(i).toString());
+            Assert.assertEquals(meta.modelToJson(m), meta.modelToJson(ms[i]));
+        }
+    }
+
+    private String createJson(int count){
+        PrimitiveAttrsModel m = new PrimitiveAttrsModel();
+        m.setBooleanAttr(true);
+        m.setShortAttr((short) 100);
+        m.setIntAttr(1000);
+        m.setLongAttr(10000);
+        m.setFloatAttr(1.1f);
+        m.setDoubleAttr(2.2);
+        String element = meta.modelToJson(m);
+        StringBuilder b = new StringBuilder();
+        b.append('[').append(element);
+        for(int i = 1; i < count; i++){
+            b.append(',').append(element);
+        }
+        return b.append(']').toString();
+    }
+
     private PrimitiveAttrsModelMeta meta = PrimitiveAttrsModelMeta.get();
 }
@@ -299,6 +299,10 @@ public final class ClassConstants {
     public static final String JsonObjectReader =
         "org.slim3.datastore.json.JsonObjectReader";
 
+    /** {@code org.slim3.datastore.json.JsonTokenReader} */
+    public static final String JsonTokenReader =
+        "org.slim3.datastore.json.JsonTokenReader";
+
     /** {@code org.slim3.datastore.json.JsonValueReader} */
     public static final String JsonValueReader =
         "org.slim3.datastore.json.JsonValueReader";
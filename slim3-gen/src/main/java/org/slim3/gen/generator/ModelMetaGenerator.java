@@ -17,11 +17,13 @@ package org.slim3.gen.generator;
 
 import static org.slim3.gen.ClassConstants.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -150,6 +152,8 @@ public class ModelMetaGenerator implements Generator {
         printGetSchemaVersionName(printer);
         printGetClassHierarchyListName(printer);
         printIsCipherProperty(printer);
+        printGetAttributeIndexMethod(printer);
+        printGetValueMethod(printer);
         printModelToJsonMethod(printer);
         printJsonToModelMethod(printer);
         printCustomExtensionMethods(printer);
@@ -474,6 +478,73 @@ public class ModelMetaGenerator implements Generator {
         printer.println();
     }
 
+    /**
+     * Generates the {@code getAttributeIndex} method.
+     * 
+     * @param printer
+     *            the printer
+     */
+    protected void printGetAttributeIndexMethod(final Printer printer) {
+        printer.println("@Override");
+        printer
+            .println("protected int getAttributeIndex(String attributeName) {");
+        int index = 0;
+        for (AttributeMetaDesc attr : getReadableAttributeMetaDescList()) {
+            printer.println(
+                "    if (\"%1$s\".equals(attributeName)) return %2$s;",
+                attr.getAttributeName(),
+                index++);
+        }
+        printer.println("    return -1;");
+        printer.println("}");
+        printer.println();
+    }
+
+    /**
+     * Generates the {@code getValue} method.
+     * 
+     * @param printer
+     *            the printer
+     */
+    protected void printGetValueMethod(final Printer printer) {
+        printer.println("@Override");
+        printer
+            .println("protected Object getValue(Object model, int attributeIndex) {");
+        List<AttributeMetaDesc> attrs = getReadableAttributeMetaDescList();
+        if (!attrs.isEmpty()) {
+            printer.println(
+                "    %1$s m = (%1$s) model;",
+                modelMetaDesc.getModelClassName());
+            printer.println("    switch (attributeIndex) {");
+            int index = 0;
+            for (AttributeMetaDesc attr : attrs) {
+                printer.println(
+                    "    case %1$s: return m.%2$s();",
+                    index++,
+                    attr.getReadMethodName());
+            }
+            printer.println("    }");
+        }
+        printer.println("    return super.getValue(model, attributeIndex);");
+        printer.println("}");
+        printer.println();
+    }
+
+    /**
+     * Returns the list of the persistent attributes that have read methods.
+     * 
+     * @return the list of the attributes
+     */
+    protected List<AttributeMetaDesc> getReadableAttributeMetaDescList() {
+        List<AttributeMetaDesc> list = new ArrayList<AttributeMetaDesc>();
+        for (AttributeMetaDesc attr : modelMetaDesc.getAttributeMetaDescList()) {
+            if (attr.isPersistent() && attr.getReadMethodName() != null) {
+                list.add(attr);
+            }
+        }
+        return list;
+    }
+
     /**
      * Generates the {@code getKey} method.
      * 
@@ -2487,7 +2558,8 @@ public class ModelMetaGenerator implements Generator {
         }
 
         /**
-         * Generates the modelToJson method.
+         * Generates the jsonToModel method that assigns each attribute as the
+         * token of its property is read.
          */
         public void generate() {
             printer.println("@Override");
@@ -2495,7 +2567,7 @@ public class ModelMetaGenerator implements Generator {
                 .println(
                     "protected %s jsonToModel(%s rootReader, int maxDepth, int currentDepth) {",
                     modelMetaDesc.getModelClassName(),
-                    JsonRootReader);
+                    JsonTokenReader);
             printer.indent();
             if (modelMetaDesc.isAbstrct()) {
                 printer.println(
@@ -2512,6 +2584,8 @@ public class ModelMetaGenerator implements Generator {
                     "%s decoder0 = new %1$s();",
                     "org.slim3.datastore.json.Default");
                 decoders.put("org.slim3.datastore.json.Default", "decoder0");
+                List<AttributeMetaDesc> attrs =
+                    new ArrayList<AttributeMetaDesc>();
                 for (AttributeMetaDesc attr : modelMetaDesc
                     .getAttributeMetaDescList()) {
                     JsonAnnotation ja = attr.getJson();
@@ -2520,21 +2594,37 @@ public class ModelMetaGenerator implements Generator {
                     DataType dt = attr.getDataType();
                     if(dt instanceof InverseModelRefType)
                         continue;
-                    String name = ja.getAlias();
-                    if (name.length() == 0) {
-                        name = attr.getAttributeName();
-                    }
-                    printer.println(
-                        "reader = rootReader.newObjectReader(\"%s\");",
-                        name);
+                    attrs.add(attr);
                     String cn = ja.getCoderClassName();
-                    coderExp = decoders.get(cn);
-                    if (coderExp == null) {
+                    if (!decoders.containsKey(cn)) {
                         String vn = "decoder" + decoders.size();
-                        coderExp = vn;
                         printer.println("%s %s = new %1$s();", cn, vn);
                         decoders.put(cn, vn);
                     }
+                }
+                printer.println("while(rootReader.nextProperty()){");
+                printer.indent();
+                printer.println("String name = rootReader.getName();");
+                printer.println("reader = rootReader;");
+                boolean first = true;
+                for (AttributeMetaDesc attr : attrs) {
+                    JsonAnnotation ja = attr.getJson();
+                    DataType dt = attr.getDataType();
+                    String name = ja.getAlias();
+                    if (name.length() == 0) {
+                        name = attr.getAttributeName();
+                    }
+                    if (first) {
+                        printer.println("if(\"%s\".equals(name)){", name);
+                        first = false;
+                    } else {
+                        printer.unindent();
+                        printer.println(
+                            "} else if(\"%s\".equals(name)){",
+                            name);
+                    }
+                    printer.indent();
+                    coderExp = decoders.get(ja.getCoderClassName());
                     setterExp =
                         attr.getWriteMethodName() != null ? "m."
                             + attr.getWriteMethodName() : null;
@@ -2546,6 +2636,12 @@ public class ModelMetaGenerator implements Generator {
                             .getClassName());
                     dt.accept(this, attr);
                 }
+                if (!first) {
+                    printer.unindent();
+                    printer.println("}");
+                }
+                printer.unindent();
+                printer.println("}");
                 printer.println("return m;");
             }
             printer.unindent();
@@ -2654,23 +2750,15 @@ public class ModelMetaGenerator implements Generator {
             } else if (type instanceof LinkedListType) {
                 container = LinkedList;
             }
-            printer.println("{");
+            printer.println("if(rootReader.beginArray()){");
             printer.indent();
             printer.println(
                 "%s<%s> elements = new %1$s<%2$s>();",
                 container,
                 et.getTypeName());
-            printer.println(
-                "%s r = rootReader.newArrayReader(\"%s\");",
-                JsonArrayReader,
-                p.getAttributeName());
-            printer.println("if(r != null){");
-            printer.indent();
-            printer.println("reader = r;");
-            printer.println("int n = r.length();");
-            printer.println("for(int i = 0; i < n; i++){");
+            printer.println("while(rootReader.nextElement()){");
             printer.indent();
-            printer.println("r.setIndex(i);");
+            printer.println("reader = rootReader;");
             if (et instanceof ModelRefType) {
                 printer.println(
                     "%s ref = new %1$s(%s.class);",
@@ -2701,8 +2789,6 @@ public class ModelMetaGenerator implements Generator {
             printer.println("%s(elements);", setterExp);
             printer.unindent();
             printer.println("}");
-            printer.unindent();
-            printer.println("}");
             return null;
         }
 
@@ -35,6 +35,8 @@ import javax.servlet.http.HttpSession;
 
 import org.slim3.controller.upload.FileUpload;
 import org.slim3.controller.validator.Errors;
+import org.slim3.datastore.BatchFlushException;
+import org.slim3.datastore.BatchScope;
 import org.slim3.util.AppEngineUtil;
 import org.slim3.util.BooleanUtil;
 import org.slim3.util.DateUtil;
@@ -94,7 +96,9 @@ public abstract class Controller {
     protected Errors errors;
 
     /**
-     * Runs the bare controller process.
+     * Runs the bare controller process. The mutations buffered by
+     * {@link BatchScope} are flushed after "run" method is called, so
+     * {@link #handleError(Throwable)} receives {@link BatchFlushException}.
      * 
      * @return the navigation
      * @throws Throwable
@@ -109,6 +113,7 @@ public abstract class Controller {
         }
         try {
             navigation = run();
+            BatchScope.flushCurrent();
         } catch (Throwable t) {
             error = t;
         } finally {
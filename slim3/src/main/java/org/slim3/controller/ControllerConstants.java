@@ -34,6 +34,22 @@ public final class ControllerConstants {
      */
     public static String HOT_RELOADING_KEY = "slim3.hotReloading";
 
+    /**
+     * The key of hot reloading mode.
+     */
+    public static String HOT_RELOADING_MODE_KEY = "slim3.hotReloadingMode";
+
+    /**
+     * The hot reloading mode that keeps a class loader until a class is
+     * changed.
+     */
+    public static String HOT_RELOADING_MODE_CHANGED = "changed";
+
+    /**
+     * The key of configuration setting for the request-scoped entity cache.
+     */
+    public static String ENTITY_CACHE_KEY = "slim3.entityCache";
+
     /**
      * The key of configuration setting for request character set.
      */
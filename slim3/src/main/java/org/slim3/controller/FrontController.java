@@ -16,10 +16,13 @@
 package org.slim3.controller;
 
 import java.io.IOException;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -36,9 +39,13 @@ import javax.servlet.http.HttpSession;
 import org.slim3.controller.router.Router;
 import org.slim3.controller.router.RouterFactory;
 import org.slim3.controller.validator.Errors;
+import org.slim3.datastore.BatchScope;
+import org.slim3.datastore.EntityCache;
 import org.slim3.util.ApplicationMessage;
 import org.slim3.util.CipherFactory;
 import org.slim3.util.ClassUtil;
+import org.slim3.util.Cleanable;
+import org.slim3.util.Cleaner;
 import org.slim3.util.LocaleLocator;
 import org.slim3.util.LocaleUtil;
 import org.slim3.util.RequestLocator;
@@ -93,11 +100,58 @@ public class FrontController implements Filter {
      */
     protected String rootPackageName;
 
+    /**
+     * Whether the request-scoped entity cache is enabled.
+     */
+    protected boolean entityCacheEnabled = false;
+
     /**
      * UUID of this application.
      */
     protected final String uuid = UUID.randomUUID().toString();
 
+    /**
+     * The maximum number of class names that are cached as not controllers.
+     */
+    protected static final int MAX_NOT_CONTROLLER_CACHE_SIZE = 1000;
+
+    /**
+     * The cache of the controller constructors keyed by the class name.
+     */
+    protected final ConcurrentHashMap<String, Constructor<?>> controllerConstructorCache =
+        new ConcurrentHashMap<String, Constructor<?>>();
+
+    /**
+     * The cache of the class names that are not controllers.
+     */
+    protected final ConcurrentHashMap<String, Boolean> notControllerCache =
+        new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * The number of the controller cache hits.
+     */
+    protected final AtomicLong controllerCacheHitCount = new AtomicLong();
+
+    /**
+     * The number of the controller cache misses.
+     */
+    protected final AtomicLong controllerCacheMissCount = new AtomicLong();
+
+    /**
+     * Whether the controller cache is registered to {@link Cleaner}.
+     */
+    protected volatile boolean controllerCacheInitialized = false;
+
+    /**
+     * The resource that clears the controller cache.
+     */
+    protected final Cleanable controllerCacheCleaner = new Cleanable() {
+        public void clean() {
+            controllerCacheInitialized = false;
+            clearControllerCache();
+        }
+    };
+
     /**
      * Constructor.
      */
@@ -111,6 +165,7 @@ public class FrontController implements Filter {
         initDefaultLocale();
         initDefaultTimeZone();
         initRootPackageName();
+        initEntityCache();
     }
 
     /**
@@ -188,7 +243,57 @@ public class FrontController implements Filter {
         }
     }
 
+    /**
+     * Initializes the request-scoped entity cache.
+     */
+    protected void initEntityCache() {
+        entityCacheEnabled =
+            Boolean.valueOf(servletContext
+                .getInitParameter(ControllerConstants.ENTITY_CACHE_KEY));
+    }
+
+    /**
+     * Registers the controller cache to {@link Cleaner}.
+     */
+    protected synchronized void initControllerCache() {
+        if (controllerCacheInitialized) {
+            return;
+        }
+        clearControllerCache();
+        Cleaner.add(controllerCacheCleaner);
+        controllerCacheInitialized = true;
+    }
+
+    /**
+     * Clears the controller cache.
+     */
+    public void clearControllerCache() {
+        controllerConstructorCache.clear();
+        notControllerCache.clear();
+    }
+
+    /**
+     * Returns the number of the controller cache hits.
+     * 
+     * @return the number of the controller cache hits
+     */
+    public long getControllerCacheHitCount() {
+        return controllerCacheHitCount.get();
+    }
+
+    /**
+     * Returns the number of the controller cache misses.
+     * 
+     * @return the number of the controller cache misses
+     */
+    public long getControllerCacheMissCount() {
+        return controllerCacheMissCount.get();
+    }
+
     public void destroy() {
+        Cleaner.remove(controllerCacheCleaner);
+        controllerCacheInitialized = false;
+        clearControllerCache();
         if (servletContextSet) {
             ServletContextLocator.set(null);
         }
@@ -271,6 +376,10 @@ public class FrontController implements Filter {
         TimeZoneLocator.set(processTimeZone(request));
         ApplicationMessage.setBundle(bundleName, LocaleLocator.get());
         CipherFactory.getFactory().clearLimitedKey();
+        EntityCache previousEntityCache = EntityCache.get();
+        if (entityCacheEnabled && previousEntityCache == null) {
+            EntityCache.begin();
+        }
         try {
             Controller controller = getController(request, response, path);
             if (controller != null) {
@@ -284,6 +393,7 @@ public class FrontController implements Filter {
                 chain.doFilter(request, response);
             }
         } finally {
+            EntityCache.set(previousEntityCache);
             ApplicationMessage.clearBundle();
             TimeZoneLocator.set(previousTimeZone);
             LocaleLocator.set(previousLocale);
@@ -390,7 +500,11 @@ public class FrontController implements Filter {
     }
 
     /**
-     * Creates a new controller specified by the path.
+     * Creates a new controller specified by the path. The constructor of the
+     * controller is cached by the class name, and so is the fact that no
+     * controller is found. The cache is cleared by {@link Cleaner}, and it is
+     * not used while the controller is loaded by
+     * {@link HotReloadingClassLoader}.
      * 
      * @param path
      *            the path
@@ -405,8 +519,50 @@ public class FrontController implements Filter {
         if (className == null) {
             return null;
         }
-        Class<?> clazz = null;
         ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader instanceof HotReloadingClassLoader) {
+            controllerCacheMissCount.incrementAndGet();
+            return newController(getControllerConstructor(className, loader));
+        }
+        if (!controllerCacheInitialized) {
+            initControllerCache();
+        }
+        Constructor<?> constructor = controllerConstructorCache.get(className);
+        if (constructor != null) {
+            controllerCacheHitCount.incrementAndGet();
+            return newController(constructor);
+        }
+        if (notControllerCache.containsKey(className)) {
+            controllerCacheHitCount.incrementAndGet();
+            return null;
+        }
+        controllerCacheMissCount.incrementAndGet();
+        constructor = getControllerConstructor(className, loader);
+        if (constructor == null) {
+            if (notControllerCache.size() >= MAX_NOT_CONTROLLER_CACHE_SIZE) {
+                notControllerCache.clear();
+            }
+            notControllerCache.put(className, Boolean.TRUE);
+            return null;
+        }
+        controllerConstructorCache.put(className, constructor);
+        return newController(constructor);
+    }
+
+    /**
+     * Returns the constructor of the controller specified by the class name.
+     * 
+     * @param className
+     *            the class name
+     * @param loader
+     *            the class loader
+     * @return the constructor of the controller or null if the class is not
+     *         found, does not extend "org.slim3.controller.Controller" or is
+     *         abstract
+     */
+    protected Constructor<?> getControllerConstructor(String className,
+            ClassLoader loader) {
+        Class<?> clazz = null;
         try {
             clazz = Class.forName(className, true, loader);
         } catch (Throwable t) {
@@ -418,7 +574,21 @@ public class FrontController implements Filter {
         if (Modifier.isAbstract(clazz.getModifiers())) {
             return null;
         }
-        return ClassUtil.newInstance(clazz);
+        return ClassUtil.getConstructor(clazz);
+    }
+
+    /**
+     * Creates a new controller using the constructor.
+     * 
+     * @param constructor
+     *            the constructor
+     * @return a new controller
+     */
+    protected Controller newController(Constructor<?> constructor) {
+        if (constructor == null) {
+            return null;
+        }
+        return (Controller) ClassUtil.newInstance(constructor);
     }
 
     /**
@@ -468,7 +638,9 @@ public class FrontController implements Filter {
     }
 
     /**
-     * Processes the controller.
+     * Processes the controller. The mutations buffered by {@link BatchScope}
+     * are flushed before the navigation is handled, so a failed flush is
+     * reported before the response is rendered.
      * 
      * @param request
      *            the request
@@ -486,9 +658,10 @@ public class FrontController implements Filter {
             throws IOException, ServletException {
         RequestHandler requestHandler =
             controller.createRequestHandler(request);
-        requestHandler.handle();
         try {
+            requestHandler.handle();
             Navigation navigation = controller.runBare();
+            BatchScope.flushCurrent();
             handleNavigation(request, response, controller, navigation);
         } catch (Throwable t) {
             if (t instanceof IOException) {
@@ -498,6 +671,8 @@ public class FrontController implements Filter {
                 throw (ServletException) t;
             }
             throw ThrowableUtil.wrap(t);
+        } finally {
+            requestHandler.destroy();
         }
     }
 
@@ -15,6 +15,7 @@
  */
 package org.slim3.controller;
 
+import java.io.File;
 import java.io.IOException;
 
 import javax.servlet.Filter;
@@ -46,6 +47,11 @@ import org.slim3.util.StringUtil;
  */
 public class HotReloadingFilter implements Filter {
 
+    /**
+     * The minimum interval in milliseconds between the checks of the classes.
+     */
+    protected static final long STAMP_CHECK_INTERVAL = 1000;
+
     /**
      * The logger.
      */
@@ -72,6 +78,31 @@ public class HotReloadingFilter implements Filter {
      */
     protected String coolPackageName;
 
+    /**
+     * Whether this filter keeps a class loader until a class is changed.
+     */
+    protected boolean reloadingOnChange = false;
+
+    /**
+     * The directory of the classes under the root package.
+     */
+    protected File classesDir;
+
+    /**
+     * The stamp of the classes under the root package.
+     */
+    protected long classesStamp;
+
+    /**
+     * The time when the stamp of the classes was checked last time.
+     */
+    protected long stampCheckedTime;
+
+    /**
+     * The current generation of {@link HotReloadingClassLoader}.
+     */
+    protected HotReloadingClassLoader currentLoader;
+
     /**
      * Constructor.
      */
@@ -83,6 +114,7 @@ public class HotReloadingFilter implements Filter {
         initHotReloading();
         initRootPackageName();
         initCoolPackageName();
+        initHotReloadingMode();
     }
 
     /**
@@ -145,7 +177,33 @@ public class HotReloadingFilter implements Filter {
         }
     }
 
+    /**
+     * Initializes the HOT reloading mode.
+     */
+    protected void initHotReloadingMode() {
+        reloadingOnChange = false;
+        if (!hotReloading
+            || !ControllerConstants.HOT_RELOADING_MODE_CHANGED
+                .equalsIgnoreCase(System
+                    .getProperty(ControllerConstants.HOT_RELOADING_MODE_KEY))) {
+            return;
+        }
+        String path = servletContext.getRealPath("/WEB-INF/classes");
+        if (path != null) {
+            File dir = new File(path, rootPackageName.replace('.', '/'));
+            if (dir.isDirectory()) {
+                classesDir = dir;
+                reloadingOnChange = true;
+            }
+        }
+        System.out.println("Slim3 HOT reloading on change:"
+            + reloadingOnChange);
+    }
+
     public void destroy() {
+        synchronized (this) {
+            currentLoader = null;
+        }
         Cleaner.cleanAll();
         if (hotReloading) {
             ServletContextLocator.set(null);
@@ -212,11 +270,10 @@ public class HotReloadingFilter implements Filter {
             HttpServletResponse response, FilterChain chain,
             ClassLoader previousLoader) throws IOException, ServletException {
         Thread.currentThread().setContextClassLoader(
-            new HotReloadingClassLoader(
-                previousLoader,
-                rootPackageName,
-                coolPackageName));
-        request = new HotHttpServletRequestWrapper(request);
+            getHotReloadingClassLoader(previousLoader));
+        HotHttpServletRequestWrapper requestWrapper =
+            new HotHttpServletRequestWrapper(request);
+        request = requestWrapper;
         RequestLocator.set(request);
         ResponseLocator.set(response);
         try {
@@ -230,7 +287,11 @@ public class HotReloadingFilter implements Filter {
         } catch (ClassCastException e) {
             throw createHotReloadingRuntimeException(e);
         } finally {
-            Cleaner.cleanAll();
+            if (reloadingOnChange) {
+                cleanSession(requestWrapper);
+            } else {
+                Cleaner.cleanAll();
+            }
             Thread.currentThread().setContextClassLoader(previousLoader);
             RequestLocator.set(null);
             ResponseLocator.set(null);
@@ -238,6 +299,99 @@ public class HotReloadingFilter implements Filter {
         }
     }
 
+    /**
+     * Returns the {@link HotReloadingClassLoader}. When the classes are
+     * reloaded on change, the current generation is kept until a class under
+     * the root package is changed, and the caches are cleaned when a new
+     * generation is created. The classes are checked at most once every
+     * {@link #STAMP_CHECK_INTERVAL} milliseconds.
+     * 
+     * @param parentLoader
+     *            the parent class loader
+     * @return the {@link HotReloadingClassLoader}
+     */
+    protected synchronized HotReloadingClassLoader getHotReloadingClassLoader(
+            ClassLoader parentLoader) {
+        if (!reloadingOnChange) {
+            return new HotReloadingClassLoader(
+                parentLoader,
+                rootPackageName,
+                coolPackageName);
+        }
+        boolean sameParent =
+            currentLoader != null && currentLoader.getParent() == parentLoader;
+        long now = System.currentTimeMillis();
+        if (sameParent && now - stampCheckedTime < STAMP_CHECK_INTERVAL) {
+            return currentLoader;
+        }
+        long stamp = getStamp(classesDir);
+        stampCheckedTime = now;
+        if (!sameParent || stamp != classesStamp) {
+            if (currentLoader != null) {
+                Cleaner.cleanAll();
+            }
+            currentLoader =
+                new HotReloadingClassLoader(
+                    parentLoader,
+                    rootPackageName,
+                    coolPackageName);
+            classesStamp = stamp;
+        }
+        return currentLoader;
+    }
+
+    /**
+     * Returns the stamp of the directory. The stamp is changed when a file is
+     * modified, added or removed.
+     * 
+     * @param dir
+     *            the directory
+     * @return the stamp
+     */
+    protected long getStamp(File dir) {
+        long[] stamp = new long[2];
+        collectStamp(dir, stamp);
+        return stamp[0] * 31 + stamp[1];
+    }
+
+    /**
+     * Collects the last modified time and the number of the files.
+     * 
+     * @param dir
+     *            the directory
+     * @param stamp
+     *            the maximum last modified time and the number of the files
+     */
+    protected void collectStamp(File dir, long[] stamp) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectStamp(file, stamp);
+            } else {
+                stamp[0] = Math.max(stamp[0], file.lastModified());
+                stamp[1]++;
+            }
+        }
+    }
+
+    /**
+     * Cleans the session of the request so that the session does not hold the
+     * objects defined by the current generation.
+     * 
+     * @param requestWrapper
+     *            the request wrapper
+     */
+    protected void cleanSession(HotHttpServletRequestWrapper requestWrapper) {
+        HotHttpSessionWrapper sessionWrapper = requestWrapper.sessionWrapper;
+        if (sessionWrapper != null) {
+            Cleaner.remove(sessionWrapper);
+            sessionWrapper.clean();
+        }
+    }
+
     /**
      * Creates {@link HotReloadingRuntimeException}.
      * 
@@ -15,8 +15,16 @@
  */
 package org.slim3.controller;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -24,6 +32,7 @@ import org.slim3.controller.upload.FileItem;
 import org.slim3.controller.upload.FileItemIterator;
 import org.slim3.controller.upload.FileItemStream;
 import org.slim3.controller.upload.FileUpload;
+import org.slim3.controller.upload.FileUploadException;
 import org.slim3.controller.upload.Streams;
 import org.slim3.util.ArrayUtil;
 import org.slim3.util.StringUtil;
@@ -32,6 +41,21 @@ import org.slim3.util.ThrowableUtil;
 /**
  * {@link RequestHandler} for multipart request.
  * 
+ * <p>
+ * An uploaded file is kept as chunks instead of one large array. If the
+ * {@link #SPILL_THRESHOLD_KEY} system property is set, a file larger than the
+ * threshold is written to a temporary file, which is deleted by
+ * {@link #destroy()}. Where the file system is not writable, the file is kept
+ * in memory.
+ * </p>
+ * <p>
+ * In streaming mode, the form fields before the first file are set as request
+ * attributes, and the rest of the request is left to the controller as
+ * {@link FileItemIterator} stored under {@link #FILE_ITEM_ITERATOR_KEY}. The
+ * size limits are enforced in both modes. To use streaming mode, override
+ * {@link Controller#createRequestHandler(HttpServletRequest)}.
+ * </p>
+ * 
  * @author higa
  * @since 1.0.0
  * 
@@ -48,8 +72,38 @@ public class MultipartRequestHandler extends RequestHandler {
      */
     public static final String FILE_SIZE_MAX_KEY = "slim3.uploadFileSizeMax";
 
+    /**
+     * The key of the size above which an uploaded file is written to a
+     * temporary file.
+     * 
+     * @since 1.0.16
+     */
+    public static final String SPILL_THRESHOLD_KEY =
+        "slim3.uploadSpillThreshold";
+
+    /**
+     * The key of {@link FileItemIterator} in streaming mode.
+     * 
+     * @since 1.0.16
+     */
+    public static final String FILE_ITEM_ITERATOR_KEY =
+        "slim3.fileItemIterator";
+
     private static final int BYTE_ARRAY_SIZE = 8 * 1024;
 
+    private static final Logger logger =
+        Logger.getLogger(MultipartRequestHandler.class.getName());
+
+    /**
+     * Whether the file items are left to the controller.
+     */
+    protected boolean streaming;
+
+    /**
+     * The temporary files.
+     */
+    protected List<File> tempFiles = new ArrayList<File>();
+
     /**
      * Constructor.
      * 
@@ -57,7 +111,22 @@ public class MultipartRequestHandler extends RequestHandler {
      *            the request
      */
     public MultipartRequestHandler(HttpServletRequest request) {
+        this(request, false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param request
+     *            the request
+     * @param streaming
+     *            whether the file items are left to the controller
+     * @since 1.0.16
+     */
+    public MultipartRequestHandler(HttpServletRequest request,
+            boolean streaming) {
         super(request);
+        this.streaming = streaming;
     }
 
     @Override
@@ -65,14 +134,15 @@ public class MultipartRequestHandler extends RequestHandler {
         try {
             FileUpload upload = createFileUpload();
             FileItemIterator iter = upload.getItemIterator(request);
+            long spillThreshold = getSpillThreshold();
             while (iter.hasNext()) {
                 FileItemStream item = iter.next();
                 String name = item.getFieldName();
-                InputStream stream = item.openStream();
                 if (item.isFormField()) {
                     String value =
-                        normalizeValue(Streams.asString(stream, request
-                            .getCharacterEncoding()));
+                        normalizeValue(Streams.asString(
+                            item.openStream(),
+                            request.getCharacterEncoding()));
                     if (name.endsWith(ARRAY_SUFFIX)) {
                         String[] array = (String[]) request.getAttribute(name);
                         if (array == null) {
@@ -82,14 +152,14 @@ public class MultipartRequestHandler extends RequestHandler {
                     } else {
                         request.setAttribute(name, value);
                     }
+                } else if (streaming) {
+                    request.setAttribute(
+                        FILE_ITEM_ITERATOR_KEY,
+                        new PushbackFileItemIterator(item, iter));
+                    return;
                 } else {
-                    ByteArrayOutputStream baos =
-                        new ByteArrayOutputStream(BYTE_ARRAY_SIZE);
-                    Streams.copy(stream, baos, true);
-                    byte[] data = baos.toByteArray();
                     FileItem value =
-                        data.length > 0 ? new FileItem(item.getFileName(), item
-                            .getContentType(), data) : null;
+                        createFileItem(item, item.openStream(), spillThreshold);
                     if (name.endsWith(ARRAY_SUFFIX)) {
                         FileItem[] array =
                             (FileItem[]) request.getAttribute(name);
@@ -107,6 +177,150 @@ public class MultipartRequestHandler extends RequestHandler {
         }
     }
 
+    /**
+     * Creates a {@link FileItem} reading the stream in chunks. If the size
+     * exceeds the threshold, the rest is written to a temporary file.
+     * 
+     * @param item
+     *            the file item stream
+     * @param in
+     *            the input stream
+     * @param spillThreshold
+     *            the size above which the data is written to a temporary
+     *            file, or -1 not to use temporary files
+     * @return a {@link FileItem} or null if the file is empty
+     * @throws IOException
+     *             if an {@link IOException} occurred
+     * @since 1.0.16
+     */
+    protected FileItem createFileItem(FileItemStream item, InputStream in,
+            long spillThreshold) throws IOException {
+        List<byte[]> chunks = new ArrayList<byte[]>();
+        long size = 0;
+        try {
+            while (true) {
+                byte[] chunk = readChunk(in);
+                if (chunk == null) {
+                    break;
+                }
+                chunks.add(chunk);
+                size += chunk.length;
+                if (spillThreshold >= 0 && size > spillThreshold) {
+                    File file = spill(chunks, in);
+                    if (file != null) {
+                        return new FileItem(
+                            item.getFileName(),
+                            item.getContentType(),
+                            file);
+                    }
+                    spillThreshold = -1;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return size > 0 ? new FileItem(
+            item.getFileName(),
+            item.getContentType(),
+            chunks) : null;
+    }
+
+    /**
+     * Reads a chunk from the stream.
+     * 
+     * @param in
+     *            the input stream
+     * @return a chunk or null if the stream is at the end
+     * @throws IOException
+     *             if an {@link IOException} occurred
+     */
+    protected byte[] readChunk(InputStream in) throws IOException {
+        byte[] buf = new byte[BYTE_ARRAY_SIZE];
+        int len = 0;
+        while (len < buf.length) {
+            int n = in.read(buf, len, buf.length - len);
+            if (n < 0) {
+                break;
+            }
+            len += n;
+        }
+        if (len == 0) {
+            return null;
+        }
+        if (len < buf.length) {
+            byte[] chunk = new byte[len];
+            System.arraycopy(buf, 0, chunk, 0, len);
+            return chunk;
+        }
+        return buf;
+    }
+
+    /**
+     * Writes the chunks and the rest of the stream to a temporary file.
+     * 
+     * @param chunks
+     *            the chunks
+     * @param in
+     *            the input stream
+     * @return the temporary file or null if the file system is not writable
+     * @throws IOException
+     *             if an {@link IOException} occurred while reading the stream
+     */
+    protected File spill(List<byte[]> chunks, InputStream in)
+            throws IOException {
+        File file;
+        OutputStream out;
+        try {
+            file = File.createTempFile("slim3upload", null);
+            out = new BufferedOutputStream(new FileOutputStream(file));
+        } catch (IOException e) {
+            logger.log(Level.INFO, e.getMessage(), e);
+            return null;
+        } catch (SecurityException e) {
+            logger.log(Level.INFO, e.getMessage(), e);
+            return null;
+        }
+        tempFiles.add(file);
+        try {
+            for (byte[] chunk : chunks) {
+                out.write(chunk);
+            }
+            chunks.clear();
+            Streams.copy(in, out, false);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Returns the size above which an uploaded file is written to a temporary
+     * file.
+     * 
+     * @return the threshold or -1 not to use temporary files
+     * @since 1.0.16
+     */
+    protected long getSpillThreshold() {
+        String threshold = System.getProperty(SPILL_THRESHOLD_KEY);
+        if (StringUtil.isEmpty(threshold)) {
+            return -1;
+        }
+        return Long.valueOf(threshold);
+    }
+
+    /**
+     * Deletes the temporary files.
+     */
+    @Override
+    public void destroy() {
+        for (File file : tempFiles) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        tempFiles.clear();
+    }
+
     /**
      * Creates a {@link FileUpload}.
      * 
@@ -125,4 +339,48 @@ public class MultipartRequestHandler extends RequestHandler {
         }
         return upload;
     }
+
+    /**
+     * {@link FileItemIterator} that returns the pushed back item first.
+     */
+    protected static class PushbackFileItemIterator implements
+            FileItemIterator {
+
+        /**
+         * The pushed back item.
+         */
+        protected FileItemStream item;
+
+        /**
+         * The iterator.
+         */
+        protected FileItemIterator iterator;
+
+        /**
+         * Constructor.
+         * 
+         * @param item
+         *            the pushed back item
+         * @param iterator
+         *            the iterator
+         */
+        protected PushbackFileItemIterator(FileItemStream item,
+                FileItemIterator iterator) {
+            this.item = item;
+            this.iterator = iterator;
+        }
+
+        public boolean hasNext() throws FileUploadException, IOException {
+            return item != null || iterator.hasNext();
+        }
+
+        public FileItemStream next() throws FileUploadException, IOException {
+            if (item != null) {
+                FileItemStream ret = item;
+                item = null;
+                return ret;
+            }
+            return iterator.next();
+        }
+    }
 }
\ No newline at end of file
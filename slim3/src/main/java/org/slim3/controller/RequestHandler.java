@@ -73,6 +73,15 @@ public class RequestHandler {
         }
     }
 
+    /**
+     * Releases the resources such as temporary files after the request is
+     * processed.
+     * 
+     * @since 1.0.16
+     */
+    public void destroy() {
+    }
+
     /**
      * Normalizes the value.
      * 
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.controller.router;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * An implementation class for {@link Router} that compiles the "from" paths
+ * into a trie of path segments. A static segment is looked up by the name, and
+ * a segment that has place holders like "{id}" matches any segment. A
+ * {@link Routing} is tried only when the trie says that it can match the path,
+ * and the candidates are tried in the order in which they were added, so the
+ * first matched {@link Routing} wins as well as {@link RouterImpl}.
+ * 
+ * @since 1.0.16
+ * 
+ */
+public class CompiledRouterImpl extends RouterImpl {
+
+    /**
+     * The characters that have special meaning in a "from" path.
+     */
+    protected static final String SPECIAL_CHARS = "\\.[]()^$|?+";
+
+    /**
+     * The root node of the trie.
+     */
+    protected Node root = new Node();
+
+    /**
+     * The indexes of {@link Routing}s that are always tried because they can
+     * not be compiled into the trie.
+     */
+    protected BitSet uncompiledRoutings = new BitSet();
+
+    @Override
+    public void addRouting(String from, String to) throws NullPointerException {
+        super.addRouting(from, to);
+        compile(from, routingList.size() - 1);
+    }
+
+    /**
+     * Compiles the "from" path into the trie.
+     * 
+     * @param from
+     *            the "from" path
+     * @param index
+     *            the index of {@link Routing}
+     */
+    protected void compile(String from, int index) {
+        String[] segments = from.split("/", -1);
+        Node node = root;
+        for (String segment : segments) {
+            if (segment.indexOf('*') >= 0) {
+                node.catchAllRoutings.set(index);
+                return;
+            }
+            String literal = removePlaceHolders(segment);
+            if (containsSpecialChars(literal)) {
+                uncompiledRoutings.set(index);
+                return;
+            }
+            if (literal.length() == segment.length()) {
+                node = node.getStaticChild(segment);
+            } else {
+                node = node.getPlaceHolderChild();
+            }
+        }
+        node.routings.set(index);
+    }
+
+    /**
+     * Removes the place holders from the segment.
+     * 
+     * @param segment
+     *            the segment
+     * @return the segment without place holders
+     */
+    protected String removePlaceHolders(String segment) {
+        if (segment.indexOf('{') < 0) {
+            return segment;
+        }
+        StringBuilder sb = new StringBuilder(segment.length());
+        boolean inPlaceHolder = false;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '{') {
+                inPlaceHolder = true;
+            } else if (c == '}') {
+                inPlaceHolder = false;
+            } else if (!inPlaceHolder) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Determines if the literal contains special characters.
+     * 
+     * @param literal
+     *            the literal
+     * @return whether the literal contains special characters
+     */
+    protected boolean containsSpecialChars(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (SPECIAL_CHARS.indexOf(literal.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String route(HttpServletRequest request, String path) {
+        if (request == null) {
+            throw new NullPointerException("The request parameter is null.");
+        }
+        if (path == null) {
+            throw new NullPointerException("The path parameter is null.");
+        }
+        BitSet candidates = (BitSet) uncompiledRoutings.clone();
+        collect(root, path.split("/", -1), 0, candidates);
+        for (int i = candidates.nextSetBit(0); i >= 0; i =
+            candidates.nextSetBit(i + 1)) {
+            String to = routingList.get(i).route(request, path);
+            if (to != null) {
+                return to;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Collects the indexes of {@link Routing}s that can match the segments.
+     * 
+     * @param node
+     *            the current node
+     * @param segments
+     *            the segments of the path
+     * @param depth
+     *            the depth of the current node
+     * @param candidates
+     *            the indexes of candidates
+     */
+    protected void collect(Node node, String[] segments, int depth,
+            BitSet candidates) {
+        candidates.or(node.catchAllRoutings);
+        if (depth == segments.length) {
+            candidates.or(node.routings);
+            return;
+        }
+        if (node.staticChildren != null) {
+            Node child = node.staticChildren.get(segments[depth]);
+            if (child != null) {
+                collect(child, segments, depth + 1, candidates);
+            }
+        }
+        if (node.placeHolderChild != null && segments[depth].length() > 0) {
+            collect(node.placeHolderChild, segments, depth + 1, candidates);
+        }
+    }
+
+    /**
+     * A node of the trie.
+     * 
+     */
+    protected static class Node {
+
+        /**
+         * The children for static segments.
+         */
+        protected Map<String, Node> staticChildren;
+
+        /**
+         * The child for segments that have place holders.
+         */
+        protected Node placeHolderChild;
+
+        /**
+         * The indexes of {@link Routing}s that end at this node.
+         */
+        protected BitSet routings = new BitSet();
+
+        /**
+         * The indexes of {@link Routing}s that have a catch-all place holder
+         * after this node.
+         */
+        protected BitSet catchAllRoutings = new BitSet();
+
+        /**
+         * Returns the child for the static segment.
+         * 
+         * @param segment
+         *            the segment
+         * @return the child
+         */
+        protected Node getStaticChild(String segment) {
+            if (staticChildren == null) {
+                staticChildren = new HashMap<String, Node>();
+            }
+            Node child = staticChildren.get(segment);
+            if (child == null) {
+                child = new Node();
+                staticChildren.put(segment, child);
+            }
+            return child;
+        }
+
+        /**
+         * Returns the child for segments that have place holders.
+         * 
+         * @return the child
+         */
+        protected Node getPlaceHolderChild() {
+            if (placeHolderChild == null) {
+                placeHolderChild = new Node();
+            }
+            return placeHolderChild;
+        }
+    }
+}
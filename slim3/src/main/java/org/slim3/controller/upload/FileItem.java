@@ -15,6 +15,18 @@
  */
 package org.slim3.controller.upload;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.slim3.util.WrapRuntimeException;
+
 /**
  * A class to access to a file item that was received within a
  * <code>multipart/form-data</code> POST request.
@@ -45,6 +57,27 @@ public class FileItem {
      */
     protected byte[] data;
 
+    /**
+     * The chunks of the data.
+     * 
+     * @since 1.0.16
+     */
+    protected List<byte[]> chunks;
+
+    /**
+     * The file that stores the data.
+     * 
+     * @since 1.0.16
+     */
+    protected File file;
+
+    /**
+     * The size of the data.
+     * 
+     * @since 1.0.16
+     */
+    protected long size;
+
     /**
      * Constructor.
      * 
@@ -56,9 +89,63 @@ public class FileItem {
      *            the data
      */
     public FileItem(String fileName, String contentType, byte[] data) {
+        this(fileName, contentType);
+        this.data = data;
+        size = data != null ? data.length : 0;
+    }
+
+    /**
+     * Constructor. The data is kept as the chunks until {@link #getData()}
+     * is called, so no large array is allocated to read the data as a stream.
+     * 
+     * @param fileName
+     *            the file name
+     * @param contentType
+     *            the content type
+     * @param chunks
+     *            the chunks of the data
+     * @throws NullPointerException
+     *             if the chunks parameter is null
+     * @since 1.0.16
+     */
+    public FileItem(String fileName, String contentType, List<byte[]> chunks)
+            throws NullPointerException {
+        this(fileName, contentType);
+        if (chunks == null) {
+            throw new NullPointerException("The chunks parameter is null.");
+        }
+        this.chunks = chunks;
+        for (byte[] chunk : chunks) {
+            size += chunk.length;
+        }
+    }
+
+    /**
+     * Constructor. The data is read from the file when it is needed.
+     * 
+     * @param fileName
+     *            the file name
+     * @param contentType
+     *            the content type
+     * @param file
+     *            the file that stores the data
+     * @throws NullPointerException
+     *             if the file parameter is null
+     * @since 1.0.16
+     */
+    public FileItem(String fileName, String contentType, File file)
+            throws NullPointerException {
+        this(fileName, contentType);
+        if (file == null) {
+            throw new NullPointerException("The file parameter is null.");
+        }
+        this.file = file;
+        size = file.length();
+    }
+
+    private FileItem(String fileName, String contentType) {
         this.fileName = fileName;
         this.contentType = contentType;
-        this.data = data;
         if (fileName != null) {
             shortFileName = fileName;
             int index = fileName.lastIndexOf("\\");
@@ -99,11 +186,166 @@ public class FileItem {
     }
 
     /**
-     * Returns the data.
+     * Returns the data. If the data is kept as the chunks or in the file, the
+     * whole data is read into the array, so use {@link #getInputStream()} for
+     * large data.
      * 
      * @return the data
+     * @throws WrapRuntimeException
+     *             if an {@link IOException} occurred while reading the file
      */
-    public byte[] getData() {
+    public byte[] getData() throws WrapRuntimeException {
+        if (data == null && chunks != null) {
+            byte[] bytes = new byte[(int) size];
+            int pos = 0;
+            for (byte[] chunk : chunks) {
+                System.arraycopy(chunk, 0, bytes, pos, chunk.length);
+                pos += chunk.length;
+            }
+            chunks = null;
+            data = bytes;
+        } else if (data == null && file != null) {
+            try {
+                data = readFile();
+            } catch (IOException e) {
+                throw new WrapRuntimeException(e);
+            }
+        }
         return data;
     }
+
+    /**
+     * Reads the whole file into a new array.
+     * 
+     * @return the data
+     * @throws IOException
+     *             if an {@link IOException} occurred
+     */
+    protected byte[] readFile() throws IOException {
+        byte[] bytes = new byte[(int) size];
+        InputStream in = new FileInputStream(file);
+        try {
+            int pos = 0;
+            while (pos < bytes.length) {
+                int n = in.read(bytes, pos, bytes.length - pos);
+                if (n < 0) {
+                    throw new IOException("The file("
+                        + file.getPath()
+                        + ") is shorter than "
+                        + size
+                        + " bytes.");
+                }
+                pos += n;
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the size of the data.
+     * 
+     * @return the size of the data
+     * @since 1.0.16
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the file that stores the data.
+     * 
+     * @return the file or null if the data is kept in memory
+     * @since 1.0.16
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Determines if the data is kept in memory.
+     * 
+     * @return whether the data is kept in memory
+     * @since 1.0.16
+     */
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * Returns a new input stream to read the data.
+     * 
+     * @return a new input stream
+     * @throws IOException
+     *             if an {@link IOException} occurred while opening the file
+     * @since 1.0.16
+     */
+    public InputStream getInputStream() throws IOException {
+        if (data != null) {
+            return new ByteArrayInputStream(data);
+        }
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+        if (chunks != null) {
+            final List<byte[]> list = chunks;
+            return new SequenceInputStream(new Enumeration<InputStream>() {
+
+                private int index = 0;
+
+                public boolean hasMoreElements() {
+                    return index < list.size();
+                }
+
+                public InputStream nextElement() {
+                    return new ByteArrayInputStream(list.get(index++));
+                }
+            });
+        }
+        return new ByteArrayInputStream(new byte[0]);
+    }
+
+    /**
+     * Writes the data to the output stream without reading the whole data
+     * into memory.
+     * 
+     * @param out
+     *            the output stream
+     * @throws NullPointerException
+     *             if the out parameter is null
+     * @throws IOException
+     *             if an {@link IOException} occurred
+     * @since 1.0.16
+     */
+    public void writeTo(OutputStream out) throws NullPointerException,
+            IOException {
+        if (out == null) {
+            throw new NullPointerException("The out parameter is null.");
+        }
+        if (data != null) {
+            out.write(data);
+            return;
+        }
+        if (chunks != null) {
+            for (byte[] chunk : chunks) {
+                out.write(chunk);
+            }
+            return;
+        }
+        if (file != null) {
+            Streams.copy(new FileInputStream(file), out, false);
+        }
+    }
+
+    /**
+     * Deletes the file that stores the data if it exists.
+     * 
+     * @since 1.0.16
+     */
+    public void delete() {
+        if (file != null) {
+            file.delete();
+        }
+    }
 }
\ No newline at end of file
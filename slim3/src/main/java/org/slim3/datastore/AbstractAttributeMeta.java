@@ -55,6 +55,13 @@ public abstract class AbstractAttributeMeta<M, A> implements CharSequence {
      */
     protected PropertyDesc propertyDesc;
 
+    /**
+     * The index of the attribute for {@link ModelMeta#getValue(Object, int)}.
+     * -1 means that the value is read by reflection, and -2 means that the
+     * index has not been resolved yet.
+     */
+    protected int attributeIndex = -2;
+
     /**
      * Constructor.
      * 
@@ -151,7 +158,8 @@ public abstract class AbstractAttributeMeta<M, A> implements CharSequence {
     }
 
     /**
-     * Returns the property value.
+     * Returns the property value. The generated accessor of the meta data is
+     * used if it is available, otherwise the value is read by reflection.
      * 
      * @param model
      *            the model
@@ -160,6 +168,12 @@ public abstract class AbstractAttributeMeta<M, A> implements CharSequence {
      *             if the property is not found
      */
     protected Object getValue(Object model) throws IllegalArgumentException {
+        if (attributeIndex == -2) {
+            attributeIndex = modelMeta.getAttributeIndex(attributeName);
+        }
+        if (attributeIndex >= 0) {
+            return modelMeta.getValue(model, attributeIndex);
+        }
         if (propertyDesc == null) {
             propertyDesc =
                 modelMeta.getBeanDesc().getPropertyDesc(attributeName);
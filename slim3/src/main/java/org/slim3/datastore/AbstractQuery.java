@@ -18,11 +18,14 @@ package org.slim3.datastore;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import org.slim3.repackaged.com.google.gdata.util.common.util.Base64;
 import org.slim3.repackaged.com.google.gdata.util.common.util.Base64DecoderException;
 import org.slim3.util.AppEngineUtil;
 import org.slim3.util.ByteUtil;
+import org.slim3.util.FutureUtil;
+import org.slim3.util.LazyFuture;
 import org.slim3.util.ThrowableUtil;
 
 import com.google.appengine.api.datastore.AsyncDatastoreService;
@@ -82,6 +85,16 @@ public abstract class AbstractQuery<SUB> {
      */
     protected FetchOptions fetchOptions = FetchOptions.Builder.withDefaults();
 
+    /**
+     * Whether "in" and "or" filters are executed by {@link MultiQuery}.
+     */
+    protected boolean parallel = false;
+
+    /**
+     * The encoded start cursor of {@link MultiQuery}.
+     */
+    protected String encodedMultiQueryCursor;
+
     /**
      * Constructor.
      * 
@@ -381,7 +394,12 @@ public abstract class AbstractQuery<SUB> {
             throw new NullPointerException(
                 "The encodedCursor parameter must not be null.");
         }
-        fetchOptions.startCursor(Cursor.fromWebSafeString(encodedCursor));
+        if (encodedCursor.startsWith(MultiQuery.CURSOR_PREFIX)) {
+            parallel = true;
+            encodedMultiQueryCursor = encodedCursor;
+        } else {
+            fetchOptions.startCursor(Cursor.fromWebSafeString(encodedCursor));
+        }
         return (SUB) this;
     }
 
@@ -405,6 +423,23 @@ public abstract class AbstractQuery<SUB> {
         return (SUB) this;
     }
 
+    /**
+     * Executes "in" and "or" filters as the component queries that run
+     * concurrently, instead of the sequential sub-queries of the datastore
+     * service. The results are merged by the sort orders and the duplicated
+     * entities are removed. The cursor of {@link #asEntityIterator()} and of
+     * the query result list is the encoded cursor of {@link MultiQuery}, which
+     * can be passed to {@link #encodedStartCursor(String)}.
+     * 
+     * @return this instance
+     * @since 1.0.16
+     */
+    @SuppressWarnings("unchecked")
+    public SUB parallel() {
+        parallel = true;
+        return (SUB) this;
+    }
+
     /**
      * Adds the filter.
      * 
@@ -622,6 +657,10 @@ public abstract class AbstractQuery<SUB> {
      * @return entities as list
      */
     public List<Entity> asEntityList() {
+        MultiQuery multiQuery = createMultiQuery();
+        if (multiQuery != null) {
+            return multiQuery.asList();
+        }
         PreparedQuery pq = prepareQuery();
         return pq.asList(fetchOptions);
     }
@@ -799,6 +838,10 @@ public abstract class AbstractQuery<SUB> {
      * @return entities as {@link Iterable}
      */
     public Iterable<Entity> asIterableEntities() {
+        MultiQuery multiQuery = createMultiQuery();
+        if (multiQuery != null) {
+            return new ModelIterable<Entity>(multiQuery.asIterator());
+        }
         PreparedQuery pq = prepareQuery();
         return pq.asIterable(fetchOptions);
     }
@@ -809,10 +852,167 @@ public abstract class AbstractQuery<SUB> {
      * @return entities as {@link Iterator}
      */
     public Iterator<Entity> asEntityIterator() {
+        MultiQuery multiQuery = createMultiQuery();
+        if (multiQuery != null) {
+            return multiQuery.asIterator();
+        }
         PreparedQuery pq = prepareQuery();
         return pq.asIterator(fetchOptions);
     }
 
+    /**
+     * Returns entities as list asynchronously. The query is started at once
+     * and the first batch is sized to the limit, so that several queries can
+     * run concurrently.
+     * 
+     * @return entities as list represented as {@link Future}
+     * @since 1.0.16
+     */
+    public Future<List<Entity>> asEntityListAsync() {
+        prefetchLimit();
+        MultiQuery multiQuery = createMultiQuery();
+        if (multiQuery != null) {
+            final MultiQuery mq = multiQuery;
+            final MultiQuery.Component[] components = mq.startComponents();
+            return new LazyFuture<List<Entity>>() {
+                @Override
+                protected List<Entity> compute() throws Exception {
+                    return toList(mq.asIterator(components));
+                }
+            };
+        }
+        final QueryResultIterator<Entity> ite = asQueryResultEntityIterator();
+        return new LazyFuture<List<Entity>>() {
+            @Override
+            protected List<Entity> compute() throws Exception {
+                return toList(ite);
+            }
+        };
+    }
+
+    /**
+     * Returns a single entity asynchronously.
+     * 
+     * @return a single entity represented as {@link Future}
+     * @see #asEntityListAsync()
+     * @since 1.0.16
+     */
+    public Future<Entity> asSingleEntityAsync() {
+        final Future<List<Entity>> future = asEntityListAsync();
+        return new LazyFuture<Entity>() {
+            @Override
+            protected Entity compute() throws Exception {
+                List<Entity> list = FutureUtil.getQuietly(future);
+                if (list.size() == 0) {
+                    return null;
+                }
+                if (list.size() > 1) {
+                    throw new PreparedQuery.TooManyResultsException();
+                }
+                return list.get(0);
+            }
+        };
+    }
+
+    /**
+     * Returns the number of entities asynchronously. The query is executed as
+     * keys-only query unless projections are specified, and the results are
+     * counted without being kept. The offset and the limit are applied.
+     * 
+     * @return the number of entities represented as {@link Future}
+     * @see #asEntityListAsync()
+     * @since 1.0.16
+     */
+    public Future<Integer> countAsync() {
+        boolean keysOnly =
+            !query.isKeysOnly() && query.getProjections().isEmpty();
+        if (keysOnly) {
+            query.setKeysOnly();
+        }
+        final Iterator<Entity> ite;
+        try {
+            prefetchLimit();
+            MultiQuery multiQuery = createMultiQuery();
+            ite =
+                multiQuery != null
+                    ? multiQuery.asIterator()
+                    : asQueryResultEntityIterator();
+        } finally {
+            if (keysOnly) {
+                query.clearKeysOnly();
+            }
+        }
+        return new LazyFuture<Integer>() {
+            @Override
+            protected Integer compute() throws Exception {
+                int count = 0;
+                while (ite.hasNext()) {
+                    ite.next();
+                    count++;
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Sets the prefetch size to the limit so that the first batch returns all
+     * the results.
+     */
+    protected void prefetchLimit() {
+        Integer limit = fetchOptions.getLimit();
+        if (limit != null && fetchOptions.getPrefetchSize() == null) {
+            fetchOptions.prefetchSize(limit);
+        }
+    }
+
+    /**
+     * Converts the iterator to a list.
+     * 
+     * @param ite
+     *            the iterator
+     * @return a list
+     */
+    protected List<Entity> toList(Iterator<Entity> ite) {
+        List<Entity> ret = new ArrayList<Entity>();
+        while (ite.hasNext()) {
+            ret.add(ite.next());
+        }
+        return ret;
+    }
+
+    /**
+     * Creates {@link MultiQuery} if "in" and "or" filters should be executed
+     * by it.
+     * 
+     * @return {@link MultiQuery} or null if the datastore service should
+     *         execute the query
+     * @throws IllegalArgumentException
+     *             if the number of the component queries exceeds
+     *             {@link MultiQuery#MAX_QUERIES}
+     */
+    protected MultiQuery createMultiQuery() throws IllegalArgumentException {
+        if (!parallel
+            || fetchOptions.getStartCursor() != null
+            || fetchOptions.getEndCursor() != null) {
+            return null;
+        }
+        if (query.isKeysOnly()) {
+            for (SortPredicate sp : query.getSortPredicates()) {
+                String name = sp.getPropertyName();
+                if (!name.equals(Entity.KEY_RESERVED_PROPERTY)) {
+                    return null;
+                }
+            }
+        }
+        List<List<Query.Filter>> componentFilters = MultiQuery.split(filters);
+        if (componentFilters.size() == 1 && encodedMultiQueryCursor == null) {
+            return null;
+        }
+        applyFilter();
+        return new MultiQuery(this, componentFilters);
+    }
+
     /**
      * Applies the filter to query.
      * 
@@ -24,6 +24,26 @@ package org.slim3.datastore;
  */
 public abstract class AbstractUow {
 
+    /**
+     * The number of the attempts.
+     */
+    protected int attempts;
+
+    /**
+     * The number of the conflicts.
+     */
+    protected int conflicts;
+
+    /**
+     * The total wait time in milliseconds.
+     */
+    protected long totalWaitTime;
+
+    /**
+     * Whether the last run was deferred to the task queue.
+     */
+    protected boolean deferred;
+
     /**
      * Constructor.
      * 
@@ -31,6 +51,58 @@ public abstract class AbstractUow {
     public AbstractUow() {
     }
 
+    /**
+     * Returns the number of the attempts.
+     * 
+     * @return the number of the attempts
+     * @since 1.0.16
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Returns the number of the conflicts.
+     * 
+     * @return the number of the conflicts
+     * @since 1.0.16
+     */
+    public int getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Returns the total wait time before the retries.
+     * 
+     * @return the total wait time in milliseconds
+     * @since 1.0.16
+     */
+    public long getTotalWaitTime() {
+        return totalWaitTime;
+    }
+
+    /**
+     * Determines if the last run was deferred to the task queue by
+     * {@link Uow#runOrDefer(AbstractUow, UowRetryPolicy)}. A deferred run
+     * returns null, so this tells it from a unit of work that returned null.
+     * 
+     * @return whether the last run was deferred
+     * @since 1.0.16
+     */
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Resets the counters.
+     */
+    protected void resetCounters() {
+        attempts = 0;
+        conflicts = 0;
+        totalWaitTime = 0;
+        deferred = false;
+    }
+
     /**
      * Begins a transaction.
      */
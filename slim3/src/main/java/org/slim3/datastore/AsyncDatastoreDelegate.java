@@ -15,13 +15,17 @@
  */
 package org.slim3.datastore;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Future;
 
 import org.slim3.util.DoubleUtil;
+import org.slim3.util.FakeFuture;
 
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceConfig;
@@ -129,11 +133,13 @@ public class AsyncDatastoreDelegate {
     }
 
     /**
-     * Begins a transaction asynchronously.
+     * Begins a transaction asynchronously. The mutations buffered by
+     * {@link BatchScope} are flushed first.
      * 
      * @return a begun transaction represented as {@link Future}
      */
     public Future<Transaction> beginTransactionAsync() {
+        BatchScope.flushCurrent();
         return ds.beginTransaction(txOps);
     }
 
@@ -1439,7 +1445,82 @@ public class AsyncDatastoreDelegate {
     public Future<Map<Key, Entity>> getAsMapAsync(Transaction tx,
             Iterable<Key> keys) throws NullPointerException,
             IllegalStateException {
-        return DatastoreUtil.getAsMapAsync(ds, tx, keys);
+        return getAsMapAsync(ds, tx, keys);
+    }
+
+    /**
+     * Returns entities specified by the keys within the provided transaction
+     * asynchronously. Without transaction, the entities are fetched through
+     * the entity cache of the current thread and {@link MemcacheEntityCache}.
+     * 
+     * @param ds
+     *            the asynchronous datastore service
+     * @param tx
+     *            the transaction
+     * @param keys
+     *            the keys
+     * @return entities represented as {@link Future}
+     * @throws NullPointerException
+     *             if the keys parameter is null
+     * @throws IllegalStateException
+     *             if the transaction is not null and the transaction is not
+     *             active
+     */
+    protected static Future<Map<Key, Entity>> getAsMapAsync(
+            AsyncDatastoreService ds, Transaction tx, Iterable<Key> keys)
+            throws NullPointerException, IllegalStateException {
+        if (tx != null) {
+            return DatastoreUtil.getAsMapAsync(ds, tx, keys);
+        }
+        EntityCache cache = EntityCache.get();
+        if (cache == null) {
+            return MemcacheEntityCache.getAsMapAsync(ds, keys);
+        }
+        return getAsMapAsync(ds, cache, keys);
+    }
+
+    /**
+     * Returns entities specified by the keys through the entity cache
+     * asynchronously. Only the keys that are not cached are fetched from
+     * datastore.
+     * 
+     * @param ds
+     *            the asynchronous datastore service
+     * @param cache
+     *            the entity cache
+     * @param keys
+     *            the keys
+     * @return entities represented as {@link Future}
+     * @throws NullPointerException
+     *             if the keys parameter is null
+     */
+    protected static Future<Map<Key, Entity>> getAsMapAsync(
+            AsyncDatastoreService ds, final EntityCache cache,
+            Iterable<Key> keys) throws NullPointerException {
+        final Map<Key, Entity> found = new HashMap<Key, Entity>();
+        final Set<Key> missingKeys = cache.lookup(keys, found);
+        if (missingKeys.isEmpty()) {
+            return new FakeFuture<Map<Key, Entity>>(found);
+        }
+        final int modificationCount = cache.getModificationCount();
+        return new FutureWrapper<Map<Key, Entity>, Map<Key, Entity>>(
+            MemcacheEntityCache.getAsMapAsync(ds, missingKeys)) {
+
+            @Override
+            protected Throwable convertException(Throwable throwable) {
+                return throwable;
+            }
+
+            @Override
+            protected Map<Key, Entity> wrap(Map<Key, Entity> map)
+                    throws Exception {
+                if (cache.getModificationCount() == modificationCount) {
+                    cache.store(missingKeys, map);
+                }
+                found.putAll(map);
+                return found;
+            }
+        };
     }
 
     /**
@@ -1655,8 +1736,7 @@ public class AsyncDatastoreDelegate {
             throw new NullPointerException(
                 "The entity parameter must not be null.");
         }
-        return new FutureWrapper<List<Key>, Key>(DatastoreUtil.putAsync(
-            ds,
+        return new FutureWrapper<List<Key>, Key>(putAndCacheAsync(
             tx,
             Arrays.asList(entity))) {
 
@@ -1765,7 +1845,52 @@ public class AsyncDatastoreDelegate {
     public Future<List<Key>> putAsync(Transaction tx, Iterable<?> models)
             throws NullPointerException, IllegalStateException {
         List<Entity> entities = DatastoreUtil.modelsToEntities(ds, models);
-        return DatastoreUtil.putAsync(ds, tx, entities);
+        return putAndCacheAsync(tx, entities);
+    }
+
+    /**
+     * Puts the entities to datastore within the provided transaction
+     * asynchronously. If the put is done without transaction, the entities are
+     * stored to the entity cache of the current thread when the put completes.
+     * The mutations buffered by {@link BatchScope} are flushed first.
+     * 
+     * @param tx
+     *            the transaction
+     * @param entities
+     *            the entities
+     * @return a list of keys represented as {@link Future}
+     * @throws IllegalStateException
+     *             if the transaction is not null and the transaction is not
+     *             active
+     */
+    protected Future<List<Key>> putAndCacheAsync(Transaction tx,
+            List<Entity> entities) throws IllegalStateException {
+        BatchScope.flushCurrent();
+        Future<List<Key>> future = DatastoreUtil.putAsync(ds, tx, entities);
+        final EntityCache cache = EntityCache.get();
+        if (tx != null || cache == null) {
+            return future;
+        }
+        final int modificationCount = cache.getModificationCount();
+        final List<Entity> copies = new ArrayList<Entity>(entities.size());
+        for (Entity entity : entities) {
+            copies.add(entity.clone());
+        }
+        return new FutureWrapper<List<Key>, List<Key>>(future) {
+
+            @Override
+            protected Throwable convertException(Throwable throwable) {
+                return throwable;
+            }
+
+            @Override
+            protected List<Key> wrap(List<Key> keys) throws Exception {
+                if (cache.getModificationCount() == modificationCount) {
+                    cache.store(copies);
+                }
+                return keys;
+            }
+        };
     }
 
     /**
@@ -1857,6 +1982,7 @@ public class AsyncDatastoreDelegate {
      */
     public Future<Void> deleteAsync(Transaction tx, Iterable<Key> keys)
             throws NullPointerException, IllegalStateException {
+        BatchScope.flushCurrent();
         return DatastoreUtil.deleteAsync(ds, tx, keys);
     }
 
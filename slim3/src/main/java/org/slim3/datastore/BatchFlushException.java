@@ -0,0 +1,61 @@
+/*
+ * Copyright 2004-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.google.appengine.api.datastore.Key;
+
+/**
+ * This exception is thrown when some buffered puts or deletes of
+ * {@link BatchScope} could not be flushed.
+ * 
+ * @since 1.0.16
+ * 
+ */
+public class BatchFlushException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The errors keyed by the keys of the failed mutations.
+     */
+    protected Map<Key, Throwable> errors;
+
+    /**
+     * Constructor.
+     * 
+     * @param errors
+     *            the errors keyed by the keys of the failed mutations
+     */
+    public BatchFlushException(Map<Key, Throwable> errors) {
+        super(errors.size() + " mutation(s) could not be flushed: " + errors);
+        this.errors = Collections.unmodifiableMap(errors);
+        if (!errors.isEmpty()) {
+            initCause(errors.values().iterator().next());
+        }
+    }
+
+    /**
+     * Returns the errors keyed by the keys of the failed mutations.
+     * 
+     * @return the errors
+     */
+    public Map<Key, Throwable> getErrors() {
+        return errors;
+    }
+}
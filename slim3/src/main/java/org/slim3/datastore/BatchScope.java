@@ -0,0 +1,334 @@
+/*
+ * Copyright 2004-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityTranslator;
+import com.google.appengine.api.datastore.Key;
+
+/**
+ * The request-scoped buffer for puts and deletes without transaction. While a
+ * scope is attached to the current thread, {@link DatastoreDelegate} assigns
+ * the keys eagerly and buffers the mutations instead of calling datastore.
+ * The buffered mutations are written as asynchronous batches that fit in one
+ * call when {@link #flush()} is called. The last mutation wins if a key is
+ * put or deleted more than once. If the current thread has an
+ * {@link EntityCache}, gets without transaction see the buffered mutations.
+ * Queries do not see them until they are flushed. This class is not
+ * thread-safe.
+ * 
+ * <p>
+ * The buffered mutations are flushed before a transaction begins and before
+ * a put or delete that is not buffered, such as an asynchronous one or one
+ * within a transaction, so that the buffered mutations never overwrite a
+ * later write of the same key.
+ * </p>
+ * 
+ * @since 1.0.16
+ * 
+ */
+public class BatchScope {
+
+    private static ThreadLocal<BatchScope> scopes =
+        new ThreadLocal<BatchScope>();
+
+    /**
+     * The asynchronous datastore service.
+     */
+    protected AsyncDatastoreService ds;
+
+    /**
+     * The map of the buffered mutations. A null value means a delete.
+     */
+    protected Map<Key, Entity> mutationMap = new LinkedHashMap<Key, Entity>();
+
+    /**
+     * The number of the batches written.
+     */
+    protected int batchCount;
+
+    /**
+     * Returns the scope attached to the current thread.
+     * 
+     * @return the scope attached to the current thread
+     */
+    public static BatchScope get() {
+        return scopes.get();
+    }
+
+    /**
+     * Sets the scope to the current thread.
+     * 
+     * @param scope
+     *            the scope
+     */
+    public static void set(BatchScope scope) {
+        scopes.set(scope);
+    }
+
+    /**
+     * Begins a new scope for the current thread.
+     * 
+     * @return a begun scope
+     */
+    public static BatchScope begin() {
+        BatchScope scope = new BatchScope();
+        scopes.set(scope);
+        return scope;
+    }
+
+    /**
+     * Detaches the scope from the current thread. The buffered mutations are
+     * not flushed.
+     */
+    public static void end() {
+        scopes.remove();
+    }
+
+    /**
+     * Flushes the scope attached to the current thread if any.
+     * 
+     * @throws BatchFlushException
+     *             if some mutations could not be written
+     */
+    public static void flushCurrent() throws BatchFlushException {
+        BatchScope scope = scopes.get();
+        if (scope != null) {
+            scope.flush();
+        }
+    }
+
+    /**
+     * Buffers the puts of the entities. The keys are assigned if necessary.
+     * 
+     * @param ds
+     *            the asynchronous datastore service
+     * @param entities
+     *            the entities
+     * @return a list of keys
+     * @throws NullPointerException
+     *             if the ds parameter is null or if the entities parameter is
+     *             null
+     */
+    public List<Key> put(AsyncDatastoreService ds, Iterable<Entity> entities)
+            throws NullPointerException {
+        DatastoreUtil.assignKeyIfNecessary(ds, entities);
+        this.ds = ds;
+        List<Key> keys = new ArrayList<Key>();
+        List<Entity> copies = new ArrayList<Entity>();
+        for (Entity entity : entities) {
+            Key key = entity.getKey();
+            mutationMap.remove(key);
+            mutationMap.put(key, entity.clone());
+            keys.add(key);
+            copies.add(entity.clone());
+        }
+        EntityCache cache = EntityCache.get();
+        if (cache != null) {
+            cache.invalidate(keys);
+            cache.store(copies);
+        }
+        return keys;
+    }
+
+    /**
+     * Buffers the deletes of the entities specified by the keys.
+     * 
+     * @param ds
+     *            the asynchronous datastore service
+     * @param keys
+     *            the keys
+     * @throws NullPointerException
+     *             if the ds parameter is null or if the keys parameter is null
+     */
+    public void delete(AsyncDatastoreService ds, Iterable<Key> keys)
+            throws NullPointerException {
+        if (ds == null) {
+            throw new NullPointerException("The ds parameter must not be null.");
+        }
+        if (keys == null) {
+            throw new NullPointerException(
+                "The keys parameter must not be null.");
+        }
+        this.ds = ds;
+        for (Key key : keys) {
+            mutationMap.remove(key);
+            mutationMap.put(key, null);
+        }
+        EntityCache cache = EntityCache.get();
+        if (cache != null) {
+            cache.invalidate(keys);
+            cache.store(keys, new HashMap<Key, Entity>());
+        }
+    }
+
+    /**
+     * Writes the buffered mutations as asynchronous batches and waits for
+     * them. The puts are split into batches by
+     * {@link DatastoreUtil#MAX_NUMBER_OF_ENTITIES} and
+     * {@link DatastoreUtil#MAX_ENTITY_SIZE}. If a batch fails, each mutation
+     * of the batch is written one by one to find the failed mutations.
+     * 
+     * @throws BatchFlushException
+     *             if some mutations could not be written
+     */
+    public void flush() throws BatchFlushException {
+        if (mutationMap.isEmpty()) {
+            return;
+        }
+        List<Entity> putEntities = new ArrayList<Entity>();
+        List<Integer> putSizes = new ArrayList<Integer>();
+        List<Key> deleteKeys = new ArrayList<Key>();
+        for (Map.Entry<Key, Entity> e : mutationMap.entrySet()) {
+            Entity entity = e.getValue();
+            if (entity != null) {
+                putEntities.add(entity);
+                putSizes.add(EntityTranslator
+                    .convertToPb(entity)
+                    .encodingSize());
+            } else {
+                deleteKeys.add(e.getKey());
+            }
+        }
+        mutationMap.clear();
+        List<List<Entity>> putBatches =
+            Journal.splitPutBatches(putEntities, putSizes);
+        List<List<Key>> deleteBatches = Journal.splitDeleteBatches(deleteKeys);
+        List<Future<List<Key>>> putFutures =
+            new ArrayList<Future<List<Key>>>(putBatches.size());
+        for (List<Entity> batch : putBatches) {
+            putFutures.add(DatastoreUtil.putAsync(ds, null, batch));
+        }
+        List<Future<Void>> deleteFutures =
+            new ArrayList<Future<Void>>(deleteBatches.size());
+        for (List<Key> batch : deleteBatches) {
+            deleteFutures.add(DatastoreUtil.deleteAsync(ds, null, batch));
+        }
+        batchCount += putBatches.size() + deleteBatches.size();
+        Map<Key, Throwable> errors = new LinkedHashMap<Key, Throwable>();
+        for (int i = 0; i < putBatches.size(); i++) {
+            Throwable error = getError(putFutures.get(i));
+            if (error != null) {
+                putOneByOne(putBatches.get(i), error, errors);
+            }
+        }
+        for (int i = 0; i < deleteBatches.size(); i++) {
+            Throwable error = getError(deleteFutures.get(i));
+            if (error != null) {
+                deleteOneByOne(deleteBatches.get(i), error, errors);
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new BatchFlushException(errors);
+        }
+    }
+
+    /**
+     * Waits for the future and returns the error.
+     * 
+     * @param future
+     *            the future
+     * @return the error or null if the future succeeded
+     */
+    protected Throwable getError(Future<?> future) {
+        try {
+            future.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause() != null ? e.getCause() : e;
+        } catch (Throwable t) {
+            return t;
+        }
+    }
+
+    /**
+     * Puts the entities of the failed batch one by one.
+     * 
+     * @param batch
+     *            the failed batch
+     * @param error
+     *            the error of the batch
+     * @param errors
+     *            the map to store the errors
+     */
+    protected void putOneByOne(List<Entity> batch, Throwable error,
+            Map<Key, Throwable> errors) {
+        if (batch.size() == 1) {
+            errors.put(batch.get(0).getKey(), error);
+            return;
+        }
+        for (Entity entity : batch) {
+            try {
+                DatastoreUtil.put(ds, null, entity);
+            } catch (Throwable t) {
+                errors.put(entity.getKey(), t);
+            }
+        }
+    }
+
+    /**
+     * Deletes the entities of the failed batch one by one.
+     * 
+     * @param batch
+     *            the failed batch
+     * @param error
+     *            the error of the batch
+     * @param errors
+     *            the map to store the errors
+     */
+    protected void deleteOneByOne(List<Key> batch, Throwable error,
+            Map<Key, Throwable> errors) {
+        if (batch.size() == 1) {
+            errors.put(batch.get(0), error);
+            return;
+        }
+        for (Key key : batch) {
+            try {
+                DatastoreUtil.delete(ds, null, Arrays.asList(key));
+            } catch (Throwable t) {
+                errors.put(key, t);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of the buffered mutations.
+     * 
+     * @return the number of the buffered mutations
+     */
+    public int size() {
+        return mutationMap.size();
+    }
+
+    /**
+     * Returns the number of the batches written.
+     * 
+     * @return the number of the batches written
+     */
+    public int getBatchCount() {
+        return batchCount;
+    }
+}
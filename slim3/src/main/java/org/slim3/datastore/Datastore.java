@@ -28,6 +28,7 @@ import org.slim3.util.ClassUtil;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Transaction;
 
 /**
@@ -4152,6 +4153,48 @@ public final class Datastore {
         return delegate().query(tx, ancestorKey);
     }
 
+    /**
+     * Resolves the {@link ModelRef}s of the models at once. The keys of the
+     * unresolved references are fetched by one batch get per reference model
+     * class, and the batch gets for the different classes run in parallel.
+     * The references whose models are not found are left unresolved.
+     * 
+     * @param models
+     *            the models
+     * @param attributeMetas
+     *            the meta data of the {@link ModelRef} attributes
+     * @throws NullPointerException
+     *             if the models parameter is null or if the attributeMetas
+     *             parameter is null
+     * @since 1.0.16
+     */
+    public static void resolveRefs(Iterable<?> models,
+            ModelRefAttributeMeta<?, ?, ?>... attributeMetas)
+            throws NullPointerException {
+        delegate().resolveRefs(models, attributeMetas);
+    }
+
+    /**
+     * Resolves the {@link InverseModelRef}s and the
+     * {@link InverseModelListRef}s at once. The references that have the same
+     * model class and the same mapped property are resolved by "in" queries
+     * over the keys of their owners instead of one query per owner.
+     * 
+     * @param refs
+     *            the inverse references
+     * @throws NullPointerException
+     *             if the refs parameter is null or if the element of the refs
+     *             parameter is null
+     * @throws PreparedQuery.TooManyResultsException
+     *             if an {@link InverseModelRef} matches more than one model
+     * @since 1.0.16
+     */
+    public static void resolveInverseRefs(
+            Iterable<? extends AbstractInverseModelRef<?, ?>> refs)
+            throws NullPointerException, PreparedQuery.TooManyResultsException {
+        delegate().resolveInverseRefs(refs);
+    }
+
     /**
      * Returns a meta data of the model
      * 
@@ -15,20 +15,26 @@
  */
 package org.slim3.datastore;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.slim3.util.CipherFactory;
 import org.slim3.util.FutureUtil;
 
+import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Transaction;
 
 /**
@@ -40,6 +46,11 @@ import com.google.appengine.api.datastore.Transaction;
  */
 public class DatastoreDelegate {
 
+    /**
+     * The maximum number of values of an "in" filter.
+     */
+    protected static final int MAX_IN_VALUES = 30;
+
     /**
      * The asynchronous datastore delegate.
      */
@@ -681,6 +692,7 @@ public class DatastoreDelegate {
             if (tx.isActive()) {
                 tx.rollback();
             }
+            MemcacheEntityCache.release(tx);
         }
     }
 
@@ -2152,6 +2164,16 @@ public class DatastoreDelegate {
      */
     public Key put(Transaction tx, Entity entity) throws NullPointerException,
             IllegalStateException {
+        BatchScope scope = getBatchScope(tx);
+        if (scope != null) {
+            if (entity == null) {
+                throw new NullPointerException(
+                    "The entity parameter must not be null.");
+            }
+            return scope.put(
+                async.getAsyncDatastoreService(),
+                Arrays.asList(entity)).get(0);
+        }
         return FutureUtil.getQuietly(async.putAsync(tx, entity));
     }
 
@@ -2171,6 +2193,13 @@ public class DatastoreDelegate {
      */
     public Key put(Transaction tx, Object model) throws NullPointerException,
             IllegalStateException {
+        BatchScope scope = getBatchScope(tx);
+        if (scope != null) {
+            AsyncDatastoreService ds = async.getAsyncDatastoreService();
+            return scope.put(
+                ds,
+                Arrays.asList(DatastoreUtil.modelToEntity(ds, model))).get(0);
+        }
         return FutureUtil.getQuietly(async.putAsync(tx, model));
     }
 
@@ -2241,6 +2270,11 @@ public class DatastoreDelegate {
      */
     public List<Key> put(Transaction tx, Iterable<?> models)
             throws NullPointerException, IllegalStateException {
+        BatchScope scope = getBatchScope(tx);
+        if (scope != null) {
+            AsyncDatastoreService ds = async.getAsyncDatastoreService();
+            return scope.put(ds, DatastoreUtil.modelsToEntities(ds, models));
+        }
         return FutureUtil.getQuietly(async.putAsync(tx, models));
     }
 
@@ -2322,9 +2356,26 @@ public class DatastoreDelegate {
      */
     public void delete(Transaction tx, Iterable<Key> keys)
             throws NullPointerException, IllegalStateException {
+        BatchScope scope = getBatchScope(tx);
+        if (scope != null) {
+            scope.delete(async.getAsyncDatastoreService(), keys);
+            return;
+        }
         FutureUtil.getQuietly(async.deleteAsync(tx, keys));
     }
 
+    /**
+     * Returns the {@link BatchScope} that buffers the mutations. The mutations
+     * within a transaction are never buffered.
+     * 
+     * @param tx
+     *            the transaction
+     * @return the {@link BatchScope} or null if the mutations are not buffered
+     */
+    protected BatchScope getBatchScope(Transaction tx) {
+        return tx == null ? BatchScope.get() : null;
+    }
+
     /**
      * Deletes entities specified by the keys within the provided transaction.
      * 
@@ -2582,6 +2633,196 @@ public class DatastoreDelegate {
         return async.query(tx, ancestorKey);
     }
 
+    /**
+     * Resolves the {@link ModelRef}s of the models at once. The keys of the
+     * unresolved references are fetched by one batch get per reference model
+     * class, and the batch gets for the different classes run in parallel.
+     * The references whose models are not found are left unresolved.
+     * 
+     * @param models
+     *            the models
+     * @param attributeMetas
+     *            the meta data of the {@link ModelRef} attributes
+     * @throws NullPointerException
+     *             if the models parameter is null or if the attributeMetas
+     *             parameter is null
+     * @since 1.0.16
+     */
+    @SuppressWarnings("unchecked")
+    public void resolveRefs(Iterable<?> models,
+            ModelRefAttributeMeta<?, ?, ?>... attributeMetas)
+            throws NullPointerException {
+        if (models == null) {
+            throw new NullPointerException(
+                "The models parameter must not be null.");
+        }
+        if (attributeMetas == null) {
+            throw new NullPointerException(
+                "The attributeMetas parameter must not be null.");
+        }
+        Map<Class<?>, List<ModelRef<Object>>> refsMap =
+            new LinkedHashMap<Class<?>, List<ModelRef<Object>>>();
+        for (ModelRefAttributeMeta<?, ?, ?> attributeMeta : attributeMetas) {
+            List<ModelRef<Object>> refs =
+                refsMap.get(attributeMeta.referenceModelClass);
+            if (refs == null) {
+                refs = new ArrayList<ModelRef<Object>>();
+                refsMap.put(attributeMeta.referenceModelClass, refs);
+            }
+            for (Object model : models) {
+                ModelRef<Object> ref =
+                    (ModelRef<Object>) attributeMeta.getValue(model);
+                if (ref != null && ref.model == null && ref.key != null) {
+                    refs.add(ref);
+                }
+            }
+        }
+        List<Future<Map<Key, Object>>> futures =
+            new ArrayList<Future<Map<Key, Object>>>(refsMap.size());
+        for (Map.Entry<Class<?>, List<ModelRef<Object>>> e : refsMap
+            .entrySet()) {
+            List<Key> keys = new ArrayList<Key>(e.getValue().size());
+            for (ModelRef<Object> ref : e.getValue()) {
+                keys.add(ref.key);
+            }
+            futures.add(keys.isEmpty() ? null : async.getAsMapWithoutTxAsync(
+                (ModelMeta<Object>) getModelMeta(e.getKey()),
+                keys));
+        }
+        int i = 0;
+        for (List<ModelRef<Object>> refs : refsMap.values()) {
+            Future<Map<Key, Object>> future = futures.get(i++);
+            if (future == null) {
+                continue;
+            }
+            Map<Key, Object> map = FutureUtil.getQuietly(future);
+            for (ModelRef<Object> ref : refs) {
+                ref.model = map.get(ref.key);
+            }
+        }
+    }
+
+    /**
+     * Resolves the {@link InverseModelRef}s and the
+     * {@link InverseModelListRef}s at once. The references that have the same
+     * model class and the same mapped property are resolved by "in" queries
+     * over the keys of their owners instead of one query per owner. The
+     * references of {@link InverseModelListRef} are sorted by the default sort
+     * orders of the first reference of the same group.
+     * 
+     * @param refs
+     *            the inverse references
+     * @throws NullPointerException
+     *             if the refs parameter is null or if the element of the refs
+     *             parameter is null
+     * @throws PreparedQuery.TooManyResultsException
+     *             if an {@link InverseModelRef} matches more than one model
+     * @since 1.0.16
+     */
+    @SuppressWarnings("unchecked")
+    public void resolveInverseRefs(
+            Iterable<? extends AbstractInverseModelRef<?, ?>> refs)
+            throws NullPointerException, PreparedQuery.TooManyResultsException {
+        if (refs == null) {
+            throw new NullPointerException(
+                "The refs parameter must not be null.");
+        }
+        Map<String, List<AbstractInverseModelRef<Object, ?>>> refsMap =
+            new LinkedHashMap<String, List<AbstractInverseModelRef<Object, ?>>>();
+        for (AbstractInverseModelRef<?, ?> ref : refs) {
+            if (ref == null) {
+                throw new NullPointerException(
+                    "The element of the refs parameter must not be null.");
+            }
+            String groupKey =
+                ref.getModelClass().getName() + "#" + ref.mappedPropertyName;
+            List<AbstractInverseModelRef<Object, ?>> list =
+                refsMap.get(groupKey);
+            if (list == null) {
+                list = new ArrayList<AbstractInverseModelRef<Object, ?>>();
+                refsMap.put(groupKey, list);
+            }
+            list.add((AbstractInverseModelRef<Object, ?>) ref);
+        }
+        for (List<AbstractInverseModelRef<Object, ?>> list : refsMap.values()) {
+            resolveInverseRefs(list);
+        }
+    }
+
+    /**
+     * Resolves the inverse references that have the same model class and the
+     * same mapped property.
+     * 
+     * @param refs
+     *            the inverse references
+     * @throws PreparedQuery.TooManyResultsException
+     *             if an {@link InverseModelRef} matches more than one model
+     */
+    protected void resolveInverseRefs(
+            List<AbstractInverseModelRef<Object, ?>> refs)
+            throws PreparedQuery.TooManyResultsException {
+        AbstractInverseModelRef<Object, ?> first = refs.get(0);
+        ModelMeta<Object> modelMeta = first.getModelMeta();
+        String propertyName = first.mappedPropertyName;
+        Sort[] sorts =
+            first instanceof InverseModelListRef<?, ?>
+                ? ((InverseModelListRef<?, ?>) first).defaultSorts
+                : null;
+        Map<Key, List<Object>> modelsMap =
+            new LinkedHashMap<Key, List<Object>>();
+        for (AbstractInverseModelRef<Object, ?> ref : refs) {
+            Key ownerKey = ref.getOwnerKey();
+            if (ownerKey != null && !modelsMap.containsKey(ownerKey)) {
+                modelsMap.put(ownerKey, new ArrayList<Object>());
+            }
+        }
+        List<Key> ownerKeys = new ArrayList<Key>(modelsMap.keySet());
+        for (int i = 0; i < ownerKeys.size(); i += MAX_IN_VALUES) {
+            ModelQuery<Object> query =
+                query(modelMeta).filter(
+                    propertyName,
+                    FilterOperator.IN,
+                    ownerKeys.subList(
+                        i,
+                        Math.min(i + MAX_IN_VALUES, ownerKeys.size())));
+            if (sorts != null) {
+                query.sort(sorts);
+            }
+            query.applyPolyModelFilter();
+            for (Entity entity : query.asEntityList()) {
+                ModelMeta<Object> mm =
+                    DatastoreUtil.getModelMeta(modelMeta, entity);
+                Object model = mm.entityToModel(entity);
+                mm.postGet(model);
+                List<Object> models =
+                    modelsMap.get(entity.getProperty(propertyName));
+                if (models != null) {
+                    models.add(model);
+                }
+            }
+        }
+        for (AbstractInverseModelRef<Object, ?> ref : refs) {
+            Key ownerKey = ref.getOwnerKey();
+            List<Object> models =
+                ownerKey != null ? modelsMap.get(ownerKey) : null;
+            if (ref instanceof InverseModelListRef<?, ?>) {
+                ((InverseModelListRef<Object, ?>) ref).modelList =
+                    models != null
+                        ? new ArrayList<Object>(models)
+                        : new ArrayList<Object>();
+            } else if (ref instanceof InverseModelRef<?, ?>) {
+                if (models != null && models.size() > 1) {
+                    throw new PreparedQuery.TooManyResultsException();
+                }
+                InverseModelRef<Object, ?> inverseRef =
+                    (InverseModelRef<Object, ?>) ref;
+                inverseRef.model =
+                    models != null && models.size() == 1 ? models.get(0) : null;
+                inverseRef.resolved = true;
+            }
+        }
+    }
+
     /**
      * Returns a meta data of the model
      * 
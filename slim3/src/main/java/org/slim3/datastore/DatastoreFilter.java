@@ -38,10 +38,25 @@ import com.google.apphosting.api.DeadlineExceededException;
  */
 public class DatastoreFilter implements Filter {
 
+    /**
+     * The key of the context-param that enables {@link BatchScope}.
+     */
+    public static final String BATCH_SCOPE_KEY = "slim3.batchScope";
+
     private static final Logger logger =
         Logger.getLogger(DatastoreFilter.class.getName());
 
+    /**
+     * Whether the puts and deletes without transaction are buffered during a
+     * request.
+     */
+    protected boolean batchScopeEnabled = false;
+
     public void init(FilterConfig config) throws ServletException {
+        batchScopeEnabled =
+            "true".equalsIgnoreCase(config
+                .getServletContext()
+                .getInitParameter(BATCH_SCOPE_KEY));
     }
 
     public void destroy() {
@@ -50,10 +65,19 @@ public class DatastoreFilter implements Filter {
     @SuppressWarnings("deprecation")
     public void doFilter(ServletRequest request, ServletResponse response,
             FilterChain chain) throws IOException, ServletException {
+        BatchScope scope =
+            batchScopeEnabled && BatchScope.get() == null
+                ? BatchScope.begin()
+                : null;
+        boolean deadlineExceeded = false;
         try {
             GlobalTransaction.clearActiveTransactions();
             chain.doFilter(request, response);
+            if (scope != null) {
+                scope.flush();
+            }
         } catch (DeadlineExceededException dee) {
+            deadlineExceeded = true;
             for (GlobalTransaction tx : Datastore.getActiveGlobalTransactions()) {
                 try {
                     tx.rollbackAsync();
@@ -66,6 +90,24 @@ public class DatastoreFilter implements Filter {
             }
             throw dee;
         } finally {
+            if (scope != null) {
+                try {
+                    if (deadlineExceeded) {
+                        if (scope.size() > 0) {
+                            logger.warning("The "
+                                + scope.size()
+                                + " buffered mutations were discarded,"
+                                + " because the deadline was exceeded.");
+                        }
+                    } else {
+                        scope.flush();
+                    }
+                } catch (Throwable t) {
+                    logger.log(Level.WARNING, t.getMessage(), t);
+                } finally {
+                    BatchScope.end();
+                }
+            }
             for (GlobalTransaction tx : Datastore.getActiveGlobalTransactions()) {
                 try {
                     tx.rollback();
@@ -86,6 +128,7 @@ public class DatastoreFilter implements Filter {
                     logger.log(Level.WARNING, t.getMessage(), t);
                 }
             }
+            MemcacheEntityCache.releaseAll();
         }
     }
 }
\ No newline at end of file
@@ -18,10 +18,13 @@ package org.slim3.datastore;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 
@@ -30,6 +33,7 @@ import org.slim3.util.Cleanable;
 import org.slim3.util.Cleaner;
 import org.slim3.util.FutureUtil;
 
+import com.google.appengine.api.NamespaceManager;
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Entity;
@@ -43,6 +47,7 @@ import com.google.appengine.api.datastore.Query.Filter;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.datastore.Text;
 import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.utils.FutureWrapper;
 import com.google.storage.onestore.v3.OnestoreEntity.EntityProto;
 import com.google.storage.onestore.v3.OnestoreEntity.Path.Element;
 import com.google.storage.onestore.v3.OnestoreEntity.Reference;
@@ -79,11 +84,33 @@ public final class DatastoreUtil {
     protected static ConcurrentHashMap<String, ModelMeta<?>> modelMetaCache =
         new ConcurrentHashMap<String, ModelMeta<?>>(87);
 
+    /**
+     * The maximum number of the pools for parent keys.
+     */
+    private static final int MAX_PARENT_KEY_POOLS = 1000;
+
     /**
      * The cache for the result of allocateIds().
      */
-    protected static ConcurrentHashMap<String, Iterator<Key>> keysCache =
-        new ConcurrentHashMap<String, Iterator<Key>>(87);
+    protected static ConcurrentHashMap<String, KeyPool> keysCache =
+        new ConcurrentHashMap<String, KeyPool>(87);
+
+    /**
+     * The cache for the result of allocateIds() with a parent key.
+     */
+    protected static Map<String, KeyPool> parentKeysCache =
+        Collections.synchronizedMap(new LinkedHashMap<String, KeyPool>(
+            87,
+            0.75f,
+            true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, KeyPool> e) {
+                return size() > MAX_PARENT_KEY_POOLS;
+            }
+        });
 
     private static volatile boolean initialized = false;
 
@@ -113,6 +140,7 @@ public final class DatastoreUtil {
      */
     public static void clearKeysCache() {
         keysCache.clear();
+        parentKeysCache.clear();
     }
 
     /**
@@ -130,7 +158,8 @@ public final class DatastoreUtil {
     }
 
     /**
-     * Allocates a key within a namespace defined by the kind with caching.
+     * Allocates a key within a namespace defined by the kind with caching. The
+     * number of keys allocated at once grows with the demand.
      * 
      * @param ds
      *            the asynchronous datastore service
@@ -149,20 +178,22 @@ public final class DatastoreUtil {
             throw new NullPointerException(
                 "The kind parameter must not be null.");
         }
-        Iterator<Key> keys = keysCache.get(kind);
-        if (keys != null && keys.hasNext()) {
-            return keys.next();
+        String poolKey = createPoolKey(kind);
+        KeyPool pool = keysCache.get(poolKey);
+        if (pool == null) {
+            pool = new KeyPool(null, kind, KEY_CACHE_SIZE);
+            KeyPool old = keysCache.putIfAbsent(poolKey, pool);
+            if (old != null) {
+                pool = old;
+            }
         }
-        keys =
-            FutureUtil
-                .getQuietly(allocateIdsAsync(ds, kind, KEY_CACHE_SIZE))
-                .iterator();
-        keysCache.put(kind, keys);
-        return keys.next();
+        return pool.next(ds);
     }
 
     /**
-     * Allocates a key within a namespace defined by the parentKey and the kind.
+     * Allocates a key within a namespace defined by the parentKey and the kind
+     * with caching. The number of keys allocated at once grows with the
+     * demand.
      * 
      * @param ds
      *            the asynchronous datastore service
@@ -188,11 +219,31 @@ public final class DatastoreUtil {
             throw new NullPointerException(
                 "The kind parameter must not be null.");
         }
-        Iterator<Key> keys =
-            FutureUtil
-                .getQuietly(allocateIdsAsync(ds, parentKey, kind, 1))
-                .iterator();
-        return keys.next();
+        String poolKey = KeyFactory.keyToString(parentKey) + "/" + kind;
+        KeyPool pool;
+        synchronized (parentKeysCache) {
+            pool = parentKeysCache.get(poolKey);
+            if (pool == null) {
+                pool = new KeyPool(parentKey, kind, 1);
+                parentKeysCache.put(poolKey, pool);
+            }
+        }
+        return pool.next(ds);
+    }
+
+    /**
+     * Creates a key of the pool for the kind in the current namespace.
+     * 
+     * @param kind
+     *            the kind
+     * @return a key of the pool
+     */
+    protected static String createPoolKey(String kind) {
+        String namespace = NamespaceManager.get();
+        if (namespace == null || namespace.length() == 0) {
+            return kind;
+        }
+        return namespace + "/" + kind;
     }
 
     /**
@@ -534,7 +585,29 @@ public final class DatastoreUtil {
             throw new IllegalStateException("The transaction must be active.");
         }
         assignKeyIfNecessary(ds, entities);
-        return ds.put(tx, entities);
+        List<Key> keys = new ArrayList<Key>();
+        for (Entity e : entities) {
+            keys.add(e.getKey());
+        }
+        EntityCache.invalidateCurrent(keys);
+        final Map<String, String> locks = MemcacheEntityCache.lock(keys, tx);
+        Future<List<Key>> future = ds.put(tx, entities);
+        if (locks == null || tx != null) {
+            return future;
+        }
+        return new FutureWrapper<List<Key>, List<Key>>(future) {
+
+            @Override
+            protected Throwable convertException(Throwable throwable) {
+                return throwable;
+            }
+
+            @Override
+            protected List<Key> wrap(List<Key> keys) throws Exception {
+                MemcacheEntityCache.unlock(locks);
+                return keys;
+            }
+        };
     }
 
     /**
@@ -612,7 +685,25 @@ public final class DatastoreUtil {
         if (tx != null && !tx.isActive()) {
             throw new IllegalStateException("The transaction must be active.");
         }
-        return ds.delete(tx, keys);
+        EntityCache.invalidateCurrent(keys);
+        final Map<String, String> locks = MemcacheEntityCache.lock(keys, tx);
+        Future<Void> future = ds.delete(tx, keys);
+        if (locks == null || tx != null) {
+            return future;
+        }
+        return new FutureWrapper<Void, Void>(future) {
+
+            @Override
+            protected Throwable convertException(Throwable throwable) {
+                return throwable;
+            }
+
+            @Override
+            protected Void wrap(Void v) throws Exception {
+                MemcacheEntityCache.unlock(locks);
+                return v;
+            }
+        };
     }
 
     /**
@@ -656,7 +747,16 @@ public final class DatastoreUtil {
         return newList;
     }
 
-    private static boolean accept(Object model,
+    /**
+     * Determines if the model is accepted by all the criteria.
+     * 
+     * @param model
+     *            the model
+     * @param criteria
+     *            the filter criteria
+     * @return whether the model is accepted by all the criteria
+     */
+    protected static boolean accept(Object model,
             List<? extends InMemoryFilterCriterion> criteria) {
         for (InMemoryFilterCriterion c : criteria) {
             if (c == null) {
@@ -700,6 +800,79 @@ public final class DatastoreUtil {
         return list;
     }
 
+    /**
+     * Sorts the models in memory and returns the first models up to the limit.
+     * Only the limit number of models are held in memory at once.
+     * 
+     * @param <M>
+     *            the model type
+     * @param iterator
+     *            the model iterator
+     * @param criteria
+     *            criteria to sort
+     * @param limit
+     *            the maximum number of models returned
+     * @return the sorted list
+     * @throws NullPointerException
+     *             if the iterator parameter is null of if the criteria
+     *             parameter is null
+     * @throws IllegalArgumentException
+     *             if the limit parameter is negative
+     */
+    public static <M> List<M> sortInMemory(Iterator<M> iterator,
+            List<InMemorySortCriterion> criteria, int limit)
+            throws NullPointerException, IllegalArgumentException {
+        if (iterator == null) {
+            throw new NullPointerException(
+                "The iterator parameter must not be null.");
+        }
+        if (criteria == null) {
+            throw new NullPointerException(
+                "The criteria parameter must not be null.");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit("
+                + limit
+                + ") must not be negative.");
+        }
+        if (criteria.size() == 0 || limit == 0) {
+            List<M> list = new ArrayList<M>();
+            while (list.size() < limit && iterator.hasNext()) {
+                list.add(iterator.next());
+            }
+            return list;
+        }
+        final AttributeComparator comparator =
+            new AttributeComparator(criteria);
+        Comparator<Object[]> reversed = new Comparator<Object[]>() {
+            public int compare(Object[] o1, Object[] o2) {
+                int ret = comparator.compare(o1[0], o2[0]);
+                if (ret != 0) {
+                    return -ret;
+                }
+                return -((Integer) o1[1]).compareTo((Integer) o2[1]);
+            }
+        };
+        PriorityQueue<Object[]> queue =
+            new PriorityQueue<Object[]>(limit + 1, reversed);
+        int index = 0;
+        while (iterator.hasNext()) {
+            queue.add(new Object[] { iterator.next(), index++ });
+            if (queue.size() > limit) {
+                queue.poll();
+            }
+        }
+        List<Object[]> entries = new ArrayList<Object[]>(queue);
+        Collections.sort(entries, Collections.reverseOrder(reversed));
+        List<M> list = new ArrayList<M>(entries.size());
+        for (Object[] entry : entries) {
+            @SuppressWarnings("unchecked")
+            M model = (M) entry[0];
+            list.add(model);
+        }
+        return list;
+    }
+
     /**
      * Returns a meta data of the model
      * 
@@ -959,6 +1132,41 @@ public final class DatastoreUtil {
         return modelMeta.modelToEntity(model);
     }
 
+    /**
+     * Converts the entity to a model. If the key of the entity is incomplete,
+     * the key of the model is null, so a model converted by
+     * {@link ModelMeta#modelToEntity(Object)} before it had a key gets no key
+     * back.
+     * 
+     * @param <M>
+     *            the model type
+     * @param modelMeta
+     *            the meta data of model
+     * @param entity
+     *            the entity
+     * @return a model
+     * @throws NullPointerException
+     *             if the modelMeta parameter is null or if the entity
+     *             parameter is null
+     * @since 1.0.16
+     */
+    public static <M> M entityToModel(ModelMeta<M> modelMeta, Entity entity)
+            throws NullPointerException {
+        if (modelMeta == null) {
+            throw new NullPointerException(
+                "The modelMeta parameter must not be null.");
+        }
+        if (entity == null) {
+            throw new NullPointerException(
+                "The entity parameter must not be null.");
+        }
+        M model = modelMeta.entityToModel(entity);
+        if (!entity.getKey().isComplete()) {
+            modelMeta.setKey(model, null);
+        }
+        return model;
+    }
+
     /**
      * Converts the models to entities.
      * 
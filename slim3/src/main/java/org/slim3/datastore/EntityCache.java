@@ -0,0 +1,260 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+
+/**
+ * The request-scoped cache for entities. The cache is attached to the current
+ * thread and is consulted by {@link AsyncDatastoreDelegate} for gets without
+ * transaction. Puts and deletes invalidate the cached entries. This class is
+ * not thread-safe.
+ * 
+ * @since 1.0.16
+ * 
+ */
+public class EntityCache {
+
+    private static ThreadLocal<EntityCache> caches =
+        new ThreadLocal<EntityCache>();
+
+    /**
+     * The map of entities. A null value means that no entity was found.
+     */
+    protected Map<Key, Entity> entityMap = new HashMap<Key, Entity>();
+
+    /**
+     * The number of hits.
+     */
+    protected int hitCount;
+
+    /**
+     * The number of misses.
+     */
+    protected int missCount;
+
+    /**
+     * The number of invalidations.
+     */
+    protected int modificationCount;
+
+    /**
+     * Returns the cache attached to the current thread.
+     * 
+     * @return the cache attached to the current thread
+     */
+    public static EntityCache get() {
+        return caches.get();
+    }
+
+    /**
+     * Sets the cache to the current thread.
+     * 
+     * @param cache
+     *            the cache
+     */
+    public static void set(EntityCache cache) {
+        caches.set(cache);
+    }
+
+    /**
+     * Begins a new cache for the current thread.
+     * 
+     * @return a begun cache
+     */
+    public static EntityCache begin() {
+        EntityCache cache = new EntityCache();
+        caches.set(cache);
+        return cache;
+    }
+
+    /**
+     * Detaches the cache from the current thread.
+     */
+    public static void end() {
+        caches.remove();
+    }
+
+    /**
+     * Invalidates the entries specified by the keys if the current thread has
+     * a cache.
+     * 
+     * @param keys
+     *            the keys
+     */
+    public static void invalidateCurrent(Iterable<Key> keys) {
+        EntityCache cache = caches.get();
+        if (cache != null) {
+            cache.invalidate(keys);
+        }
+    }
+
+    /**
+     * Determines if the cache has an entry for the key. An entry may hold null
+     * if no entity was found.
+     * 
+     * @param key
+     *            the key
+     * @return whether the cache has an entry for the key
+     */
+    public boolean contains(Key key) {
+        return entityMap.containsKey(key);
+    }
+
+    /**
+     * Returns a copy of the cached entity. Returns null if the entry holds
+     * null or if no entry is found.
+     * 
+     * @param key
+     *            the key
+     * @return a copy of the cached entity
+     */
+    public Entity getEntity(Key key) {
+        Entity entity = entityMap.get(key);
+        return entity != null ? entity.clone() : null;
+    }
+
+    /**
+     * Looks up the keys. The cached entities are stored into the found map and
+     * the keys that are not cached are returned.
+     * 
+     * @param keys
+     *            the keys
+     * @param found
+     *            the map to store the cached entities
+     * @return the keys that are not cached
+     * @throws NullPointerException
+     *             if the keys parameter is null or if the found parameter is
+     *             null
+     */
+    public Set<Key> lookup(Iterable<Key> keys, Map<Key, Entity> found)
+            throws NullPointerException {
+        if (keys == null) {
+            throw new NullPointerException(
+                "The keys parameter must not be null.");
+        }
+        if (found == null) {
+            throw new NullPointerException(
+                "The found parameter must not be null.");
+        }
+        Set<Key> missingKeys = new LinkedHashSet<Key>();
+        for (Key key : keys) {
+            if (entityMap.containsKey(key)) {
+                hitCount++;
+                Entity entity = getEntity(key);
+                if (entity != null) {
+                    found.put(key, entity);
+                }
+            } else if (missingKeys.add(key)) {
+                missCount++;
+            }
+        }
+        return missingKeys;
+    }
+
+    /**
+     * Stores the result of get. The keys that have no entity are remembered as
+     * missing.
+     * 
+     * @param keys
+     *            the keys
+     * @param map
+     *            the map of entities
+     */
+    public void store(Iterable<Key> keys, Map<Key, Entity> map) {
+        for (Key key : keys) {
+            Entity entity = map.get(key);
+            entityMap.put(key, entity != null ? entity.clone() : null);
+        }
+    }
+
+    /**
+     * Stores the entities. The entities are stored as they are, so the caller
+     * must not modify them afterwards.
+     * 
+     * @param entities
+     *            the entities
+     */
+    public void store(Iterable<Entity> entities) {
+        for (Entity entity : entities) {
+            entityMap.put(entity.getKey(), entity);
+        }
+    }
+
+    /**
+     * Invalidates the entries specified by the keys.
+     * 
+     * @param keys
+     *            the keys
+     */
+    public void invalidate(Iterable<Key> keys) {
+        for (Key key : keys) {
+            entityMap.remove(key);
+        }
+        modificationCount++;
+    }
+
+    /**
+     * Clears all entries. The counters are not reset.
+     */
+    public void clear() {
+        entityMap.clear();
+        modificationCount++;
+    }
+
+    /**
+     * Returns the number of cached entries.
+     * 
+     * @return the number of cached entries
+     */
+    public int size() {
+        return entityMap.size();
+    }
+
+    /**
+     * Returns the number of hits. Each hit is a key that did not need a
+     * datastore round trip.
+     * 
+     * @return the number of hits
+     */
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of misses.
+     * 
+     * @return the number of misses
+     */
+    public int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of invalidations.
+     * 
+     * @return the number of invalidations
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+}
@@ -17,6 +17,7 @@ package org.slim3.datastore;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.Entity;
@@ -100,6 +101,16 @@ public class EntityQuery extends AbstractQuery<EntityQuery> {
         return super.asEntityList();
     }
 
+    /**
+     * Returns entities as a list asynchronously.
+     * 
+     * @return entities as a list represented as {@link Future}
+     * @since 1.0.16
+     */
+    public Future<List<Entity>> asListAsync() {
+        return super.asEntityListAsync();
+    }
+
     /**
      * Returns a query result list.
      * 
@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.TreeSet;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -463,6 +464,7 @@ public class GlobalTransaction {
      * Begins this global transaction.
      */
     protected void begin() {
+        BatchScope.flushCurrent();
         getCurrentTransactionStack().add(this);
         localTransaction = DatastoreUtil.beginTransaction(ds);
         timestamp = System.currentTimeMillis();
@@ -901,9 +903,7 @@ public class GlobalTransaction {
             }
         }
         if (gtxKeys.size() > 0) {
-            for (Key key : gtxRootKeys) {
-                lock(key);
-            }
+            lock(gtxRootKeys);
             map.putAll(DatastoreUtil.getAsMap(ds, null, gtxKeys));
         }
         return map;
@@ -1232,13 +1232,20 @@ public class GlobalTransaction {
             throw new NullPointerException(
                 "The models parameter must not be null.");
         }
-        List<Key> keys = new ArrayList<Key>();
+        List<Entity> entities = new ArrayList<Entity>();
+        List<Key> rootKeys = new ArrayList<Key>();
         for (Object model : models) {
-            if (model instanceof Entity) {
-                keys.add(put((Entity) model));
-            } else {
-                keys.add(put(model));
-            }
+            Entity entity =
+                model instanceof Entity ? (Entity) model : DatastoreUtil
+                    .modelToEntity(ds, model);
+            DatastoreUtil.assignKeyIfNecessary(ds, entity);
+            entities.add(entity);
+            rootKeys.add(DatastoreUtil.getRoot(entity.getKey()));
+        }
+        lockGlobalTransactionRootKeys(rootKeys);
+        List<Key> keys = new ArrayList<Key>();
+        for (Entity entity : entities) {
+            keys.add(put(entity));
         }
         return keys;
     }
@@ -1302,6 +1309,11 @@ public class GlobalTransaction {
             throw new NullPointerException(
                 "The keys parameter must not be null.");
         }
+        List<Key> rootKeys = new ArrayList<Key>();
+        for (Key key : keys) {
+            rootKeys.add(DatastoreUtil.getRoot(key));
+        }
+        lockGlobalTransactionRootKeys(rootKeys);
         for (Key key : keys) {
             delete(key);
         }
@@ -1361,11 +1373,15 @@ public class GlobalTransaction {
      */
     public void commit() {
         assertActive();
-        Journal.apply(ds, localTransaction, localJournalMap);
-        if (isLocalTransaction()) {
-            commitLocalTransaction();
-        } else {
-            commitGlobalTransaction();
+        try {
+            Journal.apply(ds, localTransaction, localJournalMap);
+            if (isLocalTransaction()) {
+                commitLocalTransaction();
+            } else {
+                commitGlobalTransaction();
+            }
+        } finally {
+            MemcacheEntityCache.release(localTransaction);
         }
     }
 
@@ -1527,6 +1543,96 @@ public class GlobalTransaction {
         }
     }
 
+    /**
+     * Locks the entity groups concurrently. The entity groups are locked in
+     * the order of the root keys. If locking one of the entity groups failed,
+     * all the locks that this transaction has are released automatically.
+     * 
+     * @param rootKeys
+     *            the root keys
+     * @throws NullPointerException
+     *             if the rootKeys parameter is null
+     * @throws ConcurrentModificationException
+     *             if locking one of the entity groups failed
+     */
+    protected void lock(Collection<Key> rootKeys) throws NullPointerException,
+            ConcurrentModificationException {
+        if (rootKeys == null) {
+            throw new NullPointerException(
+                "The rootKeys parameter must not be null.");
+        }
+        assertActive();
+        List<Lock> locks = new ArrayList<Lock>();
+        for (Key rootKey : new TreeSet<Key>(rootKeys)) {
+            if (!lockMap.containsKey(rootKey)) {
+                locks.add(new Lock(
+                    ds,
+                    globalTransactionKey,
+                    rootKey,
+                    timestamp));
+            }
+        }
+        if (locks.size() == 0) {
+            return;
+        }
+        if (locks.size() == 1) {
+            lock(locks.get(0).getRootKey());
+            return;
+        }
+        try {
+            Lock.lock(locks);
+        } catch (RuntimeException e) {
+            for (Lock lock : locks) {
+                lockMap.put(lock.getRootKey(), lock);
+            }
+            unlock();
+            throw e;
+        }
+        for (Lock lock : locks) {
+            lockMap.put(lock.getRootKey(), lock);
+        }
+    }
+
+    /**
+     * Locks the entity groups that will be handled by the global transaction.
+     * If the local transaction root key has not been set yet, the first root
+     * key becomes the local transaction root key and is not locked.
+     * 
+     * @param rootKeys
+     *            the root keys
+     * @throws NullPointerException
+     *             if the rootKeys parameter is null
+     * @throws ConcurrentModificationException
+     *             if locking one of the entity groups failed
+     */
+    protected void lockGlobalTransactionRootKeys(List<Key> rootKeys)
+            throws NullPointerException, ConcurrentModificationException {
+        if (rootKeys == null) {
+            throw new NullPointerException(
+                "The rootKeys parameter must not be null.");
+        }
+        if (rootKeys.isEmpty()) {
+            return;
+        }
+        Key ltxRootKey = localTransactionRootKey;
+        if (ltxRootKey == null) {
+            ltxRootKey = rootKeys.get(0);
+        }
+        Set<Key> gtxRootKeys = new HashSet<Key>();
+        for (Key rootKey : rootKeys) {
+            if (!rootKey.equals(ltxRootKey)) {
+                gtxRootKeys.add(rootKey);
+            }
+        }
+        if (gtxRootKeys.isEmpty()) {
+            return;
+        }
+        if (localTransactionRootKey == null) {
+            setLocalTransactionRootKey(ltxRootKey);
+        }
+        lock(gtxRootKeys);
+    }
+
     /**
      * Unlocks entities.
      */
@@ -1535,6 +1641,7 @@ public class GlobalTransaction {
         if (localTransaction.isActive()) {
             localTransaction.rollback();
         }
+        MemcacheEntityCache.release(localTransaction);
         if (!lockMap.isEmpty()) {
             Lock.deleteInTx(ds, globalTransactionKey, lockMap.values());
             lockMap.clear();
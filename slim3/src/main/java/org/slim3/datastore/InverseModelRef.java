@@ -38,6 +38,15 @@ public class InverseModelRef<M, O> extends AbstractInverseModelRef<M, O> {
      */
     protected M model;
 
+    /**
+     * Whether the model was resolved by
+     * {@link DatastoreDelegate#resolveInverseRefs(Iterable)}, even if no
+     * model matched.
+     * 
+     * @since 1.0.16
+     */
+    protected boolean resolved;
+
     /**
      * Constructor.
      */
@@ -70,7 +79,7 @@ public class InverseModelRef<M, O> extends AbstractInverseModelRef<M, O> {
      * @return the model
      */
     public M getModel() {
-        if (model != null) {
+        if (model != null || resolved) {
             return model;
         }
         return refresh();
@@ -99,5 +108,6 @@ public class InverseModelRef<M, O> extends AbstractInverseModelRef<M, O> {
      */
     public void clear() {
         model = null;
+        resolved = false;
     }
 }
\ No newline at end of file
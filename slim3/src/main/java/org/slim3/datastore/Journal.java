@@ -16,8 +16,12 @@
 package org.slim3.datastore;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.slim3.util.FutureUtil;
 
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.Blob;
@@ -93,7 +97,9 @@ public class Journal {
     }
 
     /**
-     * Applies the journals.
+     * Applies the journals. All the journals are decoded at first, and then
+     * the puts and the deletes are issued as concurrent batches. The journal
+     * entities are deleted after every batch has completed.
      * 
      * @param ds
      *            the asynchronous datastore service
@@ -114,27 +120,48 @@ public class Journal {
             throw new NullPointerException(
                 "The entities parameter must not be null.");
         }
+        if (entities.size() == 0) {
+            return;
+        }
+        List<Entity> putEntities = new ArrayList<Entity>();
+        List<Integer> putSizes = new ArrayList<Integer>();
+        List<Key> deleteKeys = new ArrayList<Key>();
+        List<Key> journalKeys = new ArrayList<Key>(entities.size());
         for (Entity entity : entities) {
             PutRequest putReq = new PutRequest();
             List<Blob> putList =
                 (List<Blob>) entity.getProperty(PUT_LIST_PROPERTY);
             List<Key> deleteList =
                 (List<Key>) entity.getProperty(DELETE_LIST_PROPERTY);
-            List<Entity> putEntities = new ArrayList<Entity>();
             if (putList != null) {
                 for (Blob blob : putList) {
                     EntityProto proto = putReq.addEntity();
                     proto.mergeFrom(blob.getBytes());
                     putEntities.add(EntityTranslator.createFromPb(proto));
+                    putSizes.add(blob.getBytes().length);
                 }
             }
-            if (putEntities.size() > 0) {
-                DatastoreUtil.put(ds, null, putEntities);
-            }
             if (deleteList != null) {
-                DatastoreUtil.delete(ds, null, deleteList);
+                deleteKeys.addAll(deleteList);
             }
-            DatastoreUtil.delete(ds, null, entity.getKey());
+            journalKeys.add(entity.getKey());
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (List<Entity> batch : splitPutBatches(putEntities, putSizes)) {
+            futures.add(DatastoreUtil.putAsync(ds, null, batch));
+        }
+        for (List<Key> batch : splitDeleteBatches(deleteKeys)) {
+            futures.add(DatastoreUtil.deleteAsync(ds, null, batch));
+        }
+        for (Future<?> future : futures) {
+            FutureUtil.getQuietly(future);
+        }
+        futures.clear();
+        for (List<Key> batch : splitDeleteBatches(journalKeys)) {
+            futures.add(DatastoreUtil.deleteAsync(ds, null, batch));
+        }
+        for (Future<?> future : futures) {
+            FutureUtil.getQuietly(future);
         }
     }
 
@@ -179,7 +206,7 @@ public class Journal {
     }
 
     /**
-     * Puts the journals to the datastore.
+     * Puts the journals to the datastore. The journals are put concurrently.
      * 
      * @param ds
      *            the asynchronous datastore service
@@ -221,7 +248,6 @@ public class Journal {
                 && totalSize + size + DatastoreUtil.EXTRA_SIZE > DatastoreUtil.MAX_ENTITY_SIZE) {
                 entity.setUnindexedProperty(PUT_LIST_PROPERTY, putList);
                 entity.setUnindexedProperty(DELETE_LIST_PROPERTY, deleteList);
-                DatastoreUtil.put(ds, null, entity);
                 entities.add(entity);
                 entity = createEntity(ds, globalTransactionKey);
                 putList = new ArrayList<Blob>();
@@ -239,8 +265,15 @@ public class Journal {
         }
         entity.setUnindexedProperty(PUT_LIST_PROPERTY, putList);
         entity.setUnindexedProperty(DELETE_LIST_PROPERTY, deleteList);
-        DatastoreUtil.put(ds, null, entity);
         entities.add(entity);
+        List<Future<List<Key>>> futures =
+            new ArrayList<Future<List<Key>>>(entities.size());
+        for (Entity e : entities) {
+            futures.add(DatastoreUtil.putAsync(ds, null, Arrays.asList(e)));
+        }
+        for (Future<List<Key>> future : futures) {
+            FutureUtil.getQuietly(future);
+        }
         return entities;
     }
 
@@ -299,6 +332,73 @@ public class Journal {
             globalTransactionKey)).asKeyList();
     }
 
+    /**
+     * Splits the entities into batches that fit in one put call.
+     * 
+     * @param entities
+     *            the entities
+     * @param sizes
+     *            the encoding sizes of the entities
+     * @return the batches
+     * @throws NullPointerException
+     *             if the entities parameter is null or if the sizes parameter
+     *             is null
+     */
+    protected static List<List<Entity>> splitPutBatches(List<Entity> entities,
+            List<Integer> sizes) throws NullPointerException {
+        if (entities == null) {
+            throw new NullPointerException(
+                "The entities parameter must not be null.");
+        }
+        if (sizes == null) {
+            throw new NullPointerException(
+                "The sizes parameter must not be null.");
+        }
+        List<List<Entity>> batches = new ArrayList<List<Entity>>();
+        List<Entity> batch = new ArrayList<Entity>();
+        int totalSize = 0;
+        for (int i = 0; i < entities.size(); i++) {
+            int size = sizes.get(i) + DatastoreUtil.EXTRA_SIZE;
+            if (batch.size() >= DatastoreUtil.MAX_NUMBER_OF_ENTITIES
+                || (batch.size() > 0 && totalSize + size > DatastoreUtil.MAX_ENTITY_SIZE)) {
+                batches.add(batch);
+                batch = new ArrayList<Entity>();
+                totalSize = 0;
+            }
+            batch.add(entities.get(i));
+            totalSize += size;
+        }
+        if (batch.size() > 0) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Splits the keys into batches that fit in one delete call.
+     * 
+     * @param keys
+     *            the keys
+     * @return the batches
+     * @throws NullPointerException
+     *             if the keys parameter is null
+     */
+    protected static List<List<Key>> splitDeleteBatches(List<Key> keys)
+            throws NullPointerException {
+        if (keys == null) {
+            throw new NullPointerException(
+                "The keys parameter must not be null.");
+        }
+        List<List<Key>> batches = new ArrayList<List<Key>>();
+        int max = DatastoreUtil.MAX_NUMBER_OF_ENTITIES;
+        for (int i = 0; i < keys.size(); i += max) {
+            batches.add(new ArrayList<Key>(keys.subList(i, Math.min(
+                keys.size(),
+                i + max))));
+        }
+        return batches;
+    }
+
     /**
      * Creates an entity.
      * 
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import java.util.Iterator;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.slim3.util.FutureUtil;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyRange;
+
+/**
+ * A thread-safe pool of keys allocated for a kind or for a pair of a parent
+ * key and a kind. The number of keys allocated at once grows with the demand,
+ * and the next range is allocated asynchronously before the current range
+ * runs out.
+ * 
+ * @since 1.0.16
+ * 
+ */
+public class KeyPool {
+
+    /**
+     * The maximum number of keys allocated at once.
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    private static final Logger logger =
+        Logger.getLogger(KeyPool.class.getName());
+
+    /**
+     * The parent key.
+     */
+    protected Key parentKey;
+
+    /**
+     * The kind.
+     */
+    protected String kind;
+
+    /**
+     * The number of keys allocated next time.
+     */
+    protected long batchSize;
+
+    /**
+     * The size of the current range.
+     */
+    protected long rangeSize;
+
+    /**
+     * The number of the remaining keys in the current range.
+     */
+    protected long remaining;
+
+    /**
+     * The keys of the current range.
+     */
+    protected Iterator<Key> keys;
+
+    /**
+     * The next range that is being allocated.
+     */
+    protected Future<KeyRange> nextRange;
+
+    /**
+     * Constructor.
+     * 
+     * @param parentKey
+     *            the parent key
+     * @param kind
+     *            the kind
+     * @param initialBatchSize
+     *            the number of keys allocated first time
+     * @throws NullPointerException
+     *             if the kind parameter is null
+     * @throws IllegalArgumentException
+     *             if the initialBatchSize parameter is less than 1
+     */
+    public KeyPool(Key parentKey, String kind, long initialBatchSize)
+            throws NullPointerException, IllegalArgumentException {
+        if (kind == null) {
+            throw new NullPointerException(
+                "The kind parameter must not be null.");
+        }
+        if (initialBatchSize < 1) {
+            throw new IllegalArgumentException("The initialBatchSize("
+                + initialBatchSize
+                + ") must be more than 0.");
+        }
+        this.parentKey = parentKey;
+        this.kind = kind;
+        this.batchSize = Math.min(initialBatchSize, MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Returns the next key.
+     * 
+     * @param ds
+     *            the asynchronous datastore service
+     * @return the next key
+     * @throws NullPointerException
+     *             if the ds parameter is null
+     */
+    public synchronized Key next(AsyncDatastoreService ds)
+            throws NullPointerException {
+        if (ds == null) {
+            throw new NullPointerException("The ds parameter must not be null.");
+        }
+        if (remaining == 0) {
+            refill(ds);
+        }
+        Key key = keys.next();
+        remaining--;
+        if (nextRange == null && rangeSize > 1 && remaining <= rangeSize / 2) {
+            nextRange = allocate(ds, batchSize);
+        }
+        return key;
+    }
+
+    /**
+     * Refills the keys.
+     * 
+     * @param ds
+     *            the asynchronous datastore service
+     */
+    protected void refill(AsyncDatastoreService ds) {
+        KeyRange range = null;
+        if (nextRange != null) {
+            try {
+                range = FutureUtil.getQuietly(nextRange);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, e.getMessage(), e);
+            }
+            nextRange = null;
+        }
+        if (range == null) {
+            range = FutureUtil.getQuietly(allocate(ds, batchSize));
+        }
+        keys = range.iterator();
+        rangeSize = range.getSize();
+        remaining = rangeSize;
+        batchSize = Math.min(batchSize * 2, MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Allocates keys asynchronously.
+     * 
+     * @param ds
+     *            the asynchronous datastore service
+     * @param num
+     *            the number of allocated keys
+     * @return keys represented as {@link Future}
+     */
+    protected Future<KeyRange> allocate(AsyncDatastoreService ds, long num) {
+        if (parentKey == null) {
+            return DatastoreUtil.allocateIdsAsync(ds, kind, num);
+        }
+        return DatastoreUtil.allocateIdsAsync(ds, parentKey, kind, num);
+    }
+
+    /**
+     * Returns the number of keys allocated next time.
+     * 
+     * @return the number of keys allocated next time
+     */
+    public synchronized long getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the number of the remaining keys in the current range.
+     * 
+     * @return the number of the remaining keys in the current range
+     */
+    public synchronized long getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * Determines if the next range is being allocated.
+     * 
+     * @return whether the next range is being allocated
+     */
+    public synchronized boolean isPrefetching() {
+        return nextRange != null;
+    }
+}
@@ -16,10 +16,14 @@
 package org.slim3.datastore;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.slim3.util.FutureUtil;
 
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.Entity;
@@ -343,6 +347,90 @@ public class Lock {
         DatastoreUtil.delete(ds, null, keys);
     }
 
+    /**
+     * Locks the entity groups concurrently. Each lock is taken in its own
+     * transaction, and the transactions are pipelined in the order of the
+     * list. When locking some of the entity groups failed, the others may
+     * have been locked, so the caller has to release all the locks.
+     * 
+     * @param locks
+     *            the locks
+     * @throws NullPointerException
+     *             if the locks parameter is null
+     * @throws ConcurrentModificationException
+     *             if locking one of the entity groups failed
+     */
+    public static void lock(List<Lock> locks) throws NullPointerException,
+            ConcurrentModificationException {
+        if (locks == null) {
+            throw new NullPointerException(
+                "The locks parameter must not be null.");
+        }
+        int size = locks.size();
+        List<Transaction> txs = new ArrayList<Transaction>(size);
+        try {
+            List<Future<Transaction>> txFutures =
+                new ArrayList<Future<Transaction>>(size);
+            for (Lock lock : locks) {
+                txFutures.add(lock.ds.beginTransaction());
+            }
+            for (Future<Transaction> future : txFutures) {
+                txs.add(FutureUtil.getQuietly(future));
+            }
+            List<Future<Map<Key, Entity>>> getFutures =
+                new ArrayList<Future<Map<Key, Entity>>>(size);
+            for (int i = 0; i < size; i++) {
+                Lock lock = locks.get(i);
+                getFutures.add(DatastoreUtil.getAsMapAsync(
+                    lock.ds,
+                    txs.get(i),
+                    Arrays.asList(lock.key)));
+            }
+            List<Future<List<Key>>> putFutures =
+                new ArrayList<Future<List<Key>>>(size);
+            for (int i = 0; i < size; i++) {
+                Lock lock = locks.get(i);
+                Entity otherEntity =
+                    FutureUtil.getQuietly(getFutures.get(i)).get(lock.key);
+                if (otherEntity != null) {
+                    lock.verify(toLock(lock.ds, otherEntity));
+                }
+                putFutures.add(DatastoreUtil.putAsync(
+                    lock.ds,
+                    txs.get(i),
+                    Arrays.asList(lock.toEntity())));
+            }
+            for (Future<List<Key>> future : putFutures) {
+                FutureUtil.getQuietly(future);
+            }
+            List<Future<Void>> commitFutures = new ArrayList<Future<Void>>(size);
+            for (Transaction tx : txs) {
+                commitFutures.add(tx.commitAsync());
+            }
+            ConcurrentModificationException cme = null;
+            for (int i = 0; i < size; i++) {
+                try {
+                    FutureUtil.getQuietly(commitFutures.get(i));
+                } catch (ConcurrentModificationException e) {
+                    if (cme == null) {
+                        cme =
+                            createConcurrentModificationException(locks
+                                .get(i).rootKey, e);
+                    }
+                }
+            }
+            if (cme != null) {
+                throw cme;
+            }
+        } finally {
+            for (Transaction tx : txs) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+            }
+        }
+    }
+
     /**
      * Verifies lock specified by the root key and returns entities specified by
      * the keys as map.
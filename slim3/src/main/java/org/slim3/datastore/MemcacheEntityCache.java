@@ -0,0 +1,594 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.slim3.memcache.Memcache;
+import org.slim3.memcache.MemcacheDelegate;
+import org.slim3.util.ClassUtil;
+import org.slim3.util.FakeFuture;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService.CasValues;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.utils.FutureWrapper;
+
+/**
+ * The memcache tier for entities shared by all instances. The tier is used
+ * only if the system property {@link #ENABLED_KEY} is "true", which you can
+ * specify in appengine-web.xml so that all instances agree on it. Only the
+ * kinds enabled by {@link Model#useMemcache()},
+ * {@link ModelMeta#setMemcacheEnabled(boolean)} or {@link #enable(String)} are
+ * cached. Gets without transaction read the entities from memcache and fill
+ * memcache under a lease. Puts and deletes lock the entries of all the kinds
+ * before writing to datastore, whether or not the kind is enabled on this
+ * instance yet, so a reader never fills memcache with an entity older than the
+ * latest write. If memcache fails, datastore is used.
+ * 
+ * <p>
+ * The lock for a write within transaction is released by
+ * {@link #release(Transaction)} after the transaction is committed or rolled
+ * back. {@link TxUow}, {@link GlobalTransaction} and {@link DatastoreFilter}
+ * release the locks. If you commit a transaction by yourself outside of
+ * {@link DatastoreFilter}, call {@link #release(Transaction)}, otherwise the
+ * lock expires after {@link #TX_LOCK_TIMEOUT} seconds.
+ * </p>
+ * 
+ * @since 1.0.16
+ * 
+ */
+public final class MemcacheEntityCache {
+
+    /**
+     * The key of the system property that enables the memcache tier.
+     */
+    public static final String ENABLED_KEY = "slim3.memcacheEntityCache";
+
+    /**
+     * The prefix of memcache keys.
+     */
+    public static final String KEY_PREFIX = "slim3.entity:";
+
+    /**
+     * The seconds until a lock for a write without transaction expires.
+     */
+    public static final int LOCK_TIMEOUT = 32;
+
+    /**
+     * The seconds until a lock for a write within transaction expires if it is
+     * not released.
+     */
+    public static final int TX_LOCK_TIMEOUT = 60;
+
+    /**
+     * The seconds until a released lock expires. A lock is not deleted but
+     * shortened, so that only the writer that owns it can release it.
+     */
+    public static final int RELEASED_LOCK_TIMEOUT = 1;
+
+    /**
+     * The seconds until a cached entity expires.
+     */
+    public static final int CACHE_TIMEOUT = 3600;
+
+    /**
+     * The maximum size of a cached entity.
+     */
+    public static final int MAX_VALUE_SIZE = 1000000;
+
+    /**
+     * The prefix of a lock value.
+     */
+    protected static final String LOCK_PREFIX = "slim3.lock:";
+
+    /**
+     * The prefix of the kinds that slim3 uses internally.
+     */
+    protected static final String INTERNAL_KIND_PREFIX = "slim3.";
+
+    /**
+     * The prefix of a lease value.
+     */
+    protected static final String LEASE_PREFIX = "slim3.lease:";
+
+    /**
+     * The value that means no entity is found.
+     */
+    protected static final byte[] NOT_FOUND = new byte[0];
+
+    private static final Logger logger =
+        Logger.getLogger(MemcacheEntityCache.class.getName());
+
+    /**
+     * The enabled kinds.
+     */
+    protected static final ConcurrentHashMap<String, Boolean> kinds =
+        new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * The locks for the writes within transactions of the current thread.
+     */
+    protected static final ThreadLocal<Map<Transaction, Map<String, String>>> txLocks =
+        new ThreadLocal<Map<Transaction, Map<String, String>>>() {
+            @Override
+            protected Map<Transaction, Map<String, String>> initialValue() {
+                return new HashMap<Transaction, Map<String, String>>();
+            }
+        };
+
+    /**
+     * The number of hits.
+     */
+    protected static final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * The number of misses.
+     */
+    protected static final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * The number of keys that were locked by writers.
+     */
+    protected static final AtomicLong lockedCount = new AtomicLong();
+
+    /**
+     * Enables caching the entities of the kind.
+     * 
+     * @param kind
+     *            the kind
+     * @throws NullPointerException
+     *             if the kind parameter is null
+     */
+    public static void enable(String kind) throws NullPointerException {
+        if (kind == null) {
+            throw new NullPointerException(
+                "The kind parameter must not be null.");
+        }
+        kinds.put(kind, Boolean.TRUE);
+    }
+
+    /**
+     * Disables caching the entities of the kind.
+     * 
+     * @param kind
+     *            the kind
+     * @throws NullPointerException
+     *             if the kind parameter is null
+     */
+    public static void disable(String kind) throws NullPointerException {
+        if (kind == null) {
+            throw new NullPointerException(
+                "The kind parameter must not be null.");
+        }
+        kinds.remove(kind);
+    }
+
+    /**
+     * Determines if the memcache tier is used.
+     * 
+     * @return whether the memcache tier is used
+     * @see #ENABLED_KEY
+     */
+    public static boolean isAvailable() {
+        return "true".equalsIgnoreCase(System.getProperty(ENABLED_KEY));
+    }
+
+    /**
+     * Determines if the entities of the kind are cached.
+     * 
+     * @param kind
+     *            the kind
+     * @return whether the entities of the kind are cached
+     */
+    public static boolean isEnabled(String kind) {
+        return kind != null && kinds.containsKey(kind) && isAvailable();
+    }
+
+    /**
+     * Determines if the entity specified by the key is cached.
+     * 
+     * @param key
+     *            the key
+     * @return whether the entity specified by the key is cached
+     */
+    public static boolean isEnabled(Key key) {
+        return key != null && isEnabled(key.getKind());
+    }
+
+    /**
+     * Returns the number of hits.
+     * 
+     * @return the number of hits
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of misses.
+     * 
+     * @return the number of misses
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of keys that were read from datastore because they
+     * were locked by writers.
+     * 
+     * @return the number of locked keys
+     */
+    public static long getLockedCount() {
+        return lockedCount.get();
+    }
+
+    /**
+     * Returns the ratio of hits to all lookups. Returns 0 if nothing has been
+     * looked up.
+     * 
+     * @return the hit ratio
+     */
+    public static double getHitRatio() {
+        long hit = hitCount.get();
+        long total = hit + missCount.get() + lockedCount.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * Resets the statistics.
+     */
+    public static void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        lockedCount.set(0);
+    }
+
+    /**
+     * Returns the memcache key for the datastore key.
+     * 
+     * @param key
+     *            the datastore key
+     * @return the memcache key
+     */
+    public static String toCacheKey(Key key) {
+        return KEY_PREFIX + KeyFactory.keyToString(key);
+    }
+
+    /**
+     * Returns entities specified by the keys without transaction
+     * asynchronously. The entities of the enabled kinds are read from memcache
+     * and the others are read from datastore.
+     * 
+     * @param ds
+     *            the asynchronous datastore service
+     * @param keys
+     *            the keys
+     * @return entities represented as {@link Future}
+     * @throws NullPointerException
+     *             if the ds parameter is null or if the keys parameter is null
+     */
+    public static Future<Map<Key, Entity>> getAsMapAsync(
+            AsyncDatastoreService ds, Iterable<Key> keys)
+            throws NullPointerException {
+        if (ds == null) {
+            throw new NullPointerException("The ds parameter must not be null.");
+        }
+        if (keys == null) {
+            throw new NullPointerException(
+                "The keys parameter must not be null.");
+        }
+        if (kinds.isEmpty() || !isAvailable()) {
+            return DatastoreUtil.getAsMapAsync(ds, null, keys);
+        }
+        final Map<String, Key> cacheKeys = new HashMap<String, Key>();
+        for (Key key : keys) {
+            if (isEnabled(key)) {
+                cacheKeys.put(toCacheKey(key), key);
+            }
+        }
+        if (cacheKeys.isEmpty()) {
+            return DatastoreUtil.getAsMapAsync(ds, null, keys);
+        }
+        final MemcacheDelegate memcache = delegate();
+        Map<Object, Object> values;
+        try {
+            values = memcache.getAll(cacheKeys.keySet());
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+            return DatastoreUtil.getAsMapAsync(ds, null, keys);
+        }
+        final Map<Key, Entity> found = new HashMap<Key, Entity>();
+        List<Key> missingKeys = new ArrayList<Key>();
+        List<String> absentKeys = new ArrayList<String>();
+        for (Key key : keys) {
+            if (!isEnabled(key)) {
+                missingKeys.add(key);
+                continue;
+            }
+            String cacheKey = toCacheKey(key);
+            Object value = values.get(cacheKey);
+            if (value instanceof byte[]) {
+                hitCount.incrementAndGet();
+                byte[] bytes = (byte[]) value;
+                if (bytes.length > 0) {
+                    found.put(key, DatastoreUtil.bytesToEntity(bytes));
+                }
+                continue;
+            }
+            missingKeys.add(key);
+            if (value == null) {
+                missCount.incrementAndGet();
+                absentKeys.add(cacheKey);
+            } else {
+                lockedCount.incrementAndGet();
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return new FakeFuture<Map<Key, Entity>>(found);
+        }
+        final Map<Object, IdentifiableValue> leases =
+            lease(memcache, absentKeys);
+        return new FutureWrapper<Map<Key, Entity>, Map<Key, Entity>>(
+            DatastoreUtil.getAsMapAsync(ds, null, missingKeys)) {
+
+            @Override
+            protected Throwable convertException(Throwable throwable) {
+                return throwable;
+            }
+
+            @Override
+            protected Map<Key, Entity> wrap(Map<Key, Entity> map)
+                    throws Exception {
+                if (!leases.isEmpty()) {
+                    fill(memcache, leases, cacheKeys, map);
+                }
+                found.putAll(map);
+                return found;
+            }
+        };
+    }
+
+    /**
+     * Locks the entries specified by the keys before writing to datastore. The
+     * entries are locked whether or not the kind is enabled on this instance,
+     * because another instance may have cached them. The locks for a write
+     * within transaction are held until {@link #release(Transaction)} is
+     * called.
+     * 
+     * @param keys
+     *            the keys
+     * @param tx
+     *            the transaction
+     * @return the locks or null if no key is locked
+     */
+    public static Map<String, String> lock(Iterable<Key> keys, Transaction tx) {
+        if (!isAvailable()) {
+            return null;
+        }
+        String lock = LOCK_PREFIX + UUID.randomUUID().toString();
+        Map<String, String> locks = new HashMap<String, String>();
+        for (Key key : keys) {
+            if (key.isComplete()
+                && !key.getKind().startsWith(INTERNAL_KIND_PREFIX)) {
+                locks.put(toCacheKey(key), lock);
+            }
+        }
+        if (locks.isEmpty()) {
+            return null;
+        }
+        Expiration expires =
+            Expiration.byDeltaSeconds(tx != null
+                ? TX_LOCK_TIMEOUT
+                : LOCK_TIMEOUT);
+        try {
+            delegate().putAll(
+                new HashMap<Object, Object>(locks),
+                expires,
+                SetPolicy.SET_ALWAYS);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+        if (tx != null) {
+            Map<String, String> held = txLocks.get().get(tx);
+            if (held == null) {
+                held = new HashMap<String, String>();
+                txLocks.get().put(tx, held);
+            }
+            held.putAll(locks);
+        }
+        return locks;
+    }
+
+    /**
+     * Unlocks the entries after writing to datastore. An entry that has been
+     * locked by another writer since is left as it is.
+     * 
+     * @param locks
+     *            the locks returned by {@link #lock(Iterable, Transaction)}
+     */
+    public static void unlock(Map<String, String> locks) {
+        if (locks == null || locks.isEmpty()) {
+            return;
+        }
+        MemcacheDelegate memcache = delegate();
+        try {
+            Map<Object, IdentifiableValue> idValues =
+                memcache.getIdentifiables(new ArrayList<Object>(locks
+                    .keySet()));
+            Map<Object, CasValues> values = new HashMap<Object, CasValues>();
+            for (Object cacheKey : idValues.keySet()) {
+                IdentifiableValue idValue = idValues.get(cacheKey);
+                String lock = locks.get(cacheKey);
+                if (lock.equals(idValue.getValue())) {
+                    values.put(cacheKey, new CasValues(idValue, lock));
+                }
+            }
+            if (!values.isEmpty()) {
+                memcache.putIfUntouched(
+                    values,
+                    Expiration.byDeltaSeconds(RELEASED_LOCK_TIMEOUT));
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Releases the locks for the writes within the transaction. Call this
+     * method after the transaction is committed or rolled back.
+     * 
+     * @param tx
+     *            the transaction
+     */
+    public static void release(Transaction tx) {
+        if (tx == null) {
+            return;
+        }
+        unlock(txLocks.get().remove(tx));
+    }
+
+    /**
+     * Releases the locks for the writes within all the transactions of the
+     * current thread.
+     */
+    public static void releaseAll() {
+        Map<Transaction, Map<String, String>> map = txLocks.get();
+        if (map.isEmpty()) {
+            return;
+        }
+        Map<String, String> locks = new HashMap<String, String>();
+        for (Map<String, String> held : map.values()) {
+            locks.putAll(held);
+        }
+        map.clear();
+        unlock(locks);
+    }
+
+    /**
+     * Takes leases on the absent entries.
+     * 
+     * @param memcache
+     *            the memcache delegate
+     * @param absentKeys
+     *            the absent memcache keys
+     * @return the identifiable values of the leases taken by this call
+     */
+    protected static Map<Object, IdentifiableValue> lease(
+            MemcacheDelegate memcache, List<String> absentKeys) {
+        Map<Object, IdentifiableValue> leases =
+            new HashMap<Object, IdentifiableValue>();
+        if (absentKeys.isEmpty()) {
+            return leases;
+        }
+        String lease = LEASE_PREFIX + UUID.randomUUID().toString();
+        Map<Object, Object> values = new HashMap<Object, Object>();
+        for (String cacheKey : absentKeys) {
+            values.put(cacheKey, lease);
+        }
+        try {
+            Set<Object> added =
+                memcache.putAll(
+                    values,
+                    Expiration.byDeltaSeconds(LOCK_TIMEOUT),
+                    SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+            if (added.isEmpty()) {
+                return leases;
+            }
+            Map<Object, IdentifiableValue> idValues =
+                memcache.getIdentifiables(added);
+            for (Object cacheKey : idValues.keySet()) {
+                IdentifiableValue idValue = idValues.get(cacheKey);
+                if (lease.equals(idValue.getValue())) {
+                    leases.put(cacheKey, idValue);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+        return leases;
+    }
+
+    /**
+     * Fills the leased entries with the entities read from datastore. An entry
+     * that has been locked or deleted since the lease was taken is not filled.
+     * 
+     * @param memcache
+     *            the memcache delegate
+     * @param leases
+     *            the identifiable values of the leases
+     * @param cacheKeys
+     *            the map of memcache keys and datastore keys
+     * @param map
+     *            the entities read from datastore
+     */
+    protected static void fill(MemcacheDelegate memcache,
+            Map<Object, IdentifiableValue> leases, Map<String, Key> cacheKeys,
+            Map<Key, Entity> map) {
+        Map<Object, CasValues> values = new HashMap<Object, CasValues>();
+        for (Object cacheKey : leases.keySet()) {
+            Entity entity = map.get(cacheKeys.get(cacheKey));
+            byte[] bytes =
+                entity != null
+                    ? DatastoreUtil.entityToBytes(entity)
+                    : NOT_FOUND;
+            if (bytes.length <= MAX_VALUE_SIZE) {
+                values.put(
+                    cacheKey,
+                    new CasValues(leases.get(cacheKey), bytes));
+            }
+        }
+        if (values.isEmpty()) {
+            return;
+        }
+        try {
+            memcache.putIfUntouched(
+                values,
+                Expiration.byDeltaSeconds(CACHE_TIMEOUT));
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates a {@link MemcacheDelegate}.
+     * 
+     * @return a {@link MemcacheDelegate}
+     */
+    protected static MemcacheDelegate delegate() {
+        return ClassUtil.newInstance(Memcache.delegateClass());
+    }
+
+    private MemcacheEntityCache() {
+    }
+}
@@ -58,4 +58,13 @@ public @interface Model {
      * The model listener.
      */
     Class<?> listener() default ModelListener.class;
+
+    /**
+     * Whether entities of this kind are cached in memcache. The system property
+     * {@link MemcacheEntityCache#ENABLED_KEY} must be "true" as well. See
+     * {@link MemcacheEntityCache}.
+     * 
+     * @since 1.0.16
+     */
+    boolean useMemcache() default false;
 }
\ No newline at end of file
@@ -15,7 +15,10 @@
  */
 package org.slim3.datastore;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 import com.google.appengine.api.datastore.Entity;
 
@@ -40,6 +43,31 @@ public class ModelIterator<M> implements Iterator<M> {
      */
     protected ModelMeta<M> modelMeta;
 
+    /**
+     * The in-memory filter criteria.
+     */
+    protected List<? extends InMemoryFilterCriterion> inMemoryFilterCriteria;
+
+    /**
+     * The maximum number of models returned, or null if no limit is specified.
+     */
+    protected Integer inMemoryLimit;
+
+    /**
+     * The number of models returned.
+     */
+    protected int count;
+
+    /**
+     * The next model that has been accepted by the in-memory filter criteria.
+     */
+    protected M nextModel;
+
+    /**
+     * Whether the next model has been fetched.
+     */
+    protected boolean nextModelFetched = false;
+
     /**
      * Constructor.
      * 
@@ -53,6 +81,32 @@ public class ModelIterator<M> implements Iterator<M> {
      */
     public ModelIterator(Iterator<Entity> entityIterator, ModelMeta<M> modelMeta)
             throws NullPointerException {
+        this(entityIterator, modelMeta, Collections
+            .<InMemoryFilterCriterion> emptyList(), null);
+    }
+
+    /**
+     * Constructor. The models are filtered one by one while iterating.
+     * 
+     * @param entityIterator
+     *            the {@link Iterator} for the entity
+     * @param modelMeta
+     *            the meta data of the model
+     * @param inMemoryFilterCriteria
+     *            the in-memory filter criteria
+     * @param inMemoryLimit
+     *            the maximum number of models returned, or null if no limit is
+     *            specified
+     * @throws NullPointerException
+     *             if the entityIterator parameter is null or if the modelMeta
+     *             parameter is null or if the inMemoryFilterCriteria parameter
+     *             is null
+     * @since 1.0.16
+     */
+    public ModelIterator(Iterator<Entity> entityIterator,
+            ModelMeta<M> modelMeta,
+            List<? extends InMemoryFilterCriterion> inMemoryFilterCriteria,
+            Integer inMemoryLimit) throws NullPointerException {
         if (entityIterator == null) {
             throw new NullPointerException(
                 "The entityIterator parameter must not be null.");
@@ -61,23 +115,91 @@ public class ModelIterator<M> implements Iterator<M> {
             throw new NullPointerException(
                 "The modelMeta parameter must not be null.");
         }
+        if (inMemoryFilterCriteria == null) {
+            throw new NullPointerException(
+                "The inMemoryFilterCriteria parameter must not be null.");
+        }
         this.entityIterator = entityIterator;
         this.modelMeta = modelMeta;
+        this.inMemoryFilterCriteria = inMemoryFilterCriteria;
+        this.inMemoryLimit = inMemoryLimit;
     }
 
     public boolean hasNext() {
-        return entityIterator.hasNext();
+        if (inMemoryLimit != null && count >= inMemoryLimit) {
+            return false;
+        }
+        if (!isFiltering()) {
+            return entityIterator.hasNext();
+        }
+        while (!nextModelFetched) {
+            if (!entityIterator.hasNext()) {
+                return false;
+            }
+            M model = toModel(nextEntity());
+            if (DatastoreUtil.accept(model, inMemoryFilterCriteria)) {
+                nextModel = model;
+                nextModelFetched = true;
+            }
+        }
+        return true;
     }
 
     public M next() {
-        Entity entity = entityIterator.next();
-        ModelMeta<M> mm = DatastoreUtil.getModelMeta(modelMeta, entity);
-        M model = mm.entityToModel(entity);
-        mm.postGet(model);
+        if (!isFiltering()) {
+            if (inMemoryLimit != null && count >= inMemoryLimit) {
+                throw new NoSuchElementException();
+            }
+            count++;
+            return toModel(nextEntity());
+        }
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        M model = nextModel;
+        nextModel = null;
+        nextModelFetched = false;
+        count++;
         return model;
     }
 
     public void remove() {
+        if (isFiltering()) {
+            throw new UnsupportedOperationException(
+                "In case of filtering in memory, remove() is not supported.");
+        }
         entityIterator.remove();
     }
+
+    /**
+     * Determines if the models are filtered in memory.
+     * 
+     * @return whether the models are filtered in memory
+     */
+    protected boolean isFiltering() {
+        return inMemoryFilterCriteria.size() > 0;
+    }
+
+    /**
+     * Returns the next entity.
+     * 
+     * @return the next entity
+     */
+    protected Entity nextEntity() {
+        return entityIterator.next();
+    }
+
+    /**
+     * Converts the entity to a model.
+     * 
+     * @param entity
+     *            the entity
+     * @return a model
+     */
+    protected M toModel(Entity entity) {
+        ModelMeta<M> mm = DatastoreUtil.getModelMeta(modelMeta, entity);
+        M model = mm.entityToModel(entity);
+        mm.postGet(model);
+        return model;
+    }
 }
\ No newline at end of file
@@ -15,14 +15,23 @@
  */
 package org.slim3.datastore;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import org.slim3.datastore.json.JsonArrayReader;
+import org.slim3.datastore.json.JsonPullParser;
 import org.slim3.datastore.json.JsonReader;
 import org.slim3.datastore.json.JsonRootReader;
+import org.slim3.datastore.json.JsonTokenReader;
 import org.slim3.datastore.json.JsonWriter;
 import org.slim3.datastore.json.ModelReader;
 import org.slim3.datastore.json.ModelWriter;
@@ -31,6 +40,7 @@ import org.slim3.util.BeanUtil;
 import org.slim3.util.ByteUtil;
 import org.slim3.util.Cipher;
 import org.slim3.util.CipherFactory;
+import org.slim3.util.WrapRuntimeException;
 
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.Blob;
@@ -73,6 +83,12 @@ public abstract class ModelMeta<M> {
      */
     protected BeanDesc beanDesc;
 
+    /**
+     * The cipher reused by the current thread.
+     */
+    protected static final ThreadLocal<Cipher> ciphers =
+        new ThreadLocal<Cipher>();
+
     /**
      * Constructor.
      * 
@@ -117,6 +133,10 @@ public abstract class ModelMeta<M> {
             this.classHierarchyList =
                 Collections.unmodifiableList(classHierarchyList);
         }
+        Model model = modelClass.getAnnotation(Model.class);
+        if (model != null && model.useMemcache()) {
+            MemcacheEntityCache.enable(kind);
+        }
     }
 
     /**
@@ -152,6 +172,31 @@ public abstract class ModelMeta<M> {
         return classHierarchyList;
     }
 
+    /**
+     * Determines if the entities of this kind are cached in memcache.
+     * 
+     * @return whether the entities of this kind are cached in memcache
+     * @see MemcacheEntityCache
+     */
+    public boolean isMemcacheEnabled() {
+        return MemcacheEntityCache.isEnabled(kind);
+    }
+
+    /**
+     * Enables or disables caching the entities of this kind in memcache.
+     * 
+     * @param enabled
+     *            whether the entities of this kind are cached in memcache
+     * @see MemcacheEntityCache
+     */
+    public void setMemcacheEnabled(boolean enabled) {
+        if (enabled) {
+            MemcacheEntityCache.enable(kind);
+        } else {
+            MemcacheEntityCache.disable(kind);
+        }
+    }
+
     /**
      * Returns the AND criterion.
      * 
@@ -237,18 +282,7 @@ public abstract class ModelMeta<M> {
      */
     public String modelToJson(final Object model, int maxDepth) {
         StringBuilder b = new StringBuilder();
-        JsonWriter w = new JsonWriter(b, new ModelWriter() {
-            @Override
-            public void write(JsonWriter writer, Object model, int maxDepth,
-                    int currentDepth) {
-                invokeModelToJson(
-                    Datastore.getModelMeta(model.getClass()),
-                    writer,
-                    model,
-                    maxDepth,
-                    currentDepth + 1);
-            }
-        });
+        JsonWriter w = new JsonWriter(b, createModelWriter());
         modelToJson(w, model, maxDepth, 0);
         return b.toString();
     }
@@ -281,18 +315,7 @@ public abstract class ModelMeta<M> {
         if (n == 0)
             return "[]";
         StringBuilder b = new StringBuilder();
-        JsonWriter w = new JsonWriter(b, new ModelWriter() {
-            @Override
-            public void write(JsonWriter writer, Object model, int maxDepth,
-                    int currentDepth) {
-                invokeModelToJson(
-                    Datastore.getModelMeta(model.getClass()),
-                    writer,
-                    model,
-                    maxDepth,
-                    currentDepth + 1);
-            }
-        });
+        JsonWriter w = new JsonWriter(b, createModelWriter());
         b.append("[");
         modelToJson(w, models[0], maxDepth, 0);
         for (int i = 1; i < n; i++) {
@@ -328,18 +351,7 @@ public abstract class ModelMeta<M> {
      */
     public String modelsToJson(final Iterable<?> models, int maxDepth) {
         StringBuilder b = new StringBuilder();
-        JsonWriter w = new JsonWriter(b, new ModelWriter() {
-            @Override
-            public void write(JsonWriter writer, Object model, int maxDepth,
-                    int currentDepth) {
-                invokeModelToJson(
-                    Datastore.getModelMeta(model.getClass()),
-                    writer,
-                    model,
-                    maxDepth,
-                    currentDepth + 1);
-            }
-        });
+        JsonWriter w = new JsonWriter(b, createModelWriter());
         b.append("[");
         boolean first = true;
         for (Object o : models) {
@@ -354,6 +366,172 @@ public abstract class ModelMeta<M> {
         return b.toString();
     }
 
+    /**
+     * Writes the model to the writer as JSON assuming maxDepth is 0.
+     * 
+     * @param model
+     *            the model
+     * @param writer
+     *            the writer
+     * @since 1.0.16
+     */
+    public void modelToJson(Object model, Writer writer) {
+        modelToJson(model, 0, writer);
+    }
+
+    /**
+     * Writes the model to the writer as JSON. The writer is neither flushed
+     * nor closed.
+     * 
+     * @param model
+     *            the model
+     * @param maxDepth
+     *            the max depth of ModelRef expanding
+     * @param writer
+     *            the writer
+     * @throws NullPointerException
+     *             if the writer parameter is null
+     * @throws WrapRuntimeException
+     *             if an {@link IOException} occurred
+     * @since 1.0.16
+     */
+    public void modelToJson(Object model, int maxDepth, Writer writer)
+            throws NullPointerException, WrapRuntimeException {
+        if (writer == null) {
+            throw new NullPointerException("The writer parameter is null.");
+        }
+        modelToJson(
+            new JsonWriter(writer, createModelWriter()),
+            model,
+            maxDepth,
+            0);
+    }
+
+    /**
+     * Writes the models to the writer as JSON assuming maxDepth is 0.
+     * 
+     * @param models
+     *            models
+     * @param writer
+     *            the writer
+     * @since 1.0.16
+     */
+    public void modelsToJson(Iterable<?> models, Writer writer) {
+        modelsToJson(models, 0, writer);
+    }
+
+    /**
+     * Writes the models to the writer as JSON. The models are written one by
+     * one as they are iterated, so a lazy {@link Iterable} like
+     * {@link ModelQuery#asIterable()} can be written with constant memory.
+     * The writer is neither flushed nor closed.
+     * 
+     * @param models
+     *            models
+     * @param maxDepth
+     *            the max depth of ModelRef expanding
+     * @param writer
+     *            the writer
+     * @throws NullPointerException
+     *             if the models parameter is null or if the writer parameter
+     *             is null
+     * @throws WrapRuntimeException
+     *             if an {@link IOException} occurred
+     * @since 1.0.16
+     */
+    public void modelsToJson(Iterable<?> models, int maxDepth, Writer writer)
+            throws NullPointerException, WrapRuntimeException {
+        if (models == null) {
+            throw new NullPointerException("The models parameter is null.");
+        }
+        if (writer == null) {
+            throw new NullPointerException("The writer parameter is null.");
+        }
+        JsonWriter w = new JsonWriter(writer, createModelWriter());
+        w.beginArray();
+        for (Object o : models) {
+            modelToJson(w, o, maxDepth, 0);
+        }
+        w.endArray();
+    }
+
+    /**
+     * Writes the models to the output stream as JSON encoded in UTF-8
+     * assuming maxDepth is 0.
+     * 
+     * @param models
+     *            models
+     * @param outputStream
+     *            the output stream
+     * @since 1.0.16
+     */
+    public void modelsToJson(Iterable<?> models, OutputStream outputStream) {
+        modelsToJson(models, 0, outputStream);
+    }
+
+    /**
+     * Writes the models to the output stream as JSON encoded in UTF-8. The
+     * output stream is flushed but not closed.
+     * 
+     * @param models
+     *            models
+     * @param maxDepth
+     *            the max depth of ModelRef expanding
+     * @param outputStream
+     *            the output stream
+     * @throws NullPointerException
+     *             if the models parameter is null or if the outputStream
+     *             parameter is null
+     * @throws WrapRuntimeException
+     *             if an {@link IOException} occurred
+     * @since 1.0.16
+     */
+    public void modelsToJson(Iterable<?> models, int maxDepth,
+            OutputStream outputStream) throws NullPointerException,
+            WrapRuntimeException {
+        if (outputStream == null) {
+            throw new NullPointerException(
+                "The outputStream parameter is null.");
+        }
+        Writer writer;
+        try {
+            writer =
+                new BufferedWriter(new OutputStreamWriter(
+                    outputStream,
+                    "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new WrapRuntimeException(e);
+        }
+        modelsToJson(models, maxDepth, writer);
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new WrapRuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates a new {@link ModelWriter} that writes a model using its
+     * {@link ModelMeta}.
+     * 
+     * @return a new {@link ModelWriter}
+     * @since 1.0.16
+     */
+    protected ModelWriter createModelWriter() {
+        return new ModelWriter() {
+            @Override
+            public void write(JsonWriter writer, Object model, int maxDepth,
+                    int currentDepth) {
+                invokeModelToJson(
+                    Datastore.getModelMeta(model.getClass()),
+                    writer,
+                    model,
+                    maxDepth,
+                    currentDepth + 1);
+            }
+        };
+    }
+
     /**
      * Converts the model to JSON string.
      * 
@@ -445,9 +623,103 @@ public abstract class ModelMeta<M> {
      * 
      * @return model array
      */
-    @SuppressWarnings("unchecked")
     public M[] jsonToModels(String json, int maxDepth) {
-        JsonArrayReader ar = new JsonArrayReader(json, new ModelReader() {
+        return jsonToModels(new StringReader(json), maxDepth);
+    }
+
+    /**
+     * Reads a model from the JSON text assuming maxDepth is 0.
+     * 
+     * @param reader
+     *            the reader
+     * @return model
+     * @since 1.0.16
+     */
+    public M jsonToModel(Reader reader) {
+        return jsonToModel(reader, 0);
+    }
+
+    /**
+     * Reads a model from the JSON text.
+     * 
+     * @param reader
+     *            the reader
+     * @param maxDepth
+     *            the max depth
+     * @return model
+     * @throws NullPointerException
+     *             if the reader parameter is null
+     * @since 1.0.16
+     */
+    public M jsonToModel(Reader reader, int maxDepth)
+            throws NullPointerException {
+        return jsonToModel(new JsonPullParser(reader), maxDepth, 0);
+    }
+
+    /**
+     * Reads models from the JSON array assuming maxDepth is 0.
+     * 
+     * @param reader
+     *            the reader
+     * @return model array
+     * @since 1.0.16
+     */
+    public M[] jsonToModels(Reader reader) {
+        return jsonToModels(reader, 0);
+    }
+
+    /**
+     * Reads models from the JSON array. The attributes of each element are
+     * assigned as their tokens are read, so neither the array nor an element
+     * is read into nodes. An element that is not an object is read as null.
+     * 
+     * @param reader
+     *            the reader
+     * @param maxDepth
+     *            the max depth
+     * @return model array
+     * @throws NullPointerException
+     *             if the reader parameter is null
+     * @since 1.0.16
+     */
+    @SuppressWarnings("unchecked")
+    public M[] jsonToModels(Reader reader, int maxDepth)
+            throws NullPointerException {
+        JsonPullParser parser = new JsonPullParser(reader);
+        ModelReader modelReader = createModelReader();
+        List<M> models = new ArrayList<M>();
+        try {
+            if (parser.next() == JsonPullParser.Token.BEGIN_ARRAY) {
+                JsonPullParser.Token t = parser.next();
+                while (t != JsonPullParser.Token.END_ARRAY
+                    && t != JsonPullParser.Token.END) {
+                    if (t == JsonPullParser.Token.BEGIN_OBJECT) {
+                        models.add(jsonToModel(new JsonTokenReader(
+                            parser,
+                            modelReader), maxDepth, 0));
+                    } else {
+                        parser.skipValue(t);
+                        models.add(null);
+                    }
+                    t = parser.next();
+                }
+            }
+        } catch (IllegalArgumentException ignore) {
+        }
+        return models.toArray((M[]) Array.newInstance(
+            getModelClass(),
+            models.size()));
+    }
+
+    /**
+     * Creates a new {@link ModelReader} that reads a model using its
+     * {@link ModelMeta}.
+     * 
+     * @return a new {@link ModelReader}
+     * @since 1.0.16
+     */
+    protected ModelReader createModelReader() {
+        return new ModelReader() {
             @Override
             public <T> T read(JsonReader reader, Class<T> modelClass,
                     int maxDepth, int currentDepth) {
@@ -457,13 +729,7 @@ public abstract class ModelMeta<M> {
                     maxDepth,
                     currentDepth + 1);
             }
-        });
-        M[] ret = (M[]) Array.newInstance(this.getModelClass(), ar.length());
-        for (int i = 0; i < ar.length(); i++) {
-            ar.setIndex(i);
-            ret[i] = jsonToModel(ar.newRootReader(), maxDepth, 0);
-        }
-        return ret;
+        };
     }
 
     /**
@@ -481,21 +747,64 @@ public abstract class ModelMeta<M> {
      * @return model
      */
     protected M jsonToModel(String json, int maxDepth, int currentDepth) {
-        return jsonToModel(new JsonRootReader(json, new ModelReader() {
-            @Override
-            public <T> T read(JsonReader reader, Class<T> modelClass,
-                    int maxDepth, int currentDepth) {
-                return invokeJsonToModel(
-                    Datastore.getModelMeta(modelClass),
-                    reader,
+        return jsonToModel(new JsonPullParser(json), maxDepth, currentDepth);
+    }
+
+    /**
+     * Reads a model from the JSON object that the parser reads. The model
+     * that has the default values is returned if the JSON text is not an
+     * object or is invalid.
+     * 
+     * @param parser
+     *            the parser
+     * @param maxDepth
+     *            the max depth
+     * @param currentDepth
+     *            the current depth
+     * @return model
+     */
+    private M jsonToModel(JsonPullParser parser, int maxDepth,
+            int currentDepth) {
+        ModelReader modelReader = createModelReader();
+        try {
+            if (parser.next() == JsonPullParser.Token.BEGIN_OBJECT) {
+                return jsonToModel(
+                    new JsonTokenReader(parser, modelReader),
                     maxDepth,
-                    currentDepth + 1);
+                    currentDepth);
             }
-        }),
+        } catch (IllegalArgumentException ignore) {
+        }
+        JsonPullParser empty = new JsonPullParser("{}");
+        empty.next();
+        return jsonToModel(
+            new JsonTokenReader(empty, modelReader),
             maxDepth,
             currentDepth);
     }
 
+    /**
+     * Reads a model from the properties of the JSON object. The generated
+     * model meta overrides this method to assign each attribute as its token
+     * is read. This implementation reads the rest of the object into
+     * {@link JsonRootReader} for the model meta generated by the older
+     * version, which overrides {@link #jsonToModel(JsonRootReader, int, int)}
+     * instead.
+     * 
+     * @param reader
+     *            the JSON token reader
+     * @param maxDepth
+     *            the max depth
+     * @param currentDepth
+     *            the current depth
+     * @return model
+     * @since 1.0.16
+     */
+    protected M jsonToModel(JsonTokenReader reader, int maxDepth,
+            int currentDepth) {
+        return jsonToModel(reader.toRootReader(), maxDepth, currentDepth);
+    }
+
     /**
      * Converts the JSON string to model.
      * 
@@ -509,9 +818,12 @@ public abstract class ModelMeta<M> {
      *            the current depth
      * 
      * @return model
+     * @see #jsonToModel(JsonTokenReader, int, int)
      */
-    protected abstract M jsonToModel(JsonRootReader reader, int maxDepth,
-            int currentDepth);
+    protected M jsonToModel(JsonRootReader reader, int maxDepth,
+            int currentDepth) {
+        return jsonToModel(reader.newTokenReader(), maxDepth, currentDepth);
+    }
 
     /**
      * Converts the JSON string to model.
@@ -535,7 +847,19 @@ public abstract class ModelMeta<M> {
      */
     protected <T> T invokeJsonToModel(ModelMeta<T> meta, JsonReader reader,
             int maxDepth, int currentDepth) {
-        return meta.jsonToModel(reader.read(), maxDepth, currentDepth);
+        if (reader instanceof JsonTokenReader) {
+            JsonTokenReader objectReader =
+                ((JsonTokenReader) reader).newObjectReader();
+            if (objectReader == null) {
+                return null;
+            }
+            return meta.jsonToModel(objectReader, maxDepth, currentDepth);
+        }
+        JsonRootReader rootReader = reader.newRootReader();
+        if (rootReader == null) {
+            return null;
+        }
+        return meta.jsonToModel(rootReader, maxDepth, currentDepth);
     }
 
     /**
@@ -1010,6 +1334,43 @@ public abstract class ModelMeta<M> {
         return beanDesc;
     }
 
+    /**
+     * Returns the index of the attribute that is passed to
+     * {@link #getValue(Object, int)}. The generated meta data overrides this
+     * method to read attribute values without reflection.
+     * 
+     * @param attributeName
+     *            the attribute name
+     * @return the index of the attribute or -1 if the attribute value cannot
+     *         be read by {@link #getValue(Object, int)}
+     * @since 1.0.16
+     */
+    protected int getAttributeIndex(String attributeName) {
+        return -1;
+    }
+
+    /**
+     * Returns the attribute value specified by the index without reflection.
+     * 
+     * @param model
+     *            the model
+     * @param attributeIndex
+     *            the index of the attribute returned by
+     *            {@link #getAttributeIndex(String)}
+     * @return the attribute value
+     * @throws IllegalArgumentException
+     *             if the attribute specified by the index is not found
+     * @since 1.0.16
+     */
+    protected Object getValue(Object model, int attributeIndex)
+            throws IllegalArgumentException {
+        throw new IllegalArgumentException("The attribute(index:"
+            + attributeIndex
+            + ") of model("
+            + modelClass.getName()
+            + ") is not found.");
+    }
+
     /**
      * Determines if the property is cipher.
      * 
@@ -1031,8 +1392,7 @@ public abstract class ModelMeta<M> {
      * @since 1.0.6
      */
     protected String encrypt(String text) {
-        Cipher c = CipherFactory.getFactory().createCipher();
-        return c.encrypt(text);
+        return getCipher().encrypt(text);
     }
 
     /**
@@ -1058,8 +1418,7 @@ public abstract class ModelMeta<M> {
      * @since 1.0.6
      */
     protected String decrypt(String encryptedText) {
-        Cipher c = CipherFactory.getFactory().createCipher();
-        return c.decrypt(encryptedText);
+        return getCipher().decrypt(encryptedText);
     }
 
     /**
@@ -1075,4 +1434,23 @@ public abstract class ModelMeta<M> {
             return null;
         return new Text(decrypt(encryptedText.getValue()));
     }
+
+    /**
+     * Returns the cipher used by {@link #encrypt(String)} and
+     * {@link #decrypt(String)}. The cipher is reused by the current thread
+     * while {@link CipherFactory#isReusable(Cipher)} returns true, so the
+     * cipher properties of a model do not create a cipher for each property.
+     * 
+     * @return the cipher
+     * @since 1.0.16
+     */
+    protected Cipher getCipher() {
+        CipherFactory factory = CipherFactory.getFactory();
+        Cipher c = ciphers.get();
+        if (c == null || !factory.isReusable(c)) {
+            c = factory.createCipher();
+            ciphers.set(c);
+        }
+        return c;
+    }
 }
\ No newline at end of file
@@ -19,14 +19,20 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.slim3.util.ConversionUtil;
+import org.slim3.util.FutureUtil;
+import org.slim3.util.LazyFuture;
 
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.PropertyProjection;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.QueryResultIterator;
@@ -44,6 +50,23 @@ import com.google.appengine.api.datastore.Transaction;
  */
 public class ModelQuery<M> extends AbstractQuery<ModelQuery<M>> {
 
+    /**
+     * The default number of keys fetched by one batch get of
+     * {@link #asListViaKeys()}.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /**
+     * The name of the property that datastore sets to a random sample of
+     * entities.
+     */
+    public static final String SCATTER_PROPERTY = "__scatter__";
+
+    /**
+     * The number of the sampled keys per range.
+     */
+    protected static final int OVERSAMPLING_FACTOR = 32;
+
     /**
      * The meta data of model.
      */
@@ -61,6 +84,12 @@ public class ModelQuery<M> extends AbstractQuery<ModelQuery<M>> {
     protected List<InMemorySortCriterion> inMemorySortCriteria =
         new ArrayList<InMemorySortCriterion>();
 
+    /**
+     * The maximum number of models returned after in-memory filtering and
+     * sorting.
+     */
+    protected Integer inMemoryLimit;
+
     /**
      * Constructor.
      * 
@@ -154,6 +183,83 @@ public class ModelQuery<M> extends AbstractQuery<ModelQuery<M>> {
         return this;
     }
 
+    /**
+     * Specifies the attributes to project. Only the projected attributes are
+     * read from the index and set to the models by
+     * {@link ModelMeta#entityToModel(Entity)}, and the other attributes are
+     * left unset except for the primary key.
+     * 
+     * @param attributeMetas
+     *            the meta data of the attributes to project
+     * @return this instance
+     * @throws NullPointerException
+     *             if the element of the attributeMetas parameter is null
+     * @throws IllegalArgumentException
+     *             if the attribute does not belong to the model of this query
+     *             or if the attribute is the primary key
+     * @since 1.0.16
+     */
+    public ModelQuery<M> project(CoreAttributeMeta<?, ?>... attributeMetas)
+            throws NullPointerException, IllegalArgumentException {
+        for (CoreAttributeMeta<?, ?> attributeMeta : attributeMetas) {
+            if (attributeMeta == null) {
+                throw new NullPointerException(
+                    "The element of the attributeMetas parameter must not be null.");
+            }
+            if (!attributeMeta.modelMeta.getModelClass().isAssignableFrom(
+                modelMeta.getModelClass())) {
+                throw new IllegalArgumentException("The attribute("
+                    + attributeMeta.attributeName
+                    + ") does not belong to the model("
+                    + modelMeta.getModelClass().getName()
+                    + ").");
+            }
+            if (attributeMeta.name.equals(Entity.KEY_RESERVED_PROPERTY)) {
+                throw new IllegalArgumentException(
+                    "The primary key cannot be projected.");
+            }
+            query.addProjection(new PropertyProjection(
+                attributeMeta.name,
+                getProjectionType(attributeMeta)));
+        }
+        return this;
+    }
+
+    /**
+     * Returns the type of the projected property that
+     * {@link ModelMeta#entityToModel(Entity)} expects.
+     * 
+     * @param attributeMeta
+     *            the meta data of the attribute
+     * @return the type of the projected property
+     */
+    protected Class<?> getProjectionType(
+            CoreAttributeMeta<?, ?> attributeMeta) {
+        Class<?> clazz = attributeMeta.attributeClass;
+        if (modelMeta.isCipherProperty(attributeMeta.name)
+            || Enum.class.isAssignableFrom(clazz)) {
+            return String.class;
+        }
+        if (clazz == Integer.class
+            || clazz == int.class
+            || clazz == Short.class
+            || clazz == short.class
+            || clazz == Byte.class
+            || clazz == byte.class
+            || clazz == long.class) {
+            return Long.class;
+        }
+        if (clazz == Float.class
+            || clazz == float.class
+            || clazz == double.class) {
+            return Double.class;
+        }
+        if (clazz == boolean.class) {
+            return Boolean.class;
+        }
+        return clazz;
+    }
+
     /**
      * Adds the in-memory filter criteria.
      * 
@@ -218,6 +324,30 @@ public class ModelQuery<M> extends AbstractQuery<ModelQuery<M>> {
         return this;
     }
 
+    /**
+     * Specifies the maximum number of models returned after in-memory
+     * filtering and sorting. Unlike {@link #limit(int)}, the limit is applied
+     * to the models that are accepted by the in-memory filter criteria. If
+     * in-memory sorts are specified, only the limit number of models are held
+     * in memory while sorting.
+     * 
+     * @param limit
+     *            the limit
+     * @return this instance
+     * @throws IllegalArgumentException
+     *             if the limit parameter is negative
+     */
+    public ModelQuery<M> limitInMemory(int limit)
+            throws IllegalArgumentException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit("
+                + limit
+                + ") must not be negative.");
+        }
+        inMemoryLimit = limit;
+        return this;
+    }
+
     /**
      * Returns the result as a list.
      * 
@@ -225,7 +355,40 @@ public class ModelQuery<M> extends AbstractQuery<ModelQuery<M>> {
      */
     public List<M> asList() {
         applyPolyModelFilter();
-        List<Entity> entityList = asEntityList();
+        if (inMemoryFilterCriteria.size() > 0 || inMemoryLimit != null) {
+            return asListInMemory();
+        }
+        return toModelList(asEntityList());
+    }
+
+    /**
+     * Returns the result as a list asynchronously. The query is started at
+     * once, and the entities are converted to models and the in-memory
+     * criteria are applied when {@link Future#get()} is called, so that
+     * several queries can run concurrently.
+     * 
+     * @return the result as a list represented as {@link Future}
+     * @since 1.0.16
+     */
+    public Future<List<M>> asListAsync() {
+        applyPolyModelFilter();
+        final Future<List<Entity>> future = asEntityListAsync();
+        return new LazyFuture<List<M>>() {
+            @Override
+            protected List<M> compute() throws Exception {
+                return toModelList(FutureUtil.getQuietly(future));
+            }
+        };
+    }
+
+    /**
+     * Converts the entities to models and applies the in-memory criteria.
+     * 
+     * @param entityList
+     *            the list of entities
+     * @return the list of models
+     */
+    protected List<M> toModelList(List<Entity> entityList) {
         List<M> ret = new ArrayList<M>(entityList.size());
         for (Entity e : entityList) {
             ModelMeta<M> mm = DatastoreUtil.getModelMeta(modelMeta, e);
@@ -234,24 +397,157 @@ public class ModelQuery<M> extends AbstractQuery<ModelQuery<M>> {
             ret.add(model);
         }
         ret = DatastoreUtil.filterInMemory(ret, inMemoryFilterCriteria);
-        return DatastoreUtil.sortInMemory(ret, inMemorySortCriteria);
+        if (inMemoryLimit == null) {
+            return DatastoreUtil.sortInMemory(ret, inMemorySortCriteria);
+        }
+        if (inMemorySortCriteria.size() > 0) {
+            return DatastoreUtil.sortInMemory(
+                ret.iterator(),
+                inMemorySortCriteria,
+                inMemoryLimit);
+        }
+        return ret.size() > inMemoryLimit ? new ArrayList<M>(ret.subList(
+            0,
+            inMemoryLimit)) : ret;
     }
 
     /**
-     * Returns a query result list.
+     * Returns the result as a list by running the query keys-only and fetching
+     * the entities by batch gets. The gets go through the entity cache and
+     * {@link MemcacheEntityCache} outside of a transaction, so this is faster
+     * than {@link #asList()} if most of the entities are cached. The entities
+     * that are deleted after the query are not returned.
      * 
-     * @return a query result list
+     * @return the result as a list
+     * @see #asListViaKeys(int)
+     * @since 1.0.16
      */
-    public S3QueryResultList<M> asQueryResultList() {
-        if (inMemoryFilterCriteria.size() > 0) {
-            throw new IllegalStateException(
-                "In case of asQueryResultList(), you cannot specify filterInMemory().");
+    public List<M> asListViaKeys() {
+        return asListViaKeys(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Returns the result as a list by running the query keys-only and fetching
+     * the entities by batch gets. A batch get is issued asynchronously as soon
+     * as the specified number of keys is read, so the gets overlap the rest of
+     * the query. The result keeps the order of the query.
+     * 
+     * @param batchSize
+     *            the number of keys fetched by one batch get
+     * @return the result as a list
+     * @throws IllegalArgumentException
+     *             if the batchSize parameter is less than 1
+     * @throws IllegalStateException
+     *             if projections are specified
+     * @since 1.0.16
+     */
+    public List<M> asListViaKeys(int batchSize)
+            throws IllegalArgumentException, IllegalStateException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batchSize parameter("
+                + batchSize
+                + ") must be greater than 0.");
         }
-        if (inMemorySortCriteria.size() > 0) {
+        if (!query.getProjections().isEmpty()) {
             throw new IllegalStateException(
-                "In case of asQueryResultList(), you cannot specify sortInMemory().");
+                "In case of asListViaKeys(), you cannot specify project().");
+        }
+        applyPolyModelFilter();
+        Transaction getTx = txSet ? tx : null;
+        List<List<Key>> batches = new ArrayList<List<Key>>();
+        List<Future<Map<Key, Entity>>> futures =
+            new ArrayList<Future<Map<Key, Entity>>>();
+        List<Key> batch = new ArrayList<Key>(batchSize);
+        for (Iterator<Key> ite = asKeyIterator(); ite.hasNext();) {
+            batch.add(ite.next());
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                futures.add(AsyncDatastoreDelegate.getAsMapAsync(
+                    ds,
+                    getTx,
+                    batch));
+                batch = new ArrayList<Key>(batchSize);
+            }
         }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+            futures.add(AsyncDatastoreDelegate.getAsMapAsync(ds, getTx, batch));
+        }
+        List<M> ret = new ArrayList<M>();
+        for (int i = 0; i < batches.size(); i++) {
+            Map<Key, Entity> map = FutureUtil.getQuietly(futures.get(i));
+            for (Key key : batches.get(i)) {
+                Entity e = map.get(key);
+                if (e == null) {
+                    continue;
+                }
+                ModelMeta<M> mm = DatastoreUtil.getModelMeta(modelMeta, e);
+                M model = mm.entityToModel(e);
+                mm.postGet(model);
+                ret.add(model);
+            }
+        }
+        ret = DatastoreUtil.filterInMemory(ret, inMemoryFilterCriteria);
+        ret = DatastoreUtil.sortInMemory(ret, inMemorySortCriteria);
+        if (inMemoryLimit != null && ret.size() > inMemoryLimit) {
+            ret = new ArrayList<M>(ret.subList(0, inMemoryLimit));
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the result as a list filtering the models one by one.
+     * 
+     * @return the result as a list
+     */
+    protected List<M> asListInMemory() {
+        if (inMemorySortCriteria.size() > 0 && inMemoryLimit != null) {
+            return DatastoreUtil.sortInMemory(
+                createModelIterator(null),
+                inMemorySortCriteria,
+                inMemoryLimit);
+        }
+        Iterator<M> ite = createModelIterator(inMemoryLimit);
+        List<M> ret = new ArrayList<M>();
+        while (ite.hasNext()) {
+            ret.add(ite.next());
+        }
+        return DatastoreUtil.sortInMemory(ret, inMemorySortCriteria);
+    }
+
+    /**
+     * Creates an {@link Iterator} that filters the models in memory.
+     * 
+     * @param limit
+     *            the maximum number of models returned, or null if no limit is
+     *            specified
+     * @return an {@link Iterator}
+     */
+    protected Iterator<M> createModelIterator(Integer limit) {
+        return new ModelIterator<M>(
+            asEntityIterator(),
+            modelMeta,
+            inMemoryFilterCriteria,
+            limit);
+    }
+
+    /**
+     * Returns a query result list. If in-memory filters are specified, the
+     * limit is applied to the number of the scanned entities.
+     * 
+     * @return a query result list
+     * @throws IllegalStateException
+     *             if in-memory sorts are specified or if the in-memory limit
+     *             is specified
+     */
+    public S3QueryResultList<M> asQueryResultList()
+            throws IllegalStateException {
+        validateForQueryResultList();
         applyPolyModelFilter();
+        MultiQuery multiQuery = createMultiQuery();
+        if (multiQuery != null) {
+            return asQueryResultList(multiQuery);
+        }
         List<M> modelList = null;
         boolean hasNext = false;
         Cursor cursor = null;
@@ -262,24 +558,114 @@ public class ModelQuery<M> extends AbstractQuery<ModelQuery<M>> {
                 ModelMeta<M> mm = DatastoreUtil.getModelMeta(modelMeta, e);
                 M model = mm.entityToModel(e);
                 mm.postGet(model);
-                modelList.add(model);
+                if (DatastoreUtil.accept(model, inMemoryFilterCriteria)) {
+                    modelList.add(model);
+                }
             }
             cursor = entityList.getCursor();
         } else {
             int limit = fetchOptions.getLimit();
             fetchOptions.limit(limit + 1);
-            modelList = new ArrayList<M>();
-            QueryResultIterator<Entity> ite = asQueryResultEntityIterator();
-            while (true) {
-                hasNext = ite.hasNext();
-                if (!hasNext || modelList.size() == limit) {
-                    cursor = ite.getCursor();
-                    break;
+            return asQueryResultList(asQueryResultEntityIterator(), limit);
+        }
+        String cursorWebSafeString =
+            cursor == null ? null : cursor.toWebSafeString();
+        return new S3QueryResultList<M>(
+            modelList,
+            cursorWebSafeString,
+            getEncodedFilter(),
+            getEncodedSorts(),
+            hasNext);
+    }
+
+    /**
+     * Returns a query result list asynchronously. The query is started at
+     * once, and the entities are converted to models when
+     * {@link Future#get()} is called, so that several queries can run
+     * concurrently.
+     * 
+     * @return a query result list represented as {@link Future}
+     * @throws IllegalStateException
+     *             if in-memory sorts are specified or if the in-memory limit
+     *             is specified
+     * @see #asQueryResultList()
+     * @since 1.0.16
+     */
+    public Future<S3QueryResultList<M>> asQueryResultListAsync()
+            throws IllegalStateException {
+        validateForQueryResultList();
+        applyPolyModelFilter();
+        final Integer limit = fetchOptions.getLimit();
+        if (limit != null) {
+            fetchOptions.limit(limit + 1);
+        }
+        prefetchLimit();
+        MultiQuery multiQuery = createMultiQuery();
+        if (multiQuery != null) {
+            final MultiQuery mq = multiQuery;
+            final MultiQuery.Component[] components = mq.startComponents();
+            return new LazyFuture<S3QueryResultList<M>>() {
+                @Override
+                protected S3QueryResultList<M> compute() throws Exception {
+                    return asQueryResultList(mq.asIterator(components), limit);
                 }
-                Entity e = ite.next();
-                ModelMeta<M> mm = DatastoreUtil.getModelMeta(modelMeta, e);
-                M model = mm.entityToModel(e);
-                mm.postGet(model);
+            };
+        }
+        final QueryResultIterator<Entity> ite = asQueryResultEntityIterator();
+        return new LazyFuture<S3QueryResultList<M>>() {
+            @Override
+            protected S3QueryResultList<M> compute() throws Exception {
+                return asQueryResultList(ite, limit);
+            }
+        };
+    }
+
+    /**
+     * Validates the criteria for a query result list.
+     * 
+     * @throws IllegalStateException
+     *             if in-memory sorts are specified or if the in-memory limit
+     *             is specified
+     */
+    protected void validateForQueryResultList() throws IllegalStateException {
+        if (inMemoryLimit != null) {
+            throw new IllegalStateException(
+                "In case of asQueryResultList(), you cannot specify limitInMemory().");
+        }
+        if (inMemorySortCriteria.size() > 0) {
+            throw new IllegalStateException(
+                "In case of asQueryResultList(), you cannot specify sortInMemory().");
+        }
+    }
+
+    /**
+     * Returns a query result list reading the iterator.
+     * 
+     * @param ite
+     *            the query result iterator
+     * @param limit
+     *            the limit of the scanned entities, or null if no limit is
+     *            specified
+     * @return a query result list
+     */
+    protected S3QueryResultList<M> asQueryResultList(
+            QueryResultIterator<Entity> ite, Integer limit) {
+        List<M> modelList = new ArrayList<M>();
+        boolean hasNext = false;
+        Cursor cursor = null;
+        int scanned = 0;
+        while (true) {
+            hasNext = ite.hasNext();
+            if (!hasNext || (limit != null && scanned == limit)) {
+                cursor = ite.getCursor();
+                break;
+            }
+            Entity e = ite.next();
+            scanned++;
+            ModelMeta<M> mm = DatastoreUtil.getModelMeta(modelMeta, e);
+            M model = mm.entityToModel(e);
+            mm.postGet(model);
+            if (DatastoreUtil.accept(model, inMemoryFilterCriteria)) {
                 modelList.add(model);
             }
         }
@@ -294,7 +680,60 @@ public class ModelQuery<M> extends AbstractQuery<ModelQuery<M>> {
     }
 
     /**
-     * Returns a query result iterator.
+     * Returns a query result list merged by {@link MultiQuery}.
+     * 
+     * @param multiQuery
+     *            the {@link MultiQuery}
+     * @return a query result list
+     */
+    protected S3QueryResultList<M> asQueryResultList(MultiQuery multiQuery) {
+        Integer limit = fetchOptions.getLimit();
+        if (limit != null) {
+            fetchOptions.limit(limit + 1);
+        }
+        return asQueryResultList(multiQuery.asIterator(), limit);
+    }
+
+    /**
+     * Returns a query result list reading the iterator of {@link MultiQuery}.
+     * 
+     * @param ite
+     *            the iterator of {@link MultiQuery}
+     * @param limit
+     *            the limit of the scanned entities, or null if no limit is
+     *            specified
+     * @return a query result list
+     */
+    protected S3QueryResultList<M> asQueryResultList(
+            MultiQuery.MultiQueryIterator ite, Integer limit) {
+        List<M> modelList = new ArrayList<M>();
+        boolean hasNext = false;
+        int scanned = 0;
+        while (true) {
+            hasNext = ite.hasNext();
+            if (!hasNext || (limit != null && scanned == limit)) {
+                break;
+            }
+            Entity e = ite.next();
+            scanned++;
+            ModelMeta<M> mm = DatastoreUtil.getModelMeta(modelMeta, e);
+            M model = mm.entityToModel(e);
+            mm.postGet(model);
+            if (DatastoreUtil.accept(model, inMemoryFilterCriteria)) {
+                modelList.add(model);
+            }
+        }
+        return new S3QueryResultList<M>(
+            modelList,
+            ite.getEncodedCursor(),
+            getEncodedFilter(),
+            getEncodedSorts(),
+            hasNext);
+    }
+
+    /**
+     * Returns a query result iterator. If in-memory filters are specified, the
+     * models are filtered one by one while iterating.
      * 
      * @return a query result iterator
      */
@@ -304,7 +743,8 @@ public class ModelQuery<M> extends AbstractQuery<ModelQuery<M>> {
             iterator,
             modelMeta,
             getEncodedFilter(),
-            getEncodedSorts());
+            getEncodedSorts(),
+            inMemoryFilterCriteria);
     }
 
     /**
@@ -336,6 +776,31 @@ public class ModelQuery<M> extends AbstractQuery<ModelQuery<M>> {
         return list.get(0);
     }
 
+    /**
+     * Returns the single result asynchronously. {@link Future#get()} returns
+     * null if no entities match.
+     * 
+     * @return the single result represented as {@link Future}
+     * @see #asListAsync()
+     * @since 1.0.16
+     */
+    public Future<M> asSingleAsync() {
+        final Future<List<M>> future = asListAsync();
+        return new LazyFuture<M>() {
+            @Override
+            protected M compute() throws Exception {
+                List<M> list = FutureUtil.getQuietly(future);
+                if (list.size() == 0) {
+                    return null;
+                }
+                if (list.size() > 1) {
+                    throw new PreparedQuery.TooManyResultsException();
+                }
+                return list.get(0);
+            }
+        };
+    }
+
     /**
      * Returns a list of keys.
      * 
@@ -371,43 +836,37 @@ public class ModelQuery<M> extends AbstractQuery<ModelQuery<M>> {
     }
 
     /**
-     * Returns the result as an {@link Iterator}.
+     * Returns the result as an {@link Iterator}. If in-memory filters are
+     * specified, the models are filtered one by one while iterating.
      * 
      * @return the result as an {@link Iterator}
      * @throws IllegalStateException
-     *             if in-memory filers are specified or if in-memory sorts are
-     *             specified
+     *             if in-memory sorts are specified without the in-memory limit
      */
     public Iterator<M> asIterator() throws IllegalStateException {
-        if (inMemoryFilterCriteria.size() > 0) {
+        if (inMemorySortCriteria.size() > 0 && inMemoryLimit == null) {
             throw new IllegalStateException(
-                "In case of asIterator(), you cannot specify filterInMemory().");
+                "In case of asIterator(), you cannot specify sortInMemory() without limitInMemory().");
         }
+        applyPolyModelFilter();
         if (inMemorySortCriteria.size() > 0) {
-            throw new IllegalStateException(
-                "In case of asIterator(), you cannot specify sortInMemory().");
+            return asListInMemory().iterator();
         }
-        applyPolyModelFilter();
-        Iterator<Entity> entityIterator = asEntityIterator();
-        return new ModelIterator<M>(entityIterator, modelMeta);
+        return createModelIterator(inMemoryLimit);
     }
 
     /**
-     * Returns the result as an {@link Iterable}.
+     * Returns the result as an {@link Iterable}. If in-memory filters are
+     * specified, the models are filtered one by one while iterating.
      * 
      * @return the result as an {@link Iterable}
      * @throws IllegalStateException
-     *             if in-memory filers are specified or if in-memory sorts are
-     *             specified
+     *             if in-memory sorts are specified without the in-memory limit
      */
     public Iterable<M> asIterable() throws IllegalStateException {
-        if (inMemoryFilterCriteria.size() > 0) {
-            throw new IllegalStateException(
-                "In case of asIterable(), you cannot specify filterInMemory().");
-        }
-        if (inMemorySortCriteria.size() > 0) {
+        if (inMemorySortCriteria.size() > 0 && inMemoryLimit == null) {
             throw new IllegalStateException(
-                "In case of asIterable(), you cannot specify sortInMemory().");
+                "In case of asIterable(), you cannot specify sortInMemory() without limitInMemory().");
         }
         return new ModelIterable<M>(asIterator());
     }
@@ -493,12 +952,194 @@ public class ModelQuery<M> extends AbstractQuery<ModelQuery<M>> {
     public int count() {
         inMemorySortCriteria.clear();
         applyPolyModelFilter();
-        if (inMemoryFilterCriteria.size() > 0) {
-            return asList().size();
+        if (inMemoryFilterCriteria.size() > 0 || inMemoryLimit != null) {
+            Iterator<M> ite = createModelIterator(inMemoryLimit);
+            int count = 0;
+            while (ite.hasNext()) {
+                ite.next();
+                count++;
+            }
+            return count;
         }
         return super.count();
     }
 
+    /**
+     * Returns a number of entities asynchronously.
+     * 
+     * @return a number of entities represented as {@link Future}
+     * @since 1.0.16
+     */
+    @Override
+    public Future<Integer> countAsync() {
+        inMemorySortCriteria.clear();
+        if (inMemoryFilterCriteria.size() > 0 || inMemoryLimit != null) {
+            final Future<List<M>> future = asListAsync();
+            return new LazyFuture<Integer>() {
+                @Override
+                protected Integer compute() throws Exception {
+                    return FutureUtil.getQuietly(future).size();
+                }
+            };
+        }
+        applyPolyModelFilter();
+        return super.countAsync();
+    }
+
+    /**
+     * Restricts this query to the keys from the start key (inclusive) to the
+     * end key (exclusive), sorted by key.
+     * 
+     * @param startKey
+     *            the start key, or null if the range has no lower bound
+     * @param endKey
+     *            the end key, or null if the range has no upper bound
+     * @return this instance
+     * @since 1.0.16
+     */
+    public ModelQuery<M> range(Key startKey, Key endKey) {
+        if (startKey != null) {
+            filter(new Query.FilterPredicate(
+                Entity.KEY_RESERVED_PROPERTY,
+                FilterOperator.GREATER_THAN_OR_EQUAL,
+                startKey));
+        }
+        if (endKey != null) {
+            filter(new Query.FilterPredicate(
+                Entity.KEY_RESERVED_PROPERTY,
+                FilterOperator.LESS_THAN,
+                endKey));
+        }
+        sort(Entity.KEY_RESERVED_PROPERTY);
+        return this;
+    }
+
+    /**
+     * Returns the keys that split the kind into the key ranges of about the
+     * same size. The keys are chosen from the keys sampled by
+     * {@link #SCATTER_PROPERTY}, so the result has at most n - 1 keys and is
+     * empty if no entities are sampled.
+     * 
+     * @param n
+     *            the number of the ranges
+     * @return the split keys sorted by key
+     * @throws IllegalArgumentException
+     *             if the n parameter is less than 1
+     * @throws IllegalStateException
+     *             if filters, sorts or an ancestor key are specified
+     * @since 1.0.16
+     */
+    public List<Key> splitKeys(int n) throws IllegalArgumentException,
+            IllegalStateException {
+        if (n < 1) {
+            throw new IllegalArgumentException("The n parameter("
+                + n
+                + ") must be greater than 0.");
+        }
+        assertSplittable();
+        List<Key> splitKeys = new ArrayList<Key>();
+        if (n == 1) {
+            return splitKeys;
+        }
+        List<Key> samples = sampleKeys(n * OVERSAMPLING_FACTOR);
+        Collections.sort(samples);
+        for (int i = 1; i < n && samples.size() > 0; i++) {
+            Key key = samples.get(i * samples.size() / n);
+            if (splitKeys.isEmpty()
+                || !splitKeys.get(splitKeys.size() - 1).equals(key)) {
+                splitKeys.add(key);
+            }
+        }
+        return splitKeys;
+    }
+
+    /**
+     * Returns the keys sampled by {@link #SCATTER_PROPERTY}.
+     * 
+     * @param limit
+     *            the maximum number of the keys
+     * @return the sampled keys
+     * @since 1.0.16
+     */
+    protected List<Key> sampleKeys(int limit) {
+        Query q = new Query(modelMeta.getKind());
+        q.addSort(SCATTER_PROPERTY);
+        q.setKeysOnly();
+        List<Key> samples = new ArrayList<Key>();
+        for (Entity e : ds.prepare(q).asIterable(
+            FetchOptions.Builder.withLimit(limit))) {
+            samples.add(e.getKey());
+        }
+        return samples;
+    }
+
+    /**
+     * Splits this query into at most n queries over the key ranges of about
+     * the same size. The in-memory filters are copied to the queries.
+     * 
+     * @param n
+     *            the number of the ranges
+     * @return the queries over the key ranges
+     * @throws IllegalArgumentException
+     *             if the n parameter is less than 1
+     * @throws IllegalStateException
+     *             if filters, sorts or an ancestor key are specified
+     * @see #splitKeys(int)
+     * @see ParallelScan
+     * @since 1.0.16
+     */
+    public List<ModelQuery<M>> split(int n) throws IllegalArgumentException,
+            IllegalStateException {
+        List<Key> splitKeys = splitKeys(n);
+        List<ModelQuery<M>> queries =
+            new ArrayList<ModelQuery<M>>(splitKeys.size() + 1);
+        for (int i = 0; i <= splitKeys.size(); i++) {
+            queries.add(createRangeQuery(i > 0 ? splitKeys.get(i - 1) : null, i
+                < splitKeys.size() ? splitKeys.get(i) : null));
+        }
+        return queries;
+    }
+
+    /**
+     * Asserts that this query can be split into the key ranges. The filters,
+     * the sorts and the ancestor key are not copied to the queries over the
+     * key ranges, so they must not be specified.
+     * 
+     * @throws IllegalStateException
+     *             if filters, sorts or an ancestor key are specified
+     * @since 1.0.16
+     */
+    protected void assertSplittable() throws IllegalStateException {
+        if (filters.size() > 0
+            || query.getSortPredicates().size() > 0
+            || query.getAncestor() != null) {
+            throw new IllegalStateException(
+                "In case of split(), you cannot specify filter(), sort() or an ancestor key.");
+        }
+    }
+
+    /**
+     * Creates a query over the key range copying the in-memory filters and
+     * the fetch sizes of this query.
+     * 
+     * @param startKey
+     *            the start key, or null if the range has no lower bound
+     * @param endKey
+     *            the end key, or null if the range has no upper bound
+     * @return a query over the key range
+     */
+    protected ModelQuery<M> createRangeQuery(Key startKey, Key endKey) {
+        ModelQuery<M> q = new ModelQuery<M>(ds, modelMeta);
+        q.inMemoryFilterCriteria.addAll(inMemoryFilterCriteria);
+        if (fetchOptions.getChunkSize() != null) {
+            q.fetchOptions.chunkSize(fetchOptions.getChunkSize());
+        }
+        if (fetchOptions.getPrefetchSize() != null) {
+            q.fetchOptions.prefetchSize(fetchOptions.getPrefetchSize());
+        }
+        return q.range(startKey, endKey);
+    }
+
     /**
      * Applies the criteria.
      * 
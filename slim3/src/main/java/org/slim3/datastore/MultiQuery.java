@@ -0,0 +1,709 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Projection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilter;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.Query.SortPredicate;
+import com.google.appengine.api.datastore.QueryResultIterator;
+
+/**
+ * A query that splits "in" and "or" filters into component queries, runs
+ * them concurrently and merges the results by the sort orders.
+ * 
+ * <p>
+ * The component queries are started at once on the asynchronous datastore
+ * service. The results are merged by the sort orders and then by the key, and
+ * an entity that matches more than one component query is returned only
+ * once. The limit is pushed down to each component query as offset + limit.
+ * The cursor of the merged results consists of the cursors of the component
+ * queries and begins with {@link #CURSOR_PREFIX}.
+ * </p>
+ * 
+ * @since 1.0.16
+ * 
+ */
+public class MultiQuery {
+
+    /**
+     * The maximum number of the component queries.
+     */
+    public static final int MAX_QUERIES = 30;
+
+    /**
+     * The prefix of the encoded cursor.
+     */
+    public static final String CURSOR_PREFIX = "m:";
+
+    /**
+     * The separator of the cursors of the component queries.
+     */
+    protected static final String CURSOR_SEPARATOR = ",";
+
+    /**
+     * The query that has the settings.
+     */
+    protected AbstractQuery<?> query;
+
+    /**
+     * The filters of the component queries.
+     */
+    protected List<List<Query.Filter>> componentFilters;
+
+    /**
+     * Constructor.
+     * 
+     * @param query
+     *            the query that has the settings
+     * @param componentFilters
+     *            the filters of the component queries
+     * @throws NullPointerException
+     *             if the query parameter is null or if the componentFilters
+     *             parameter is null
+     */
+    public MultiQuery(AbstractQuery<?> query,
+            List<List<Query.Filter>> componentFilters)
+            throws NullPointerException {
+        if (query == null) {
+            throw new NullPointerException(
+                "The query parameter must not be null.");
+        }
+        if (componentFilters == null) {
+            throw new NullPointerException(
+                "The componentFilters parameter must not be null.");
+        }
+        this.query = query;
+        this.componentFilters = componentFilters;
+    }
+
+    /**
+     * Splits the filters that are joined by "and" into the filters of the
+     * component queries.
+     * 
+     * @param filters
+     *            the filters
+     * @return the filters of the component queries
+     * @throws NullPointerException
+     *             if the filters parameter is null
+     * @throws IllegalArgumentException
+     *             if the number of the component queries exceeds
+     *             {@link #MAX_QUERIES}
+     */
+    public static List<List<Query.Filter>> split(List<Query.Filter> filters)
+            throws NullPointerException, IllegalArgumentException {
+        if (filters == null) {
+            throw new NullPointerException(
+                "The filters parameter must not be null.");
+        }
+        List<List<Query.Filter>> ret = new ArrayList<List<Query.Filter>>();
+        ret.add(new ArrayList<Query.Filter>());
+        for (Query.Filter f : filters) {
+            ret = and(ret, split(f));
+        }
+        return ret;
+    }
+
+    /**
+     * Splits the filter into the filters of the component queries.
+     * 
+     * @param filter
+     *            the filter
+     * @return the filters of the component queries
+     * @throws IllegalArgumentException
+     *             if the number of the component queries exceeds
+     *             {@link #MAX_QUERIES}
+     */
+    protected static List<List<Query.Filter>> split(Query.Filter filter)
+            throws IllegalArgumentException {
+        List<List<Query.Filter>> ret = new ArrayList<List<Query.Filter>>();
+        if (filter instanceof FilterPredicate
+            && ((FilterPredicate) filter).getOperator() == FilterOperator.IN) {
+            FilterPredicate fp = (FilterPredicate) filter;
+            for (Object value : (Collection<?>) fp.getValue()) {
+                List<Query.Filter> list = new ArrayList<Query.Filter>(1);
+                list.add(new FilterPredicate(
+                    fp.getPropertyName(),
+                    FilterOperator.EQUAL,
+                    value));
+                ret.add(list);
+            }
+        } else if (filter instanceof CompositeFilter) {
+            CompositeFilter cf = (CompositeFilter) filter;
+            if (cf.getOperator() == CompositeFilterOperator.OR) {
+                for (Query.Filter f : cf.getSubFilters()) {
+                    ret.addAll(split(f));
+                }
+            } else {
+                ret.add(new ArrayList<Query.Filter>());
+                for (Query.Filter f : cf.getSubFilters()) {
+                    ret = and(ret, split(f));
+                }
+            }
+        } else {
+            List<Query.Filter> list = new ArrayList<Query.Filter>(1);
+            list.add(filter);
+            ret.add(list);
+        }
+        validateSize(ret.size());
+        return ret;
+    }
+
+    /**
+     * Joins the filters of the component queries by "and".
+     * 
+     * @param filters1
+     *            the filters of the component queries
+     * @param filters2
+     *            the filters of the component queries
+     * @return the joined filters
+     * @throws IllegalArgumentException
+     *             if the number of the component queries exceeds
+     *             {@link #MAX_QUERIES}
+     */
+    protected static List<List<Query.Filter>> and(
+            List<List<Query.Filter>> filters1,
+            List<List<Query.Filter>> filters2) throws IllegalArgumentException {
+        validateSize(filters1.size() * filters2.size());
+        List<List<Query.Filter>> ret =
+            new ArrayList<List<Query.Filter>>(filters1.size()
+                * filters2.size());
+        for (List<Query.Filter> f1 : filters1) {
+            for (List<Query.Filter> f2 : filters2) {
+                List<Query.Filter> list =
+                    new ArrayList<Query.Filter>(f1.size() + f2.size());
+                list.addAll(f1);
+                list.addAll(f2);
+                ret.add(list);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Validates the number of the component queries.
+     * 
+     * @param size
+     *            the number of the component queries
+     * @throws IllegalArgumentException
+     *             if the number of the component queries exceeds
+     *             {@link #MAX_QUERIES}
+     */
+    protected static void validateSize(int size)
+            throws IllegalArgumentException {
+        if (size > MAX_QUERIES) {
+            throw new IllegalArgumentException("The number("
+                + size
+                + ") of the component queries exceeds "
+                + MAX_QUERIES
+                + ".");
+        }
+    }
+
+    /**
+     * Returns the number of the component queries.
+     * 
+     * @return the number of the component queries
+     */
+    public int getQueryCount() {
+        return componentFilters.size();
+    }
+
+    /**
+     * Returns the merged results as a list.
+     * 
+     * @return the merged results as a list
+     */
+    public List<Entity> asList() {
+        List<Entity> ret = new ArrayList<Entity>();
+        for (Iterator<Entity> ite = asIterator(); ite.hasNext();) {
+            ret.add(ite.next());
+        }
+        return ret;
+    }
+
+    /**
+     * Starts the component queries and returns an iterator that merges the
+     * results.
+     * 
+     * @return an iterator that merges the results
+     * @throws IllegalArgumentException
+     *             if the encoded start cursor does not match the component
+     *             queries
+     */
+    public MultiQueryIterator asIterator() throws IllegalArgumentException {
+        return asIterator(startComponents());
+    }
+
+    /**
+     * Starts the component queries without waiting for their results.
+     * 
+     * @return the component queries
+     * @throws IllegalArgumentException
+     *             if the encoded start cursor does not match the component
+     *             queries
+     */
+    protected Component[] startComponents() throws IllegalArgumentException {
+        String[] startCursors = decodeCursor(query.encodedMultiQueryCursor);
+        FetchOptions fo = query.fetchOptions;
+        Integer offset = fo.getOffset();
+        Integer limit = fo.getLimit();
+        Component[] components = new Component[componentFilters.size()];
+        for (int i = 0; i < components.length; i++) {
+            FetchOptions options = FetchOptions.Builder.withDefaults();
+            if (limit != null) {
+                options.limit((offset != null ? offset : 0) + limit);
+            }
+            if (fo.getChunkSize() != null) {
+                options.chunkSize(fo.getChunkSize());
+            }
+            if (fo.getPrefetchSize() != null) {
+                options.prefetchSize(fo.getPrefetchSize());
+            }
+            Cursor startCursor = null;
+            if (startCursors != null && startCursors[i].length() > 0) {
+                startCursor = Cursor.fromWebSafeString(startCursors[i]);
+                options.startCursor(startCursor);
+            }
+            PreparedQuery pq =
+                query.txSet ? query.ds.prepare(
+                    query.tx,
+                    createQuery(componentFilters.get(i))) : query.ds
+                    .prepare(createQuery(componentFilters.get(i)));
+            components[i] =
+                new Component(pq.asQueryResultIterator(options), startCursor);
+        }
+        return components;
+    }
+
+    /**
+     * Returns an iterator that merges the results of the started component
+     * queries.
+     * 
+     * @param components
+     *            the started component queries
+     * @return an iterator that merges the results
+     */
+    protected MultiQueryIterator asIterator(Component[] components) {
+        FetchOptions fo = query.fetchOptions;
+        Integer offset = fo.getOffset();
+        Integer limit = fo.getLimit();
+        return new MultiQueryIterator(
+            components,
+            query.query.getSortPredicates(),
+            offset != null ? offset : 0,
+            limit);
+    }
+
+    /**
+     * Creates a component query.
+     * 
+     * @param filters
+     *            the filters joined by "and"
+     * @return a component query
+     */
+    protected Query createQuery(List<Query.Filter> filters) {
+        Query q = new Query(query.query.getKind(), query.query.getAncestor());
+        for (SortPredicate sp : query.query.getSortPredicates()) {
+            q.addSort(sp.getPropertyName(), sp.getDirection());
+        }
+        for (Projection p : query.query.getProjections()) {
+            q.addProjection(p);
+        }
+        if (query.query.isKeysOnly()) {
+            q.setKeysOnly();
+        }
+        if (filters.size() == 1) {
+            q.setFilter(filters.get(0));
+        } else if (filters.size() > 1) {
+            q.setFilter(new CompositeFilter(
+                CompositeFilterOperator.AND,
+                filters));
+        }
+        return q;
+    }
+
+    /**
+     * Decodes the cursor.
+     * 
+     * @param encodedCursor
+     *            the encoded cursor
+     * @return the cursors of the component queries
+     * @throws IllegalArgumentException
+     *             if the encoded cursor does not match the component queries
+     */
+    protected String[] decodeCursor(String encodedCursor)
+            throws IllegalArgumentException {
+        if (encodedCursor == null) {
+            return null;
+        }
+        String[] cursors =
+            encodedCursor.substring(CURSOR_PREFIX.length()).split(
+                CURSOR_SEPARATOR,
+                -1);
+        if (cursors.length != componentFilters.size()) {
+            throw new IllegalArgumentException("The encoded cursor("
+                + encodedCursor
+                + ") does not match the "
+                + componentFilters.size()
+                + " component queries.");
+        }
+        return cursors;
+    }
+
+    /**
+     * The state of a component query.
+     */
+    protected static class Component {
+
+        /**
+         * The result iterator.
+         */
+        protected QueryResultIterator<Entity> iterator;
+
+        /**
+         * The cursor before {@link #head}.
+         */
+        protected Cursor cursor;
+
+        /**
+         * The entity that is not returned yet.
+         */
+        protected Entity head;
+
+        /**
+         * Constructor.
+         * 
+         * @param iterator
+         *            the result iterator
+         * @param startCursor
+         *            the start cursor
+         */
+        protected Component(QueryResultIterator<Entity> iterator,
+                Cursor startCursor) {
+            this.iterator = iterator;
+            cursor = startCursor;
+        }
+
+        /**
+         * Moves to the next entity.
+         * 
+         * @return whether the next entity exists
+         */
+        protected boolean advance() {
+            Cursor c = iterator.getCursor();
+            if (c != null) {
+                cursor = c;
+            }
+            head = iterator.hasNext() ? iterator.next() : null;
+            return head != null;
+        }
+    }
+
+    /**
+     * An {@link Iterator} that merges the results of the component queries.
+     * 
+     */
+    public static class MultiQueryIterator implements Iterator<Entity> {
+
+        /**
+         * The component queries.
+         */
+        protected Component[] components;
+
+        /**
+         * The component queries ordered by their next entities.
+         */
+        protected PriorityQueue<Component> queue;
+
+        /**
+         * The keys of the returned entities.
+         */
+        protected Set<Key> keys = new HashSet<Key>();
+
+        /**
+         * The number of the entities to skip.
+         */
+        protected int offset;
+
+        /**
+         * The number of the remaining entities, or null if no limit is
+         * specified.
+         */
+        protected Integer remaining;
+
+        /**
+         * The next entity.
+         */
+        protected Entity next;
+
+        /**
+         * The cursors of the component queries before {@link #next}.
+         */
+        protected Cursor[] cursorsBeforeNext;
+
+        /**
+         * Constructor.
+         * 
+         * @param components
+         *            the component queries
+         * @param sortPredicates
+         *            the sort orders
+         * @param offset
+         *            the number of the entities to skip
+         * @param limit
+         *            the maximum number of the entities, or null if no limit
+         *            is specified
+         */
+        protected MultiQueryIterator(Component[] components,
+                List<SortPredicate> sortPredicates, int offset, Integer limit) {
+            this.components = components;
+            this.offset = offset;
+            remaining = limit;
+            queue =
+                new PriorityQueue<Component>(
+                    Math.max(components.length, 1),
+                    new ComponentComparator(sortPredicates));
+            for (Component c : components) {
+                if (c.advance()) {
+                    queue.add(c);
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (remaining != null && remaining <= 0) {
+                return false;
+            }
+            while (!queue.isEmpty()) {
+                Cursor[] cursors = getCursors();
+                Component c = queue.poll();
+                Entity entity = c.head;
+                if (c.advance()) {
+                    queue.add(c);
+                }
+                while (!queue.isEmpty()
+                    && queue.peek().head.getKey().equals(entity.getKey())) {
+                    Component duplicate = queue.poll();
+                    if (duplicate.advance()) {
+                        queue.add(duplicate);
+                    }
+                }
+                if (!keys.add(entity.getKey())) {
+                    continue;
+                }
+                if (offset > 0) {
+                    offset--;
+                    continue;
+                }
+                if (remaining != null) {
+                    remaining--;
+                }
+                next = entity;
+                cursorsBeforeNext = cursors;
+                return true;
+            }
+            return false;
+        }
+
+        public Entity next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entity ret = next;
+            next = null;
+            cursorsBeforeNext = null;
+            return ret;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Returns the encoded cursor that points to the position after the
+         * entity returned last.
+         * 
+         * @return the encoded cursor
+         */
+        public String getEncodedCursor() {
+            Cursor[] cursors =
+                cursorsBeforeNext != null ? cursorsBeforeNext : getCursors();
+            StringBuilder sb = new StringBuilder(CURSOR_PREFIX);
+            for (int i = 0; i < cursors.length; i++) {
+                if (i > 0) {
+                    sb.append(CURSOR_SEPARATOR);
+                }
+                if (cursors[i] != null) {
+                    sb.append(cursors[i].toWebSafeString());
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Returns the cursors of the component queries.
+         * 
+         * @return the cursors of the component queries
+         */
+        protected Cursor[] getCursors() {
+            Cursor[] cursors = new Cursor[components.length];
+            for (int i = 0; i < components.length; i++) {
+                cursors[i] = components[i].cursor;
+            }
+            return cursors;
+        }
+    }
+
+    /**
+     * A {@link Comparator} that orders the component queries by their next
+     * entities.
+     * 
+     */
+    protected static class ComponentComparator implements
+            Comparator<Component> {
+
+        /**
+         * The sort orders.
+         */
+        protected List<SortPredicate> sortPredicates;
+
+        /**
+         * Constructor.
+         * 
+         * @param sortPredicates
+         *            the sort orders
+         */
+        protected ComponentComparator(List<SortPredicate> sortPredicates) {
+            this.sortPredicates = sortPredicates;
+        }
+
+        public int compare(Component c1, Component c2) {
+            Entity e1 = c1.head;
+            Entity e2 = c2.head;
+            for (SortPredicate sp : sortPredicates) {
+                boolean asc = sp.getDirection() == SortDirection.ASCENDING;
+                int compared =
+                    compareValue(
+                        getValue(e1, sp.getPropertyName(), asc),
+                        getValue(e2, sp.getPropertyName(), asc));
+                if (compared != 0) {
+                    return asc ? compared : -compared;
+                }
+            }
+            return e1.getKey().compareTo(e2.getKey());
+        }
+
+        /**
+         * Returns the value used for sorting. The smallest value of a
+         * multi-valued property is used for ascending order and the largest
+         * one for descending order, as the datastore does.
+         * 
+         * @param entity
+         *            the entity
+         * @param propertyName
+         *            the property name
+         * @param asc
+         *            whether the order is ascending
+         * @return the value used for sorting
+         */
+        @SuppressWarnings("unchecked")
+        protected Object getValue(Entity entity, String propertyName,
+                boolean asc) {
+            if (Entity.KEY_RESERVED_PROPERTY.equals(propertyName)) {
+                return entity.getKey();
+            }
+            Object value = entity.getProperty(propertyName);
+            if (value instanceof Collection<?>) {
+                Collection<Object> c = (Collection<Object>) value;
+                if (c.isEmpty()) {
+                    return null;
+                }
+                Comparator<Object> comparator = new Comparator<Object>() {
+                    public int compare(Object o1, Object o2) {
+                        return compareValue(o1, o2);
+                    }
+                };
+                return asc ? Collections.min(c, comparator) : Collections.max(
+                    c,
+                    comparator);
+            }
+            return value;
+        }
+
+        /**
+         * Compares the values.
+         * 
+         * @param v1
+         *            the value
+         * @param v2
+         *            the compared value
+         * @return the compared result
+         */
+        @SuppressWarnings("unchecked")
+        protected int compareValue(Object v1, Object v2) {
+            if (v1 == null && v2 == null) {
+                return 0;
+            }
+            if (v1 == null) {
+                return -1;
+            }
+            if (v2 == null) {
+                return 1;
+            }
+            if (v1 instanceof Number && v2 instanceof Number) {
+                if ((v1 instanceof Long || v1 instanceof Integer)
+                    && (v2 instanceof Long || v2 instanceof Integer)) {
+                    long l1 = ((Number) v1).longValue();
+                    long l2 = ((Number) v2).longValue();
+                    return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+                }
+                return Double.compare(
+                    ((Number) v1).doubleValue(),
+                    ((Number) v2).doubleValue());
+            }
+            if (v1.getClass() != v2.getClass()
+                || !(v1 instanceof Comparable<?>)) {
+                return v1.getClass().getName().compareTo(
+                    v2.getClass().getName());
+            }
+            return ((Comparable<Object>) v1).compareTo(v2);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2004-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.slim3.util.FutureUtil;
+
+import com.google.appengine.api.datastore.Key;
+
+/**
+ * A scan over the key ranges of a kind.
+ * 
+ * <p>
+ * The kind is split into the key ranges by {@link ModelQuery#splitKeys(int)},
+ * and the batches of the ranges are fetched by the asynchronous queries, so
+ * that up to {@link #parallelism(int)} ranges are fetched concurrently on the
+ * current thread. The cursor of each range is updated after all the models
+ * of a batch are handled, so you can resume the scan by
+ * {@link #cursors(String[])} with the cursors returned by
+ * {@link #getCursors()}. The models of the batch that was being handled when
+ * the scan stopped are handled again.
+ * </p>
+ * 
+ * @param <M>
+ *            the model type
+ * @since 1.0.16
+ * 
+ */
+public class ParallelScan<M> {
+
+    /**
+     * The default parallelism.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * The cursor that represents the finished range.
+     */
+    public static final String FINISHED = "!";
+
+    /**
+     * The query.
+     */
+    protected ModelQuery<M> query;
+
+    /**
+     * The split keys.
+     */
+    protected List<Key> splitKeys;
+
+    /**
+     * The number of the ranges fetched concurrently.
+     */
+    protected int parallelism = DEFAULT_PARALLELISM;
+
+    /**
+     * The number of the models fetched by one batch.
+     */
+    protected int batchSize = ModelQuery.DEFAULT_BATCH_SIZE;
+
+    /**
+     * The cursors of the ranges.
+     */
+    protected String[] cursors;
+
+    /**
+     * Constructor.
+     * 
+     * @param query
+     *            the query
+     * @param splitKeys
+     *            the split keys
+     * @throws NullPointerException
+     *             if the query parameter is null or if the splitKeys
+     *             parameter is null
+     * @throws IllegalStateException
+     *             if filters, sorts or an ancestor key are specified to the
+     *             query
+     * @see ModelQuery#splitKeys(int)
+     */
+    public ParallelScan(ModelQuery<M> query, List<Key> splitKeys)
+            throws NullPointerException, IllegalStateException {
+        if (query == null) {
+            throw new NullPointerException(
+                "The query parameter must not be null.");
+        }
+        if (splitKeys == null) {
+            throw new NullPointerException(
+                "The splitKeys parameter must not be null.");
+        }
+        query.assertSplittable();
+        this.query = query;
+        this.splitKeys = new ArrayList<Key>(splitKeys);
+        cursors = new String[splitKeys.size() + 1];
+    }
+
+    /**
+     * Specifies the number of the ranges fetched concurrently.
+     * 
+     * @param parallelism
+     *            the number of the ranges fetched concurrently
+     * @return this instance
+     * @throws IllegalArgumentException
+     *             if the parallelism parameter is less than 1
+     */
+    public ParallelScan<M> parallelism(int parallelism)
+            throws IllegalArgumentException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism parameter("
+                + parallelism
+                + ") must be greater than 0.");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Specifies the number of the models fetched by one batch.
+     * 
+     * @param batchSize
+     *            the number of the models fetched by one batch
+     * @return this instance
+     * @throws IllegalArgumentException
+     *             if the batchSize parameter is less than 1
+     */
+    public ParallelScan<M> batchSize(int batchSize)
+            throws IllegalArgumentException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batchSize parameter("
+                + batchSize
+                + ") must be greater than 0.");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Specifies the cursors to resume the scan.
+     * 
+     * @param cursors
+     *            the cursors returned by {@link #getCursors()}
+     * @return this instance
+     * @throws NullPointerException
+     *             if the cursors parameter is null
+     * @throws IllegalArgumentException
+     *             if the number of the cursors is different from the number
+     *             of the ranges
+     */
+    public ParallelScan<M> cursors(String... cursors)
+            throws NullPointerException, IllegalArgumentException {
+        if (cursors == null) {
+            throw new NullPointerException(
+                "The cursors parameter must not be null.");
+        }
+        if (cursors.length != this.cursors.length) {
+            throw new IllegalArgumentException("The number of the cursors("
+                + cursors.length
+                + ") must be "
+                + this.cursors.length
+                + ".");
+        }
+        System.arraycopy(cursors, 0, this.cursors, 0, cursors.length);
+        return this;
+    }
+
+    /**
+     * Returns the cursors of the ranges. The cursor of the range that is not
+     * started is null, and the cursor of the finished range is
+     * {@link #FINISHED}.
+     * 
+     * @return the cursors of the ranges
+     */
+    public String[] getCursors() {
+        return cursors.clone();
+    }
+
+    /**
+     * Returns the number of the ranges.
+     * 
+     * @return the number of the ranges
+     */
+    public int getRangeCount() {
+        return cursors.length;
+    }
+
+    /**
+     * Determines if all the ranges are finished.
+     * 
+     * @return whether all the ranges are finished
+     */
+    public boolean isFinished() {
+        for (String c : cursors) {
+            if (!FINISHED.equals(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans the ranges and passes the models to the handler.
+     * 
+     * @param handler
+     *            the handler
+     * @return the number of the handled models
+     * @throws NullPointerException
+     *             if the handler parameter is null
+     */
+    public int run(Handler<M> handler) throws NullPointerException {
+        if (handler == null) {
+            throw new NullPointerException(
+                "The handler parameter must not be null.");
+        }
+        LinkedList<Integer> pending = new LinkedList<Integer>();
+        for (int i = 0; i < cursors.length; i++) {
+            if (!FINISHED.equals(cursors[i])) {
+                pending.add(i);
+            }
+        }
+        LinkedList<Batch> running = new LinkedList<Batch>();
+        while (running.size() < parallelism && !pending.isEmpty()) {
+            running.add(startBatch(pending.removeFirst()));
+        }
+        int count = 0;
+        while (!running.isEmpty()) {
+            Batch batch = running.removeFirst();
+            S3QueryResultList<M> list = FutureUtil.getQuietly(batch.future);
+            Batch next = null;
+            if (list.hasNext() && list.getEncodedCursor() != null) {
+                next = startBatch(batch.index, list.getEncodedCursor());
+            } else if (!pending.isEmpty()) {
+                running.add(startBatch(pending.removeFirst()));
+            }
+            for (M model : list) {
+                handler.handle(model);
+                count++;
+            }
+            if (next != null) {
+                cursors[batch.index] = list.getEncodedCursor();
+                running.add(next);
+            } else {
+                cursors[batch.index] = FINISHED;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Starts the batch of the range from the cursor of the range.
+     * 
+     * @param index
+     *            the index of the range
+     * @return the batch
+     */
+    protected Batch startBatch(int index) {
+        return startBatch(index, cursors[index]);
+    }
+
+    /**
+     * Starts the batch of the range.
+     * 
+     * @param index
+     *            the index of the range
+     * @param encodedCursor
+     *            the encoded cursor
+     * @return the batch
+     */
+    protected Batch startBatch(int index, String encodedCursor) {
+        ModelQuery<M> q =
+            query.createRangeQuery(
+                index > 0 ? splitKeys.get(index - 1) : null,
+                index < splitKeys.size() ? splitKeys.get(index) : null);
+        if (encodedCursor != null) {
+            q.encodedStartCursor(encodedCursor);
+        }
+        q.limit(batchSize);
+        return new Batch(index, q.asQueryResultListAsync());
+    }
+
+    /**
+     * A handler of the scanned models.
+     * 
+     * @param <M>
+     *            the model type
+     * 
+     */
+    public static interface Handler<M> {
+
+        /**
+         * Handles the model.
+         * 
+         * @param model
+         *            the model
+         */
+        void handle(M model);
+    }
+
+    /**
+     * A batch being fetched.
+     * 
+     */
+    protected class Batch {
+
+        /**
+         * The index of the range.
+         */
+        protected int index;
+
+        /**
+         * The future of the batch.
+         */
+        protected Future<S3QueryResultList<M>> future;
+
+        /**
+         * Constructor.
+         * 
+         * @param index
+         *            the index of the range
+         * @param future
+         *            the future of the batch
+         */
+        protected Batch(int index, Future<S3QueryResultList<M>> future) {
+            this.index = index;
+            this.future = future;
+        }
+    }
+}
@@ -16,7 +16,10 @@
 package org.slim3.datastore;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.QueryResultIterator;
 
@@ -41,6 +44,11 @@ public class S3QueryResultIterator<M> extends ModelIterator<M> implements
      */
     protected QueryResultIterator<Entity> delegate;
 
+    /**
+     * The cursor before the entity fetched last.
+     */
+    protected Cursor cursorBeforeNextEntity;
+
     /**
      * The encoded filter.
      */
@@ -65,18 +73,56 @@ public class S3QueryResultIterator<M> extends ModelIterator<M> implements
      */
     public S3QueryResultIterator(QueryResultIterator<Entity> delegate,
             ModelMeta<M> modelMeta, String encodedFilter, String encodedSorts) {
-        super(delegate, modelMeta);
+        this(
+            delegate,
+            modelMeta,
+            encodedFilter,
+            encodedSorts,
+            Collections.<InMemoryFilterCriterion> emptyList());
+    }
+
+    /**
+     * Constructor. The models are filtered one by one while iterating.
+     * 
+     * @param delegate
+     *            the delegate
+     * @param modelMeta
+     *            the meta data of the model
+     * @param encodedFilter
+     *            the encoded filter
+     * @param encodedSorts
+     *            the array of sorts
+     * @param inMemoryFilterCriteria
+     *            the in-memory filter criteria
+     * @since 1.0.16
+     */
+    public S3QueryResultIterator(QueryResultIterator<Entity> delegate,
+            ModelMeta<M> modelMeta, String encodedFilter, String encodedSorts,
+            List<? extends InMemoryFilterCriterion> inMemoryFilterCriteria) {
+        super(delegate, modelMeta, inMemoryFilterCriteria, null);
         this.delegate = delegate;
         this.encodedFilter = encodedFilter;
         this.encodedSorts = encodedSorts;
     }
 
+    @Override
+    protected Entity nextEntity() {
+        if (isFiltering()) {
+            cursorBeforeNextEntity = delegate.getCursor();
+        }
+        return super.nextEntity();
+    }
+
     /**
-     * Returns the encoded cursor.
+     * Returns the encoded cursor. If a model has been fetched ahead by the
+     * in-memory filter, the cursor points to the position before the model.
      * 
      * @return the encoded cursor
      */
     public String getEncodedCursor() {
+        if (nextModelFetched) {
+            return cursorBeforeNextEntity.toWebSafeString();
+        }
         return delegate.getCursor().toWebSafeString();
     }
 
@@ -38,13 +38,21 @@ public abstract class TxUow extends AbstractUow {
 
     @Override
     protected final void commit() {
-        tx.commit();
+        try {
+            tx.commit();
+        } finally {
+            MemcacheEntityCache.release(tx);
+        }
     }
 
     @Override
     protected final void rollback() {
-        if (tx.isActive()) {
-            tx.rollback();
+        try {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        } finally {
+            MemcacheEntityCache.release(tx);
         }
     }
 }
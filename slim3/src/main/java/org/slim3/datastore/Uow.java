@@ -15,9 +15,15 @@
  */
 package org.slim3.datastore;
 
+import java.io.Serializable;
 import java.util.ConcurrentModificationException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.google.appengine.api.taskqueue.DeferredTask;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+
 /**
  * Unit of Work template.
  * 
@@ -40,7 +46,8 @@ public final class Uow {
     private static final Logger logger = Logger.getLogger(Uow.class.getName());
 
     /**
-     * Runs the unit of work template.
+     * Runs the unit of work template. The unit of work is retried with
+     * exponential backoff and jitter.
      * 
      * @param uow
      *            the unit of work
@@ -52,11 +59,12 @@ public final class Uow {
      */
     @SuppressWarnings("unchecked")
     public static final <T> T run(AbstractUow uow) throws NullPointerException {
-        return (T) run(uow, DEFAULT_MAX_RETRIES, DEFAULT_SLEEP_TIME);
+        return (T) run(uow, new UowRetryPolicy());
     }
 
     /**
-     * Runs the unit of work template.
+     * Runs the unit of work template. The unit of work is retried with
+     * exponential backoff and jitter.
      * 
      * @param uow
      *            the unit of work
@@ -71,11 +79,12 @@ public final class Uow {
     @SuppressWarnings("unchecked")
     public static final <T> T run(AbstractUow uow, int maxRetries)
             throws NullPointerException {
-        return (T) run(uow, maxRetries, DEFAULT_SLEEP_TIME);
+        return (T) run(uow, new UowRetryPolicy().maxRetries(maxRetries));
     }
 
     /**
-     * Runs the unit of work template.
+     * Runs the unit of work template. The unit of work is retried after
+     * sleeping the same time.
      * 
      * @param uow
      *            the unit of work
@@ -92,36 +101,276 @@ public final class Uow {
     @SuppressWarnings("unchecked")
     public static final <T> T run(AbstractUow uow, int maxRetries,
             long sleepTime) throws NullPointerException {
+        return (T) run(uow, UowRetryPolicy.fixed(maxRetries, sleepTime));
+    }
+
+    /**
+     * Runs the unit of work template.
+     * 
+     * @param uow
+     *            the unit of work
+     * @param policy
+     *            the retry policy
+     * @param <T>
+     *            return type
+     * @return a result
+     * @throws NullPointerException
+     *             if the uow parameter is null or if the policy parameter is
+     *             null
+     * @since 1.0.16
+     */
+    @SuppressWarnings("unchecked")
+    public static final <T> T run(AbstractUow uow, UowRetryPolicy policy)
+            throws NullPointerException {
         if (uow == null) {
             throw new NullPointerException(
                 "The uow parameter must not be null.");
         }
-        int retries = 0;
-        T ret;
+        if (policy == null) {
+            throw new NullPointerException(
+                "The policy parameter must not be null.");
+        }
+        uow.resetCounters();
+        long startTime = System.currentTimeMillis();
         while (true) {
-            uow.beginTransaction();
             try {
-                ret = (T) uow.run();
-                uow.commit();
-                return ret;
+                return (T) runOnce(uow);
             } catch (ConcurrentModificationException e) {
-                if (retries < maxRetries) {
-                    retries++;
-                    logger.warning("Concurrent modification exception: "
-                        + e.getMessage());
-                    try {
-                        Thread.sleep(sleepTime);
-                    } catch (InterruptedException ignore) {
-                    }
-                    continue;
+                long sleepTime =
+                    getRetrySleepTime(uow, policy, e, startTime);
+                if (sleepTime < 0) {
+                    throw e;
                 }
+                logger.warning("Concurrent modification exception: "
+                    + e.getMessage());
+                uow.totalWaitTime += sleepTime;
+                try {
+                    Thread.sleep(sleepTime);
+                } catch (InterruptedException ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the unit of work template without blocking on retries. When the
+     * first attempt conflicts, the unit of work is serialized and retried by
+     * the default task queue after the sleep time of the policy instead of
+     * sleeping in the current request. The deferred task runs on
+     * "/_ah/queue/__deferred__", so the DeferredTaskServlet needs to be mapped
+     * to it in web.xml. When the policy does not allow more retries or the
+     * unit of work throws another exception, the deferred task gives up and
+     * logs it, so the retry settings of the task queue never run it again.
+     * {@link AbstractUow#isDeferred()} tells whether the unit of work was
+     * deferred.
+     * 
+     * @param uow
+     *            the unit of work that implements {@link Serializable}
+     * @param policy
+     *            the retry policy
+     * @param <T>
+     *            return type
+     * @return a result, or null if the unit of work is deferred
+     * @see AbstractUow#isDeferred()
+     * @throws NullPointerException
+     *             if the uow parameter is null or if the policy parameter is
+     *             null
+     * @throws IllegalArgumentException
+     *             if the uow parameter does not implement {@link Serializable}
+     * @since 1.0.16
+     */
+    @SuppressWarnings("unchecked")
+    public static final <T> T runOrDefer(AbstractUow uow,
+            UowRetryPolicy policy) throws NullPointerException,
+            IllegalArgumentException {
+        if (uow == null) {
+            throw new NullPointerException(
+                "The uow parameter must not be null.");
+        }
+        if (policy == null) {
+            throw new NullPointerException(
+                "The policy parameter must not be null.");
+        }
+        if (!(uow instanceof Serializable)) {
+            throw new IllegalArgumentException("The unit of work("
+                + uow.getClass().getName()
+                + ") does not implement java.io.Serializable.");
+        }
+        uow.resetCounters();
+        long startTime = System.currentTimeMillis();
+        try {
+            return (T) runOnce(uow);
+        } catch (ConcurrentModificationException e) {
+            long sleepTime = getRetrySleepTime(uow, policy, e, startTime);
+            if (sleepTime < 0) {
                 throw e;
-            } finally {
-                uow.rollback();
+            }
+            defer(new DeferredUow(uow, policy, startTime), sleepTime);
+            return null;
+        }
+    }
+
+    /**
+     * Runs the unit of work once.
+     * 
+     * @param uow
+     *            the unit of work
+     * @return a result
+     */
+    static Object runOnce(AbstractUow uow) {
+        uow.attempts++;
+        uow.beginTransaction();
+        try {
+            Object ret = uow.run();
+            uow.commit();
+            return ret;
+        } catch (ConcurrentModificationException e) {
+            uow.conflicts++;
+            throw e;
+        } finally {
+            uow.rollback();
+        }
+    }
+
+    /**
+     * Returns the sleep time before the next retry.
+     * 
+     * @param uow
+     *            the unit of work
+     * @param policy
+     *            the retry policy
+     * @param e
+     *            the concurrent modification exception
+     * @param startTime
+     *            the time when the first attempt started
+     * @return the sleep time, or -1 if the unit of work should not be retried
+     */
+    static long getRetrySleepTime(AbstractUow uow, UowRetryPolicy policy,
+            ConcurrentModificationException e, long startTime) {
+        int retries = uow.attempts - 1;
+        if (!policy.isRetryable(e, retries)) {
+            return -1;
+        }
+        long sleepTime = policy.getSleepTime(retries + 1);
+        long deadline = policy.getDeadline();
+        if (deadline > 0
+            && System.currentTimeMillis() - startTime + sleepTime > deadline) {
+            return -1;
+        }
+        return sleepTime;
+    }
+
+    /**
+     * Adds the deferred unit of work to the default task queue.
+     * 
+     * @param task
+     *            the deferred unit of work
+     * @param sleepTime
+     *            the sleep time
+     */
+    static void defer(DeferredUow task, long sleepTime) {
+        task.uow.deferred = true;
+        task.uow.totalWaitTime += sleepTime;
+        task.saveCounters();
+        QueueFactory.getDefaultQueue().add(
+            TaskOptions.Builder.withPayload(task).countdownMillis(sleepTime));
+    }
+
+    /**
+     * A deferred task to retry the unit of work.
+     * 
+     */
+    static class DeferredUow implements DeferredTask {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The unit of work.
+         */
+        protected AbstractUow uow;
+
+        /**
+         * The retry policy.
+         */
+        protected UowRetryPolicy policy;
+
+        /**
+         * The time when the first attempt started.
+         */
+        protected long startTime;
+
+        /**
+         * The number of the attempts.
+         */
+        protected int attempts;
+
+        /**
+         * The number of the conflicts.
+         */
+        protected int conflicts;
+
+        /**
+         * The total wait time.
+         */
+        protected long totalWaitTime;
+
+        /**
+         * Constructor.
+         * 
+         * @param uow
+         *            the unit of work
+         * @param policy
+         *            the retry policy
+         * @param startTime
+         *            the time when the first attempt started
+         */
+        DeferredUow(AbstractUow uow, UowRetryPolicy policy, long startTime) {
+            this.uow = uow;
+            this.policy = policy;
+            this.startTime = startTime;
+        }
+
+        /**
+         * Saves the counters of the unit of work, because
+         * {@link AbstractUow} is not serialized.
+         */
+        void saveCounters() {
+            attempts = uow.attempts;
+            conflicts = uow.conflicts;
+            totalWaitTime = uow.totalWaitTime;
+        }
+
+        public void run() {
+            uow.attempts = attempts;
+            uow.conflicts = conflicts;
+            uow.totalWaitTime = totalWaitTime;
+            try {
+                runOnce(uow);
+            } catch (ConcurrentModificationException e) {
+                long sleepTime = getRetrySleepTime(uow, policy, e, startTime);
+                if (sleepTime < 0) {
+                    logger.severe("The unit of work("
+                        + uow.getClass().getName()
+                        + ") gave up after "
+                        + uow.attempts
+                        + " attempts: "
+                        + e.getMessage());
+                    return;
+                }
+                logger.warning("Concurrent modification exception: "
+                    + e.getMessage());
+                defer(this, sleepTime);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "The unit of work("
+                    + uow.getClass().getName()
+                    + ") failed after "
+                    + uow.attempts
+                    + " attempts: "
+                    + e.getMessage(), e);
             }
         }
     }
 
     private Uow() {
     }
-}
\ No newline at end of file
+}
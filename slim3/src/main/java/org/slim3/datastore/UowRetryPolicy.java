@@ -0,0 +1,251 @@
+/*
+ * Copyright 2004-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import java.io.Serializable;
+import java.util.ConcurrentModificationException;
+import java.util.Random;
+
+/**
+ * A retry policy for Unit of Work.
+ * 
+ * <p>
+ * The sleep time before the n-th retry is initialSleepTime * 2^(n - 1), up to
+ * maxSleepTime. When jitter is enabled, the sleep time is randomized between
+ * the half of it and it, so that the units of work that conflicted at the
+ * same moment do not wake up at the same moment again. When the deadline is
+ * specified, the unit of work is not retried if the retry would exceed the
+ * deadline.
+ * </p>
+ * 
+ * <p>
+ * You can override {@link #isRetryable(ConcurrentModificationException, int)}
+ * and {@link #getSleepTime(int)} to customize the policy.
+ * </p>
+ * 
+ * @since 1.0.16
+ * 
+ */
+public class UowRetryPolicy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default initial sleep time.
+     */
+    public static final long DEFAULT_INITIAL_SLEEP_TIME = 50;
+
+    /**
+     * The default max sleep time.
+     */
+    public static final long DEFAULT_MAX_SLEEP_TIME = 1000;
+
+    private static final Random random = new Random();
+
+    /**
+     * The max retries.
+     */
+    protected int maxRetries = Uow.DEFAULT_MAX_RETRIES;
+
+    /**
+     * The initial sleep time in milliseconds.
+     */
+    protected long initialSleepTime = DEFAULT_INITIAL_SLEEP_TIME;
+
+    /**
+     * The max sleep time in milliseconds.
+     */
+    protected long maxSleepTime = DEFAULT_MAX_SLEEP_TIME;
+
+    /**
+     * The deadline in milliseconds. 0 means no deadline.
+     */
+    protected long deadline = 0;
+
+    /**
+     * Whether the sleep time is randomized.
+     */
+    protected boolean jitter = true;
+
+    /**
+     * Creates a policy that sleeps the same time before each retry.
+     * 
+     * @param maxRetries
+     *            the max retries
+     * @param sleepTime
+     *            the sleep time
+     * @return a policy
+     */
+    public static UowRetryPolicy fixed(int maxRetries, long sleepTime) {
+        return new UowRetryPolicy()
+            .maxRetries(maxRetries)
+            .initialSleepTime(sleepTime)
+            .maxSleepTime(sleepTime)
+            .jitter(false);
+    }
+
+    /**
+     * Constructor.
+     */
+    public UowRetryPolicy() {
+    }
+
+    /**
+     * Specifies the max retries.
+     * 
+     * @param maxRetries
+     *            the max retries
+     * @return this instance
+     * @throws IllegalArgumentException
+     *             if the maxRetries parameter is negative
+     */
+    public UowRetryPolicy maxRetries(int maxRetries)
+            throws IllegalArgumentException {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("The maxRetries parameter("
+                + maxRetries
+                + ") must not be negative.");
+        }
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Specifies the initial sleep time.
+     * 
+     * @param initialSleepTime
+     *            the initial sleep time in milliseconds
+     * @return this instance
+     * @throws IllegalArgumentException
+     *             if the initialSleepTime parameter is negative
+     */
+    public UowRetryPolicy initialSleepTime(long initialSleepTime)
+            throws IllegalArgumentException {
+        if (initialSleepTime < 0) {
+            throw new IllegalArgumentException(
+                "The initialSleepTime parameter("
+                    + initialSleepTime
+                    + ") must not be negative.");
+        }
+        this.initialSleepTime = initialSleepTime;
+        return this;
+    }
+
+    /**
+     * Specifies the max sleep time.
+     * 
+     * @param maxSleepTime
+     *            the max sleep time in milliseconds
+     * @return this instance
+     * @throws IllegalArgumentException
+     *             if the maxSleepTime parameter is negative
+     */
+    public UowRetryPolicy maxSleepTime(long maxSleepTime)
+            throws IllegalArgumentException {
+        if (maxSleepTime < 0) {
+            throw new IllegalArgumentException("The maxSleepTime parameter("
+                + maxSleepTime
+                + ") must not be negative.");
+        }
+        this.maxSleepTime = maxSleepTime;
+        return this;
+    }
+
+    /**
+     * Specifies the deadline.
+     * 
+     * @param deadline
+     *            the deadline in milliseconds. 0 means no deadline.
+     * @return this instance
+     * @throws IllegalArgumentException
+     *             if the deadline parameter is negative
+     */
+    public UowRetryPolicy deadline(long deadline)
+            throws IllegalArgumentException {
+        if (deadline < 0) {
+            throw new IllegalArgumentException("The deadline parameter("
+                + deadline
+                + ") must not be negative.");
+        }
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * Specifies whether the sleep time is randomized.
+     * 
+     * @param jitter
+     *            whether the sleep time is randomized
+     * @return this instance
+     */
+    public UowRetryPolicy jitter(boolean jitter) {
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Returns the max retries.
+     * 
+     * @return the max retries
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Returns the deadline.
+     * 
+     * @return the deadline
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Determines if the unit of work should be retried.
+     * 
+     * @param e
+     *            the concurrent modification exception
+     * @param retries
+     *            the number of the retries already done
+     * @return whether the unit of work should be retried
+     */
+    public boolean isRetryable(ConcurrentModificationException e, int retries) {
+        return retries < maxRetries;
+    }
+
+    /**
+     * Returns the sleep time before the retry.
+     * 
+     * @param retries
+     *            the number of the retry beginning with 1
+     * @return the sleep time in milliseconds
+     */
+    public long getSleepTime(int retries) {
+        long sleepTime = initialSleepTime;
+        for (int i = 1; i < retries && sleepTime < maxSleepTime; i++) {
+            sleepTime *= 2;
+        }
+        if (sleepTime > maxSleepTime) {
+            sleepTime = maxSleepTime;
+        }
+        if (!jitter || sleepTime < 2) {
+            return sleepTime;
+        }
+        long half = sleepTime / 2;
+        return half + (long) (random.nextDouble() * (sleepTime - half + 1));
+    }
+}
@@ -485,18 +485,14 @@ public class Default implements JsonCoder{
     
     @Override
     public <T> void decode(JsonReader reader, ModelRef<T> modelRef, int maxDepth, int currentDepth) {
-        String text = reader.read();
+        String text = reader.readProperty("key");
+        if(text == null){
+            text = reader.read();
+        }
         if(text != null){
             try{
                 modelRef.setKey(KeyFactory.stringToKey(text));
             } catch(IllegalArgumentException e){
-                text = reader.readProperty("key");
-                if(text != null){
-                    try{
-                        modelRef.setKey(KeyFactory.stringToKey(text));
-                    } catch(IllegalArgumentException e2){
-                    }
-                }
             }
         }
     }
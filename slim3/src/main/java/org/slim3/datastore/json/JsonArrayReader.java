@@ -15,9 +15,8 @@
  */
 package org.slim3.datastore.json;
 
-import org.slim3.repackaged.org.json.JSONArray;
-import org.slim3.repackaged.org.json.JSONException;
-import org.slim3.repackaged.org.json.JSONObject;
+import java.util.List;
+import java.util.Map;
 
 /**
  * JSON array reader.
@@ -33,21 +32,25 @@ public class JsonArrayReader extends JsonReader {
      * @param json the JSON string
      * @param modelReader the model reader
      */
+    @SuppressWarnings("unchecked")
     public JsonArrayReader(String json, ModelReader modelReader){
         super(modelReader);
         try{
-            this.array = new JSONArray(json);
-        } catch(JSONException e){
+            Object node = new JsonPullParser(json).readValue();
+            if(node instanceof List<?>){
+                this.array = (List<Object>) node;
+            }
+        } catch(IllegalArgumentException e){
         }
     }
 
     /**
      * The constructor.
      * 
-     * @param array the JSON array
+     * @param array the array read by {@link JsonPullParser}
      * @param modelReader the model reader
      */
-    JsonArrayReader(JSONArray array, ModelReader modelReader){
+    JsonArrayReader(List<Object> array, ModelReader modelReader){
         super(modelReader);
         this.array = array;
     }
@@ -59,7 +62,7 @@ public class JsonArrayReader extends JsonReader {
      */
     public int length(){
         if(array == null) return 0;
-        return array.length();
+        return array.size();
     }
 
     /**
@@ -73,16 +76,14 @@ public class JsonArrayReader extends JsonReader {
 
     @Override
     public String read(){
-        if(array == null) return null;
-        return array.optString(index, null);
+        return JsonPullParser.toText(get());
     }
 
     @Override
     public String readProperty(String name){
-        if(array == null) return null;
-        JSONObject o = array.optJSONObject(index);
-        if(o == null) return null;
-        return o.optString(name, null);
+        Object o = get();
+        if(!(o instanceof Map<?, ?>)) return null;
+        return JsonPullParser.toText(((Map<?, ?>) o).get(name));
     }
 
     /**
@@ -90,12 +91,19 @@ public class JsonArrayReader extends JsonReader {
      *
      * @return JSONRootReader
      */
+    @SuppressWarnings("unchecked")
+    @Override
     public JsonRootReader newRootReader(){
-        JSONObject o = array.optJSONObject(index);
-        if(o == null) return null;
-        return new JsonRootReader(o, getModelReader());
+        Object o = get();
+        if(!(o instanceof Map<?, ?>)) return null;
+        return new JsonRootReader((Map<String, Object>) o, getModelReader());
+    }
+
+    private Object get(){
+        if(array == null || index < 0 || index >= array.size()) return null;
+        return array.get(index);
     }
 
-    private JSONArray array;
+    private List<Object> array;
     private int index;
 }
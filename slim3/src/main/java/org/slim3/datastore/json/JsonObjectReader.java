@@ -15,6 +15,8 @@
  */
 package org.slim3.datastore.json;
 
+import java.util.Map;
+
 import org.slim3.repackaged.org.json.JSONObject;
 
 /**
@@ -32,8 +34,23 @@ public class JsonObjectReader extends JsonReader {
      * @param name the name
      * @param modelReader the model reader
      */
+    @SuppressWarnings("unchecked")
     public JsonObjectReader(JSONObject object, String name,
             ModelReader modelReader){
+        this((Map<String, Object>) JsonPullParser.fromJSON(object), name,
+            modelReader);
+    }
+
+    /**
+     * The constructor.
+     * 
+     * @param object the object read by {@link JsonPullParser}
+     * @param name the name
+     * @param modelReader the model reader
+     * @since 1.0.16
+     */
+    public JsonObjectReader(Map<String, Object> object, String name,
+            ModelReader modelReader){
         super(modelReader);
         this.object = object;
         this.name = name;
@@ -41,16 +58,27 @@ public class JsonObjectReader extends JsonReader {
 
     @Override
     public String read(){
-        return object.optString(name, null);
+        if(object == null) return null;
+        return JsonPullParser.toText(object.get(name));
     }
 
     @Override
     public String readProperty(String name){
-        JSONObject o = object.optJSONObject(this.name);
-        if(o == null) return null;
-        return o.optString(name, null);
+        if(object == null) return null;
+        Object o = object.get(this.name);
+        if(!(o instanceof Map<?, ?>)) return null;
+        return JsonPullParser.toText(((Map<?, ?>) o).get(name));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JsonRootReader newRootReader(){
+        if(object == null) return null;
+        Object o = object.get(name);
+        if(!(o instanceof Map<?, ?>)) return null;
+        return new JsonRootReader((Map<String, Object>) o, getModelReader());
     }
 
-    private JSONObject object;
+    private Map<String, Object> object;
     private String name;
 }
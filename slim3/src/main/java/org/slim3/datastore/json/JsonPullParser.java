@@ -0,0 +1,495 @@
+/*
+ * Copyright 2004-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.slim3.repackaged.org.json.JSONArray;
+import org.slim3.repackaged.org.json.JSONObject;
+import org.slim3.util.WrapRuntimeException;
+
+/**
+ * The token based JSON parser that reads the JSON text from {@link Reader}.
+ * Values can be read as lightweight nodes: an object is read as {@link Map},
+ * an array as {@link List}, a string as {@link String}, null as null and the
+ * other literals like numbers and booleans as {@link Literal} holding the
+ * text as it is, so that no number is converted until a decoder needs it.
+ * 
+ * <p>
+ * The generated jsonToModel method reads the properties of a model through
+ * {@link JsonTokenReader}, which pulls the tokens from this parser, so a
+ * model is not read into the nodes. The nodes are used only for the values
+ * that decoders read by the property names and for {@link JsonRootReader}.
+ * </p>
+ * 
+ * @since 1.0.16
+ */
+public class JsonPullParser {
+    /**
+     * The token type.
+     */
+    public enum Token {
+        /**
+         * The beginning of an object.
+         */
+        BEGIN_OBJECT,
+        /**
+         * The end of an object.
+         */
+        END_OBJECT,
+        /**
+         * The beginning of an array.
+         */
+        BEGIN_ARRAY,
+        /**
+         * The end of an array.
+         */
+        END_ARRAY,
+        /**
+         * The property name.
+         */
+        NAME,
+        /**
+         * The string value.
+         */
+        STRING,
+        /**
+         * The literal value like numbers and booleans.
+         */
+        LITERAL,
+        /**
+         * The null value.
+         */
+        NULL,
+        /**
+         * The end of the input.
+         */
+        END
+    }
+
+    /**
+     * The literal value like numbers and booleans.
+     */
+    public static final class Literal {
+        private final String text;
+
+        /**
+         * The constructor.
+         * 
+         * @param text the text
+         */
+        public Literal(String text){
+            this.text = text;
+        }
+
+        @Override
+        public String toString(){
+            return text;
+        }
+    }
+
+    /**
+     * The constructor.
+     * 
+     * @param reader the reader
+     * @throws NullPointerException if the reader parameter is null
+     */
+    public JsonPullParser(Reader reader) throws NullPointerException {
+        if(reader == null){
+            throw new NullPointerException("The reader parameter is null.");
+        }
+        this.reader = reader;
+    }
+
+    /**
+     * The constructor.
+     * 
+     * @param json the JSON string
+     * @throws NullPointerException if the json parameter is null
+     */
+    public JsonPullParser(String json) throws NullPointerException {
+        if(json == null){
+            throw new NullPointerException("The json parameter is null.");
+        }
+        this.reader = new StringReader(json);
+    }
+
+    /**
+     * Reads the next token.
+     * 
+     * @return the next token
+     * @throws IllegalArgumentException if the JSON text is invalid
+     * @throws WrapRuntimeException if an {@link IOException} occurred
+     */
+    public Token next() throws IllegalArgumentException, WrapRuntimeException {
+        text = null;
+        int c = readSkippingSpaces();
+        if(c == ':'){
+            c = readSkippingSpaces();
+        } else if(c == ','){
+            expectingName = depth > 0 && objects[depth - 1];
+            c = readSkippingSpaces();
+        }
+        switch(c){
+        case -1:
+            return Token.END;
+        case '{':
+            push(true);
+            expectingName = true;
+            return Token.BEGIN_OBJECT;
+        case '}':
+            pop();
+            expectingName = false;
+            return Token.END_OBJECT;
+        case '[':
+            push(false);
+            expectingName = false;
+            return Token.BEGIN_ARRAY;
+        case ']':
+            pop();
+            expectingName = false;
+            return Token.END_ARRAY;
+        case '"':
+        case '\'':
+            text = readString((char) c);
+            return nameOr(Token.STRING);
+        default:
+            text = readLiteral((char) c);
+            if(!expectingName && "null".equals(text)){
+                text = null;
+                return Token.NULL;
+            }
+            return nameOr(Token.LITERAL);
+        }
+    }
+
+    /**
+     * Returns the text of the current name, string or literal.
+     * 
+     * @return the text
+     */
+    public String getText(){
+        return text;
+    }
+
+    /**
+     * Returns the nesting depth of objects and arrays.
+     * 
+     * @return the nesting depth
+     */
+    public int getDepth(){
+        return depth;
+    }
+
+    /**
+     * Reads the value that begins with the token as a node.
+     * 
+     * @param token the token
+     * @return the node
+     * @throws IllegalArgumentException if the JSON text is invalid
+     */
+    public Object readValue(Token token) throws IllegalArgumentException {
+        switch(token){
+        case BEGIN_OBJECT:
+            return readObject();
+        case BEGIN_ARRAY:
+            return readArray();
+        case STRING:
+            return text;
+        case LITERAL:
+            return new Literal(text);
+        case NULL:
+            return null;
+        default:
+            throw new IllegalArgumentException(
+                "The token(" + token + ") is not the beginning of a value.");
+        }
+    }
+
+    /**
+     * Reads the next value as a node.
+     * 
+     * @return the node
+     * @throws IllegalArgumentException if the JSON text is invalid
+     */
+    public Object readValue() throws IllegalArgumentException {
+        return readValue(next());
+    }
+
+    /**
+     * Skips the value that begins with the token.
+     * 
+     * @param token the token
+     * @throws IllegalArgumentException if the JSON text is invalid
+     */
+    public void skipValue(Token token) throws IllegalArgumentException {
+        switch(token){
+        case BEGIN_OBJECT:
+        case BEGIN_ARRAY:
+            int d = depth;
+            while(depth >= d){
+                if(next() == Token.END){
+                    throw new IllegalArgumentException(
+                        "The value is not terminated.");
+                }
+            }
+            return;
+        case STRING:
+        case LITERAL:
+        case NULL:
+            return;
+        default:
+            throw new IllegalArgumentException(
+                "The token(" + token + ") is not the beginning of a value.");
+        }
+    }
+
+    private Map<String, Object> readObject(){
+        Map<String, Object> map = new HashMap<String, Object>();
+        while(true){
+            Token t = next();
+            if(t == Token.END_OBJECT){
+                return map;
+            }
+            if(t != Token.NAME){
+                throw new IllegalArgumentException(
+                    "The property name is expected, but " + t + " is found.");
+            }
+            String name = text;
+            map.put(name, readValue());
+        }
+    }
+
+    private List<Object> readArray(){
+        List<Object> list = new ArrayList<Object>();
+        while(true){
+            Token t = next();
+            if(t == Token.END_ARRAY){
+                return list;
+            }
+            list.add(readValue(t));
+        }
+    }
+
+    private Token nameOr(Token valueToken){
+        if(expectingName){
+            expectingName = false;
+            return Token.NAME;
+        }
+        return valueToken;
+    }
+
+    private void push(boolean object){
+        if(depth == objects.length){
+            boolean[] newObjects = new boolean[depth * 2];
+            System.arraycopy(objects, 0, newObjects, 0, depth);
+            objects = newObjects;
+        }
+        objects[depth++] = object;
+    }
+
+    private void pop(){
+        if(depth == 0){
+            throw new IllegalArgumentException("The closing bracket is unexpected.");
+        }
+        depth--;
+    }
+
+    private int readSkippingSpaces(){
+        int c = read();
+        while(c == ' ' || c == '\t' || c == '\n' || c == '\r'){
+            c = read();
+        }
+        return c;
+    }
+
+    private String readString(char quote){
+        StringBuilder b = buffer;
+        b.setLength(0);
+        while(true){
+            int c = read();
+            if(c == -1){
+                throw new IllegalArgumentException("The string is not terminated.");
+            }
+            if(c == quote){
+                return b.toString();
+            }
+            if(c != '\\'){
+                b.append((char) c);
+                continue;
+            }
+            c = read();
+            switch(c){
+            case 'b': b.append('\b'); break;
+            case 't': b.append('\t'); break;
+            case 'n': b.append('\n'); break;
+            case 'f': b.append('\f'); break;
+            case 'r': b.append('\r'); break;
+            case 'u':
+                char[] hex = new char[4];
+                for(int i = 0; i < 4; i++){
+                    int h = read();
+                    if(h == -1){
+                        throw new IllegalArgumentException(
+                            "The unicode escape is not terminated.");
+                    }
+                    hex[i] = (char) h;
+                }
+                try{
+                    b.append((char) Integer.parseInt(new String(hex), 16));
+                } catch(NumberFormatException e){
+                    throw new IllegalArgumentException(
+                        "The unicode escape(" + new String(hex) + ") is invalid.");
+                }
+                break;
+            case -1:
+                throw new IllegalArgumentException("The string is not terminated.");
+            default:
+                b.append((char) c);
+            }
+        }
+    }
+
+    private String readLiteral(char first){
+        StringBuilder b = buffer;
+        b.setLength(0);
+        b.append(first);
+        while(true){
+            int c = read();
+            if(c == -1 || ",:]}/\\\"[{;=#".indexOf(c) >= 0 || c <= ' '){
+                unread(c);
+                return b.toString().trim();
+            }
+            b.append((char) c);
+        }
+    }
+
+    private int read(){
+        if(pushedBack != NONE){
+            int c = pushedBack;
+            pushedBack = NONE;
+            return c;
+        }
+        try{
+            return reader.read();
+        } catch(IOException e){
+            throw new WrapRuntimeException(e);
+        }
+    }
+
+    private void unread(int c){
+        pushedBack = c;
+    }
+
+    /**
+     * Converts the node to the text that the readers return. A string is
+     * returned as it is, and an object or an array is converted to the JSON
+     * text.
+     * 
+     * @param node the node
+     * @return the text
+     */
+    static String toText(Object node){
+        if(node == null) return null;
+        if(node instanceof String) return (String) node;
+        if(node instanceof Map<?, ?> || node instanceof List<?>){
+            StringBuilder b = new StringBuilder();
+            appendJson(b, node);
+            return b.toString();
+        }
+        return node.toString();
+    }
+
+    private static void appendJson(StringBuilder b, Object node){
+        if(node == null){
+            b.append("null");
+        } else if(node instanceof String){
+            b.append(JSONObject.quote((String) node));
+        } else if(node instanceof Map<?, ?>){
+            b.append('{');
+            boolean first = true;
+            for(Map.Entry<?, ?> e : ((Map<?, ?>) node).entrySet()){
+                if(first){
+                    first = false;
+                } else{
+                    b.append(',');
+                }
+                b.append(JSONObject.quote((String) e.getKey())).append(':');
+                appendJson(b, e.getValue());
+            }
+            b.append('}');
+        } else if(node instanceof List<?>){
+            b.append('[');
+            boolean first = true;
+            for(Object o : (List<?>) node){
+                if(first){
+                    first = false;
+                } else{
+                    b.append(',');
+                }
+                appendJson(b, o);
+            }
+            b.append(']');
+        } else{
+            b.append(node);
+        }
+    }
+
+    /**
+     * Converts {@link JSONObject} or {@link JSONArray} to the node.
+     * 
+     * @param value the value
+     * @return the node
+     */
+    static Object fromJSON(Object value){
+        if(value == null || JSONObject.NULL.equals(value)) return null;
+        if(value instanceof JSONObject){
+            JSONObject o = (JSONObject) value;
+            Map<String, Object> map = new HashMap<String, Object>();
+            for(Iterator<?> i = o.keys(); i.hasNext();){
+                String key = (String) i.next();
+                map.put(key, fromJSON(o.opt(key)));
+            }
+            return map;
+        }
+        if(value instanceof JSONArray){
+            JSONArray a = (JSONArray) value;
+            List<Object> list = new ArrayList<Object>(a.length());
+            for(int i = 0; i < a.length(); i++){
+                list.add(fromJSON(a.opt(i)));
+            }
+            return list;
+        }
+        if(value instanceof String) return value;
+        return new Literal(value.toString());
+    }
+
+    private static final int NONE = -2;
+    private Reader reader;
+    private int pushedBack = NONE;
+    private StringBuilder buffer = new StringBuilder();
+    private String text;
+    private boolean[] objects = new boolean[16];
+    private int depth;
+    private boolean expectingName;
+}
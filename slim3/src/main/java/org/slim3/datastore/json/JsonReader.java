@@ -49,6 +49,20 @@ public abstract class JsonReader {
      */
     public abstract String readProperty(String name);
 
+    /**
+     * Creates the new root reader for the object that this reader reads.
+     * 
+     * @return the new root reader or null if the value is not an object
+     * @since 1.0.16
+     */
+    public JsonRootReader newRootReader(){
+        String json = read();
+        if(json == null) return null;
+        JsonRootReader reader = new JsonRootReader(json, modelReader);
+        if(!reader.isObject()) return null;
+        return reader;
+    }
+
     /**
      * Get the model reader
      * 
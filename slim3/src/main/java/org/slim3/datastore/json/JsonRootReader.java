@@ -15,9 +15,8 @@
  */
 package org.slim3.datastore.json;
 
-import org.slim3.repackaged.org.json.JSONArray;
-import org.slim3.repackaged.org.json.JSONException;
-import org.slim3.repackaged.org.json.JSONObject;
+import java.util.List;
+import java.util.Map;
 
 /**
  * JSON Reader.
@@ -27,7 +26,7 @@ import org.slim3.repackaged.org.json.JSONObject;
  * @since 1.0.6
  */
 public class JsonRootReader {
-    private JSONObject jsonObject;
+    private Map<String, Object> jsonObject;
     private ModelReader modelReader;
 
     /**
@@ -36,10 +35,14 @@ public class JsonRootReader {
      * @param json the JSON string
      * @param modelReader the model reader
      */
+    @SuppressWarnings("unchecked")
     public JsonRootReader(String json, ModelReader modelReader){
         try{
-            this.jsonObject = new JSONObject(json);
-        } catch(JSONException e){
+            Object node = new JsonPullParser(json).readValue();
+            if(node instanceof Map<?, ?>){
+                this.jsonObject = (Map<String, Object>) node;
+            }
+        } catch(IllegalArgumentException e){
         }
         this.modelReader = modelReader;
     }
@@ -47,14 +50,26 @@ public class JsonRootReader {
     /**
      * The constructor.
      * 
-     * @param jsonObject the JSON Object
+     * @param jsonObject the JSON Object read by {@link JsonPullParser}
      * @param modelReader the model reader
+     * @since 1.0.16
      */
-    JsonRootReader(JSONObject jsonObject, ModelReader modelReader){
+    public JsonRootReader(Map<String, Object> jsonObject,
+            ModelReader modelReader){
         this.jsonObject = jsonObject;
         this.modelReader = modelReader;
     }
 
+    /**
+     * Determines if the JSON object has been read.
+     * 
+     * @return whether the JSON object has been read
+     * @since 1.0.16
+     */
+    public boolean isObject(){
+        return jsonObject != null;
+    }
+
     /**
      * Gets the model reader.
      * 
@@ -80,9 +95,26 @@ public class JsonRootReader {
      * @param propertyName the property name
      * @return JsonArrayReader
      */
+    @SuppressWarnings("unchecked")
     public JsonArrayReader newArrayReader(String propertyName){
-        JSONArray array = jsonObject.optJSONArray(propertyName);
-        if(array == null) return null;
-        return new JsonArrayReader(array, modelReader);
+        if(jsonObject == null) return null;
+        Object array = jsonObject.get(propertyName);
+        if(!(array instanceof List<?>)) return null;
+        return new JsonArrayReader((List<Object>) array, modelReader);
+    }
+
+    /**
+     * Creates the new JsonTokenReader that reads the properties of the JSON
+     * object. The object is converted to the JSON text, so this is only for
+     * the callers that have read the object already.
+     * 
+     * @return JsonTokenReader
+     * @since 1.0.16
+     */
+    public JsonTokenReader newTokenReader(){
+        JsonPullParser parser = new JsonPullParser(
+            jsonObject != null ? JsonPullParser.toText(jsonObject) : "{}");
+        parser.next();
+        return new JsonTokenReader(parser, modelReader);
     }
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2004-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore.json;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slim3.datastore.json.JsonPullParser.Token;
+
+/**
+ * The JSON reader that reads the properties of an object token by token from
+ * {@link JsonPullParser}. The generated jsonToModel method iterates the
+ * properties by {@link #nextProperty()} and passes this reader to the
+ * decoders, so each attribute is assigned as its value is read and no tree
+ * of the object is built.
+ * 
+ * <p>
+ * A string or a literal is read as the text of its token. A value that is an
+ * object is read into {@link Map} nodes only when a decoder asks for its
+ * properties, like the latitude and the longitude of a GeoPt, and a nested
+ * model is read from the tokens by {@link #newObjectReader()}.
+ * </p>
+ * 
+ * @since 1.0.16
+ */
+public class JsonTokenReader extends JsonReader {
+    /**
+     * The constructor. The parser must have read the beginning of the object.
+     * 
+     * @param parser the parser
+     * @param modelReader the model reader
+     * @throws NullPointerException if the parser parameter is null
+     */
+    public JsonTokenReader(JsonPullParser parser, ModelReader modelReader)
+            throws NullPointerException {
+        super(modelReader);
+        if(parser == null){
+            throw new NullPointerException("The parser parameter is null.");
+        }
+        this.parser = parser;
+    }
+
+    /**
+     * Moves to the next property of the object. The rest of the current value
+     * is skipped if it is not read.
+     * 
+     * @return whether the property is found or false if the object ends
+     * @throws IllegalArgumentException if the JSON text is invalid
+     */
+    public boolean nextProperty() throws IllegalArgumentException {
+        skipValue();
+        Token t = parser.next();
+        if(t == Token.END_OBJECT){
+            name = null;
+            token = null;
+            return false;
+        }
+        if(t != Token.NAME){
+            throw new IllegalArgumentException(
+                "The property name is expected, but " + t + " is found.");
+        }
+        name = parser.getText();
+        setValue(parser.next());
+        return true;
+    }
+
+    /**
+     * Returns the name of the current property.
+     * 
+     * @return the name
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * Begins to read the current value as an array.
+     * 
+     * @return whether the current value is an array
+     */
+    public boolean beginArray(){
+        if(token != Token.BEGIN_ARRAY || !pending){
+            return false;
+        }
+        pending = false;
+        token = null;
+        return true;
+    }
+
+    /**
+     * Moves to the next element of the array begun by {@link #beginArray()}.
+     * The rest of the current element is skipped if it is not read.
+     * 
+     * @return whether the element is found or false if the array ends
+     * @throws IllegalArgumentException if the JSON text is invalid
+     */
+    public boolean nextElement() throws IllegalArgumentException {
+        skipValue();
+        Token t = parser.next();
+        if(t == Token.END_ARRAY){
+            token = null;
+            return false;
+        }
+        setValue(t);
+        return true;
+    }
+
+    /**
+     * Creates the reader for the current value that is an object. The
+     * returned reader shares the parser, so it must read all the properties
+     * before this reader is used again.
+     * 
+     * @return the reader or null if the current value is not an object
+     */
+    @SuppressWarnings("unchecked")
+    public JsonTokenReader newObjectReader(){
+        if(token != Token.BEGIN_OBJECT){
+            return null;
+        }
+        if(pending){
+            pending = false;
+            return new JsonTokenReader(parser, getModelReader());
+        }
+        if(node instanceof Map<?, ?>){
+            return new JsonRootReader((Map<String, Object>) node, getModelReader())
+                .newTokenReader();
+        }
+        return null;
+    }
+
+    /**
+     * Reads the rest of the properties of the object into
+     * {@link JsonRootReader}.
+     * 
+     * @return the root reader
+     * @throws IllegalArgumentException if the JSON text is invalid
+     */
+    public JsonRootReader toRootReader() throws IllegalArgumentException {
+        Map<String, Object> map = new HashMap<String, Object>();
+        while(nextProperty()){
+            map.put(name, readValueNode());
+        }
+        return new JsonRootReader(map, getModelReader());
+    }
+
+    @Override
+    public String read(){
+        if(token == null) return null;
+        switch(token){
+        case STRING:
+        case LITERAL:
+            return text;
+        case BEGIN_OBJECT:
+        case BEGIN_ARRAY:
+            return JsonPullParser.toText(readNode());
+        default:
+            return null;
+        }
+    }
+
+    @Override
+    public String readProperty(String name){
+        if(token != Token.BEGIN_OBJECT) return null;
+        Object o = readNode();
+        if(!(o instanceof Map<?, ?>)) return null;
+        return JsonPullParser.toText(((Map<?, ?>) o).get(name));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JsonRootReader newRootReader(){
+        if(token != Token.BEGIN_OBJECT) return null;
+        Object o = readNode();
+        if(!(o instanceof Map<?, ?>)) return null;
+        return new JsonRootReader((Map<String, Object>) o, getModelReader());
+    }
+
+    @Override
+    public ModelReader getModelReader(){
+        return super.getModelReader();
+    }
+
+    private void setValue(Token t){
+        switch(t){
+        case BEGIN_OBJECT:
+        case BEGIN_ARRAY:
+            pending = true;
+            break;
+        case STRING:
+        case LITERAL:
+        case NULL:
+            pending = false;
+            break;
+        default:
+            throw new IllegalArgumentException(
+                "The token(" + t + ") is not the beginning of a value.");
+        }
+        token = t;
+        text = parser.getText();
+        node = null;
+    }
+
+    private Object readNode(){
+        if(pending){
+            pending = false;
+            node = parser.readValue(token);
+        }
+        return node;
+    }
+
+    private Object readValueNode(){
+        switch(token){
+        case STRING:
+            return text;
+        case LITERAL:
+            return new JsonPullParser.Literal(text);
+        case NULL:
+            return null;
+        default:
+            return readNode();
+        }
+    }
+
+    private void skipValue(){
+        if(pending){
+            pending = false;
+            parser.skipValue(token);
+        }
+    }
+
+    private JsonPullParser parser;
+    private String name;
+    private Token token;
+    private String text;
+    private Object node;
+    private boolean pending;
+}
\ No newline at end of file
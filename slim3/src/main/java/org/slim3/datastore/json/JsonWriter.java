@@ -15,9 +15,11 @@
  */
 package org.slim3.datastore.json;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Stack;
 
-import org.slim3.repackaged.org.json.JSONObject;
+import org.slim3.util.WrapRuntimeException;
 
 /**
  * The JSON Writer.
@@ -37,6 +39,18 @@ public class JsonWriter {
         this.modelWriter = modelWriter;
     }
 
+    /**
+     * The constructor for the streaming mode. The JSON text is written to
+     * the writer as it is generated, so the writer should be buffered.
+     * @param writer the writer
+     * @param modelWriter the model writer
+     * @since 1.0.16
+     */
+    public JsonWriter(Writer writer, ModelWriter modelWriter){
+        this.builder = writer;
+        this.modelWriter = modelWriter;
+    }
+
     /**
      * Begins the array mode.
      */
@@ -44,13 +58,15 @@ public class JsonWriter {
         checkPropertyName();
         writeCammaForValue();
         contexts.push(new Context(Context.Mode.ARRAY));
-        builder.append("[");
+        append("[");
     }
 
     private void checkPropertyName(){
         if(nextPropertyName != null){
             writeCammaForPropertyName();
-            builder.append("\"").append(nextPropertyName).append("\":");
+            append("\"");
+            append(nextPropertyName);
+            append("\":");
             nextPropertyName = null;
         }
     }
@@ -59,7 +75,7 @@ public class JsonWriter {
      * Ends the array mode.
      */
     public void endArray(){
-        builder.append("]");
+        append("]");
         contexts.pop();
     }
 
@@ -70,14 +86,14 @@ public class JsonWriter {
         checkPropertyName();
         writeCammaForValue();
         contexts.push(new Context(Context.Mode.OBJECT));
-        builder.append("{");
+        append("{");
     }
 
     /**
      * Ends the object mode.
      */
     public void endObject(){
-        builder.append("}");
+        append("}");
         contexts.pop();
         nextPropertyName = null;
     }
@@ -129,7 +145,7 @@ public class JsonWriter {
         }
         checkPropertyName();
         writeCammaForValue();
-        builder.append(JSONObject.quote(value));
+        quote(value);
     }
     
     /**
@@ -143,7 +159,7 @@ public class JsonWriter {
         }
         checkPropertyName();
         writeCammaForValue();
-        builder.append(value);
+        append(value.toString());
     }
     
     /**
@@ -152,7 +168,7 @@ public class JsonWriter {
     public void writeNull(){
         checkPropertyName();
         writeCammaForValue();
-        builder.append("null");
+        append("null");
     }
 
     /**
@@ -165,18 +181,87 @@ public class JsonWriter {
         modelWriter.write(this, model, maxDepth, currentDepth);
     }
 
+    /**
+     * Flushes the underlying writer in the streaming mode.
+     * @since 1.0.16
+     */
+    public void flush(){
+        if(builder instanceof Writer){
+            try{
+                ((Writer)builder).flush();
+            } catch(IOException e){
+                throw new WrapRuntimeException(e);
+            }
+        }
+    }
+
     private void writeCammaForValue(){
-        if(contexts.size() > 0){
-            contexts.peek().writeForValue(builder);
+        if(contexts.size() > 0 && contexts.peek().needsCammaForValue()){
+            append(",");
         }
     }
     private void writeCammaForPropertyName(){
-        if(contexts.size() > 0){
-            contexts.peek().writeForPropertyName(builder);
+        if(contexts.size() > 0 && contexts.peek().needsCammaForPropertyName()){
+            append(",");
+        }
+    }
+
+    private void append(CharSequence value){
+        try{
+            builder.append(value);
+        } catch(IOException e){
+            throw new WrapRuntimeException(e);
+        }
+    }
+
+    private void append(CharSequence value, int start, int end){
+        try{
+            builder.append(value, start, end);
+        } catch(IOException e){
+            throw new WrapRuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the string in double quotes with the same escaping as
+     * JSONObject.quote, without creating an intermediate string.
+     */
+    private void quote(String value){
+        append("\"");
+        int len = value.length();
+        int start = 0;
+        char c = 0;
+        for(int i = 0; i < len; i++){
+            char b = c;
+            c = value.charAt(i);
+            String escaped = null;
+            switch(c){
+            case '\\': escaped = "\\\\"; break;
+            case '"': escaped = "\\\""; break;
+            case '/': if(b == '<') escaped = "\\/"; break;
+            case '\b': escaped = "\\b"; break;
+            case '\t': escaped = "\\t"; break;
+            case '\n': escaped = "\\n"; break;
+            case '\f': escaped = "\\f"; break;
+            case '\r': escaped = "\\r"; break;
+            default:
+                if(c < ' ' || (c >= '\u0080' && c < '\u00a0') ||
+                        (c >= '\u2000' && c < '\u2100')){
+                    String hhhh = "000" + Integer.toHexString(c);
+                    escaped = "\\u" + hhhh.substring(hhhh.length() - 4);
+                }
+            }
+            if(escaped != null){
+                append(value, start, i);
+                append(escaped);
+                start = i + 1;
+            }
         }
+        append(value, start, len);
+        append("\"");
     }
 
-    private StringBuilder builder;
+    private Appendable builder;
     private ModelWriter modelWriter;
     private String nextPropertyName;
     private Stack<Context> contexts = new Stack<Context>();
@@ -189,21 +274,21 @@ public class JsonWriter {
         private Context(Mode mode){
             this.mode = mode;
         }
-        private void writeForValue(StringBuilder builder){
-            if(!mode.equals(Mode.ARRAY)) return;
+        private boolean needsCammaForValue(){
+            if(!mode.equals(Mode.ARRAY)) return false;
             if(first){
                 first = false;
-            } else {
-                builder.append(",");
+                return false;
             }
+            return true;
         }
-        private void writeForPropertyName(StringBuilder builder){
-            if(!mode.equals(Mode.OBJECT)) return;
+        private boolean needsCammaForPropertyName(){
+            if(!mode.equals(Mode.OBJECT)) return false;
             if(first){
                 first = false;
-            } else {
-                builder.append(",");
+                return false;
             }
+            return true;
         }
     }
 }
@@ -23,6 +23,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -32,6 +33,8 @@ import javax.servlet.http.HttpServletResponse;
 import org.slim3.controller.HotReloadingClassLoader;
 import org.slim3.util.CipherFactory;
 import org.slim3.util.ClassUtil;
+import org.slim3.util.Cleanable;
+import org.slim3.util.Cleaner;
 import org.slim3.util.RequestLocator;
 import org.slim3.util.ResponseLocator;
 import org.slim3.util.ServletContextLocator;
@@ -78,6 +81,27 @@ public class GWTServiceServlet extends RemoteServiceServlet {
      */
     protected boolean servletContextSet = false;
 
+    /**
+     * The cache of {@link ServiceDesc}s keyed by the service interface name.
+     */
+    protected final transient ConcurrentHashMap<String, ServiceDesc> serviceDescCache =
+        new ConcurrentHashMap<String, ServiceDesc>();
+
+    /**
+     * Whether the service cache is registered to {@link Cleaner}.
+     */
+    protected transient volatile boolean serviceCacheInitialized = false;
+
+    /**
+     * The resource that clears the service cache.
+     */
+    protected final transient Cleanable serviceCacheCleaner = new Cleanable() {
+        public void clean() {
+            serviceCacheInitialized = false;
+            serviceDescCache.clear();
+        }
+    };
+
     private static SerializationPolicy loadHotSerializationPolicy(
             HttpServlet servlet, HttpServletRequest request,
             String moduleBaseURL, String strongName) {
@@ -177,6 +201,9 @@ public class GWTServiceServlet extends RemoteServiceServlet {
 
     @Override
     public void destroy() {
+        Cleaner.remove(serviceCacheCleaner);
+        serviceCacheInitialized = false;
+        serviceDescCache.clear();
         if (servletContextSet) {
             ServletContextLocator.set(null);
         }
@@ -287,34 +314,30 @@ public class GWTServiceServlet extends RemoteServiceServlet {
                 new ServerSerializationStreamReader(classLoader, this);
             streamReader.prepareToRead(encodedRequest);
             String interfaceName = readClassName(streamReader);
-            Class<?> serviceClass = getServiceClass(interfaceName);
-            Object service = getService(serviceClass);
+            ServiceDesc serviceDesc = getServiceDesc(interfaceName);
             SerializationPolicy serializationPolicy =
                 streamReader.getSerializationPolicy();
             String methodName = streamReader.readString();
             int paramCount = streamReader.readInt();
-            Class<?>[] parameterTypes = new Class[paramCount];
-            for (int i = 0; i < parameterTypes.length; i++) {
-                String paramClassName = readClassName(streamReader);
-                parameterTypes[i] = getClass(paramClassName);
+            String[] paramClassNames = new String[paramCount];
+            for (int i = 0; i < paramClassNames.length; i++) {
+                paramClassNames[i] = readClassName(streamReader);
             }
-            try {
-                Method method =
-                    serviceClass.getMethod(methodName, parameterTypes);
-                Object[] parameterValues = new Object[parameterTypes.length];
-                for (int i = 0; i < parameterValues.length; i++) {
-                    parameterValues[i] =
-                        streamReader.deserializeValue(parameterTypes[i]);
-                }
-                return new S3RPCRequest(service, new RPCRequest(
+            Method method =
+                getServiceMethod(serviceDesc, methodName, paramClassNames);
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            Object[] parameterValues = new Object[parameterTypes.length];
+            for (int i = 0; i < parameterValues.length; i++) {
+                parameterValues[i] =
+                    streamReader.deserializeValue(parameterTypes[i]);
+            }
+            return new S3RPCRequest(
+                getService(serviceDesc),
+                new RPCRequest(
                     method,
                     parameterValues,
                     serializationPolicy,
                     streamReader.getFlags()));
-
-            } catch (NoSuchMethodException e) {
-                throw new IncompatibleRemoteServiceException(e.getMessage(), e);
-            }
         } catch (SerializationException ex) {
             throw new IncompatibleRemoteServiceException(ex.getMessage(), ex);
         }
@@ -474,4 +497,185 @@ public class GWTServiceServlet extends RemoteServiceServlet {
         }
         return ClassUtil.newInstance(serviceClass);
     }
+
+    /**
+     * Returns the service description specified by the interface name. The
+     * description is cached unless the service is loaded by
+     * {@link HotReloadingClassLoader}.
+     * 
+     * @param interfaceName
+     *            the interface name
+     * @return the service description
+     * @throws NullPointerException
+     *             if the interfaceName parameter is null
+     */
+    protected ServiceDesc getServiceDesc(String interfaceName)
+            throws NullPointerException {
+        if (interfaceName == null) {
+            throw new NullPointerException(
+                "The interfaceName parameter is null.");
+        }
+        if (Thread.currentThread().getContextClassLoader() instanceof HotReloadingClassLoader) {
+            return createServiceDesc(interfaceName);
+        }
+        if (!serviceCacheInitialized) {
+            initServiceCache();
+        }
+        ServiceDesc serviceDesc = serviceDescCache.get(interfaceName);
+        if (serviceDesc != null) {
+            return serviceDesc;
+        }
+        serviceDesc = createServiceDesc(interfaceName);
+        ServiceDesc old =
+            serviceDescCache.putIfAbsent(interfaceName, serviceDesc);
+        return old != null ? old : serviceDesc;
+    }
+
+    /**
+     * Registers the service cache to {@link Cleaner}.
+     */
+    protected synchronized void initServiceCache() {
+        if (serviceCacheInitialized) {
+            return;
+        }
+        serviceDescCache.clear();
+        Cleaner.add(serviceCacheCleaner);
+        serviceCacheInitialized = true;
+    }
+
+    /**
+     * Creates a new service description.
+     * 
+     * @param interfaceName
+     *            the interface name
+     * @return a new service description
+     */
+    protected ServiceDesc createServiceDesc(String interfaceName) {
+        Class<?> serviceClass = getServiceClass(interfaceName);
+        Object singleton = null;
+        if (serviceClass.isAnnotationPresent(SingletonService.class)) {
+            singleton = getService(serviceClass);
+        }
+        return new ServiceDesc(serviceClass, singleton);
+    }
+
+    /**
+     * Returns the service method.
+     * 
+     * @param serviceDesc
+     *            the service description
+     * @param methodName
+     *            the method name
+     * @param paramClassNames
+     *            the class names of the parameters
+     * @return the service method
+     * @throws IncompatibleRemoteServiceException
+     *             if the method is not found
+     */
+    protected Method getServiceMethod(ServiceDesc serviceDesc,
+            String methodName, String[] paramClassNames)
+            throws IncompatibleRemoteServiceException {
+        String signature = ServiceDesc.toSignature(methodName, paramClassNames);
+        Method method = serviceDesc.methods.get(signature);
+        if (method != null) {
+            return method;
+        }
+        Class<?>[] parameterTypes = new Class[paramClassNames.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            parameterTypes[i] = getClass(paramClassNames[i]);
+        }
+        try {
+            method =
+                serviceDesc.serviceClass.getMethod(methodName, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IncompatibleRemoteServiceException(e.getMessage(), e);
+        }
+        try {
+            method.setAccessible(true);
+        } catch (SecurityException ignore) {
+        }
+        serviceDesc.methods.put(signature, method);
+        return method;
+    }
+
+    /**
+     * Returns the service. A service that is not a singleton is created by
+     * {@link #getService(Class)} for each request.
+     * 
+     * @param serviceDesc
+     *            the service description
+     * @return the service
+     */
+    protected Object getService(ServiceDesc serviceDesc) {
+        if (serviceDesc.singleton != null) {
+            return serviceDesc.singleton;
+        }
+        return getService(serviceDesc.serviceClass);
+    }
+
+    /**
+     * The description of the service.
+     * 
+     */
+    protected static class ServiceDesc {
+
+        /**
+         * The service class.
+         */
+        protected Class<?> serviceClass;
+
+        /**
+         * The service shared between requests.
+         */
+        protected Object singleton;
+
+        /**
+         * The methods keyed by the signature.
+         */
+        protected ConcurrentHashMap<String, Method> methods =
+            new ConcurrentHashMap<String, Method>();
+
+        /**
+         * Constructor.
+         * 
+         * @param serviceClass
+         *            the service class
+         * @param singleton
+         *            the service shared between requests
+         * @throws NullPointerException
+         *             if the serviceClass parameter is null
+         */
+        public ServiceDesc(Class<?> serviceClass, Object singleton)
+                throws NullPointerException {
+            if (serviceClass == null) {
+                throw new NullPointerException(
+                    "The serviceClass parameter is null.");
+            }
+            this.serviceClass = serviceClass;
+            this.singleton = singleton;
+        }
+
+        /**
+         * Converts the method name and the class names of the parameters to
+         * the signature.
+         * 
+         * @param methodName
+         *            the method name
+         * @param paramClassNames
+         *            the class names of the parameters
+         * @return the signature
+         */
+        public static String toSignature(String methodName,
+                String[] paramClassNames) {
+            StringBuilder sb = new StringBuilder(50);
+            sb.append(methodName).append('(');
+            for (int i = 0; i < paramClassNames.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(paramClassNames[i]);
+            }
+            return sb.append(')').toString();
+        }
+    }
 }
\ No newline at end of file
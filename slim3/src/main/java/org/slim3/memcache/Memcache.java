@@ -17,6 +17,7 @@ package org.slim3.memcache;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import org.slim3.util.ClassUtil;
 
@@ -496,6 +497,205 @@ public final class Memcache {
         return delegate().errorHandler(errorHandler);
     }
 
+    /**
+     * Returns a previously-stored value asynchronously, so that the call can
+     * overlap with other calls such as asynchronous datastore reads.
+     * 
+     * @param <T>
+     *            the value type
+     * @param key
+     *            the key
+     * @return a previously-stored value represented as {@link Future}
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Future<T> getAsync(Object key)
+            throws IllegalArgumentException {
+        return (Future<T>) delegate().getAsync(key);
+    }
+
+    /**
+     * Performs a get of multiple keys asynchronously.
+     * 
+     * @param keys
+     *            the keys.
+     * @return a mapping from keys to values of any entries found represented
+     *         as {@link Future}
+     * @throws NullPointerException
+     *             if the keys parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public static Future<Map<Object, Object>> getAllAsync(Iterable<?> keys)
+            throws NullPointerException, IllegalArgumentException {
+        return delegate().getAllAsync(keys);
+    }
+
+    /**
+     * Stores the values asynchronously.
+     * 
+     * @param values
+     *            key/value mappings for new entries to add to the cache
+     * @return {@link Future} to wait for the completion
+     * @throws NullPointerException
+     *             if the values parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public static Future<Void> putAllAsync(Map<Object, Object> values)
+            throws NullPointerException, IllegalArgumentException {
+        return delegate().putAllAsync(values);
+    }
+
+    /**
+     * Stores the values asynchronously.
+     * 
+     * @param values
+     *            key/value mappings for new entries to add to the cache
+     * @param expires
+     *            expiration time for the new values, or null for no time-based
+     *            expiration
+     * @return {@link Future} to wait for the completion
+     * @throws NullPointerException
+     *             if the values parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public static Future<Void> putAllAsync(Map<Object, Object> values,
+            Expiration expires) throws NullPointerException,
+            IllegalArgumentException {
+        return delegate().putAllAsync(values, expires);
+    }
+
+    /**
+     * Stores the values asynchronously subject to the policy.
+     * 
+     * @param values
+     *            key/value mappings for new entries to add to the cache
+     * @param expires
+     *            expiration time for the new values, or null for no time-based
+     *            expiration
+     * @param policy
+     *            what to do if the entry is or is not already present
+     * @return the set of keys for which entries were created represented as
+     *         {@link Future}
+     * @throws NullPointerException
+     *             if the values parameter is null or if the policy parameter is
+     *             null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public static Future<Set<Object>> putAllAsync(Map<Object, Object> values,
+            Expiration expires, SetPolicy policy) throws NullPointerException,
+            IllegalArgumentException {
+        return delegate().putAllAsync(values, expires, policy);
+    }
+
+    /**
+     * Increments a batch of separate keys by the same delta asynchronously.
+     * 
+     * @param keys
+     *            the keys
+     * @param delta
+     *            the size of the increment, positive or negative.
+     * @return mapping keys to their new values represented as {@link Future}
+     * @throws NullPointerException
+     *             if the keys parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public static Future<Map<Object, Long>> incrementAllAsync(
+            Iterable<?> keys, long delta) throws NullPointerException,
+            IllegalArgumentException {
+        return delegate().incrementAllAsync(keys, delta);
+    }
+
+    /**
+     * Increments a batch of separate keys by the same delta asynchronously and
+     * potentially sets a starting value.
+     * 
+     * @param keys
+     *            the keys
+     * @param delta
+     *            the size of the increment, positive or negative.
+     * @param initialValue
+     *            the value to insert into the cache if the key is not present
+     * @return mapping keys to their new values represented as {@link Future}
+     * @throws NullPointerException
+     *             if the keys parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public static Future<Map<Object, Long>> incrementAllAsync(
+            Iterable<?> keys, long delta, long initialValue)
+            throws NullPointerException, IllegalArgumentException {
+        return delegate().incrementAllAsync(keys, delta, initialValue);
+    }
+
+    /**
+     * Increments the keys by the separate offsets asynchronously.
+     * 
+     * @param offsets
+     *            the offsets
+     * @return mapping keys to their new values represented as {@link Future}
+     * @throws NullPointerException
+     *             if the offsets parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public static Future<Map<Object, Long>> incrementAllAsync(
+            Map<Object, Long> offsets) throws NullPointerException,
+            IllegalArgumentException {
+        return delegate().incrementAllAsync(offsets);
+    }
+
+    /**
+     * Removes keys from the cache asynchronously.
+     * 
+     * @param keys
+     *            the keys for entries to delete.
+     * @return the Set of keys deleted represented as {@link Future}
+     * @throws NullPointerException
+     *             the keys parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public static Future<Set<Object>> deleteAllAsync(Iterable<?> keys)
+            throws NullPointerException, IllegalArgumentException {
+        return delegate().deleteAllAsync(keys);
+    }
+
+    /**
+     * Removes keys from the cache asynchronously.
+     * 
+     * @param keys
+     *            the keys for entries to delete.
+     * @param millisNoReAdd
+     *            the time during which calls to put using ADD_IF_NOT_PRESENT
+     *            should be denied
+     * @return the Set of keys deleted represented as {@link Future}
+     * @throws NullPointerException
+     *             the keys parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public static Future<Set<Object>> deleteAllAsync(Iterable<?> keys,
+            long millisNoReAdd) throws NullPointerException,
+            IllegalArgumentException {
+        return delegate().deleteAllAsync(keys, millisNoReAdd);
+    }
+
     /**
      * Returns some statistics about the cache and its usage. Note that
      * statistics() does not respect namespaces - this will return stats for
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.memcache;
+
+import java.io.IOException;
+
+/**
+ * A codec that converts a value stored in memcache to a compact array of
+ * bytes instead of Java serialization. A codec is registered by
+ * {@link S3MemcacheSerialization#registerCodec(MemcacheCodec)}.
+ * 
+ * <p>
+ * The encoded value is stored as a plain array of bytes that begins with
+ * {@link S3MemcacheSerialization#CODEC_MAGIC} and the identifier, because
+ * memcache has no flag for it. An array of bytes put by the application that
+ * begins with the same bytes is passed to {@link #decode(byte[], int)}, so the
+ * codec should throw an exception for the bytes it did not write; the array
+ * of bytes is then returned as it is.
+ * </p>
+ * 
+ * @since 1.0.16
+ * 
+ */
+public interface MemcacheCodec {
+
+    /**
+     * Returns the identifier of this codec that is written to the encoded
+     * bytes. The identifier must be between 1 and 127.
+     * 
+     * @return the identifier
+     */
+    byte getId();
+
+    /**
+     * Determines if this codec can encode the value.
+     * 
+     * @param value
+     *            the value
+     * @return whether this codec can encode the value
+     */
+    boolean accepts(Object value);
+
+    /**
+     * Encodes the value.
+     * 
+     * @param value
+     *            the value
+     * @return the encoded bytes
+     * @throws IOException
+     *             if an {@link IOException} occurred
+     */
+    byte[] encode(Object value) throws IOException;
+
+    /**
+     * Decodes the bytes.
+     * 
+     * @param bytes
+     *            the encoded bytes
+     * @param offset
+     *            the offset where the encoded value begins
+     * @return the value
+     * @throws ClassNotFoundException
+     *             if the class of the value is not found
+     * @throws IOException
+     *             if an {@link IOException} occurred
+     */
+    Object decode(byte[] bytes, int offset) throws ClassNotFoundException,
+            IOException;
+}
@@ -24,19 +24,27 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
+import org.slim3.util.LazyFuture;
+
 import com.google.appengine.api.NamespaceManager;
+import com.google.appengine.api.memcache.AsyncMemcacheService;
 import com.google.appengine.api.memcache.ErrorHandler;
 import com.google.appengine.api.memcache.Expiration;
 import com.google.appengine.api.memcache.InvalidValueException;
 import com.google.appengine.api.memcache.MemcacheSerialization;
 import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.CasValues;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
 import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
 import com.google.appengine.api.memcache.MemcacheServiceException;
 import com.google.appengine.api.memcache.MemcacheServiceFactory;
 import com.google.appengine.api.memcache.MemcacheServicePb;
 import com.google.appengine.api.memcache.Stats;
+import com.google.appengine.api.utils.FutureWrapper;
 import com.google.appengine.repackaged.com.google.protobuf.ByteString;
 import com.google.appengine.repackaged.com.google.protobuf.InvalidProtocolBufferException;
 import com.google.appengine.repackaged.com.google.protobuf.Message;
@@ -60,6 +68,13 @@ public class MemcacheDelegate {
      */
     protected MemcacheService ms;
 
+    /**
+     * The asynchronous memcache service.
+     * 
+     * @since 1.0.16
+     */
+    protected AsyncMemcacheService asyncMs;
+
     /**
      * Constructor.
      */
@@ -308,20 +323,47 @@ public class MemcacheDelegate {
      * @throws IllegalArgumentException
      *             if the key cannot be serialized
      */
-    @SuppressWarnings("unchecked")
     protected Map<Object, Object> getAllInternal(Iterable<?> keys)
             throws NullPointerException, IllegalArgumentException {
+        Map<CacheKey, Object> cacheKeyToObjectKey =
+            new HashMap<CacheKey, Object>();
+        MemcacheServicePb.MemcacheGetRequest request =
+            createGetRequest(keys, cacheKeyToObjectKey);
+        MemcacheServicePb.MemcacheGetResponse.Builder response =
+            MemcacheServicePb.MemcacheGetResponse.newBuilder();
+        if (!makeSyncCall(
+            "Get",
+            request,
+            response,
+            "Memcache get: exception getting multiple keys"))
+            return Collections.emptyMap();
+        return toMap(response, cacheKeyToObjectKey);
+    }
+
+    /**
+     * Creates a get request for the keys.
+     * 
+     * @param keys
+     *            the keys
+     * @param cacheKeyToObjectKey
+     *            the map to which the serialized keys are added
+     * @return a get request
+     * @throws NullPointerException
+     *             if the keys parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    protected MemcacheServicePb.MemcacheGetRequest createGetRequest(
+            Iterable<?> keys, Map<CacheKey, Object> cacheKeyToObjectKey)
+            throws NullPointerException, IllegalArgumentException {
         if (keys == null) {
             throw new NullPointerException(
                 "The keys parameter must not be null.");
         }
-        MemcacheServicePb.MemcacheGetResponse.Builder response =
-            MemcacheServicePb.MemcacheGetResponse.newBuilder();
         MemcacheServicePb.MemcacheGetRequest.Builder requestBuilder =
             MemcacheServicePb.MemcacheGetRequest.newBuilder().setNameSpace(
                 getNamespace());
-        Map<CacheKey, Object> cacheKeyToObjectKey =
-            new HashMap<CacheKey, Object>();
         for (Object key : keys) {
             try {
                 byte keybytes[] = MemcacheSerialization.makePbKey(key);
@@ -335,12 +377,23 @@ public class MemcacheDelegate {
                     .toString(), ex);
             }
         }
-        if (!makeSyncCall(
-            "Get",
-            requestBuilder.build(),
-            response,
-            "Memcache get: exception getting multiple keys"))
-            return Collections.emptyMap();
+        return requestBuilder.build();
+    }
+
+    /**
+     * Converts the get response to a map of the keys and the values.
+     * 
+     * @param response
+     *            the get response
+     * @param cacheKeyToObjectKey
+     *            the map of the serialized keys and the keys
+     * @return a map of the keys and the values
+     * @since 1.0.16
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<Object, Object> toMap(
+            MemcacheServicePb.MemcacheGetResponse.Builder response,
+            Map<CacheKey, Object> cacheKeyToObjectKey) {
         Map result = new HashMap();
         Iterator i = response.getItemList().iterator();
         do {
@@ -548,7 +601,7 @@ public class MemcacheDelegate {
      */
     public void put(Object key, Object value) throws IllegalArgumentException,
             CapabilityDisabledException {
-        ms.put(key, value);
+        ms.put(key, encodeValue(value));
     }
 
     /**
@@ -569,7 +622,7 @@ public class MemcacheDelegate {
      */
     public void put(Object key, Object value, Expiration expires)
             throws IllegalArgumentException, CapabilityDisabledException {
-        ms.put(key, value, expires);
+        ms.put(key, encodeValue(value), expires);
     }
 
     /**
@@ -602,7 +655,7 @@ public class MemcacheDelegate {
             throw new NullPointerException(
                 "The policy parameter must not be null.");
         }
-        return ms.put(key, value, expires, policy);
+        return ms.put(key, encodeValue(value), expires, policy);
     }
 
     /**
@@ -624,7 +677,7 @@ public class MemcacheDelegate {
             throw new NullPointerException(
                 "The values parameter must not be null.");
         }
-        ms.putAll(values);
+        ms.putAll(encodeValues(values));
     }
 
     /**
@@ -650,7 +703,7 @@ public class MemcacheDelegate {
             throw new NullPointerException(
                 "The values parameter must not be null.");
         }
-        ms.putAll(values, expires);
+        ms.putAll(encodeValues(values), expires);
     }
 
     /**
@@ -688,7 +741,344 @@ public class MemcacheDelegate {
             throw new NullPointerException(
                 "The policy parameter must not be null.");
         }
-        return ms.putAll(values, expires, policy);
+        return ms.putAll(encodeValues(values), expires, policy);
+    }
+
+    /**
+     * Returns the identifiable values for the keys. The identifiable values
+     * can be used for compare-and-set by
+     * {@link #putIfUntouched(Map, Expiration)}.
+     * 
+     * @param keys
+     *            the keys
+     * @return the identifiable values. Any keys in keys but not in the returned
+     *         map were not found in the cache.
+     * @throws NullPointerException
+     *             if the keys parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @throws CapabilityDisabledException
+     *             if memcache service is disable
+     */
+    public Map<Object, IdentifiableValue> getIdentifiables(Iterable<?> keys)
+            throws NullPointerException, IllegalArgumentException,
+            CapabilityDisabledException {
+        Collection<Object> keys2 = toCollection(keys);
+        return ms.getIdentifiables(keys2);
+    }
+
+    /**
+     * Sets the new values only if no other value has been stored since the
+     * identifiable values were returned.
+     * 
+     * @param values
+     *            the compare-and-set values
+     * @param expires
+     *            expiration time for the new values, or null for no time-based
+     *            expiration
+     * @return the set of keys for which the new values were stored
+     * @throws NullPointerException
+     *             if the values parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @throws CapabilityDisabledException
+     *             if memcache service is disable
+     */
+    public Set<Object> putIfUntouched(Map<Object, CasValues> values,
+            Expiration expires) throws NullPointerException,
+            IllegalArgumentException, CapabilityDisabledException {
+        if (values == null) {
+            throw new NullPointerException(
+                "The values parameter must not be null.");
+        }
+        return ms.putIfUntouched(values, expires);
+    }
+
+    /**
+     * Returns a previously-stored value asynchronously. The value is
+     * deserialized in the same way as {@link #get(Object)}.
+     * 
+     * @param key
+     *            the key
+     * @return a previously-stored value represented as {@link Future}
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public Future<Object> getAsync(final Object key)
+            throws IllegalArgumentException {
+        return new FutureWrapper<Map<Object, Object>, Object>(
+            getAllAsync(Collections.singletonList(key))) {
+
+            @Override
+            protected Throwable convertException(Throwable throwable) {
+                return throwable;
+            }
+
+            @Override
+            protected Object wrap(Map<Object, Object> map) throws Exception {
+                return map != null ? map.get(key) : null;
+            }
+        };
+    }
+
+    /**
+     * Performs a get of multiple keys asynchronously. The values are
+     * deserialized in the same way as {@link #getAll(Iterable)}.
+     * 
+     * @param keys
+     *            the keys.
+     * @return a mapping from keys to values of any entries found represented
+     *         as {@link Future}
+     * @throws NullPointerException
+     *             if the keys parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public Future<Map<Object, Object>> getAllAsync(Iterable<?> keys)
+            throws NullPointerException, IllegalArgumentException {
+        final Map<CacheKey, Object> cacheKeyToObjectKey =
+            new HashMap<CacheKey, Object>();
+        MemcacheServicePb.MemcacheGetRequest request =
+            createGetRequest(keys, cacheKeyToObjectKey);
+        final String errorText =
+            "Memcache get: exception getting multiple keys";
+        final Future<byte[]> future = makeAsyncCall("Get", request);
+        return new LazyFuture<Map<Object, Object>>() {
+
+            @Override
+            protected Map<Object, Object> compute() throws Exception {
+                byte[] responseBytes;
+                try {
+                    responseBytes = future.get();
+                } catch (ExecutionException e) {
+                    ms.getErrorHandler().handleServiceError(
+                        new MemcacheServiceException(errorText, e.getCause()));
+                    return Collections.emptyMap();
+                }
+                MemcacheServicePb.MemcacheGetResponse.Builder response =
+                    MemcacheServicePb.MemcacheGetResponse.newBuilder();
+                try {
+                    response.mergeFrom(responseBytes);
+                } catch (InvalidProtocolBufferException ex) {
+                    ms.getErrorHandler().handleServiceError(
+                        new MemcacheServiceException(
+                            "Could not decode response:",
+                            ex));
+                    return Collections.emptyMap();
+                }
+                return toMap(response, cacheKeyToObjectKey);
+            }
+        };
+    }
+
+    /**
+     * Stores the values asynchronously.
+     * 
+     * @param values
+     *            key/value mappings for new entries to add to the cache
+     * @return {@link Future} to wait for the completion
+     * @throws NullPointerException
+     *             if the values parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public Future<Void> putAllAsync(Map<Object, Object> values)
+            throws NullPointerException, IllegalArgumentException {
+        if (values == null) {
+            throw new NullPointerException(
+                "The values parameter must not be null.");
+        }
+        return getAsyncMemcacheService().putAll(encodeValues(values));
+    }
+
+    /**
+     * Stores the values asynchronously.
+     * 
+     * @param values
+     *            key/value mappings for new entries to add to the cache
+     * @param expires
+     *            expiration time for the new values, or null for no time-based
+     *            expiration
+     * @return {@link Future} to wait for the completion
+     * @throws NullPointerException
+     *             if the values parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public Future<Void> putAllAsync(Map<Object, Object> values,
+            Expiration expires) throws NullPointerException,
+            IllegalArgumentException {
+        if (values == null) {
+            throw new NullPointerException(
+                "The values parameter must not be null.");
+        }
+        return getAsyncMemcacheService().putAll(
+            encodeValues(values),
+            expires);
+    }
+
+    /**
+     * Stores the values asynchronously subject to the policy.
+     * 
+     * @param values
+     *            key/value mappings for new entries to add to the cache
+     * @param expires
+     *            expiration time for the new values, or null for no time-based
+     *            expiration
+     * @param policy
+     *            what to do if the entry is or is not already present
+     * @return the set of keys for which entries were created represented as
+     *         {@link Future}
+     * @throws NullPointerException
+     *             if the values parameter is null or if the policy parameter is
+     *             null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public Future<Set<Object>> putAllAsync(Map<Object, Object> values,
+            Expiration expires, SetPolicy policy) throws NullPointerException,
+            IllegalArgumentException {
+        if (values == null) {
+            throw new NullPointerException(
+                "The values parameter must not be null.");
+        }
+        if (policy == null) {
+            throw new NullPointerException(
+                "The policy parameter must not be null.");
+        }
+        return getAsyncMemcacheService().putAll(
+            encodeValues(values),
+            expires,
+            policy);
+    }
+
+    /**
+     * Increments a batch of separate keys by the same delta asynchronously.
+     * 
+     * @param keys
+     *            the keys
+     * @param delta
+     *            the size of the increment, positive or negative.
+     * @return mapping keys to their new values represented as {@link Future}
+     * @throws NullPointerException
+     *             if the keys parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public Future<Map<Object, Long>> incrementAllAsync(Iterable<?> keys,
+            long delta) throws NullPointerException, IllegalArgumentException {
+        return getAsyncMemcacheService().incrementAll(
+            toCollection(keys),
+            delta);
+    }
+
+    /**
+     * Increments a batch of separate keys by the same delta asynchronously and
+     * potentially sets a starting value.
+     * 
+     * @param keys
+     *            the keys
+     * @param delta
+     *            the size of the increment, positive or negative.
+     * @param initialValue
+     *            the value to insert into the cache if the key is not present
+     * @return mapping keys to their new values represented as {@link Future}
+     * @throws NullPointerException
+     *             if the keys parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public Future<Map<Object, Long>> incrementAllAsync(Iterable<?> keys,
+            long delta, long initialValue) throws NullPointerException,
+            IllegalArgumentException {
+        return getAsyncMemcacheService().incrementAll(
+            toCollection(keys),
+            delta,
+            initialValue);
+    }
+
+    /**
+     * Increments the keys by the separate offsets asynchronously.
+     * 
+     * @param offsets
+     *            the offsets
+     * @return mapping keys to their new values represented as {@link Future}
+     * @throws NullPointerException
+     *             if the offsets parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public Future<Map<Object, Long>> incrementAllAsync(
+            Map<Object, Long> offsets) throws NullPointerException,
+            IllegalArgumentException {
+        if (offsets == null) {
+            throw new NullPointerException(
+                "The offsets parameter must not be null.");
+        }
+        return getAsyncMemcacheService().incrementAll(offsets);
+    }
+
+    /**
+     * Removes keys from the cache asynchronously.
+     * 
+     * @param keys
+     *            the keys for entries to delete.
+     * @return the Set of keys deleted represented as {@link Future}
+     * @throws NullPointerException
+     *             the keys parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public Future<Set<Object>> deleteAllAsync(Iterable<?> keys)
+            throws NullPointerException, IllegalArgumentException {
+        return getAsyncMemcacheService().deleteAll(toCollection(keys));
+    }
+
+    /**
+     * Removes keys from the cache asynchronously.
+     * 
+     * @param keys
+     *            the keys for entries to delete.
+     * @param millisNoReAdd
+     *            the time during which calls to put using ADD_IF_NOT_PRESENT
+     *            should be denied
+     * @return the Set of keys deleted represented as {@link Future}
+     * @throws NullPointerException
+     *             the keys parameter is null
+     * @throws IllegalArgumentException
+     *             if the key cannot be serialized
+     * @since 1.0.16
+     */
+    public Future<Set<Object>> deleteAllAsync(Iterable<?> keys,
+            long millisNoReAdd) throws NullPointerException,
+            IllegalArgumentException {
+        return getAsyncMemcacheService().deleteAll(
+            toCollection(keys),
+            millisNoReAdd);
+    }
+
+    /**
+     * Returns the asynchronous memcache service that uses the same error
+     * handler as the synchronous one.
+     * 
+     * @return the asynchronous memcache service
+     * @since 1.0.16
+     */
+    protected AsyncMemcacheService getAsyncMemcacheService() {
+        if (asyncMs == null) {
+            asyncMs = MemcacheServiceFactory.getAsyncMemcacheService();
+        }
+        asyncMs.setErrorHandler(ms.getErrorHandler());
+        return asyncMs;
     }
 
     /**
@@ -769,6 +1159,68 @@ public class MemcacheDelegate {
         return false;
     }
 
+    /**
+     * Makes an async call.
+     * 
+     * @param methodName
+     *            the method name.
+     * @param request
+     *            the request.
+     * @return the response bytes represented as {@link Future}
+     * @since 1.0.16
+     */
+    protected Future<byte[]> makeAsyncCall(String methodName, Message request) {
+        return ApiProxy.makeAsyncCall("memcache", methodName, request
+            .toByteArray());
+    }
+
+    /**
+     * Encodes the value by the codec registered to
+     * {@link S3MemcacheSerialization}.
+     * 
+     * @param value
+     *            the value
+     * @return the encoded value
+     * @throws IllegalArgumentException
+     *             if the value cannot be encoded
+     * @since 1.0.16
+     */
+    protected Object encodeValue(Object value) throws IllegalArgumentException {
+        if (!S3MemcacheSerialization.hasCodecs()) {
+            return value;
+        }
+        try {
+            return S3MemcacheSerialization.encode(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot encode the value: '"
+                + value
+                + "'", e);
+        }
+    }
+
+    /**
+     * Encodes the values by the codec registered to
+     * {@link S3MemcacheSerialization}.
+     * 
+     * @param values
+     *            the values
+     * @return the encoded values
+     * @throws IllegalArgumentException
+     *             if the value cannot be encoded
+     * @since 1.0.16
+     */
+    protected Map<Object, Object> encodeValues(Map<Object, Object> values)
+            throws IllegalArgumentException {
+        if (!S3MemcacheSerialization.hasCodecs()) {
+            return values;
+        }
+        Map<Object, Object> ret = new HashMap<Object, Object>(values.size());
+        for (Map.Entry<Object, Object> e : values.entrySet()) {
+            ret.put(e.getKey(), encodeValue(e.getValue()));
+        }
+        return ret;
+    }
+
     /**
      * Converts the keys to a collection of keys.
      * 
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.memcache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slim3.datastore.Attribute;
+import org.slim3.datastore.DatastoreUtil;
+import org.slim3.datastore.Model;
+import org.slim3.datastore.ModelMeta;
+import org.slim3.util.Cleanable;
+import org.slim3.util.Cleaner;
+import org.slim3.util.ClassUtil;
+import org.slim3.util.WrapRuntimeException;
+
+import com.google.appengine.api.datastore.Entity;
+
+/**
+ * {@link MemcacheCodec} for models. A model is converted to an entity by
+ * {@link ModelMeta#modelToEntity(Object)} and stored as the protocol buffer
+ * bytes of the entity tagged with the model class name, so no Java
+ * serialization is used and the value can be read after a hot reload.
+ * 
+ * <p>
+ * Only the persistent attributes are stored, so this codec does not accept a
+ * model that has an attribute annotated with
+ * {@code @Attribute(persistent = false)}; such a model is stored by Java
+ * serialization as before. A model that had no key is read back without a
+ * key.
+ * </p>
+ * 
+ * @since 1.0.16
+ * 
+ */
+public class ModelMemcacheCodec implements MemcacheCodec {
+
+    /**
+     * The identifier of this codec.
+     */
+    public static final byte ID = 1;
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * The cache that holds whether all the attributes of the model class are
+     * persistent. The key is the class name.
+     */
+    protected static ConcurrentHashMap<String, Boolean> persistentOnlyCache =
+        new ConcurrentHashMap<String, Boolean>(87);
+
+    private static volatile boolean initialized = false;
+
+    static {
+        initialize();
+    }
+
+    private static void initialize() {
+        Cleaner.add(new Cleanable() {
+            public void clean() {
+                persistentOnlyCache.clear();
+                initialized = false;
+            }
+        });
+        initialized = true;
+    }
+
+    public byte getId() {
+        return ID;
+    }
+
+    public boolean accepts(Object value) {
+        return value != null
+            && value.getClass().getAnnotation(Model.class) != null
+            && isPersistentOnly(value.getClass());
+    }
+
+    /**
+     * Determines if all the attributes of the model class are persistent.
+     * 
+     * @param modelClass
+     *            the model class
+     * @return whether all the attributes of the model class are persistent
+     */
+    protected static boolean isPersistentOnly(Class<?> modelClass) {
+        if (!initialized) {
+            initialize();
+        }
+        Boolean persistentOnly = persistentOnlyCache.get(modelClass.getName());
+        if (persistentOnly == null) {
+            persistentOnly = Boolean.TRUE;
+            for (Class<?> c = modelClass; c != null && c != Object.class; c =
+                c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    Attribute attr = field.getAnnotation(Attribute.class);
+                    if (attr != null && !attr.persistent()) {
+                        persistentOnly = Boolean.FALSE;
+                    }
+                }
+            }
+            persistentOnlyCache.put(modelClass.getName(), persistentOnly);
+        }
+        return persistentOnly;
+    }
+
+    public byte[] encode(Object value) throws IOException {
+        ModelMeta<?> meta = DatastoreUtil.getModelMeta(value.getClass());
+        Entity entity = meta.modelToEntity(value);
+        byte[] entityBytes = DatastoreUtil.entityToBytes(entity);
+        byte[] className = value.getClass().getName().getBytes(ENCODING);
+        ByteArrayOutputStream baos =
+            new ByteArrayOutputStream(2 + className.length + entityBytes.length);
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeShort(className.length);
+        out.write(className);
+        out.write(entityBytes);
+        out.close();
+        return baos.toByteArray();
+    }
+
+    public Object decode(byte[] bytes, int offset)
+            throws ClassNotFoundException, IOException {
+        if (bytes.length < offset + 2) {
+            throw new IOException("The encoded model is too short.");
+        }
+        int length =
+            ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+        int entityOffset = offset + 2 + length;
+        if (bytes.length < entityOffset) {
+            throw new IOException("The encoded model is too short.");
+        }
+        String className = new String(bytes, offset + 2, length, ENCODING);
+        Class<?> modelClass;
+        try {
+            modelClass = ClassUtil.forName(className);
+        } catch (WrapRuntimeException e) {
+            if (e.getCause() instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) e.getCause();
+            }
+            throw e;
+        }
+        byte[] entityBytes = new byte[bytes.length - entityOffset];
+        System.arraycopy(
+            bytes,
+            entityOffset,
+            entityBytes,
+            0,
+            entityBytes.length);
+        Entity entity = DatastoreUtil.bytesToEntity(entityBytes);
+        return DatastoreUtil.entityToModel(
+            DatastoreUtil.getModelMeta(modelClass),
+            entity);
+    }
+}
@@ -16,9 +16,12 @@
 package org.slim3.memcache;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.google.appengine.api.memcache.InvalidValueException;
 import com.google.appengine.api.memcache.MemcacheSerialization.Flag;
@@ -26,12 +29,34 @@ import com.google.appengine.api.memcache.MemcacheSerialization.Flag;
 /**
  * A memcache utility class to serialize and deserialize an object.
  * 
+ * <p>
+ * A value accepted by a registered {@link MemcacheCodec} is stored as an
+ * array of bytes that begins with {@link #CODEC_MAGIC} and the identifier of
+ * the codec, and is decoded by the codec when it is read.
+ * </p>
+ * 
  * @author higa
  * @since 1.0.0
  * 
  */
 public final class S3MemcacheSerialization {
 
+    private static final Logger logger =
+        Logger.getLogger(S3MemcacheSerialization.class.getName());
+
+    /**
+     * The magic bytes that begin a value encoded by {@link MemcacheCodec}.
+     * 
+     * @since 1.0.16
+     */
+    public static final byte[] CODEC_MAGIC =
+        { (byte) 0xc3, (byte) 'S', (byte) '3', (byte) 'C' };
+
+    /**
+     * The registered codecs.
+     */
+    private static volatile MemcacheCodec[] codecs = new MemcacheCodec[0];
+
     /**
      * Deserializes the array of bytes.
      * 
@@ -50,7 +75,7 @@ public final class S3MemcacheSerialization {
         Flag flagval = Flag.fromInt(flags);
         switch (flagval) {
         case BYTES:
-            return value;
+            return decode(value);
         case BOOLEAN:
             if (value.length != 1) {
                 throw new InvalidValueException(
@@ -104,6 +129,148 @@ public final class S3MemcacheSerialization {
         return null;
     }
 
+    /**
+     * Registers the codec. A codec that has the same identifier is replaced.
+     * 
+     * <p>
+     * Every instance that reads the values must register the same codec. An
+     * instance without the codec reads an encoded value as an array of bytes,
+     * so the caller that expects the model gets a {@link ClassCastException}.
+     * </p>
+     * 
+     * <p>
+     * Once a codec is registered, an array of bytes put by the application
+     * that happens to begin with {@link #CODEC_MAGIC} and the identifier of
+     * the codec is handed to the codec when it is read. If the codec throws an
+     * exception, the exception is logged at WARNING and the array of bytes is
+     * returned as it is, so a value that the codec can no longer decode, for
+     * example after the model class changed, is also read as an array of
+     * bytes.
+     * </p>
+     * 
+     * @param codec
+     *            the codec
+     * @throws NullPointerException
+     *             if the codec parameter is null
+     * @throws IllegalArgumentException
+     *             if the identifier of the codec is not between 1 and 127
+     * @since 1.0.16
+     */
+    public static synchronized void registerCodec(MemcacheCodec codec)
+            throws NullPointerException, IllegalArgumentException {
+        if (codec == null) {
+            throw new NullPointerException("The codec parameter is null.");
+        }
+        if (codec.getId() < 1) {
+            throw new IllegalArgumentException("The identifier("
+                + codec.getId()
+                + ") of the codec must be between 1 and 127.");
+        }
+        unregisterCodec(codec.getId());
+        MemcacheCodec[] newCodecs = new MemcacheCodec[codecs.length + 1];
+        System.arraycopy(codecs, 0, newCodecs, 0, codecs.length);
+        newCodecs[codecs.length] = codec;
+        codecs = newCodecs;
+    }
+
+    /**
+     * Unregisters the codec specified by the identifier.
+     * 
+     * @param id
+     *            the identifier of the codec
+     * @since 1.0.16
+     */
+    public static synchronized void unregisterCodec(byte id) {
+        for (int i = 0; i < codecs.length; i++) {
+            if (codecs[i].getId() == id) {
+                MemcacheCodec[] newCodecs =
+                    new MemcacheCodec[codecs.length - 1];
+                System.arraycopy(codecs, 0, newCodecs, 0, i);
+                System.arraycopy(codecs, i + 1, newCodecs, i, codecs.length
+                    - i
+                    - 1);
+                codecs = newCodecs;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Determines if any codec is registered.
+     * 
+     * @return whether any codec is registered
+     * @since 1.0.16
+     */
+    public static boolean hasCodecs() {
+        return codecs.length > 0;
+    }
+
+    /**
+     * Encodes the value by the registered codec that accepts it. If no codec
+     * accepts the value, the value is returned as it is.
+     * 
+     * @param value
+     *            the value
+     * @return the encoded bytes or the value
+     * @throws IOException
+     *             if {@link IOException} occurred
+     * @since 1.0.16
+     */
+    public static Object encode(Object value) throws IOException {
+        if (value == null) {
+            return null;
+        }
+        for (MemcacheCodec codec : codecs) {
+            if (codec.accepts(value)) {
+                byte[] bytes = codec.encode(value);
+                ByteArrayOutputStream baos =
+                    new ByteArrayOutputStream(CODEC_MAGIC.length
+                        + 1
+                        + bytes.length);
+                baos.write(CODEC_MAGIC);
+                baos.write(codec.getId());
+                baos.write(bytes);
+                return baos.toByteArray();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Decodes the array of bytes if it was encoded by a registered codec. If
+     * the codec fails to decode it, the exception is logged and the array of
+     * bytes is returned as it is, because it may be a plain array of bytes
+     * that only looks encoded.
+     * 
+     * @param value
+     *            the value
+     * @return the decoded value or the array of bytes
+     */
+    private static Object decode(byte[] value) {
+        if (value.length <= CODEC_MAGIC.length) {
+            return value;
+        }
+        for (int i = 0; i < CODEC_MAGIC.length; i++) {
+            if (value[i] != CODEC_MAGIC[i]) {
+                return value;
+            }
+        }
+        byte id = value[CODEC_MAGIC.length];
+        for (MemcacheCodec codec : codecs) {
+            if (codec.getId() == id) {
+                try {
+                    return codec.decode(value, CODEC_MAGIC.length + 1);
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "The codec("
+                        + id
+                        + ") could not decode the value.", e);
+                    return value;
+                }
+            }
+        }
+        return value;
+    }
+
     private S3MemcacheSerialization() {
     }
 }
\ No newline at end of file
@@ -15,6 +15,10 @@
  */
 package org.slim3.util;
 
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -65,9 +69,32 @@ public class AesCipher implements Cipher {
 
     private static final String ENCODING = "UTF-8";
 
+    /**
+     * The maximum number of initialized ciphers cached per thread and mode.
+     */
+    protected static final int MAX_CIPHERS_PER_THREAD = 16;
+
     private static final Logger logger =
         Logger.getLogger(AesCipher.class.getName());
 
+    /**
+     * The cache of key specs. The key is the key for cipher.
+     */
+    protected static final ConcurrentHashMap<String, SecretKeySpec> keySpecs =
+        new ConcurrentHashMap<String, SecretKeySpec>();
+
+    /**
+     * The initialized ciphers for encryption confined to the current thread.
+     */
+    protected static final ThreadLocal<Map<String, javax.crypto.Cipher>> encryptCiphers =
+        new CipherMapThreadLocal();
+
+    /**
+     * The initialized ciphers for decryption confined to the current thread.
+     */
+    protected static final ThreadLocal<Map<String, javax.crypto.Cipher>> decryptCiphers =
+        new CipherMapThreadLocal();
+
     /**
      * The key.
      */
@@ -112,16 +139,15 @@ public class AesCipher implements Cipher {
         validateAesKey(key);
         String result = null;
         try {
-            SecretKeySpec spec =
-                new SecretKeySpec(key.getBytes(ENCODING), ALGORITHM_KEY);
             javax.crypto.Cipher cipher =
-                javax.crypto.Cipher.getInstance(ALGORITHM);
-            cipher.init(
-                javax.crypto.Cipher.ENCRYPT_MODE,
-                spec,
-                new IvParameterSpec(CBC_IV));
-            byte[] encText = cipher.doFinal(text.getBytes(ENCODING));
-            result = Base64.encode(encText);
+                getCipher(encryptCiphers, javax.crypto.Cipher.ENCRYPT_MODE, key);
+            try {
+                byte[] encText = cipher.doFinal(text.getBytes(ENCODING));
+                result = Base64.encode(encText);
+            } catch (Exception e) {
+                encryptCiphers.get().remove(key);
+                throw e;
+            }
         } catch (Exception e) {
             logger.log(Level.WARNING, e.getMessage(), e);
         }
@@ -167,16 +193,15 @@ public class AesCipher implements Cipher {
         validateAesKey(key);
         String result = null;
         try {
-            SecretKeySpec spec =
-                new SecretKeySpec(key.getBytes(ENCODING), ALGORITHM_KEY);
             javax.crypto.Cipher cipher =
-                javax.crypto.Cipher.getInstance(ALGORITHM);
-            cipher.init(
-                javax.crypto.Cipher.DECRYPT_MODE,
-                spec,
-                new IvParameterSpec(CBC_IV));
-            byte[] bytes = Base64.decode(encryptedText);
-            result = new String(cipher.doFinal(bytes), ENCODING);
+                getCipher(decryptCiphers, javax.crypto.Cipher.DECRYPT_MODE, key);
+            try {
+                byte[] bytes = Base64.decode(encryptedText);
+                result = new String(cipher.doFinal(bytes), ENCODING);
+            } catch (Exception e) {
+                decryptCiphers.get().remove(key);
+                throw e;
+            }
         } catch (Exception e) {
             logger.log(Level.WARNING, e.getMessage(), e);
         }
@@ -221,4 +246,79 @@ public class AesCipher implements Cipher {
                 "The key for cipher must be 128 bits.");
         }
     }
+
+    /**
+     * Returns the cipher initialized for the mode and the key. The cipher is
+     * reused by the current thread, because {@link javax.crypto.Cipher} is
+     * reset to the initialized state after each doFinal call.
+     * 
+     * @param ciphers
+     *            the ciphers confined to the current thread
+     * @param mode
+     *            the mode of cipher
+     * @param key
+     *            the key for cipher
+     * @return the initialized cipher
+     * @throws Exception
+     *             if an exception occurred
+     */
+    protected static javax.crypto.Cipher getCipher(
+            ThreadLocal<Map<String, javax.crypto.Cipher>> ciphers, int mode,
+            String key) throws Exception {
+        Map<String, javax.crypto.Cipher> map = ciphers.get();
+        javax.crypto.Cipher cipher = map.get(key);
+        if (cipher == null) {
+            cipher = javax.crypto.Cipher.getInstance(ALGORITHM);
+            cipher.init(mode, getKeySpec(key), new IvParameterSpec(CBC_IV));
+            if (map.size() >= MAX_CIPHERS_PER_THREAD) {
+                map.clear();
+            }
+            map.put(key, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Returns the key spec for the key.
+     * 
+     * @param key
+     *            the key for cipher
+     * @return the key spec
+     * @throws UnsupportedEncodingException
+     *             if UTF-8 is not supported
+     */
+    protected static SecretKeySpec getKeySpec(String key)
+            throws UnsupportedEncodingException {
+        SecretKeySpec spec = keySpecs.get(key);
+        if (spec == null) {
+            spec = new SecretKeySpec(key.getBytes(ENCODING), ALGORITHM_KEY);
+            SecretKeySpec old = keySpecs.putIfAbsent(key, spec);
+            if (old != null) {
+                spec = old;
+            }
+        }
+        return spec;
+    }
+
+    /**
+     * Clears the cached key specs and the ciphers of the current thread.
+     */
+    public static void clearCache() {
+        keySpecs.clear();
+        encryptCiphers.remove();
+        decryptCiphers.remove();
+    }
+
+    /**
+     * {@link ThreadLocal} for the map of initialized ciphers.
+     * 
+     */
+    protected static class CipherMapThreadLocal extends
+            ThreadLocal<Map<String, javax.crypto.Cipher>> {
+
+        @Override
+        protected Map<String, javax.crypto.Cipher> initialValue() {
+            return new HashMap<String, javax.crypto.Cipher>();
+        }
+    }
 }
@@ -61,6 +61,18 @@ public class AesCipherFactory extends CipherFactory {
         return c;
     }
 
+    @Override
+    public boolean isReusable(Cipher cipher) {
+        if (!(cipher instanceof AesCipher)) {
+            return false;
+        }
+        String key = keys.get();
+        if (key == null) {
+            key = globalKey;
+        }
+        return key != null && key.equals(((AesCipher) cipher).key);
+    }
+
     /**
      * Clear the limited key for cipher to the current thread.
      */
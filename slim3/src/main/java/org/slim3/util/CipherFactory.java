@@ -29,6 +29,12 @@ public abstract class CipherFactory {
      */
     public static final String CIPHER_FACTORY_KEY = "slim3.cipherFactory";
 
+    /**
+     * The holder of the factory created last time. The factory is reused as
+     * long as the class name and the context class loader are the same.
+     */
+    protected static volatile FactoryHolder factoryHolder;
+
     /**
      * Create the cipher. If the global key or the limited key of the current
      * thread is set, The key is set to the cipher. The key of the current
@@ -40,7 +46,16 @@ public abstract class CipherFactory {
         String className =
             System.getProperty(CIPHER_FACTORY_KEY, AesCipherFactory.class
                 .getName());
-        return ClassUtil.newInstance(className);
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        FactoryHolder holder = factoryHolder;
+        if (holder != null
+            && holder.className.equals(className)
+            && holder.loader == loader) {
+            return holder.factory;
+        }
+        CipherFactory factory = ClassUtil.newInstance(className, loader);
+        factoryHolder = new FactoryHolder(className, loader, factory);
+        return factory;
     }
 
     /**
@@ -50,6 +65,20 @@ public abstract class CipherFactory {
      */
     public abstract Cipher createCipher();
 
+    /**
+     * Determines if the cipher created by this factory can be used again with
+     * the key that {@link #createCipher()} would use now. This implementation
+     * returns false, so a new cipher is always created.
+     * 
+     * @param cipher
+     *            the cipher
+     * @return whether the cipher can be used again
+     * @since 1.0.16
+     */
+    public boolean isReusable(Cipher cipher) {
+        return false;
+    }
+
     /**
      * Clear the limited key for cipher to the current thread.
      */
@@ -80,4 +109,42 @@ public abstract class CipherFactory {
      */
     public abstract void setGlobalKey(String key);
 
+    /**
+     * The holder of the factory.
+     * 
+     */
+    protected static class FactoryHolder {
+
+        /**
+         * The class name of the factory.
+         */
+        protected final String className;
+
+        /**
+         * The class loader that loaded the factory.
+         */
+        protected final ClassLoader loader;
+
+        /**
+         * The factory.
+         */
+        protected final CipherFactory factory;
+
+        /**
+         * Constructor.
+         * 
+         * @param className
+         *            the class name of the factory
+         * @param loader
+         *            the class loader that loaded the factory
+         * @param factory
+         *            the factory
+         */
+        protected FactoryHolder(String className, ClassLoader loader,
+                CipherFactory factory) {
+            this.className = className;
+            this.loader = loader;
+            this.factory = factory;
+        }
+    }
 }
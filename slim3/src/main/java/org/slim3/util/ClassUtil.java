@@ -15,6 +15,9 @@
  */
 package org.slim3.util;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
 /**
  * A utility class for {@link Class}.
  * 
@@ -102,6 +105,69 @@ public final class ClassUtil {
         }
     }
 
+    /**
+     * Returns the public default constructor of the class.
+     * 
+     * @param <T>
+     *            the type
+     * @param clazz
+     *            the class
+     * @return the public default constructor
+     * @throws NullPointerException
+     *             if the clazz parameter is null
+     * @throws WrapRuntimeException
+     *             if the class does not have a public default constructor
+     */
+    public static <T> Constructor<T> getConstructor(Class<T> clazz)
+            throws NullPointerException, WrapRuntimeException {
+        if (clazz == null) {
+            throw new NullPointerException("The clazz parameter is null.");
+        }
+        try {
+            return clazz.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new WrapRuntimeException(
+                "The public default constructor of the class("
+                    + clazz.getName()
+                    + ") is not found.",
+                e);
+        }
+    }
+
+    /**
+     * Creates a new instance using the constructor.
+     * 
+     * @param <T>
+     *            the target type
+     * @param constructor
+     *            the constructor
+     * @return a new instance
+     * @throws NullPointerException
+     *             if the constructor parameter is null
+     * @throws WrapRuntimeException
+     *             if an error occurred while creating a new instance.
+     */
+    public static <T> T newInstance(Constructor<T> constructor)
+            throws NullPointerException, WrapRuntimeException {
+        if (constructor == null) {
+            throw new NullPointerException("The constructor parameter is null.");
+        }
+        Throwable cause = null;
+        try {
+            return constructor.newInstance();
+        } catch (InvocationTargetException e) {
+            cause = e.getCause();
+        } catch (Throwable t) {
+            cause = t;
+        }
+        throw new WrapRuntimeException(
+            "An error occurred while creating a new instance of the class("
+                + constructor.getDeclaringClass().getName()
+                + "). Error message: "
+                + cause.getMessage(),
+            cause);
+    }
+
     /**
      * Creates a new instance.
      * 
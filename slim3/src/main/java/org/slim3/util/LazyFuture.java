@@ -0,0 +1,89 @@
+/*
+ * Copyright 2004-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link Future} that computes the value when it is requested at first.
+ * The asynchronous calls that the value depends on should be started before
+ * this future is created. This class is not thread-safe.
+ * 
+ * @since 1.0.16
+ * @param <T>
+ *            the value type
+ */
+public abstract class LazyFuture<T> implements Future<T> {
+
+    /**
+     * Whether the value is computed.
+     */
+    protected boolean done = false;
+
+    /**
+     * The value.
+     */
+    protected T value;
+
+    /**
+     * The exception thrown while computing the value.
+     */
+    protected Exception exception;
+
+    /**
+     * Computes the value.
+     * 
+     * @return the value
+     * @throws Exception
+     *             if an exception is encountered
+     */
+    protected abstract T compute() throws Exception;
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    public T get() throws InterruptedException, ExecutionException {
+        if (!done) {
+            try {
+                value = compute();
+            } catch (Exception e) {
+                exception = e;
+            }
+            done = true;
+        }
+        if (exception != null) {
+            throw new ExecutionException(exception);
+        }
+        return value;
+    }
+
+    public T get(long timeout, TimeUnit unit) throws InterruptedException,
+            ExecutionException, TimeoutException {
+        return get();
+    }
+
+    public boolean isCancelled() {
+        return false;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+}
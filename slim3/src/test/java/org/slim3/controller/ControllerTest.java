@@ -22,9 +22,12 @@ import java.util.Date;
 
 import org.junit.Test;
 import org.slim3.controller.upload.FileUpload;
+import org.slim3.datastore.BatchScope;
+import org.slim3.datastore.Datastore;
 import org.slim3.tester.ControllerTestCase;
 import org.slim3.util.RequestMap;
 
+import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 
@@ -403,6 +406,30 @@ public class ControllerTest extends ControllerTestCase {
             .getName(), is(MultipartRequestHandler.class.getName()));
     }
 
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void runBareFlushesBatchScope() throws Exception {
+        BatchScope scope = BatchScope.begin();
+        try {
+            Controller putController = new Controller() {
+
+                @Override
+                protected Navigation run() throws Exception {
+                    Datastore.put(new Entity("Hoge"));
+                    return null;
+                }
+            };
+            putController.runBare();
+            assertThat(scope.size(), is(0));
+            assertThat(tester.count("Hoge"), is(1));
+        } finally {
+            BatchScope.end();
+        }
+    }
+
     private static class IndexController extends Controller {
 
         @Override
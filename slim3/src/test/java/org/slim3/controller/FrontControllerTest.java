@@ -23,7 +23,9 @@ import org.slim3.controller.controller.HogeController;
 import org.slim3.controller.controller.IndexController;
 import org.slim3.controller.controller.hello.ListController;
 import org.slim3.controller.validator.Errors;
+import org.slim3.datastore.EntityCache;
 import org.slim3.tester.ControllerTestCase;
+import org.slim3.util.Cleaner;
 import org.slim3.util.ServletContextLocator;
 
 /**
@@ -57,6 +59,7 @@ public class FrontControllerTest extends ControllerTestCase {
             is(ControllerConstants.DEFAULT_LOCALIZATION_CONTEXT));
         assertThat(ServletContextLocator.get(), is(not(nullValue())));
         assertThat(tester.frontController.rootPackageName, is(ROOT_PACKAGE));
+        assertThat(tester.frontController.entityCacheEnabled, is(false));
     }
 
     /**
@@ -190,6 +193,87 @@ public class FrontControllerTest extends ControllerTestCase {
             is(nullValue()));
     }
 
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void createControllerUsingCache() throws Exception {
+        FrontController fc = tester.frontController;
+        Controller controller = fc.createController("/hello/list");
+        Controller controller2 = fc.createController("/hello/list");
+        assertThat(controller2, is(ListController.class));
+        assertThat(controller2, is(not(sameInstance(controller))));
+        assertThat(fc.getControllerCacheMissCount(), is(1L));
+        assertThat(fc.getControllerCacheHitCount(), is(1L));
+        assertThat(
+            fc.controllerConstructorCache.containsKey(ListController.class
+                .getName()),
+            is(true));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void createControllerUsingNegativeCache() throws Exception {
+        FrontController fc = tester.frontController;
+        assertThat(fc.createController("/xxx"), is(nullValue()));
+        assertThat(fc.createController("/xxx"), is(nullValue()));
+        assertThat(fc.createController("/bad"), is(nullValue()));
+        assertThat(fc.getControllerCacheMissCount(), is(2L));
+        assertThat(fc.getControllerCacheHitCount(), is(1L));
+        assertThat(fc.notControllerCache.size(), is(2));
+        assertThat(fc.controllerConstructorCache.size(), is(0));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void createControllerAfterCleaning() throws Exception {
+        FrontController fc = tester.frontController;
+        fc.createController("/hello/list");
+        fc.createController("/xxx");
+        Cleaner.cleanAll();
+        assertThat(fc.controllerCacheInitialized, is(false));
+        assertThat(fc.controllerConstructorCache.size(), is(0));
+        assertThat(fc.notControllerCache.size(), is(0));
+        fc.createController("/hello/list");
+        assertThat(fc.controllerCacheInitialized, is(true));
+        assertThat(fc.getControllerCacheMissCount(), is(3L));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void createControllerForHotReloading() throws Exception {
+        FrontController fc = tester.frontController;
+        ClassLoader previousLoader =
+            Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(
+            new HotReloadingClassLoader(
+                previousLoader,
+                ROOT_PACKAGE + ".controller",
+                ControllerConstants.DEFAULT_COOL_PACKAGE));
+        try {
+            Controller controller = fc.createController("/hello/list");
+            assertThat(controller, is(not(nullValue())));
+            assertThat(
+                controller.getClass().getName(),
+                is(ListController.class.getName()));
+            assertThat(controller.getClass() == ListController.class, is(false));
+            assertThat(fc.controllerConstructorCache.size(), is(0));
+            assertThat(fc.getControllerCacheMissCount(), is(1L));
+        } finally {
+            Thread.currentThread().setContextClassLoader(previousLoader);
+        }
+    }
+
     /**
      * @throws Exception
      * 
@@ -465,4 +549,19 @@ public class FrontControllerTest extends ControllerTestCase {
             tester.request.getAttribute(ControllerConstants.ROUTED_KEY),
             is(notNullValue()));
     }
-}
\ No newline at end of file
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void doFilterForEntityCache() throws Exception {
+        tester.frontController.entityCacheEnabled = true;
+        tester.request.setServletPath("/");
+        tester.frontController.doFilter(
+            tester.request,
+            tester.response,
+            tester.filterChain);
+        assertThat(EntityCache.get(), is(nullValue()));
+    }
+}
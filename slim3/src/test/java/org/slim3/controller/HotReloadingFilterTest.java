@@ -18,6 +18,9 @@ package org.slim3.controller;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.FileOutputStream;
+
 import org.junit.After;
 import org.junit.Test;
 import org.slim3.tester.MockServletContext;
@@ -31,12 +34,40 @@ public class HotReloadingFilterTest {
 
     private HotReloadingFilter filter = new HotReloadingFilter();
 
+    private File tempDir;
+
     /**
      * @throws Exception
      */
     @After
     public void tearDown() throws Exception {
         ServletContextLocator.set(null);
+        System.clearProperty(ControllerConstants.HOT_RELOADING_MODE_KEY);
+        if (tempDir != null) {
+            delete(tempDir);
+        }
+    }
+
+    private File createTempDir() throws Exception {
+        tempDir = File.createTempFile("slim3", "");
+        tempDir.delete();
+        tempDir.mkdirs();
+        return tempDir;
+    }
+
+    private void createFile(File dir, String name) throws Exception {
+        dir.mkdirs();
+        new FileOutputStream(new File(dir, name)).close();
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
     }
 
     /**
@@ -127,4 +158,121 @@ public class HotReloadingFilterTest {
             filter.createHotReloadingRuntimeException(new Exception("cause"));
         System.out.println(e.getMessage());
     }
-}
\ No newline at end of file
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void hotReloadingMode() throws Exception {
+        File dir = createTempDir();
+        new File(dir, "aaa/bbb").mkdirs();
+        MockServletContext servletContext = new MockServletContext();
+        servletContext.addRealPath("/WEB-INF/classes", dir.getPath());
+        filter.servletContext = servletContext;
+        filter.hotReloading = true;
+        filter.rootPackageName = "aaa.bbb";
+        System.setProperty(
+            ControllerConstants.HOT_RELOADING_MODE_KEY,
+            ControllerConstants.HOT_RELOADING_MODE_CHANGED);
+        filter.initHotReloadingMode();
+        assertThat(filter.reloadingOnChange, is(true));
+        assertThat(filter.classesDir, is(new File(dir, "aaa/bbb")));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void hotReloadingModeWhenRealPathIsNotFound() throws Exception {
+        filter.servletContext = new MockServletContext();
+        filter.hotReloading = true;
+        filter.rootPackageName = "aaa.bbb";
+        System.setProperty(
+            ControllerConstants.HOT_RELOADING_MODE_KEY,
+            ControllerConstants.HOT_RELOADING_MODE_CHANGED);
+        filter.initHotReloadingMode();
+        assertThat(filter.reloadingOnChange, is(false));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void hotReloadingModeWhenModeIsNotSpecified() throws Exception {
+        File dir = createTempDir();
+        new File(dir, "aaa/bbb").mkdirs();
+        MockServletContext servletContext = new MockServletContext();
+        servletContext.addRealPath("/WEB-INF/classes", dir.getPath());
+        filter.servletContext = servletContext;
+        filter.hotReloading = true;
+        filter.rootPackageName = "aaa.bbb";
+        filter.initHotReloadingMode();
+        assertThat(filter.reloadingOnChange, is(false));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void getStamp() throws Exception {
+        File dir = createTempDir();
+        createFile(new File(dir, "aaa"), "Hoge.class");
+        long stamp = filter.getStamp(dir);
+        assertThat(filter.getStamp(dir), is(stamp));
+        createFile(new File(dir, "bbb"), "Foo.class");
+        assertThat(filter.getStamp(dir), is(not(stamp)));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void getHotReloadingClassLoader() throws Exception {
+        ClassLoader parent = getClass().getClassLoader();
+        filter.rootPackageName = "aaa";
+        filter.coolPackageName = "cool";
+        HotReloadingClassLoader loader =
+            filter.getHotReloadingClassLoader(parent);
+        assertThat(loader.getParent(), is(sameInstance(parent)));
+        assertThat(
+            filter.getHotReloadingClassLoader(parent),
+            is(not(sameInstance(loader))));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void getHotReloadingClassLoaderWhenReloadingOnChange()
+            throws Exception {
+        File dir = createTempDir();
+        createFile(dir, "Hoge.class");
+        ClassLoader parent = getClass().getClassLoader();
+        filter.rootPackageName = "aaa";
+        filter.coolPackageName = "cool";
+        filter.reloadingOnChange = true;
+        filter.classesDir = dir;
+        HotReloadingClassLoader loader =
+            filter.getHotReloadingClassLoader(parent);
+        assertThat(
+            filter.getHotReloadingClassLoader(parent),
+            is(sameInstance(loader)));
+        createFile(dir, "Foo.class");
+        assertThat(
+            filter.getHotReloadingClassLoader(parent),
+            is(sameInstance(loader)));
+        filter.stampCheckedTime = 0;
+        HotReloadingClassLoader loader2 =
+            filter.getHotReloadingClassLoader(parent);
+        assertThat(loader2, is(not(sameInstance(loader))));
+        assertThat(
+            filter.getHotReloadingClassLoader(parent),
+            is(sameInstance(loader2)));
+    }
+}
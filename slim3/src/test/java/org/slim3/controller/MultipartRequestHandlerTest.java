@@ -18,9 +18,20 @@ package org.slim3.controller;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+
+import javax.servlet.ServletInputStream;
+
 import org.junit.After;
 import org.junit.Test;
+import org.slim3.controller.upload.FileItem;
+import org.slim3.controller.upload.FileItemIterator;
+import org.slim3.controller.upload.FileItemStream;
 import org.slim3.controller.upload.FileUpload;
+import org.slim3.controller.upload.Streams;
 import org.slim3.tester.MockHttpServletRequest;
 import org.slim3.tester.MockServletContext;
 
@@ -42,6 +53,7 @@ public class MultipartRequestHandlerTest {
     public void tearDown() throws Exception {
         System.clearProperty(MultipartRequestHandler.SIZE_MAX_KEY);
         System.clearProperty(MultipartRequestHandler.FILE_SIZE_MAX_KEY);
+        System.clearProperty(MultipartRequestHandler.SPILL_THRESHOLD_KEY);
     }
 
     /**
@@ -84,4 +96,138 @@ public class MultipartRequestHandlerTest {
         FileUpload upload = handler.createFileUpload();
         assertThat(upload.getFileSizeMax(), is(fileSizeMax));
     }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void handle() throws Exception {
+        byte[] data = createData(20000);
+        setUpMultipartRequest(data);
+        MultipartRequestHandler handler = new MultipartRequestHandler(request);
+        handler.handle();
+        assertThat((String) request.getAttribute("aaa"), is("hoge"));
+        assertThat((String) request.getAttribute("bbb"), is("foo"));
+        FileItem fileItem = (FileItem) request.getAttribute("file");
+        assertThat(fileItem.getShortFileName(), is("a.txt"));
+        assertThat(fileItem.getContentType(), is("text/plain"));
+        assertThat(fileItem.getSize(), is(20000L));
+        assertThat(fileItem.isInMemory(), is(true));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Streams.copy(fileItem.getInputStream(), out, true);
+        assertThat(Arrays.equals(out.toByteArray(), data), is(true));
+        assertThat(Arrays.equals(fileItem.getData(), data), is(true));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void handleForSpill() throws Exception {
+        System.setProperty(MultipartRequestHandler.SPILL_THRESHOLD_KEY, "100");
+        byte[] data = createData(20000);
+        setUpMultipartRequest(data);
+        MultipartRequestHandler handler = new MultipartRequestHandler(request);
+        handler.handle();
+        FileItem fileItem = (FileItem) request.getAttribute("file");
+        assertThat(fileItem.isInMemory(), is(false));
+        File file = fileItem.getFile();
+        assertThat(file.exists(), is(true));
+        assertThat(fileItem.getSize(), is(20000L));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fileItem.writeTo(out);
+        assertThat(Arrays.equals(out.toByteArray(), data), is(true));
+        assertThat((String) request.getAttribute("bbb"), is("foo"));
+        handler.destroy();
+        assertThat(file.exists(), is(false));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void handleForStreaming() throws Exception {
+        byte[] data = createData(20000);
+        setUpMultipartRequest(data);
+        MultipartRequestHandler handler =
+            new MultipartRequestHandler(request, true);
+        handler.handle();
+        assertThat((String) request.getAttribute("aaa"), is("hoge"));
+        assertThat(request.getAttribute("file"), is(nullValue()));
+        assertThat(request.getAttribute("bbb"), is(nullValue()));
+        FileItemIterator iter =
+            (FileItemIterator) request
+                .getAttribute(MultipartRequestHandler.FILE_ITEM_ITERATOR_KEY);
+        assertThat(iter.hasNext(), is(true));
+        FileItemStream item = iter.next();
+        assertThat(item.getFieldName(), is("file"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Streams.copy(item.openStream(), out, true);
+        assertThat(Arrays.equals(out.toByteArray(), data), is(true));
+        assertThat(iter.hasNext(), is(true));
+        item = iter.next();
+        assertThat(item.getFieldName(), is("bbb"));
+        assertThat(Streams.asString(item.openStream()), is("foo"));
+        assertThat(iter.hasNext(), is(false));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test(expected = RuntimeException.class)
+    public void handleForFileSizeMax() throws Exception {
+        System.setProperty(MultipartRequestHandler.FILE_SIZE_MAX_KEY, "100");
+        System.setProperty(MultipartRequestHandler.SPILL_THRESHOLD_KEY, "10");
+        setUpMultipartRequest(createData(20000));
+        MultipartRequestHandler handler = new MultipartRequestHandler(request);
+        try {
+            handler.handle();
+        } finally {
+            handler.destroy();
+        }
+    }
+
+    private byte[] createData(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private void setUpMultipartRequest(byte[] data) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--xxx\r\n"
+            + "Content-Disposition: form-data; name=\"aaa\"\r\n\r\n"
+            + "hoge\r\n"
+            + "--xxx\r\n"
+            + "Content-Disposition: form-data; name=\"file\";"
+            + " filename=\"a.txt\"\r\n"
+            + "Content-Type: text/plain\r\n\r\n").getBytes("UTF-8"));
+        body.write(data);
+        body.write(("\r\n--xxx\r\n"
+            + "Content-Disposition: form-data; name=\"bbb\"\r\n\r\n"
+            + "foo\r\n"
+            + "--xxx--\r\n").getBytes("UTF-8"));
+        final ByteArrayInputStream in =
+            new ByteArrayInputStream(body.toByteArray());
+        request.setCharacterEncoding("UTF-8");
+        request.setContentType("multipart/form-data; boundary=xxx");
+        request.setContentLength(-1);
+        request.setInputStream(new ServletInputStream() {
+            @Override
+            public int read() {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return in.read(b, off, len);
+            }
+        });
+    }
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.controller.router;
+
+import org.junit.Test;
+import org.slim3.tester.MockHttpServletRequest;
+import org.slim3.tester.MockServletContext;
+
+/**
+ * Run by "mvn test -Pbenchmark".
+ * 
+ */
+public class CompiledRouterImplBenchmark {
+
+    private MockServletContext servletContext = new MockServletContext();
+
+    private MockHttpServletRequest request =
+        new MockHttpServletRequest(servletContext);
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void route() throws Exception {
+        for (int size : new int[] { 10, 100, 1000 }) {
+            RouterImpl router = new RouterImpl();
+            CompiledRouterImpl compiledRouter = new CompiledRouterImpl();
+            CompiledRouterImplTest.addRoutings(router, size);
+            CompiledRouterImplTest.addRoutings(compiledRouter, size);
+            long linear = measure(router, size);
+            long compiled = measure(compiledRouter, size);
+            System.out.println("routes:"
+                + size
+                + " RouterImpl:"
+                + linear
+                + "ns/route CompiledRouterImpl:"
+                + compiled
+                + "ns/route");
+        }
+    }
+
+    private long measure(RouterImpl router, int size) {
+        int count = 0;
+        for (int i = 0; i < 10; i++) {
+            for (String path : CompiledRouterImplTest.createPaths(i)) {
+                router.route(request, path);
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            for (String path : CompiledRouterImplTest.createPaths(i)) {
+                router.route(request, path);
+                count++;
+            }
+        }
+        return (System.nanoTime() - start) / count;
+    }
+}
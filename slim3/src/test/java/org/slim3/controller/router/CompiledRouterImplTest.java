@@ -0,0 +1,159 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.controller.router;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.net.URLEncoder;
+
+import org.junit.Test;
+import org.slim3.tester.MockHttpServletRequest;
+import org.slim3.tester.MockServletContext;
+
+public class CompiledRouterImplTest {
+
+    private MockServletContext servletContext = new MockServletContext();
+
+    private MockHttpServletRequest request =
+        new MockHttpServletRequest(servletContext);
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void route() throws Exception {
+        CompiledRouterImpl router = new CompiledRouterImpl();
+        router.addRouting("/_ah/mail/{address}", "/mail?address={address}");
+        router.addRouting("/{app}/edit/{id}", "/{app}/edit?id={id}");
+        router.addRouting("/xxx/", "/yyy/");
+        router.addRouting("/{id}/xxx/", "/{id}/yyy/");
+        assertThat(
+            router.route(request, "/_ah/mail/hoge"),
+            is("/mail?address=hoge"));
+        assertThat(router.route(request, "/blog/edit/1"), is("/blog/edit?id=1"));
+        assertThat(router.route(request, "/abc"), is(nullValue()));
+        assertThat(router.route(request, "/xxx/"), is("/yyy/"));
+        assertThat(router.route(request, "/1/xxx/"), is("/1/yyy/"));
+        assertThat(router.route(request, "/1/xxx"), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void routeForFirstMatch() throws Exception {
+        CompiledRouterImpl router = new CompiledRouterImpl();
+        router.addRouting("/{app}/list", "/{app}/list?all=true");
+        router.addRouting("/blog/list", "/blog/list?all=false");
+        router.addRouting("/blog/{id}", "/blog/show?id={id}");
+        assertThat(
+            router.route(request, "/blog/list"),
+            is("/blog/list?all=true"));
+        assertThat(router.route(request, "/blog/1"), is("/blog/show?id=1"));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void routeForPlaceHoldersInSegment() throws Exception {
+        CompiledRouterImpl router = new CompiledRouterImpl();
+        router.addRouting("/item-{id}/{page}", "/item?id={id}&page={page}");
+        assertThat(
+            router.route(request, "/item-1/2"),
+            is("/item?id=1&page=2"));
+        assertThat(router.route(request, "/item-/2"), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void routeForCatchAll() throws Exception {
+        CompiledRouterImpl router = new CompiledRouterImpl();
+        router.addRouting("/abc/{xxx}/*path", "/abc?xxx={xxx}&path={path}");
+        router.addRouting("/abc/*path", "/abc?path={path}");
+        assertThat(
+            router.route(request, "/abc/123/part1/part2"),
+            is("/abc?xxx=123&path=" + URLEncoder.encode("part1/part2", "UTF-8")));
+        assertThat(
+            router.route(request, "/abc/part1"),
+            is("/abc?path=part1"));
+        assertThat(router.route(request, "/abc/"), is(nullValue()));
+        assertThat(router.route(request, "/xyz/part1"), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void routeForUncompiledRouting() throws Exception {
+        CompiledRouterImpl router = new CompiledRouterImpl();
+        router.addRouting("/abc/{id}", "/abc?id={id}");
+        router.addRouting("/x.z/{id}", "/xyz?id={id}");
+        assertThat(router.uncompiledRoutings.get(1), is(true));
+        assertThat(router.route(request, "/xyz/1"), is("/xyz?id=1"));
+        assertThat(router.route(request, "/x/z/1"), is("/xyz?id=1"));
+        assertThat(router.route(request, "/abc/1"), is("/abc?id=1"));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void routeSameAsRouterImpl() throws Exception {
+        RouterImpl router = new RouterImpl();
+        CompiledRouterImpl compiledRouter = new CompiledRouterImpl();
+        addRoutings(router, 100);
+        addRoutings(compiledRouter, 100);
+        for (int i = 0; i < 110; i++) {
+            for (String path : createPaths(i)) {
+                assertThat(path, compiledRouter.route(request, path), is(router
+                    .route(request, path)));
+            }
+        }
+    }
+
+    static void addRoutings(RouterImpl router, int size) {
+        for (int i = 0; i < size; i++) {
+            router.addRouting("/app" + i + "/{id}", "/app" + i + "/show?id={id}");
+            router.addRouting("/app" + i + "/{id}/edit", "/app"
+                + i
+                + "/edit?id={id}");
+            router.addRouting("/app" + i + "/files/*path", "/app"
+                + i
+                + "/files?path={path}");
+        }
+        router.addRouting("/{app}/{id}/{action}", "/{app}/{action}?id={id}");
+    }
+
+    static String[] createPaths(int i) {
+        return new String[] {
+            "/app" + i + "/1",
+            "/app" + i + "/1/edit",
+            "/app" + i + "/1/delete",
+            "/app" + i + "/files/a/b",
+            "/app" + i + "/",
+            "/app" + i };
+    }
+}
@@ -18,6 +18,12 @@ package org.slim3.controller.upload;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
 import org.junit.Test;
 
 /**
@@ -44,4 +50,62 @@ public class FileItemTest {
         FileItem fileItem = new FileItem("bbb.txt", "text/plain", new byte[0]);
         assertThat(fileItem.getShortFileName(), is("bbb.txt"));
     }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void chunks() throws Exception {
+        FileItem fileItem =
+            new FileItem("bbb.txt", "text/plain", Arrays.asList(
+                new byte[] { 1, 2 },
+                new byte[] { 3 }));
+        assertThat(fileItem.getSize(), is(3L));
+        assertThat(fileItem.isInMemory(), is(true));
+        byte[] expected = new byte[] { 1, 2, 3 };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Streams.copy(fileItem.getInputStream(), out, true);
+        assertThat(Arrays.equals(out.toByteArray(), expected), is(true));
+        out = new ByteArrayOutputStream();
+        fileItem.writeTo(out);
+        assertThat(Arrays.equals(out.toByteArray(), expected), is(true));
+        assertThat(Arrays.equals(fileItem.getData(), expected), is(true));
+        assertThat(fileItem.chunks, is(nullValue()));
+        assertThat(Arrays.equals(fileItem.getData(), expected), is(true));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void file() throws Exception {
+        File file = File.createTempFile("slim3", ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(new byte[] { 1, 2, 3 });
+            } finally {
+                out.close();
+            }
+            FileItem fileItem = new FileItem("bbb.txt", "text/plain", file);
+            assertThat(fileItem.getSize(), is(3L));
+            assertThat(fileItem.isInMemory(), is(false));
+            assertThat(
+                Arrays.equals(fileItem.getData(), new byte[] { 1, 2, 3 }),
+                is(true));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void size() throws Exception {
+        FileItem fileItem =
+            new FileItem("bbb.txt", "text/plain", new byte[] { 1, 2 });
+        assertThat(fileItem.getSize(), is(2L));
+        assertThat(fileItem.getFile(), is(nullValue()));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.slim3.datastore.meta.HogeMeta;
+import org.slim3.datastore.model.Hoge;
+
+/**
+ * Run by "mvn test -Pbenchmark".
+ * 
+ */
+public class AbstAttributeMetaBenchmark {
+
+    private HogeMeta meta = HogeMeta.get();
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void filterAndSortInMemory() throws Exception {
+        List<Hoge> list = new ArrayList<Hoge>();
+        for (int i = 0; i < 100000; i++) {
+            Hoge hoge = new Hoge();
+            hoge.setMyInteger(i % 1000);
+            hoge.setMyString(String.valueOf(i));
+            list.add(hoge);
+        }
+        CoreAttributeMeta<Hoge, Integer> reflective =
+            new CoreAttributeMeta<Hoge, Integer>(
+                meta,
+                "myInteger",
+                "myInteger",
+                Integer.class);
+        reflective.attributeIndex = -1;
+        long generatedTime = filterAndSort(list, meta.myInteger);
+        long reflectiveTime = filterAndSort(list, reflective);
+        System.out.println("generated accessor: "
+            + generatedTime
+            + "ms, reflection: "
+            + reflectiveTime
+            + "ms");
+    }
+
+    private long filterAndSort(List<Hoge> list,
+            CoreAttributeMeta<Hoge, Integer> attributeMeta) {
+        long start = System.nanoTime();
+        List<Hoge> filtered =
+            DatastoreUtil.filterInMemory(list, Arrays
+                .asList(new InMemoryLessThanCriterion(attributeMeta, 500)));
+        List<InMemorySortCriterion> sorts =
+            new ArrayList<InMemorySortCriterion>();
+        sorts.add(new InMemoryDescCriterion(attributeMeta));
+        DatastoreUtil.sortInMemory(filtered, sorts);
+        assertThat(filtered.size(), is(50000));
+        assertThat(filtered.get(0).getMyInteger(), is(499));
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
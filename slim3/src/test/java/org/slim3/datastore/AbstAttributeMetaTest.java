@@ -21,6 +21,7 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 import org.slim3.datastore.json.JsonRootReader;
 import org.slim3.datastore.json.JsonWriter;
+import org.slim3.datastore.meta.HogeMeta;
 import org.slim3.datastore.model.Hoge;
 import org.slim3.tester.AppEngineTestCase;
 
@@ -139,6 +140,24 @@ public class AbstAttributeMetaTest extends AppEngineTestCase {
         assertThat((String) attrMeta.getValue(hoge), is("aaa"));
     }
 
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void getValueByGeneratedAccessor() throws Exception {
+        HogeMeta hogeMeta = HogeMeta.get();
+        Hoge hoge = new Hoge();
+        hoge.setMyString("aaa");
+        hoge.setMyInteger(1);
+        assertThat((String) hogeMeta.myString.getValue(hoge), is("aaa"));
+        assertThat(hogeMeta.myString.attributeIndex, is(2));
+        assertThat((Integer) hogeMeta.myInteger.getValue(hoge), is(1));
+        hoge.setMyDouble(1.5);
+        assertThat((Double) hogeMeta.myDouble.getValue(hoge), is(1.5));
+        assertThat(hogeMeta.myDouble.attributeIndex, is(-1));
+    }
+
     /**
      * @throws Exception
      * 
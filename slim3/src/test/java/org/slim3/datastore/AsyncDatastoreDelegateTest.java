@@ -397,4 +397,71 @@ public class AsyncDatastoreDelegateTest extends AppEngineTestCase {
         assertThat(tester.count("Parent"), is(0));
         assertThat(tester.count("Child"), is(0));
     }
-}
\ No newline at end of file
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getAsMapAsyncForEntityCache() throws Exception {
+        Key key = DatastoreUtil.put(ds, null, new Entity("Hoge"));
+        Key key2 = KeyFactory.createKey("Hoge", key.getId() + 1);
+        EntityCache cache = EntityCache.begin();
+        try {
+            Map<Key, Entity> map =
+                delegate
+                    .getAsMapAsync((Transaction) null, Arrays.asList(key, key2))
+                    .get();
+            assertThat(map.size(), is(1));
+            assertThat(cache.getMissCount(), is(2));
+            ds.delete(key).get();
+            map =
+                delegate
+                    .getAsMapAsync((Transaction) null, Arrays.asList(key, key2))
+                    .get();
+            assertThat(map.size(), is(1));
+            assertThat(map.get(key), is(notNullValue()));
+            assertThat(cache.getHitCount(), is(2));
+            assertThat(cache.getMissCount(), is(2));
+        } finally {
+            EntityCache.end();
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getAsMapAsyncForEntityCacheInTx() throws Exception {
+        Key key = DatastoreUtil.put(ds, null, new Entity("Hoge"));
+        EntityCache cache = EntityCache.begin();
+        try {
+            Transaction tx = ds.beginTransaction().get();
+            delegate.getAsMapAsync(tx, Arrays.asList(key)).get();
+            tx.rollback();
+            assertThat(cache.size(), is(0));
+            assertThat(cache.getMissCount(), is(0));
+        } finally {
+            EntityCache.end();
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putAsyncForEntityCache() throws Exception {
+        EntityCache cache = EntityCache.begin();
+        try {
+            Key key =
+                delegate.putAsync((Transaction) null, new Entity("Hoge")).get();
+            assertThat(cache.contains(key), is(true));
+            delegate.getAsync(key).get();
+            assertThat(cache.getHitCount(), is(1));
+            delegate.deleteAsync(key).get();
+            assertThat(cache.contains(key), is(false));
+            assertThat(delegate.getOrNullAsync(key).get(), is(nullValue()));
+        } finally {
+            EntityCache.end();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2004-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.slim3.tester.AppEngineTestCase;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+
+public class BatchScopeTest extends AppEngineTestCase {
+
+    private AsyncDatastoreService ds;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        ds = DatastoreServiceFactory.getAsyncDatastoreService();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        BatchScope.end();
+        EntityCache.end();
+        super.tearDown();
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void begin() throws Exception {
+        assertThat(BatchScope.get(), is(nullValue()));
+        BatchScope scope = BatchScope.begin();
+        assertThat(BatchScope.get(), is(sameInstance(scope)));
+        BatchScope.end();
+        assertThat(BatchScope.get(), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void put() throws Exception {
+        BatchScope scope = new BatchScope();
+        Entity entity = new Entity("Hoge");
+        List<Key> keys = scope.put(ds, Arrays.asList(entity));
+        assertThat(keys.size(), is(1));
+        assertThat(keys.get(0).isComplete(), is(true));
+        assertThat(scope.size(), is(1));
+        assertThat(tester.count("Hoge"), is(0));
+        scope.flush();
+        assertThat(scope.size(), is(0));
+        assertThat(scope.getBatchCount(), is(1));
+        assertThat(tester.count("Hoge"), is(1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putForManyEntities() throws Exception {
+        BatchScope scope = new BatchScope();
+        List<Entity> entities = new ArrayList<Entity>();
+        for (int i = 0; i <= DatastoreUtil.MAX_NUMBER_OF_ENTITIES; i++) {
+            entities.add(new Entity("Hoge"));
+        }
+        scope.put(ds, entities);
+        scope.flush();
+        assertThat(scope.getBatchCount(), is(2));
+        assertThat(
+            tester.count("Hoge"),
+            is(DatastoreUtil.MAX_NUMBER_OF_ENTITIES + 1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void delete() throws Exception {
+        Key key = DatastoreUtil.put(ds, null, new Entity("Hoge"));
+        BatchScope scope = new BatchScope();
+        scope.delete(ds, Arrays.asList(key));
+        assertThat(tester.count("Hoge"), is(1));
+        scope.flush();
+        assertThat(tester.count("Hoge"), is(0));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putAndDelete() throws Exception {
+        BatchScope scope = new BatchScope();
+        Key key = scope.put(ds, Arrays.asList(new Entity("Hoge"))).get(0);
+        scope.delete(ds, Arrays.asList(key));
+        assertThat(scope.size(), is(1));
+        scope.flush();
+        assertThat(tester.count("Hoge"), is(0));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putForSnapshot() throws Exception {
+        BatchScope scope = new BatchScope();
+        Entity entity = new Entity("Hoge");
+        entity.setProperty("aaa", "111");
+        Key key = scope.put(ds, Arrays.asList(entity)).get(0);
+        entity.setProperty("aaa", "222");
+        scope.flush();
+        assertThat(
+            (String) DatastoreUtil.get(ds, null, key).getProperty("aaa"),
+            is("111"));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putWithEntityCache() throws Exception {
+        EntityCache cache = EntityCache.begin();
+        BatchScope scope = new BatchScope();
+        Entity entity = new Entity("Hoge");
+        entity.setProperty("aaa", "111");
+        Key key = scope.put(ds, Arrays.asList(entity)).get(0);
+        assertThat(
+            (String) cache.getEntity(key).getProperty("aaa"),
+            is("111"));
+        scope.delete(ds, Arrays.asList(key));
+        assertThat(cache.contains(key), is(true));
+        assertThat(cache.getEntity(key), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putOneByOne() throws Exception {
+        BatchScope scope = new BatchScope();
+        scope.ds = ds;
+        Entity entity = new Entity(KeyFactory.createKey("Hoge", 1));
+        Exception error = new IllegalArgumentException();
+        Map<Key, Throwable> errors = new LinkedHashMap<Key, Throwable>();
+        scope.putOneByOne(Arrays.asList(entity), error, errors);
+        assertThat(errors.size(), is(1));
+        assertThat(errors.get(entity.getKey()), is((Throwable) error));
+        assertThat(tester.count("Hoge"), is(0));
+        errors.clear();
+        Entity entity2 = new Entity(KeyFactory.createKey("Hoge", 2));
+        scope.putOneByOne(Arrays.asList(entity, entity2), error, errors);
+        assertThat(errors.size(), is(0));
+        assertThat(tester.count("Hoge"), is(2));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void batchFlushException() throws Exception {
+        Key key = KeyFactory.createKey("Hoge", 1);
+        Exception error = new IllegalArgumentException("aaa");
+        Map<Key, Throwable> errors = new LinkedHashMap<Key, Throwable>();
+        errors.put(key, error);
+        BatchFlushException e = new BatchFlushException(errors);
+        assertThat(e.getErrors().get(key), is((Throwable) error));
+        assertThat(e.getCause(), is((Throwable) error));
+    }
+}
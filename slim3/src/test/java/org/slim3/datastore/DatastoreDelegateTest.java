@@ -21,19 +21,31 @@ import static org.junit.Assert.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.logging.LogRecord;
 
 import org.junit.Test;
+import org.slim3.datastore.meta.BbbMeta;
 import org.slim3.datastore.meta.HogeMeta;
+import org.slim3.datastore.model.Bbb;
 import org.slim3.datastore.model.Hoge;
 import org.slim3.tester.AppEngineTestCase;
 import org.slim3.util.CipherFactory;
 
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Text;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.ApiConfig;
+import com.google.apphosting.api.ApiProxy.ApiProxyException;
+import com.google.apphosting.api.ApiProxy.Delegate;
+import com.google.apphosting.api.ApiProxy.Environment;
 
 /**
  * @author higa
@@ -320,4 +332,248 @@ public class DatastoreDelegateTest extends AppEngineTestCase {
         assertThat(((Text) delegate.get(key).getProperty("myCipherText"))
             .getValue(), not("hogehogehoge."));
     }
-}
\ No newline at end of file
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void resolveRefs() throws Exception {
+        Hoge hoge = new Hoge();
+        Hoge hoge2 = new Hoge();
+        delegate.put(hoge);
+        delegate.put(hoge2);
+        List<Bbb> bbbList = new ArrayList<Bbb>();
+        for (int i = 0; i < 3; i++) {
+            Bbb bbb = new Bbb();
+            bbb.getHogeRef().setKey(hoge.getKey());
+            bbb.getHoge2Ref().setKey(hoge2.getKey());
+            bbbList.add(bbb);
+        }
+        bbbList.add(new Bbb());
+        BbbMeta b = BbbMeta.get();
+        delegate.resolveRefs(bbbList, b.hogeRef, b.hoge2Ref);
+        for (int i = 0; i < 3; i++) {
+            Bbb bbb = bbbList.get(i);
+            assertThat(bbb.getHogeRef().model.getKey(), is(hoge.getKey()));
+            assertThat(bbb.getHoge2Ref().model.getKey(), is(hoge2.getKey()));
+        }
+        assertThat(bbbList.get(3).getHogeRef().model, is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void resolveRefsForNotFound() throws Exception {
+        Bbb bbb = new Bbb();
+        bbb.getHogeRef().setKey(KeyFactory.createKey("Hoge", 1));
+        delegate.resolveRefs(Arrays.asList(bbb), BbbMeta.get().hogeRef);
+        assertThat(bbb.getHogeRef().model, is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void resolveInverseRefs() throws Exception {
+        List<Hoge> hogeList = new ArrayList<Hoge>();
+        for (int i = 0; i < 35; i++) {
+            Hoge hoge = new Hoge();
+            delegate.put(hoge);
+            hogeList.add(hoge);
+            if (i % 2 == 0) {
+                for (int j = 0; j < 2; j++) {
+                    Bbb bbb = new Bbb();
+                    bbb.getHogeRef().setKey(
+                        j == 0 ? hoge.getKey() : KeyFactory.createKey(
+                            "Hoge",
+                            10000));
+                    bbb.getHoge2Ref().setKey(hoge.getKey());
+                    delegate.put(bbb);
+                }
+            }
+        }
+        List<AbstractInverseModelRef<Bbb, Hoge>> refs =
+            new ArrayList<AbstractInverseModelRef<Bbb, Hoge>>();
+        for (Hoge hoge : hogeList) {
+            refs.add(hoge.getBbbRef());
+            refs.add(hoge.getBbbListRef());
+        }
+        delegate.resolveInverseRefs(refs);
+        for (int i = 0; i < hogeList.size(); i++) {
+            Hoge hoge = hogeList.get(i);
+            List<Bbb> bbbList = hoge.getBbbListRef().modelList;
+            Bbb bbb = hoge.getBbbRef().model;
+            if (i % 2 == 0) {
+                assertThat(bbbList.size(), is(2));
+                assertThat(
+                    bbbList.get(0).getHoge2Ref().getKey(),
+                    is(hoge.getKey()));
+                assertThat(bbb.getHogeRef().getKey(), is(hoge.getKey()));
+            } else {
+                assertThat(bbbList.size(), is(0));
+                assertThat(bbb, is(nullValue()));
+            }
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void resolveInverseRefsForNoMatch() throws Exception {
+        List<Hoge> hogeList = new ArrayList<Hoge>();
+        List<AbstractInverseModelRef<Bbb, Hoge>> refs =
+            new ArrayList<AbstractInverseModelRef<Bbb, Hoge>>();
+        for (int i = 0; i < 3; i++) {
+            Hoge hoge = new Hoge();
+            delegate.put(hoge);
+            hogeList.add(hoge);
+            refs.add(hoge.getBbbRef());
+        }
+        delegate.resolveInverseRefs(refs);
+        final Delegate<Environment> parent = ApiProxy.getDelegate();
+        final List<String> methods = new ArrayList<String>();
+        ApiProxy.setDelegate(new Delegate<Environment>() {
+            public byte[] makeSyncCall(Environment env, String service,
+                    String method, byte[] request) throws ApiProxyException {
+                methods.add(method);
+                return parent.makeSyncCall(env, service, method, request);
+            }
+
+            public Future<byte[]> makeAsyncCall(Environment env,
+                    String service, String method, byte[] request,
+                    ApiConfig config) {
+                methods.add(method);
+                return parent.makeAsyncCall(
+                    env,
+                    service,
+                    method,
+                    request,
+                    config);
+            }
+
+            public void log(Environment env, LogRecord rec) {
+                parent.log(env, rec);
+            }
+
+            public void flushLogs(Environment env) {
+                parent.flushLogs(env);
+            }
+
+            public List<Thread> getRequestThreads(Environment env) {
+                return parent.getRequestThreads(env);
+            }
+        });
+        try {
+            for (Hoge hoge : hogeList) {
+                assertThat(hoge.getBbbRef().getModel(), is(nullValue()));
+            }
+        } finally {
+            ApiProxy.setDelegate(parent);
+        }
+        assertThat(methods.size(), is(0));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = PreparedQuery.TooManyResultsException.class)
+    public void resolveInverseRefsForTooManyResults() throws Exception {
+        Hoge hoge = new Hoge();
+        delegate.put(hoge);
+        for (int i = 0; i < 2; i++) {
+            Bbb bbb = new Bbb();
+            bbb.getHogeRef().setKey(hoge.getKey());
+            delegate.put(bbb);
+        }
+        delegate.resolveInverseRefs(Arrays.asList(hoge.getBbbRef()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putAndDeleteInBatchScope() throws Exception {
+        BatchScope scope = BatchScope.begin();
+        try {
+            Hoge hoge = new Hoge();
+            Key key = delegate.put(hoge);
+            assertThat(hoge.getKey(), is(key));
+            assertThat(tester.count("Hoge"), is(0));
+            Key key2 = delegate.put(new Entity("Hoge"));
+            assertThat(delegate.put(new Hoge(), new Hoge()).size(), is(2));
+            assertThat(scope.size(), is(4));
+            scope.flush();
+            assertThat(tester.count("Hoge"), is(4));
+            delegate.delete(key, key2);
+            assertThat(tester.count("Hoge"), is(4));
+            scope.flush();
+            assertThat(tester.count("Hoge"), is(2));
+        } finally {
+            BatchScope.end();
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putInTransactionInBatchScope() throws Exception {
+        BatchScope scope = BatchScope.begin();
+        try {
+            Transaction tx = delegate.beginTransaction();
+            delegate.put(tx, new Hoge());
+            tx.commit();
+            assertThat(scope.size(), is(0));
+            assertThat(tester.count("Hoge"), is(1));
+        } finally {
+            BatchScope.end();
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void beginTransactionFlushesBatchScope() throws Exception {
+        BatchScope scope = BatchScope.begin();
+        try {
+            Entity entity = new Entity("Hoge");
+            entity.setProperty("value", 1L);
+            Key key = delegate.put(entity);
+            Transaction tx = delegate.beginTransaction();
+            assertThat(scope.size(), is(0));
+            Entity entity2 = delegate.get(tx, key);
+            entity2.setProperty("value", 2L);
+            delegate.put(tx, entity2);
+            tx.commit();
+            scope.flush();
+            assertThat((Long) delegate.get(key).getProperty("value"), is(2L));
+        } finally {
+            BatchScope.end();
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putAsyncFlushesBatchScope() throws Exception {
+        BatchScope scope = BatchScope.begin();
+        try {
+            Entity entity = new Entity("Hoge");
+            entity.setProperty("value", 1L);
+            Key key = delegate.put(entity);
+            Entity entity2 = new Entity(key);
+            entity2.setProperty("value", 2L);
+            delegate.asyncDelegate().putAsync(entity2).get();
+            assertThat(scope.size(), is(0));
+            scope.flush();
+            assertThat((Long) delegate.get(key).getProperty("value"), is(2L));
+        } finally {
+            BatchScope.end();
+        }
+    }
+}
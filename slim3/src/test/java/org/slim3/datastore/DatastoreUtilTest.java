@@ -25,7 +25,6 @@ import static org.junit.Assert.assertThat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Future;
@@ -40,6 +39,7 @@ import org.slim3.datastore.shared.model.Ccc;
 import org.slim3.tester.AppEngineTestCase;
 import org.slim3.util.CipherFactory;
 
+import com.google.appengine.api.NamespaceManager;
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
@@ -115,18 +115,22 @@ public class DatastoreUtilTest extends AppEngineTestCase {
         DatastoreUtil.keysCache.remove("Hoge");
         Key key = DatastoreUtil.allocateId(ds, "Hoge");
         assertThat(key, is(notNullValue()));
-        Iterator<Key> keys = DatastoreUtil.keysCache.get("Hoge");
-        assertThat(keys, is(notNullValue()));
+        KeyPool pool = DatastoreUtil.keysCache.get("Hoge");
+        assertThat(pool, is(notNullValue()));
+        assertThat(pool.getRemaining(), is(49L));
+        assertThat(pool.getBatchSize(), is(100L));
         for (int i = 0; i < 49; i++) {
             DatastoreUtil.allocateId(ds, "Hoge");
             assertThat(
                 DatastoreUtil.keysCache.get("Hoge"),
-                is(sameInstance(keys)));
+                is(sameInstance(pool)));
         }
-        DatastoreUtil.allocateId(ds, "Hoge");
-        assertThat(
-            DatastoreUtil.keysCache.get("Hoge"),
-            is(not(sameInstance(keys))));
+        assertThat(pool.getRemaining(), is(0L));
+        assertThat(pool.isPrefetching(), is(true));
+        Key key2 = DatastoreUtil.allocateId(ds, "Hoge");
+        assertThat(key2, is(not(key)));
+        assertThat(pool.getRemaining(), is(99L));
+        assertThat(pool.getBatchSize(), is(200L));
     }
 
     /**
@@ -138,6 +142,28 @@ public class DatastoreUtilTest extends AppEngineTestCase {
         Key key = DatastoreUtil.allocateId(ds, parentKey, "Child");
         assertThat(key, is(notNullValue()));
         assertThat(key.isComplete(), is(true));
+        assertThat(key.getParent(), is(parentKey));
+        Key key2 = DatastoreUtil.allocateId(ds, parentKey, "Child");
+        assertThat(key2, is(not(key)));
+        Key key3 = DatastoreUtil.allocateId(ds, parentKey, "Child");
+        assertThat(key3, is(not(key2)));
+        assertThat(DatastoreUtil.parentKeysCache.size(), is(1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void allocateIdInNamespace() throws Exception {
+        Key key = DatastoreUtil.allocateId(ds, "Hoge");
+        NamespaceManager.set("aaa");
+        try {
+            Key key2 = DatastoreUtil.allocateId(ds, "Hoge");
+            assertThat(key2.getNamespace(), is("aaa"));
+            assertThat(key.getNamespace(), is(""));
+        } finally {
+            NamespaceManager.set(null);
+        }
     }
 
     /**
@@ -561,6 +587,20 @@ public class DatastoreUtilTest extends AppEngineTestCase {
         assertThat(hoge.getKey(), is(entity.getKey()));
     }
 
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void entityToModel() throws Exception {
+        Key key = KeyFactory.createKey("Hoge", 1);
+        assertThat(
+            DatastoreUtil.entityToModel(meta, new Entity(key)).getKey(),
+            is(key));
+        assertThat(
+            DatastoreUtil.entityToModel(meta, new Entity("Hoge")).getKey(),
+            is(nullValue()));
+    }
+
     /**
      * @throws Exception
      */
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.slim3.tester.AppEngineTestCase;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+
+public class EntityCacheTest extends AppEngineTestCase {
+
+    private Key key;
+
+    private Key key2;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        key = KeyFactory.createKey("Hoge", 1);
+        key2 = KeyFactory.createKey("Hoge", 2);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        EntityCache.end();
+        super.tearDown();
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void begin() throws Exception {
+        assertThat(EntityCache.get(), is(nullValue()));
+        EntityCache cache = EntityCache.begin();
+        assertThat(EntityCache.get(), is(sameInstance(cache)));
+        EntityCache.end();
+        assertThat(EntityCache.get(), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void lookup() throws Exception {
+        EntityCache cache = new EntityCache();
+        Entity entity = new Entity(key);
+        entity.setProperty("aaa", "111");
+        cache.store(Arrays.asList(key2), new HashMap<Key, Entity>());
+        cache.store(Arrays.asList(entity));
+        Map<Key, Entity> found = new HashMap<Key, Entity>();
+        Key key3 = KeyFactory.createKey("Hoge", 3);
+        Set<Key> missingKeys =
+            cache.lookup(Arrays.asList(key, key2, key3, key3), found);
+        assertThat(missingKeys.size(), is(1));
+        assertThat(missingKeys.contains(key3), is(true));
+        assertThat(found.size(), is(1));
+        assertThat(found.get(key), is(notNullValue()));
+        assertThat(found.get(key), is(not(sameInstance(entity))));
+        assertThat((String) found.get(key).getProperty("aaa"), is("111"));
+        assertThat(cache.getHitCount(), is(2));
+        assertThat(cache.getMissCount(), is(1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void invalidate() throws Exception {
+        EntityCache cache = new EntityCache();
+        cache.store(Arrays.asList(new Entity(key)));
+        assertThat(cache.contains(key), is(true));
+        cache.invalidate(Arrays.asList(key));
+        assertThat(cache.contains(key), is(false));
+        assertThat(cache.getModificationCount(), is(1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void invalidateCurrent() throws Exception {
+        EntityCache cache = EntityCache.begin();
+        cache.store(Arrays.asList(new Entity(key)));
+        EntityCache.invalidateCurrent(Arrays.asList(key));
+        assertThat(cache.contains(key), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void clear() throws Exception {
+        EntityCache cache = new EntityCache();
+        cache.store(Arrays.asList(new Entity(key)));
+        cache.clear();
+        assertThat(cache.size(), is(0));
+    }
+}
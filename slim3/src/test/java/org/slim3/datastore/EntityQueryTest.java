@@ -142,4 +142,63 @@ public class EntityQueryTest extends AppEngineTestCase {
         }
         assertThat(found, is(true));
     }
-}
\ No newline at end of file
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asListAsync() throws Exception {
+        ds.put(new Entity("Hoge"));
+        EntityQuery q = new EntityQuery(ds, "Hoge");
+        assertThat(q.asListAsync().get().size(), is(1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asSingleEntityAsync() throws Exception {
+        Key key = ds.put(new Entity("Hoge")).get();
+        EntityQuery q = new EntityQuery(ds, "Hoge");
+        assertThat(q.asSingleEntityAsync().get().getKey(), is(key));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void countAsync() throws Exception {
+        Entity entity = new Entity("Hoge");
+        entity.setProperty("aaa", "111");
+        ds.put(entity).get();
+        ds.put(new Entity("Hoge")).get();
+        EntityQuery q = new EntityQuery(ds, "Hoge");
+        assertThat(q.countAsync().get(), is(2));
+        assertThat(q.query.isKeysOnly(), is(false));
+        assertThat(q.asList().get(0).getProperty("aaa"), is((Object) "111"));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void countAsyncForLimit() throws Exception {
+        ds.put(new Entity("Hoge")).get();
+        ds.put(new Entity("Hoge")).get();
+        ds.put(new Entity("Hoge")).get();
+        EntityQuery q = new EntityQuery(ds, "Hoge");
+        assertThat(q.limit(2).countAsync().get(), is(2));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void countAsyncForKeysOnly() throws Exception {
+        ds.put(new Entity("Hoge")).get();
+        EntityQuery q = new EntityQuery(ds, "Hoge");
+        q.query.setKeysOnly();
+        assertThat(q.countAsync().get(), is(1));
+        assertThat(q.query.isKeysOnly(), is(true));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.slim3.tester.AppEngineTestCase;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+
+/**
+ * Run by "mvn test -Pbenchmark".
+ * 
+ */
+public class GlobalTransactionBenchmark extends AppEngineTestCase {
+
+    private AsyncDatastoreService ds =
+        DatastoreServiceFactory.getAsyncDatastoreService();
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void commitLatencyByNumberOfGroups() throws Exception {
+        for (int groups : new int[] { 1, 5, 10, 20 }) {
+            GlobalTransaction g = new GlobalTransaction(ds);
+            g.begin();
+            List<Entity> entities = new ArrayList<Entity>();
+            for (int i = 1; i <= groups; i++) {
+                entities.add(new Entity(KeyFactory.createKey(
+                    "Bench" + groups,
+                    i)));
+            }
+            long start = System.nanoTime();
+            g.put(entities);
+            g.commit();
+            long millis = (System.nanoTime() - start) / 1000000;
+            System.out.println(groups + " groups: " + millis + "ms");
+            assertThat(tester.count("Bench" + groups), is(groups));
+            assertThat(tester.count(Lock.KIND), is(0));
+        }
+    }
+}
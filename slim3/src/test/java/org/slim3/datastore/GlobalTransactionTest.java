@@ -18,6 +18,7 @@ package org.slim3.datastore;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.ConcurrentModificationException;
 import java.util.List;
@@ -324,6 +325,75 @@ public class GlobalTransactionTest extends AppEngineTestCase {
         gtx.lock(childKey);
     }
 
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void lockRootKeys() throws Exception {
+        Key key = KeyFactory.createKey("Hoge", 1);
+        Key key2 = KeyFactory.createKey("Hoge", 2);
+        Key key3 = KeyFactory.createKey("Hoge", 3);
+        gtx.setLocalTransactionRootKey(key);
+        gtx.lock(Arrays.asList(key3, key2));
+        assertThat(gtx.lockMap.size(), is(2));
+        assertThat(
+            DatastoreUtil.getOrNull(ds, null, Lock.createKey(key2)),
+            is(notNullValue()));
+        assertThat(
+            DatastoreUtil.getOrNull(ds, null, Lock.createKey(key3)),
+            is(notNullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void lockRootKeysWhenConcurrentModificationExceptionOccurred()
+            throws Exception {
+        Key key = KeyFactory.createKey("Hoge", 1);
+        Key key2 = KeyFactory.createKey("Hoge", 2);
+        Key key3 = KeyFactory.createKey("Hoge", 3);
+        GlobalTransaction otherGtx = new GlobalTransaction(ds);
+        otherGtx.begin();
+        otherGtx.setLocalTransactionRootKey(key3);
+        otherGtx.lock(key3);
+        gtx.setLocalTransactionRootKey(key);
+        try {
+            gtx.lock(Arrays.asList(key2, key3));
+            fail();
+        } catch (ConcurrentModificationException e) {
+            assertThat(gtx.isActive(), is(false));
+            assertThat(gtx.lockMap.size(), is(0));
+            assertThat(
+                DatastoreUtil.getOrNull(ds, null, Lock.createKey(key2)),
+                is(nullValue()));
+            Lock lock = Lock.getOrNull(ds, null, Lock.createKey(key3));
+            assertThat(lock, is(notNullValue()));
+            assertThat(
+                lock.globalTransactionKey,
+                is(otherGtx.globalTransactionKey));
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void commitForManyGroups() throws Exception {
+        int groups = 20;
+        GlobalTransaction g = new GlobalTransaction(ds);
+        g.begin();
+        List<Entity> entities = new ArrayList<Entity>();
+        for (int i = 1; i <= groups; i++) {
+            entities.add(new Entity(KeyFactory.createKey("Hoge", i)));
+        }
+        g.put(entities);
+        g.commit();
+        assertThat(tester.count("Hoge"), is(groups));
+        assertThat(tester.count(Lock.KIND), is(0));
+        assertThat(tester.count(Journal.KIND), is(0));
+    }
+
     /**
      * @throws Exception
      */
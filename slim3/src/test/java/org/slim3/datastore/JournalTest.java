@@ -18,6 +18,7 @@ package org.slim3.datastore;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -106,6 +107,78 @@ public class JournalTest extends AppEngineTestCase {
         assertThat(tester.count(Journal.KIND), is(0));
     }
 
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void applyManyEntities() throws Exception {
+        Key globalTransactionKey =
+            DatastoreUtil.allocateId(ds, GlobalTransaction.KIND);
+        Map<Key, Entity> journalMap = new LinkedHashMap<Key, Entity>();
+        for (int i = 1; i <= DatastoreUtil.MAX_NUMBER_OF_ENTITIES * 2; i++) {
+            Key key = KeyFactory.createKey("Hoge", i);
+            Entity entity = new Entity(key);
+            entity.setUnindexedProperty("aaa", new Blob(new byte[1000]));
+            journalMap.put(key, entity);
+        }
+        List<Entity> entities =
+            Journal.put(ds, globalTransactionKey, journalMap);
+        assertThat(entities.size() > 1, is(true));
+        Journal.apply(ds, entities);
+        assertThat(
+            tester.count("Hoge"),
+            is(DatastoreUtil.MAX_NUMBER_OF_ENTITIES * 2));
+        assertThat(tester.count(Journal.KIND), is(0));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void splitPutBatches() throws Exception {
+        List<Entity> entities = new ArrayList<Entity>();
+        List<Integer> sizes = new ArrayList<Integer>();
+        for (int i = 1; i <= DatastoreUtil.MAX_NUMBER_OF_ENTITIES + 1; i++) {
+            entities.add(new Entity(KeyFactory.createKey("Hoge", i)));
+            sizes.add(10);
+        }
+        List<List<Entity>> batches = Journal.splitPutBatches(entities, sizes);
+        assertThat(batches.size(), is(2));
+        assertThat(
+            batches.get(0).size(),
+            is(DatastoreUtil.MAX_NUMBER_OF_ENTITIES));
+        assertThat(batches.get(1).size(), is(1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void splitPutBatchesBySize() throws Exception {
+        List<Entity> entities = new ArrayList<Entity>();
+        List<Integer> sizes = new ArrayList<Integer>();
+        for (int i = 1; i <= 3; i++) {
+            entities.add(new Entity(KeyFactory.createKey("Hoge", i)));
+            sizes.add(DatastoreUtil.MAX_ENTITY_SIZE / 2);
+        }
+        List<List<Entity>> batches = Journal.splitPutBatches(entities, sizes);
+        assertThat(batches.size(), is(3));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void splitDeleteBatches() throws Exception {
+        List<Key> keys = new ArrayList<Key>();
+        for (int i = 1; i <= DatastoreUtil.MAX_NUMBER_OF_ENTITIES * 2 + 1; i++) {
+            keys.add(KeyFactory.createKey("Hoge", i));
+        }
+        List<List<Key>> batches = Journal.splitDeleteBatches(keys);
+        assertThat(batches.size(), is(3));
+        assertThat(batches.get(2).size(), is(1));
+    }
+
     /**
      * @throws Exception
      */
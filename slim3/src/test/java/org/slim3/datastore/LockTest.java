@@ -333,6 +333,66 @@ public class LockTest extends AppEngineTestCase {
         assertThat(ds.getActiveTransactions().size(), is(0));
     }
 
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void lockLocks() throws Exception {
+        Key globalTransactionKey =
+            DatastoreUtil.allocateId(ds, GlobalTransaction.KIND);
+        long timestamp = System.currentTimeMillis();
+        Lock lock =
+            new Lock(
+                ds,
+                globalTransactionKey,
+                KeyFactory.createKey("Hoge", 1),
+                timestamp);
+        Lock lock2 =
+            new Lock(
+                ds,
+                globalTransactionKey,
+                KeyFactory.createKey("Hoge", 2),
+                timestamp);
+        Lock.lock(Arrays.asList(lock, lock2));
+        assertThat(
+            DatastoreUtil.getOrNull(ds, null, lock.getKey()),
+            is(notNullValue()));
+        assertThat(
+            DatastoreUtil.getOrNull(ds, null, lock2.getKey()),
+            is(notNullValue()));
+        assertThat(ds.getActiveTransactions().size(), is(0));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void lockLocksWhenOtherIsNotTimeout() throws Exception {
+        Key globalTransactionKey =
+            DatastoreUtil.allocateId(ds, GlobalTransaction.KIND);
+        Key globalTransactionKey2 =
+            DatastoreUtil.allocateId(ds, GlobalTransaction.KIND);
+        Key rootKey = KeyFactory.createKey("Hoge", 1);
+        Key rootKey2 = KeyFactory.createKey("Hoge", 2);
+        long timestamp = System.currentTimeMillis();
+        Lock other = new Lock(ds, globalTransactionKey2, rootKey2, timestamp);
+        other.lock();
+        Lock lock = new Lock(ds, globalTransactionKey, rootKey, timestamp);
+        Lock lock2 = new Lock(ds, globalTransactionKey, rootKey2, timestamp);
+        try {
+            Lock.lock(Arrays.asList(lock, lock2));
+            fail();
+        } catch (ConcurrentModificationException ignore) {
+        }
+        assertThat(
+            DatastoreUtil.getOrNull(ds, null, lock.getKey()),
+            is(nullValue()));
+        assertThat(
+            Lock.getOrNull(ds, null, lock2.getKey()).globalTransactionKey,
+            is(globalTransactionKey2));
+        assertThat(ds.getActiveTransactions().size(), is(0));
+    }
+
     /**
      * @throws Exception
      */
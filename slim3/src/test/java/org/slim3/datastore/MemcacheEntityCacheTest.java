@@ -0,0 +1,305 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.slim3.datastore.meta.HogeMeta;
+import org.slim3.memcache.Memcache;
+import org.slim3.tester.AppEngineTestCase;
+import org.slim3.util.FutureUtil;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+
+public class MemcacheEntityCacheTest extends AppEngineTestCase {
+
+    private AsyncDatastoreService ds =
+        DatastoreServiceFactory.getAsyncDatastoreService();
+
+    private Key key;
+
+    private String cacheKey;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        key = KeyFactory.createKey("Hoge", 1);
+        cacheKey = MemcacheEntityCache.toCacheKey(key);
+        System.setProperty(MemcacheEntityCache.ENABLED_KEY, "true");
+        MemcacheEntityCache.enable("Hoge");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        MemcacheEntityCache.releaseAll();
+        System.clearProperty(MemcacheEntityCache.ENABLED_KEY);
+        MemcacheEntityCache.kinds.clear();
+        MemcacheEntityCache.resetStatistics();
+        super.tearDown();
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void enable() throws Exception {
+        assertThat(MemcacheEntityCache.isEnabled("Hoge"), is(true));
+        assertThat(MemcacheEntityCache.isEnabled(key), is(true));
+        MemcacheEntityCache.disable("Hoge");
+        assertThat(MemcacheEntityCache.isEnabled("Hoge"), is(false));
+        assertThat(MemcacheEntityCache.isEnabled(key), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void enableWithoutSystemProperty() throws Exception {
+        System.clearProperty(MemcacheEntityCache.ENABLED_KEY);
+        assertThat(MemcacheEntityCache.isAvailable(), is(false));
+        assertThat(MemcacheEntityCache.isEnabled("Hoge"), is(false));
+        DatastoreUtil.put(ds, null, new Entity(key));
+        assertThat(Memcache.contains(cacheKey), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void setMemcacheEnabled() throws Exception {
+        HogeMeta meta = HogeMeta.get();
+        assertThat(meta.isMemcacheEnabled(), is(true));
+        meta.setMemcacheEnabled(false);
+        assertThat(MemcacheEntityCache.isEnabled("Hoge"), is(false));
+        assertThat(meta.isMemcacheEnabled(), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getAsMapAsync() throws Exception {
+        Entity entity = new Entity(key);
+        entity.setProperty("aaa", "111");
+        DatastoreUtil.put(ds, null, entity);
+        assertThat(Memcache.contains(cacheKey), is(false));
+        Map<Key, Entity> map =
+            MemcacheEntityCache.getAsMapAsync(ds, Arrays.asList(key)).get();
+        assertThat((String) map.get(key).getProperty("aaa"), is("111"));
+        assertThat(MemcacheEntityCache.getMissCount(), is(1L));
+        assertThat(Memcache.get(cacheKey), is(instanceOf(byte[].class)));
+        ds.delete(key).get();
+        map = MemcacheEntityCache.getAsMapAsync(ds, Arrays.asList(key)).get();
+        assertThat((String) map.get(key).getProperty("aaa"), is("111"));
+        assertThat(MemcacheEntityCache.getHitCount(), is(1L));
+        assertThat(MemcacheEntityCache.getHitRatio(), is(0.5));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getAsMapAsyncForNotFound() throws Exception {
+        Map<Key, Entity> map =
+            MemcacheEntityCache.getAsMapAsync(ds, Arrays.asList(key)).get();
+        assertThat(map.size(), is(0));
+        byte[] bytes = (byte[]) Memcache.get(cacheKey);
+        assertThat(bytes.length, is(0));
+        map = MemcacheEntityCache.getAsMapAsync(ds, Arrays.asList(key)).get();
+        assertThat(map.size(), is(0));
+        assertThat(MemcacheEntityCache.getHitCount(), is(1L));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getAsMapAsyncForLocked() throws Exception {
+        DatastoreUtil.put(ds, null, new Entity(key));
+        String lock = MemcacheEntityCache.LOCK_PREFIX + "aaa";
+        Memcache.put(cacheKey, lock);
+        Map<Key, Entity> map =
+            MemcacheEntityCache.getAsMapAsync(ds, Arrays.asList(key)).get();
+        assertThat(map.get(key), is(notNullValue()));
+        assertThat(MemcacheEntityCache.getLockedCount(), is(1L));
+        assertThat((String) Memcache.get(cacheKey), is(lock));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getAsMapAsyncForDisabledKind() throws Exception {
+        Key key2 = KeyFactory.createKey("Aaa", 1);
+        DatastoreUtil.put(ds, null, new Entity(key2));
+        Map<Key, Entity> map =
+            MemcacheEntityCache.getAsMapAsync(ds, Arrays.asList(key2)).get();
+        assertThat(map.get(key2), is(notNullValue()));
+        assertThat(
+            Memcache.contains(MemcacheEntityCache.toCacheKey(key2)),
+            is(false));
+        assertThat(MemcacheEntityCache.getMissCount(), is(0L));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putInvalidatesCache() throws Exception {
+        Entity entity = new Entity(key);
+        entity.setProperty("aaa", "111");
+        DatastoreUtil.put(ds, null, entity);
+        MemcacheEntityCache.getAsMapAsync(ds, Arrays.asList(key)).get();
+        entity.setProperty("aaa", "222");
+        DatastoreUtil.put(ds, null, entity);
+        assertThat(Memcache.get(cacheKey), is(not(instanceOf(byte[].class))));
+        Map<Key, Entity> map =
+            MemcacheEntityCache.getAsMapAsync(ds, Arrays.asList(key)).get();
+        assertThat((String) map.get(key).getProperty("aaa"), is("222"));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void deleteInvalidatesCache() throws Exception {
+        DatastoreUtil.put(ds, null, new Entity(key));
+        MemcacheEntityCache.getAsMapAsync(ds, Arrays.asList(key)).get();
+        DatastoreUtil.delete(ds, null, key);
+        assertThat(Memcache.get(cacheKey), is(not(instanceOf(byte[].class))));
+        Map<Key, Entity> map =
+            MemcacheEntityCache.getAsMapAsync(ds, Arrays.asList(key)).get();
+        assertThat(map.get(key), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putLocksDisabledKind() throws Exception {
+        MemcacheEntityCache.disable("Hoge");
+        DatastoreUtil.put(ds, null, new Entity(key));
+        assertThat(
+            ((String) Memcache.get(cacheKey))
+                .startsWith(MemcacheEntityCache.LOCK_PREFIX),
+            is(true));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putDoesNotLockInternalKind() throws Exception {
+        Key key2 = KeyFactory.createKey(Lock.KIND, 1);
+        DatastoreUtil.put(ds, null, new Entity(key2));
+        assertThat(
+            Memcache.contains(MemcacheEntityCache.toCacheKey(key2)),
+            is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void unlockLeavesLockOfOtherWriter() throws Exception {
+        Map<String, String> locks =
+            MemcacheEntityCache.lock(Arrays.asList(key), null);
+        Map<String, String> locks2 =
+            MemcacheEntityCache.lock(Arrays.asList(key), null);
+        assertThat(locks.get(cacheKey), is(not(locks2.get(cacheKey))));
+        MemcacheEntityCache.unlock(locks);
+        assertThat((String) Memcache.get(cacheKey), is(locks2.get(cacheKey)));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putInTxLocksUntilReleased() throws Exception {
+        Transaction tx = ds.beginTransaction().get();
+        DatastoreUtil.put(ds, tx, new Entity(key));
+        String lock = (String) Memcache.get(cacheKey);
+        assertThat(lock.startsWith(MemcacheEntityCache.LOCK_PREFIX), is(true));
+        assertThat(MemcacheEntityCache.txLocks.get().size(), is(1));
+        tx.commit();
+        Map<Key, Entity> map =
+            MemcacheEntityCache.getAsMapAsync(ds, Arrays.asList(key)).get();
+        assertThat(map.get(key), is(notNullValue()));
+        assertThat(MemcacheEntityCache.getLockedCount(), is(1L));
+        MemcacheEntityCache.release(tx);
+        assertThat(MemcacheEntityCache.txLocks.get().size(), is(0));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void txUowReleasesLocks() throws Exception {
+        Uow.run(new TxUow() {
+
+            @Override
+            protected Object run() {
+                DatastoreUtil.put(ds, tx, new Entity(key));
+                return null;
+            }
+        });
+        assertThat(MemcacheEntityCache.txLocks.get().size(), is(0));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void fillIsSkippedIfLockedAfterLease() throws Exception {
+        DatastoreUtil.put(ds, null, new Entity(key));
+        Map<Object, IdentifiableValue> leases =
+            MemcacheEntityCache.lease(
+                MemcacheEntityCache.delegate(),
+                Arrays.asList(cacheKey));
+        assertThat(leases.size(), is(1));
+        Map<String, String> locks =
+            MemcacheEntityCache.lock(Arrays.asList(key), null);
+        Map<Key, Entity> map =
+            FutureUtil.getQuietly(DatastoreUtil.getAsMapAsync(
+                ds,
+                null,
+                Arrays.asList(key)));
+        Map<String, Key> cacheKeys = new HashMap<String, Key>();
+        cacheKeys.put(cacheKey, key);
+        MemcacheEntityCache.fill(
+            MemcacheEntityCache.delegate(),
+            leases,
+            cacheKeys,
+            map);
+        assertThat((String) Memcache.get(cacheKey), is(locks.get(cacheKey)));
+    }
+}
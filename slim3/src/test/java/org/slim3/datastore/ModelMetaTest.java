@@ -35,6 +35,7 @@ import org.slim3.datastore.model.Hoge;
 import org.slim3.datastore.model.MySerializable;
 import org.slim3.util.BeanDesc;
 import org.slim3.util.ByteUtil;
+import org.slim3.util.Cipher;
 import org.slim3.util.CipherFactory;
 
 import com.google.appengine.api.datastore.Blob;
@@ -393,6 +394,22 @@ public class ModelMetaTest {
         assertThat(meta.decrypt(meta.encrypt(text)), is(text));
     }
 
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getCipher() throws Exception {
+        CipherFactory.getFactory().setLimitedKey("1234567890abcdef");
+        Cipher cipher = meta.getCipher();
+        assertThat(meta.getCipher(), is(sameInstance(cipher)));
+        String encryptedText = meta.encrypt("hoge");
+        CipherFactory.getFactory().setLimitedKey("fedcba0987654321");
+        assertThat(meta.getCipher(), is(not(sameInstance(cipher))));
+        assertThat(meta.encrypt("hoge"), is(not(encryptedText)));
+        CipherFactory.getFactory().setLimitedKey("1234567890abcdef");
+        assertThat(meta.decrypt(encryptedText), is("hoge"));
+    }
+
     /**
      * @throws Exception
      */
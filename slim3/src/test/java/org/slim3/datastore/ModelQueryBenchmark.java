@@ -0,0 +1,107 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.slim3.datastore.meta.HogeMeta;
+import org.slim3.datastore.model.Hoge;
+import org.slim3.tester.AppEngineTestCase;
+import org.slim3.util.CipherFactory;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Text;
+
+/**
+ * Run by "mvn test -Pbenchmark".
+ * 
+ */
+public class ModelQueryBenchmark extends AppEngineTestCase {
+
+    private AsyncDatastoreService ds = DatastoreServiceFactory
+        .getAsyncDatastoreService();
+
+    private HogeMeta meta = new HogeMeta();
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        CipherFactory.getFactory().setGlobalKey("xxxxxxxxxxxxxxxx");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        CipherFactory.getFactory().clearGlobalKey();
+        super.tearDown();
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asListViaKeys() throws Exception {
+        int count = 1000;
+        List<Entity> entities = new ArrayList<Entity>(count);
+        for (int i = 0; i < count; i++) {
+            Hoge hoge = new Hoge();
+            hoge.setMyInteger(i);
+            hoge.setMyText(new Text(new String(new char[1000]).replace(
+                '\0',
+                'a')));
+            entities.add(meta.modelToEntity(hoge));
+        }
+        DatastoreUtil.put(ds, null, entities);
+        for (int i = 0; i < 3; i++) {
+            new ModelQuery<Hoge>(ds, meta).asList();
+            new ModelQuery<Hoge>(ds, meta).asListViaKeys();
+        }
+        long start = System.nanoTime();
+        assertThat(new ModelQuery<Hoge>(ds, meta).asList().size(), is(count));
+        long queryTime = System.nanoTime() - start;
+        EntityCache.begin();
+        try {
+            start = System.nanoTime();
+            assertThat(
+                new ModelQuery<Hoge>(ds, meta).asListViaKeys().size(),
+                is(count));
+            long coldTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            assertThat(
+                new ModelQuery<Hoge>(ds, meta).asListViaKeys().size(),
+                is(count));
+            long warmTime = System.nanoTime() - start;
+            System.out.println("asList: "
+                + queryTime
+                / 1000000
+                + "ms, asListViaKeys(cold): "
+                + coldTime
+                / 1000000
+                + "ms, asListViaKeys(cached): "
+                + warmTime
+                / 1000000
+                + "ms");
+        } finally {
+            EntityCache.end();
+        }
+    }
+}
\ No newline at end of file
@@ -22,9 +22,11 @@ import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.slim3.datastore.meta.AaaMeta;
@@ -37,6 +39,7 @@ import org.slim3.datastore.model.Ccc;
 import org.slim3.datastore.model.Hoge;
 import org.slim3.tester.AppEngineTestCase;
 import org.slim3.util.CipherFactory;
+import org.slim3.util.FutureUtil;
 
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
@@ -46,6 +49,7 @@ import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.PreparedQuery.TooManyResultsException;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.appengine.api.datastore.Text;
 
 /**
@@ -183,6 +187,147 @@ public class ModelQueryTest extends AppEngineTestCase {
         assertThat(list.size(), is(1));
     }
 
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void project() throws Exception {
+        Hoge hoge = new Hoge();
+        hoge.setMyString("aaa");
+        hoge.setMyPrimitiveInt(1);
+        hoge.setMyEnum(SortDirection.DESCENDING);
+        hoge.setMyText(new Text("hoge"));
+        Key key = DatastoreUtil.put(ds, null, meta.modelToEntity(hoge));
+        List<Hoge> list =
+            new ModelQuery<Hoge>(ds, meta).project(
+                meta.myString,
+                meta.myPrimitiveInt,
+                meta.myEnum).asList();
+        assertThat(list.size(), is(1));
+        Hoge hoge2 = list.get(0);
+        assertThat(hoge2.getKey(), is(key));
+        assertThat(hoge2.getMyString(), is("aaa"));
+        assertThat(hoge2.getMyPrimitiveInt(), is(1));
+        assertThat(hoge2.getMyEnum(), is(SortDirection.DESCENDING));
+        assertThat(hoge2.getMyText(), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void projectAndAsQueryResultList() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Hoge hoge = new Hoge();
+            hoge.setMyInteger(i);
+            hoge.setMyText(new Text("hoge"));
+            DatastoreUtil.put(ds, null, meta.modelToEntity(hoge));
+        }
+        S3QueryResultList<Hoge> list =
+            new ModelQuery<Hoge>(ds, meta)
+                .project(meta.myInteger)
+                .sort(meta.myInteger.asc)
+                .limit(2)
+                .asQueryResultList();
+        assertThat(list.size(), is(2));
+        assertThat(list.get(1).getMyInteger(), is(1));
+        assertThat(list.get(1).getMyText(), is(nullValue()));
+        list =
+            new ModelQuery<Hoge>(ds, meta)
+                .project(meta.myInteger)
+                .sort(meta.myInteger.asc)
+                .limit(2)
+                .encodedStartCursor(list.getEncodedCursor())
+                .asQueryResultList();
+        assertThat(list.size(), is(1));
+        assertThat(list.get(0).getMyInteger(), is(2));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void projectForKey() throws Exception {
+        new ModelQuery<Hoge>(ds, meta).project(meta.key);
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void projectForAttributeOfOtherModel() throws Exception {
+        new ModelQuery<Hoge>(ds, meta).project(aaaMeta.version);
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asListViaKeys() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Hoge hoge = new Hoge();
+            hoge.setMyInteger(i);
+            DatastoreUtil.put(ds, null, meta.modelToEntity(hoge));
+        }
+        List<Hoge> list =
+            new ModelQuery<Hoge>(ds, meta)
+                .sort(meta.myInteger.desc)
+                .asListViaKeys(2);
+        assertThat(list.size(), is(5));
+        for (int i = 0; i < 5; i++) {
+            assertThat(list.get(i).getMyInteger(), is(4 - i));
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asListViaKeysWithEntityCache() throws Exception {
+        Hoge hoge = new Hoge();
+        hoge.setMyString("aaa");
+        DatastoreUtil.put(ds, null, meta.modelToEntity(hoge));
+        EntityCache cache = EntityCache.begin();
+        try {
+            assertThat(
+                new ModelQuery<Hoge>(ds, meta).asListViaKeys().size(),
+                is(1));
+            assertThat(cache.getHitCount(), is(0));
+            List<Hoge> list = new ModelQuery<Hoge>(ds, meta).asListViaKeys();
+            assertThat(list.size(), is(1));
+            assertThat(list.get(0).getMyString(), is("aaa"));
+            assertThat(cache.getHitCount(), is(1));
+        } finally {
+            EntityCache.end();
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asListViaKeysAndFilterInMemory() throws Exception {
+        Hoge hoge = new Hoge();
+        hoge.setMyString("aaa");
+        DatastoreUtil.put(ds, null, meta.modelToEntity(hoge));
+        Hoge hoge2 = new Hoge();
+        hoge2.setMyString("bbb");
+        DatastoreUtil.put(ds, null, meta.modelToEntity(hoge2));
+        List<Hoge> list =
+            new ModelQuery<Hoge>(ds, meta).filterInMemory(
+                meta.myString.equal("aaa")).asListViaKeys();
+        assertThat(list.size(), is(1));
+        assertThat(list.get(0).getMyString(), is("aaa"));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void asListViaKeysForIllegalBatchSize() throws Exception {
+        new ModelQuery<Hoge>(ds, meta).asListViaKeys(0);
+    }
+
     /**
      * @throws Exception
      */
@@ -201,6 +346,47 @@ public class ModelQueryTest extends AppEngineTestCase {
         assertThat(list.get(0).getMyString(), is("aaa"));
     }
 
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asListAndLimitInMemory() throws Exception {
+        for (String s : new String[] { "aaa", "bbb", "aaa", "aaa" }) {
+            Hoge hoge = new Hoge();
+            hoge.setMyString(s);
+            DatastoreUtil.put(ds, null, meta.modelToEntity(hoge));
+        }
+        List<Hoge> list =
+            new ModelQuery<Hoge>(ds, meta)
+                .filterInMemory(meta.myString.equal("aaa"))
+                .limitInMemory(2)
+                .asList();
+        assertThat(list.size(), is(2));
+        assertThat(list.get(0).getMyString(), is("aaa"));
+        assertThat(list.get(1).getMyString(), is("aaa"));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asListAndSortInMemoryWithLimitInMemory() throws Exception {
+        for (int i : new int[] { 3, 1, 5, 2, 4 }) {
+            Hoge hoge = new Hoge();
+            hoge.setMyInteger(i);
+            DatastoreUtil.put(ds, null, meta.modelToEntity(hoge));
+        }
+        List<Hoge> list =
+            new ModelQuery<Hoge>(ds, meta)
+                .filterInMemory(meta.myInteger.lessThan(5))
+                .sortInMemory(meta.myInteger.desc)
+                .limitInMemory(2)
+                .asList();
+        assertThat(list.size(), is(2));
+        assertThat(list.get(0).getMyInteger(), is(4));
+        assertThat(list.get(1).getMyInteger(), is(3));
+    }
+
     /**
      * @throws Exception
      */
@@ -336,10 +522,44 @@ public class ModelQueryTest extends AppEngineTestCase {
     /**
      * @throws Exception
      */
-    @Test(expected = IllegalStateException.class)
+    @Test
     public void asQueryResultListWithFilterInMemory() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            Hoge hoge = new Hoge();
+            hoge.setMyInteger(i);
+            DatastoreUtil.put(ds, null, meta.modelToEntity(hoge));
+        }
+        ModelQuery<Hoge> query = new ModelQuery<Hoge>(ds, meta);
+        S3QueryResultList<Hoge> list =
+            query
+                .sort(meta.myInteger.asc)
+                .filterInMemory(meta.myInteger.greaterThan(1))
+                .limit(2)
+                .asQueryResultList();
+        assertThat(list.size(), is(1));
+        assertThat(list.get(0).getMyInteger(), is(2));
+        assertThat(list.hasNext(), is(true));
+        ModelQuery<Hoge> query2 = new ModelQuery<Hoge>(ds, meta);
+        S3QueryResultList<Hoge> list2 =
+            query2
+                .filterInMemory(meta.myInteger.greaterThan(1))
+                .limit(2)
+                .encodedStartCursor(list.getEncodedCursor())
+                .encodedFilter(list.getEncodedFilter())
+                .encodedSorts(list.getEncodedSorts())
+                .asQueryResultList();
+        assertThat(list2.size(), is(1));
+        assertThat(list2.get(0).getMyInteger(), is(3));
+        assertThat(list2.hasNext(), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalStateException.class)
+    public void asQueryResultListWithLimitInMemory() throws Exception {
         ModelQuery<Hoge> query = new ModelQuery<Hoge>(ds, meta);
-        query.filterInMemory(meta.myInteger.equal(1)).asQueryResultList();
+        query.limitInMemory(1).asQueryResultList();
     }
 
     /**
@@ -635,6 +855,83 @@ public class ModelQueryTest extends AppEngineTestCase {
         assertThat(iterable.iterator(), is(notNullValue()));
     }
 
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asIteratorAndFilterInMemory() throws Exception {
+        for (String s : new String[] { "aaa", "bbb", "aaa" }) {
+            Hoge hoge = new Hoge();
+            hoge.setMyString(s);
+            DatastoreUtil.put(ds, null, meta.modelToEntity(hoge));
+        }
+        Iterator<Hoge> iterator =
+            new ModelQuery<Hoge>(ds, meta).filterInMemory(
+                meta.myString.equal("aaa")).asIterator();
+        assertThat(iterator.hasNext(), is(true));
+        assertThat(iterator.next().getMyString(), is("aaa"));
+        assertThat(iterator.hasNext(), is(true));
+        assertThat(iterator.next().getMyString(), is("aaa"));
+        assertThat(iterator.hasNext(), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asIteratorAndSortInMemoryWithLimitInMemory() throws Exception {
+        for (int i : new int[] { 2, 3, 1 }) {
+            Hoge hoge = new Hoge();
+            hoge.setMyInteger(i);
+            DatastoreUtil.put(ds, null, meta.modelToEntity(hoge));
+        }
+        Iterator<Hoge> iterator =
+            new ModelQuery<Hoge>(ds, meta)
+                .sortInMemory(meta.myInteger.asc)
+                .limitInMemory(2)
+                .asIterator();
+        assertThat(iterator.next().getMyInteger(), is(1));
+        assertThat(iterator.next().getMyInteger(), is(2));
+        assertThat(iterator.hasNext(), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalStateException.class)
+    public void asIteratorAndSortInMemory() throws Exception {
+        new ModelQuery<Hoge>(ds, meta)
+            .sortInMemory(meta.myInteger.asc)
+            .asIterator();
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asQueryResultIteratorAndFilterInMemory() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            Hoge hoge = new Hoge();
+            hoge.setMyInteger(i);
+            DatastoreUtil.put(ds, null, meta.modelToEntity(hoge));
+        }
+        S3QueryResultIterator<Hoge> iterator =
+            new ModelQuery<Hoge>(ds, meta)
+                .sort(meta.myInteger.asc)
+                .filterInMemory(meta.myInteger.notEqual(2))
+                .asQueryResultIterator();
+        assertThat(iterator.next().getMyInteger(), is(1));
+        assertThat(iterator.hasNext(), is(true));
+        String encodedCursor = iterator.getEncodedCursor();
+        List<Hoge> list =
+            new ModelQuery<Hoge>(ds, meta)
+                .sort(meta.myInteger.asc)
+                .encodedStartCursor(encodedCursor)
+                .asList();
+        assertThat(list.size(), is(1));
+        assertThat(list.get(0).getMyInteger(), is(3));
+    }
+
     /**
      * @throws Exception
      */
@@ -2142,4 +2439,286 @@ public class ModelQueryTest extends AppEngineTestCase {
                 .asList();
         assertThat(list.size(), is(3));
     }
-}
\ No newline at end of file
+
+    private void putHoges(String... values) {
+        for (int i = 0; i < values.length; i++) {
+            Hoge hoge = new Hoge();
+            hoge.setMyString(values[i]);
+            hoge.setMyInteger(i + 1);
+            DatastoreUtil.put(ds, null, meta.modelToEntity(hoge));
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asListAsync() throws Exception {
+        putHoges("aaa", "bbb", "aaa");
+        Future<List<Hoge>> future =
+            new ModelQuery<Hoge>(ds, meta)
+                .filter(meta.myString.equal("aaa"))
+                .sort(meta.myInteger.desc)
+                .asListAsync();
+        List<Hoge> list = future.get();
+        assertThat(list.size(), is(2));
+        assertThat(list.get(0).getMyInteger(), is(3));
+        assertThat(list.get(1).getMyInteger(), is(1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asListAsyncWithInMemoryCriteria() throws Exception {
+        putHoges("aaa", "bbb", "aaa", "aaa");
+        List<Hoge> list =
+            new ModelQuery<Hoge>(ds, meta)
+                .filterInMemory(meta.myString.equal("aaa"))
+                .sortInMemory(meta.myInteger.desc)
+                .limitInMemory(2)
+                .asListAsync()
+                .get();
+        assertThat(list.size(), is(2));
+        assertThat(list.get(0).getMyInteger(), is(4));
+        assertThat(list.get(1).getMyInteger(), is(3));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asListAsyncForOverlappedQueries() throws Exception {
+        putHoges("aaa", "bbb", "ccc");
+        Future<List<Hoge>> future =
+            new ModelQuery<Hoge>(ds, meta)
+                .filter(meta.myString.equal("aaa"))
+                .asListAsync();
+        Future<List<Hoge>> future2 =
+            new ModelQuery<Hoge>(ds, meta)
+                .filter(meta.myString.in("bbb", "ccc"))
+                .parallel()
+                .asListAsync();
+        Future<Integer> future3 = new ModelQuery<Hoge>(ds, meta).countAsync();
+        assertThat(future3.get(), is(3));
+        assertThat(future2.get().size(), is(2));
+        assertThat(future.get().size(), is(1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asQueryResultListAsync() throws Exception {
+        putHoges("aaa", "aaa", "aaa");
+        S3QueryResultList<Hoge> list =
+            new ModelQuery<Hoge>(ds, meta)
+                .filter(meta.myString.equal("aaa"))
+                .sort(meta.myInteger.asc)
+                .limit(2)
+                .asQueryResultListAsync()
+                .get();
+        assertThat(list.size(), is(2));
+        assertThat(list.get(0).getMyInteger(), is(1));
+        assertThat(list.hasNext(), is(true));
+        S3QueryResultList<Hoge> list2 =
+            new ModelQuery<Hoge>(ds, meta)
+                .encodedFilter(list.getEncodedFilter())
+                .encodedSorts(list.getEncodedSorts())
+                .encodedStartCursor(list.getEncodedCursor())
+                .limit(2)
+                .asQueryResultListAsync()
+                .get();
+        assertThat(list2.size(), is(1));
+        assertThat(list2.get(0).getMyInteger(), is(3));
+        assertThat(list2.hasNext(), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asQueryResultListAsyncForParallel() throws Exception {
+        putHoges("aaa", "bbb", "ccc");
+        S3QueryResultList<Hoge> list =
+            new ModelQuery<Hoge>(ds, meta)
+                .filter(meta.myString.in("aaa", "ccc"))
+                .sort(meta.myInteger.asc)
+                .limit(1)
+                .parallel()
+                .asQueryResultListAsync()
+                .get();
+        assertThat(list.size(), is(1));
+        assertThat(list.get(0).getMyInteger(), is(1));
+        assertThat(list.hasNext(), is(true));
+        assertThat(
+            list.getEncodedCursor().startsWith(MultiQuery.CURSOR_PREFIX),
+            is(true));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalStateException.class)
+    public void asQueryResultListAsyncWithSortInMemory() throws Exception {
+        new ModelQuery<Hoge>(ds, meta)
+            .sortInMemory(meta.myInteger.asc)
+            .asQueryResultListAsync();
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asSingleAsync() throws Exception {
+        putHoges("aaa", "bbb");
+        Hoge hoge =
+            new ModelQuery<Hoge>(ds, meta)
+                .filter(meta.myString.equal("aaa"))
+                .asSingleAsync()
+                .get();
+        assertThat(hoge.getMyInteger(), is(1));
+        assertThat(new ModelQuery<Hoge>(ds, meta)
+            .filter(meta.myString.equal("ccc"))
+            .asSingleAsync()
+            .get(), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = TooManyResultsException.class)
+    public void asSingleAsyncForTooManyResults() throws Exception {
+        putHoges("aaa", "aaa");
+        FutureUtil.getQuietly(new ModelQuery<Hoge>(ds, meta).asSingleAsync());
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void countAsync() throws Exception {
+        putHoges("aaa", "bbb", "aaa");
+        assertThat(new ModelQuery<Hoge>(ds, meta)
+            .filter(meta.myString.equal("aaa"))
+            .countAsync()
+            .get(), is(2));
+        assertThat(new ModelQuery<Hoge>(ds, meta)
+            .filterInMemory(meta.myInteger.greaterThan(1))
+            .countAsync()
+            .get(), is(2));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void range() throws Exception {
+        putHoges("aaa", "bbb", "ccc", "ddd");
+        List<Key> keys = new ModelQuery<Hoge>(ds, meta).asKeyList();
+        List<Hoge> list =
+            new ModelQuery<Hoge>(ds, meta)
+                .range(keys.get(1), keys.get(3))
+                .asList();
+        assertThat(list.size(), is(2));
+        assertThat(list.get(0).getKey(), is(keys.get(1)));
+        assertThat(list.get(1).getKey(), is(keys.get(2)));
+        assertThat(new ModelQuery<Hoge>(ds, meta)
+            .range(null, keys.get(1))
+            .count(), is(1));
+        assertThat(new ModelQuery<Hoge>(ds, meta)
+            .range(keys.get(1), null)
+            .count(), is(3));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void splitKeys() throws Exception {
+        final List<Key> samples = new ArrayList<Key>();
+        for (int i = 96; i > 0; i--) {
+            samples.add(KeyFactory.createKey("Hoge", i));
+        }
+        final List<Integer> limits = new ArrayList<Integer>();
+        ModelQuery<Hoge> query = new ModelQuery<Hoge>(ds, meta) {
+            @Override
+            protected List<Key> sampleKeys(int limit) {
+                limits.add(limit);
+                return new ArrayList<Key>(samples);
+            }
+        };
+        List<Key> keys = query.splitKeys(3);
+        assertThat(limits, is(Arrays
+            .asList(3 * ModelQuery.OVERSAMPLING_FACTOR)));
+        assertThat(keys, is(Arrays.asList(
+            KeyFactory.createKey("Hoge", 33),
+            KeyFactory.createKey("Hoge", 65))));
+        assertThat(query.splitKeys(1).size(), is(0));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void splitKeysForFewSamples() throws Exception {
+        ModelQuery<Hoge> query = new ModelQuery<Hoge>(ds, meta) {
+            @Override
+            protected List<Key> sampleKeys(int limit) {
+                return new ArrayList<Key>(Arrays.asList(
+                    KeyFactory.createKey("Hoge", 2),
+                    KeyFactory.createKey("Hoge", 1)));
+            }
+        };
+        assertThat(query.splitKeys(4), is(Arrays.asList(
+            KeyFactory.createKey("Hoge", 1),
+            KeyFactory.createKey("Hoge", 2))));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void splitKeysForNoSamples() throws Exception {
+        assertThat(new ModelQuery<Hoge>(ds, meta).splitKeys(3).size(), is(0));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void splitKeysForIllegalN() throws Exception {
+        new ModelQuery<Hoge>(ds, meta).splitKeys(0);
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalStateException.class)
+    public void splitKeysWithFilter() throws Exception {
+        new ModelQuery<Hoge>(ds, meta)
+            .filter(meta.myString.equal("aaa"))
+            .splitKeys(2);
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void split() throws Exception {
+        putHoges("aaa", "bbb", "ccc", "ddd", "aaa");
+        List<ModelQuery<Hoge>> queries =
+            new ModelQuery<Hoge>(ds, meta)
+                .filterInMemory(meta.myString.equal("aaa"))
+                .split(3);
+        assertThat(queries.size() >= 1 && queries.size() <= 3, is(true));
+        int count = 0;
+        for (ModelQuery<Hoge> q : queries) {
+            for (Hoge hoge : q.asList()) {
+                assertThat(hoge.getMyString(), is("aaa"));
+                count++;
+            }
+        }
+        assertThat(count, is(2));
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.slim3.datastore.meta.HogeMeta;
+import org.slim3.datastore.model.Hoge;
+import org.slim3.tester.AppEngineTestCase;
+import org.slim3.util.CipherFactory;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+
+public class MultiQueryTest extends AppEngineTestCase {
+
+    private HogeMeta meta = HogeMeta.get();
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        CipherFactory.getFactory().setGlobalKey("xxxxxxxxxxxxxxxx");
+        for (int i = 0; i < 10; i++) {
+            Hoge hoge = new Hoge();
+            hoge.setMyInteger(i % 5);
+            hoge.setMyString(i < 5 ? "a" : "b");
+            Datastore.put(hoge);
+        }
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        CipherFactory.getFactory().clearGlobalKey();
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void split() throws Exception {
+        List<Query.Filter> filters = new ArrayList<Query.Filter>();
+        filters.add(meta.myInteger.in(1, 2, 3).getFilters()[0]);
+        filters.add(meta.myString.in("a", "b").getFilters()[0]);
+        filters.add(meta.myLong.equal(1L).getFilters()[0]);
+        List<List<Query.Filter>> list = MultiQuery.split(filters);
+        assertThat(list.size(), is(6));
+        assertThat(list.get(0).size(), is(3));
+        Query.FilterPredicate fp = (Query.FilterPredicate) list.get(0).get(0);
+        assertThat(fp.getOperator(), is(FilterOperator.EQUAL));
+        assertThat(fp.getValue(), is((Object) 1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void splitForOr() throws Exception {
+        List<List<Query.Filter>> list =
+            MultiQuery.split(Arrays.asList(meta.or(
+                meta.myString.equal("a"),
+                meta.myInteger.in(1, 2)).getFilters()));
+        assertThat(list.size(), is(3));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void splitForTooManyQueries() throws Exception {
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < 6; i++) {
+            values.add(i);
+        }
+        List<Query.Filter> filters = new ArrayList<Query.Filter>();
+        filters.add(meta.myInteger.in(values).getFilters()[0]);
+        filters.add(meta.myLong.in(1L, 2L, 3L, 4L, 5L, 6L).getFilters()[0]);
+        MultiQuery.split(filters);
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asList() throws Exception {
+        List<Hoge> expected =
+            Datastore
+                .query(meta)
+                .filter(meta.myInteger.in(3, 1, 4))
+                .sort(meta.myInteger.desc, meta.myString.asc)
+                .asList();
+        List<Hoge> list =
+            Datastore
+                .query(meta)
+                .filter(meta.myInteger.in(3, 1, 4))
+                .sort(meta.myInteger.desc, meta.myString.asc)
+                .parallel()
+                .asList();
+        assertThat(list.size(), is(6));
+        assertThat(getKeys(list), is(getKeys(expected)));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asListForDuplicates() throws Exception {
+        List<Hoge> list =
+            Datastore
+                .query(meta)
+                .filter(meta.or(meta.myString.equal("a"), meta.myInteger.in(
+                    0,
+                    1)))
+                .sort(meta.key.asc)
+                .parallel()
+                .asList();
+        assertThat(list.size(), is(7));
+        for (int i = 1; i < list.size(); i++) {
+            assertThat(list.get(i - 1).getKey().compareTo(
+                list.get(i).getKey()) < 0, is(true));
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asListWithOffsetAndLimit() throws Exception {
+        List<Hoge> all =
+            Datastore
+                .query(meta)
+                .filter(meta.myInteger.in(0, 1, 2))
+                .sort(meta.myInteger.asc)
+                .parallel()
+                .asList();
+        List<Hoge> list =
+            Datastore
+                .query(meta)
+                .filter(meta.myInteger.in(0, 1, 2))
+                .sort(meta.myInteger.asc)
+                .offset(1)
+                .limit(3)
+                .parallel()
+                .asList();
+        assertThat(getKeys(list), is(getKeys(all.subList(1, 4))));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asIterator() throws Exception {
+        Iterator<Hoge> ite =
+            Datastore
+                .query(meta)
+                .filter(meta.myInteger.in(0, 4))
+                .sort(meta.myInteger.asc)
+                .parallel()
+                .asIterator();
+        List<Hoge> list = new ArrayList<Hoge>();
+        while (ite.hasNext()) {
+            list.add(ite.next());
+        }
+        assertThat(list.size(), is(4));
+        assertThat(list.get(0).getMyInteger(), is(0));
+        assertThat(list.get(3).getMyInteger(), is(4));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asKeyList() throws Exception {
+        List<Key> keys =
+            Datastore
+                .query(meta)
+                .filter(meta.myInteger.in(0, 4))
+                .parallel()
+                .asKeyList();
+        assertThat(keys.size(), is(4));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void asQueryResultList() throws Exception {
+        List<Hoge> all =
+            Datastore
+                .query(meta)
+                .filter(meta.myInteger.in(1, 2, 3))
+                .sort(meta.myInteger.desc)
+                .parallel()
+                .asList();
+        List<Hoge> list = new ArrayList<Hoge>();
+        S3QueryResultList<Hoge> page =
+            Datastore
+                .query(meta)
+                .filter(meta.myInteger.in(1, 2, 3))
+                .sort(meta.myInteger.desc)
+                .limit(4)
+                .parallel()
+                .asQueryResultList();
+        assertThat(page.size(), is(4));
+        assertThat(page.hasNext(), is(true));
+        assertThat(
+            page.getEncodedCursor().startsWith(MultiQuery.CURSOR_PREFIX),
+            is(true));
+        list.addAll(page);
+        page =
+            Datastore
+                .query(meta)
+                .filter(meta.myInteger.in(1, 2, 3))
+                .sort(meta.myInteger.desc)
+                .limit(4)
+                .encodedStartCursor(page.getEncodedCursor())
+                .asQueryResultList();
+        assertThat(page.size(), is(2));
+        assertThat(page.hasNext(), is(false));
+        list.addAll(page);
+        assertThat(getKeys(list), is(getKeys(all)));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void encodedStartCursorForIllegalCursor() throws Exception {
+        Datastore
+            .query(meta)
+            .filter(meta.myInteger.in(1, 2, 3))
+            .encodedStartCursor(MultiQuery.CURSOR_PREFIX + ",")
+            .asList();
+    }
+
+    private List<Key> getKeys(List<Hoge> list) {
+        List<Key> keys = new ArrayList<Key>(list.size());
+        for (Hoge hoge : list) {
+            keys.add(hoge.getKey());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2004-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.slim3.datastore.meta.HogeMeta;
+import org.slim3.datastore.model.Hoge;
+import org.slim3.tester.AppEngineTestCase;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Key;
+
+public class ParallelScanTest extends AppEngineTestCase {
+
+    private AsyncDatastoreService ds;
+
+    private HogeMeta meta = new HogeMeta();
+
+    private List<Key> keys = new ArrayList<Key>();
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        ds = DatastoreServiceFactory.getAsyncDatastoreService();
+        for (int i = 0; i < 10; i++) {
+            Hoge hoge = new Hoge();
+            hoge.setMyInteger(i);
+            keys.add(DatastoreUtil.put(ds, null, meta.modelToEntity(hoge)));
+        }
+    }
+
+    private ParallelScan<Hoge> createScan() {
+        return new ParallelScan<Hoge>(new ModelQuery<Hoge>(ds, meta), Arrays
+            .asList(keys.get(3), keys.get(7)));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void run() throws Exception {
+        final Set<Key> scanned = new HashSet<Key>();
+        ParallelScan<Hoge> scan = createScan().parallelism(2).batchSize(2);
+        int count = scan.run(new ParallelScan.Handler<Hoge>() {
+            public void handle(Hoge model) {
+                scanned.add(model.getKey());
+            }
+        });
+        assertThat(count, is(10));
+        assertThat(scanned, is(new HashSet<Key>(keys)));
+        assertThat(scan.isFinished(), is(true));
+        assertThat(scan.run(new ParallelScan.Handler<Hoge>() {
+            public void handle(Hoge model) {
+                fail();
+            }
+        }), is(0));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void runWithSplitKeys() throws Exception {
+        ModelQuery<Hoge> query = new ModelQuery<Hoge>(ds, meta);
+        ParallelScan<Hoge> scan =
+            new ParallelScan<Hoge>(query, query.splitKeys(4));
+        assertThat(scan.getRangeCount() >= 1, is(true));
+        int count = scan.run(new ParallelScan.Handler<Hoge>() {
+            public void handle(Hoge model) {
+            }
+        });
+        assertThat(count, is(10));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void resume() throws Exception {
+        ParallelScan<Hoge> scan = createScan().parallelism(1).batchSize(2);
+        final List<Key> scanned = new ArrayList<Key>();
+        try {
+            scan.run(new ParallelScan.Handler<Hoge>() {
+                public void handle(Hoge model) {
+                    if (scanned.size() == 2) {
+                        throw new IllegalStateException();
+                    }
+                    scanned.add(model.getKey());
+                }
+            });
+            fail();
+        } catch (IllegalStateException ignore) {
+        }
+        String[] cursors = scan.getCursors();
+        assertThat(cursors.length, is(3));
+        assertThat(cursors[0], is(notNullValue()));
+        assertThat(cursors[0], is(not(ParallelScan.FINISHED)));
+        assertThat(cursors[1], is(nullValue()));
+        assertThat(cursors[2], is(nullValue()));
+        int count = createScan().cursors(cursors).run(
+            new ParallelScan.Handler<Hoge>() {
+                public void handle(Hoge model) {
+                    scanned.add(model.getKey());
+                }
+            });
+        assertThat(count, is(8));
+        assertThat(scanned.size(), is(10));
+        assertThat(new HashSet<Key>(scanned), is(new HashSet<Key>(keys)));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalStateException.class)
+    public void constructorWithFilter() throws Exception {
+        new ParallelScan<Hoge>(new ModelQuery<Hoge>(ds, meta)
+            .filter(meta.myInteger.lessThan(5)), keys.subList(3, 4));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void cursorsForIllegalLength() throws Exception {
+        createScan().cursors("aaa");
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parallelismForIllegalValue() throws Exception {
+        createScan().parallelism(0);
+    }
+}
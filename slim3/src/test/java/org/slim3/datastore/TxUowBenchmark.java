@@ -0,0 +1,104 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.slim3.tester.AppEngineTestCase;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.apphosting.api.ApiProxy;
+
+/**
+ * Run by "mvn test -Pbenchmark".
+ * 
+ */
+public class TxUowBenchmark extends AppEngineTestCase {
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void contention() throws Exception {
+        int threads = 8;
+        int count = 5;
+        long fixedTime =
+            runForContention(threads, count, UowRetryPolicy.fixed(100, 100));
+        long backoffTime =
+            runForContention(threads, count, new UowRetryPolicy()
+                .maxRetries(100)
+                .initialSleepTime(10)
+                .maxSleepTime(200));
+        System.out.println("fixed sleep: "
+            + (threads * count * 1000L / Math.max(fixedTime, 1))
+            + " tx/s, backoff with jitter: "
+            + (threads * count * 1000L / Math.max(backoffTime, 1))
+            + " tx/s");
+    }
+
+    private long runForContention(int threads, final int count,
+            final UowRetryPolicy policy) throws Exception {
+        final Key key = Datastore.put(new Entity("Counter"));
+        final AtomicInteger conflicts = new AtomicInteger();
+        final ApiProxy.Environment env = ApiProxy.getCurrentEnvironment();
+        List<Thread> list = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            list.add(new Thread() {
+                @Override
+                public void run() {
+                    ApiProxy.setEnvironmentForCurrentThread(env);
+                    for (int j = 0; j < count; j++) {
+                        TxUow uow = new TxUow() {
+
+                            @Override
+                            protected Object run() {
+                                Entity entity = Datastore.get(tx, key);
+                                Long value = (Long) entity.getProperty("value");
+                                entity.setProperty("value", value == null
+                                    ? 1L
+                                    : value + 1);
+                                return Datastore.put(tx, entity);
+                            }
+                        };
+                        Uow.run(uow, policy);
+                        conflicts.addAndGet(uow.getConflicts());
+                    }
+                }
+            });
+        }
+        long start = System.currentTimeMillis();
+        for (Thread t : list) {
+            t.start();
+        }
+        for (Thread t : list) {
+            t.join();
+        }
+        long time = System.currentTimeMillis() - start;
+        assertThat(
+            (Long) Datastore.get(key).getProperty("value"),
+            is((long) threads * count));
+        System.out.println("conflicts: " + conflicts.get() + ", time: " + time);
+        return time;
+    }
+}
\ No newline at end of file
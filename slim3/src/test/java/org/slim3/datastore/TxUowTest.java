@@ -18,6 +18,9 @@ package org.slim3.datastore;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.Serializable;
+import java.util.ConcurrentModificationException;
+
 import org.junit.Test;
 import org.slim3.tester.AppEngineTestCase;
 
@@ -66,4 +69,113 @@ public class TxUowTest extends AppEngineTestCase {
         }
         assertThat(Datastore.getOrNull(entity.getKey()), is(nullValue()));
     }
-}
\ No newline at end of file
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void runOrDefer() throws Exception {
+        ConflictUow uow = new ConflictUow();
+        Object ret = Uow.runOrDefer(uow, new UowRetryPolicy());
+        assertThat(ret, is(nullValue()));
+        assertThat(uow.getAttempts(), is(1));
+        assertThat(uow.getConflicts(), is(1));
+        assertThat(uow.isDeferred(), is(true));
+        assertThat(tester.tasks.size(), is(1));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void runOrDeferWhenNotConflicted() throws Exception {
+        PutUow uow = new PutUow();
+        Key ret = Uow.runOrDefer(uow, new UowRetryPolicy());
+        assertThat(Datastore.getOrNull(ret), is(notNullValue()));
+        assertThat(uow.isDeferred(), is(false));
+        assertThat(tester.tasks.size(), is(0));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void runOrDeferForNotSerializable() throws Exception {
+        Uow.runOrDefer(new TxUow() {
+
+            @Override
+            protected Object run() {
+                return null;
+            }
+        }, new UowRetryPolicy());
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void deferredUow() throws Exception {
+        ConflictUow uow = new ConflictUow();
+        UowRetryPolicy policy = new UowRetryPolicy().maxRetries(1);
+        Uow.DeferredUow task =
+            new Uow.DeferredUow(uow, policy, System.currentTimeMillis());
+        uow.attempts = 1;
+        uow.conflicts = 1;
+        task.saveCounters();
+        task.run();
+        assertThat(uow.getAttempts(), is(2));
+        assertThat(uow.getConflicts(), is(2));
+        assertThat(tester.tasks.size(), is(0));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void deferredUowForException() throws Exception {
+        FailureUow uow = new FailureUow();
+        Uow.DeferredUow task =
+            new Uow.DeferredUow(uow, new UowRetryPolicy(), System
+                .currentTimeMillis());
+        uow.attempts = 1;
+        task.saveCounters();
+        task.run();
+        assertThat(uow.getAttempts(), is(2));
+        assertThat(tester.tasks.size(), is(0));
+    }
+
+    private static class ConflictUow extends TxUow implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected Object run() {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    private static class FailureUow extends TxUow implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected Object run() {
+            throw new IllegalStateException();
+        }
+    }
+
+    private static class PutUow extends TxUow implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected Object run() {
+            return Datastore.put(new Entity("Hoge"));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2004-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class UowRetryPolicyTest {
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void getSleepTime() throws Exception {
+        UowRetryPolicy policy = new UowRetryPolicy().jitter(false);
+        assertThat(policy.getSleepTime(1), is(50L));
+        assertThat(policy.getSleepTime(2), is(100L));
+        assertThat(policy.getSleepTime(3), is(200L));
+        assertThat(policy.getSleepTime(5), is(800L));
+        assertThat(policy.getSleepTime(6), is(1000L));
+        assertThat(policy.getSleepTime(100), is(1000L));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void getSleepTimeWithJitter() throws Exception {
+        UowRetryPolicy policy = new UowRetryPolicy();
+        for (int i = 0; i < 100; i++) {
+            long sleepTime = policy.getSleepTime(3);
+            assertThat(sleepTime >= 100, is(true));
+            assertThat(sleepTime <= 200, is(true));
+        }
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void fixed() throws Exception {
+        UowRetryPolicy policy = UowRetryPolicy.fixed(3, 100);
+        assertThat(policy.getMaxRetries(), is(3));
+        assertThat(policy.getSleepTime(1), is(100L));
+        assertThat(policy.getSleepTime(3), is(100L));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void isRetryable() throws Exception {
+        UowRetryPolicy policy = new UowRetryPolicy().maxRetries(2);
+        assertThat(policy.isRetryable(null, 0), is(true));
+        assertThat(policy.isRetryable(null, 1), is(true));
+        assertThat(policy.isRetryable(null, 2), is(false));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void maxRetriesForNegative() throws Exception {
+        new UowRetryPolicy().maxRetries(-1);
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void deadlineForNegative() throws Exception {
+        new UowRetryPolicy().deadline(-1);
+    }
+}
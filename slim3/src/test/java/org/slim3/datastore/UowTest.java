@@ -122,4 +122,100 @@ public class UowTest {
             }
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void runForCounters() throws Exception {
+        AbstractUow uow = new AbstractUow() {
+
+            @Override
+            protected void rollback() {
+            }
+
+            @Override
+            protected Object run() {
+                if (retries < 2) {
+                    retries++;
+                    throw new ConcurrentModificationException();
+                }
+                return null;
+            }
+
+            @Override
+            protected void commit() {
+            }
+
+            @Override
+            protected void beginTransaction() {
+            }
+        };
+        Uow.run(uow, UowRetryPolicy.fixed(5, 10));
+        assertThat(uow.getAttempts(), is(3));
+        assertThat(uow.getConflicts(), is(2));
+        assertThat(uow.getTotalWaitTime(), is(20L));
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test
+    public void runForDeadline() throws Exception {
+        AbstractUow uow = new AbstractUow() {
+
+            @Override
+            protected void rollback() {
+            }
+
+            @Override
+            protected Object run() {
+                throw new ConcurrentModificationException();
+            }
+
+            @Override
+            protected void commit() {
+            }
+
+            @Override
+            protected void beginTransaction() {
+            }
+        };
+        try {
+            Uow.run(uow, UowRetryPolicy.fixed(5, 100).deadline(150));
+            fail();
+        } catch (ConcurrentModificationException e) {
+            assertThat(uow.getAttempts(), is(2));
+            assertThat(uow.getTotalWaitTime(), is(100L));
+        }
+    }
+
+    /**
+     * @throws Exception
+     * 
+     */
+    @Test(expected = NullPointerException.class)
+    public void runForNullPolicy() throws Exception {
+        Uow.run(new AbstractUow() {
+
+            @Override
+            protected void rollback() {
+            }
+
+            @Override
+            protected Object run() {
+                return null;
+            }
+
+            @Override
+            protected void commit() {
+            }
+
+            @Override
+            protected void beginTransaction() {
+            }
+        }, null);
+    }
+}
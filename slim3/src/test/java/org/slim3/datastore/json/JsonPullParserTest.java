@@ -0,0 +1,173 @@
+/*
+ * Copyright 2004-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore.json;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.slim3.datastore.json.JsonPullParser.Token;
+
+public class JsonPullParserTest {
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void next() throws Exception {
+        JsonPullParser parser =
+            new JsonPullParser(new StringReader(
+                "{\"a\" : 1, \"b\":[\"x\", true, null], \"c\":{\"d\":-1.5e3}}"));
+        assertThat(parser.next(), is(Token.BEGIN_OBJECT));
+        assertThat(parser.next(), is(Token.NAME));
+        assertThat(parser.getText(), is("a"));
+        assertThat(parser.next(), is(Token.LITERAL));
+        assertThat(parser.getText(), is("1"));
+        assertThat(parser.next(), is(Token.NAME));
+        assertThat(parser.getText(), is("b"));
+        assertThat(parser.next(), is(Token.BEGIN_ARRAY));
+        assertThat(parser.getDepth(), is(2));
+        assertThat(parser.next(), is(Token.STRING));
+        assertThat(parser.getText(), is("x"));
+        assertThat(parser.next(), is(Token.LITERAL));
+        assertThat(parser.getText(), is("true"));
+        assertThat(parser.next(), is(Token.NULL));
+        assertThat(parser.next(), is(Token.END_ARRAY));
+        assertThat(parser.next(), is(Token.NAME));
+        assertThat(parser.getText(), is("c"));
+        assertThat(parser.next(), is(Token.BEGIN_OBJECT));
+        assertThat(parser.next(), is(Token.NAME));
+        assertThat(parser.getText(), is("d"));
+        assertThat(parser.next(), is(Token.LITERAL));
+        assertThat(parser.getText(), is("-1.5e3"));
+        assertThat(parser.next(), is(Token.END_OBJECT));
+        assertThat(parser.next(), is(Token.END_OBJECT));
+        assertThat(parser.getDepth(), is(0));
+        assertThat(parser.next(), is(Token.END));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void nextForEscapedString() throws Exception {
+        JsonPullParser parser =
+            new JsonPullParser("[\"a\\\"b\\\\c\\/d\\n\\u3042\", 'e']");
+        assertThat(parser.next(), is(Token.BEGIN_ARRAY));
+        assertThat(parser.next(), is(Token.STRING));
+        assertThat(parser.getText(), is("a\"b\\c/d\nあ"));
+        assertThat(parser.next(), is(Token.STRING));
+        assertThat(parser.getText(), is("e"));
+        assertThat(parser.next(), is(Token.END_ARRAY));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void readValue() throws Exception {
+        Object node =
+            new JsonPullParser("{\"a\":1,\"b\":[\"x\",null],\"c\":{\"d\":\"e\"}}")
+                .readValue();
+        assertThat(node, is(Map.class));
+        Map<String, Object> map = (Map<String, Object>) node;
+        assertThat(map.get("a"), is(JsonPullParser.Literal.class));
+        assertThat(map.get("a").toString(), is("1"));
+        List<Object> list = (List<Object>) map.get("b");
+        assertThat(list.size(), is(2));
+        assertThat((String) list.get(0), is("x"));
+        assertThat(list.get(1), is(nullValue()));
+        assertThat(JsonPullParser.toText(map.get("c")), is("{\"d\":\"e\"}"));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void skipValue() throws Exception {
+        JsonPullParser parser =
+            new JsonPullParser("[{\"a\":[1,{\"b\":2}]},\"x\",3]");
+        assertThat(parser.next(), is(Token.BEGIN_ARRAY));
+        parser.skipValue(parser.next());
+        assertThat(parser.getDepth(), is(1));
+        parser.skipValue(parser.next());
+        assertThat(parser.next(), is(Token.LITERAL));
+        assertThat(parser.getText(), is("3"));
+        assertThat(parser.next(), is(Token.END_ARRAY));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void skipValueForUnterminatedObject() throws Exception {
+        JsonPullParser parser = new JsonPullParser("{\"a\":[1");
+        parser.skipValue(parser.next());
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void readValueForUnterminatedString() throws Exception {
+        new JsonPullParser("{\"a\":\"b}").readValue();
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void rootReader() throws Exception {
+        JsonRootReader reader =
+            new JsonRootReader(
+                "{\"a\":1,\"b\":null,\"c\":[\"x\",{\"k\":\"v\"}],\"d\":{\"k\":\"w\"}}",
+                null);
+        assertThat(reader.isObject(), is(true));
+        assertThat(reader.newObjectReader("a").read(), is("1"));
+        assertThat(reader.newObjectReader("b").read(), is(nullValue()));
+        assertThat(reader.newObjectReader("x").read(), is(nullValue()));
+        assertThat(reader.newObjectReader("d").readProperty("k"), is("w"));
+        assertThat(reader.newObjectReader("d").read(), is("{\"k\":\"w\"}"));
+        assertThat(
+            reader.newObjectReader("d").newRootReader().newObjectReader("k").read(),
+            is("w"));
+        assertThat(reader.newObjectReader("a").newRootReader(), is(nullValue()));
+        JsonArrayReader ar = reader.newArrayReader("c");
+        assertThat(ar.length(), is(2));
+        ar.setIndex(0);
+        assertThat(ar.read(), is("x"));
+        assertThat(ar.newRootReader(), is(nullValue()));
+        ar.setIndex(1);
+        assertThat(ar.readProperty("k"), is("v"));
+        assertThat(reader.newArrayReader("a"), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void rootReaderForInvalidJson() throws Exception {
+        JsonRootReader reader = new JsonRootReader("[1,2]", null);
+        assertThat(reader.isObject(), is(false));
+        assertThat(reader.newObjectReader("a").read(), is(nullValue()));
+        assertThat(reader.newArrayReader("a"), is(nullValue()));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2004-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore.json;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class JsonTokenReaderTest {
+
+    private JsonTokenReader createReader(String json) {
+        JsonPullParser parser = new JsonPullParser(json);
+        parser.next();
+        return new JsonTokenReader(parser, null);
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void nextProperty() throws Exception {
+        JsonTokenReader reader =
+            createReader("{\"a\":1,\"b\":\"x\",\"c\":null,\"d\":{\"k\":\"v\"},"
+                + "\"e\":[1,{\"k\":\"w\"},[2]],\"f\":{\"g\":{\"h\":1}},\"z\":2}");
+        assertThat(reader.nextProperty(), is(true));
+        assertThat(reader.getName(), is("a"));
+        assertThat(reader.read(), is("1"));
+        assertThat(reader.readProperty("k"), is(nullValue()));
+        assertThat(reader.nextProperty(), is(true));
+        assertThat(reader.getName(), is("b"));
+        assertThat(reader.read(), is("x"));
+        assertThat(reader.nextProperty(), is(true));
+        assertThat(reader.getName(), is("c"));
+        assertThat(reader.read(), is(nullValue()));
+        assertThat(reader.nextProperty(), is(true));
+        assertThat(reader.getName(), is("d"));
+        assertThat(reader.readProperty("k"), is("v"));
+        assertThat(reader.read(), is("{\"k\":\"v\"}"));
+        assertThat(reader.nextProperty(), is(true));
+        assertThat(reader.getName(), is("e"));
+        assertThat(reader.beginArray(), is(true));
+        assertThat(reader.nextElement(), is(true));
+        assertThat(reader.read(), is("1"));
+        assertThat(reader.nextElement(), is(true));
+        assertThat(reader.readProperty("k"), is("w"));
+        assertThat(reader.nextElement(), is(true));
+        assertThat(reader.nextElement(), is(false));
+        assertThat(reader.nextProperty(), is(true));
+        assertThat(reader.getName(), is("f"));
+        assertThat(reader.beginArray(), is(false));
+        assertThat(reader.nextProperty(), is(true));
+        assertThat(reader.getName(), is("z"));
+        assertThat(reader.read(), is("2"));
+        assertThat(reader.nextProperty(), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void newObjectReader() throws Exception {
+        JsonTokenReader reader =
+            createReader("{\"a\":{\"b\":1,\"c\":[1]},\"d\":2}");
+        assertThat(reader.nextProperty(), is(true));
+        JsonTokenReader objectReader = reader.newObjectReader();
+        assertThat(objectReader.nextProperty(), is(true));
+        assertThat(objectReader.getName(), is("b"));
+        assertThat(objectReader.read(), is("1"));
+        assertThat(objectReader.nextProperty(), is(true));
+        assertThat(objectReader.getName(), is("c"));
+        assertThat(objectReader.nextProperty(), is(false));
+        assertThat(reader.read(), is(nullValue()));
+        assertThat(reader.newObjectReader(), is(nullValue()));
+        assertThat(reader.nextProperty(), is(true));
+        assertThat(reader.getName(), is("d"));
+        assertThat(reader.newObjectReader(), is(nullValue()));
+        assertThat(reader.nextProperty(), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void newObjectReaderForReadObject() throws Exception {
+        JsonTokenReader reader = createReader("{\"a\":{\"b\":1}}");
+        assertThat(reader.nextProperty(), is(true));
+        assertThat(reader.readProperty("b"), is("1"));
+        JsonTokenReader objectReader = reader.newObjectReader();
+        assertThat(objectReader.nextProperty(), is(true));
+        assertThat(objectReader.getName(), is("b"));
+        assertThat(objectReader.read(), is("1"));
+        assertThat(objectReader.nextProperty(), is(false));
+        assertThat(reader.nextProperty(), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void toRootReader() throws Exception {
+        JsonTokenReader reader =
+            createReader("{\"a\":1,\"b\":{\"c\":\"d\"},\"e\":null}");
+        JsonRootReader rootReader = reader.toRootReader();
+        assertThat(rootReader.newObjectReader("a").read(), is("1"));
+        assertThat(rootReader.newObjectReader("b").readProperty("c"), is("d"));
+        assertThat(rootReader.newObjectReader("e").read(), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void newTokenReader() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("a", "b");
+        JsonTokenReader reader = new JsonRootReader(map, null).newTokenReader();
+        assertThat(reader.nextProperty(), is(true));
+        assertThat(reader.getName(), is("a"));
+        assertThat(reader.read(), is("b"));
+        assertThat(reader.nextProperty(), is(false));
+        assertThat(
+            new JsonRootReader("[1]", null).newTokenReader().nextProperty(),
+            is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void nextPropertyForMissingValue() throws Exception {
+        createReader("{\"a\":}").nextProperty();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2004-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore.json;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+import org.slim3.repackaged.org.json.JSONObject;
+
+public class JsonWriterTest {
+
+    private ModelWriter modelWriter = new ModelWriter() {
+        @Override
+        public void write(JsonWriter writer, Object model, int maxDepth,
+                int currentDepth) {
+            writer.beginObject();
+            writer.writeStringProperty("value", model.toString());
+            writer.endObject();
+        }
+    };
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void writeToStringBuilder() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        write(new JsonWriter(builder, modelWriter));
+        assertThat(
+            builder.toString(),
+            is("{\"name\":\"aaa\",\"num\":1,\"list\":[\"b\",null,2,{\"value\":\"c\"}]}"));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void writeToWriter() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        write(new JsonWriter(builder, modelWriter));
+        StringWriter writer = new StringWriter();
+        JsonWriter jw = new JsonWriter(writer, modelWriter);
+        write(jw);
+        jw.flush();
+        assertThat(writer.toString(), is(builder.toString()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void writeString() throws Exception {
+        String value = "a\"b\\c</d\b\f\n\r\t\u0001\u0085 e";
+        StringWriter writer = new StringWriter();
+        new JsonWriter(writer, modelWriter).writeString(value);
+        assertThat(writer.toString(), is(JSONObject.quote(value)));
+        StringBuilder builder = new StringBuilder();
+        new JsonWriter(builder, modelWriter).writeString("");
+        assertThat(builder.toString(), is("\"\""));
+    }
+
+    private void write(JsonWriter writer) {
+        writer.beginObject();
+        writer.writeStringProperty("name", "aaa");
+        writer.writeValueProperty("num", 1);
+        writer.setNextPropertyName("list");
+        writer.beginArray();
+        writer.writeString("b");
+        writer.writeNull();
+        writer.writeValue(2);
+        writer.writeModel("c", 0, 0);
+        writer.endArray();
+        writer.endObject();
+    }
+}
@@ -607,6 +607,31 @@ public class HogeMeta extends ModelMeta<Hoge> {
         return false;
     }
 
+    @Override
+    protected int getAttributeIndex(String attributeName) {
+        if ("key".equals(attributeName))
+            return 0;
+        if ("myInteger".equals(attributeName))
+            return 1;
+        if ("myString".equals(attributeName))
+            return 2;
+        return -1;
+    }
+
+    @Override
+    protected Object getValue(Object model, int attributeIndex) {
+        Hoge m = (Hoge) model;
+        switch (attributeIndex) {
+        case 0:
+            return m.getKey();
+        case 1:
+            return m.getMyInteger();
+        case 2:
+            return m.getMyString();
+        }
+        return super.getValue(model, attributeIndex);
+    }
+
     @Override
     protected void modelToJson(JsonWriter writer, Object model, int maxDepth, int currentDepth) {
     }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.datastore.meta;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.slim3.datastore.model.Hoge;
+import org.slim3.tester.AppEngineTestCase;
+import org.slim3.util.Cipher;
+import org.slim3.util.CipherFactory;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Text;
+
+/**
+ * Run by "mvn test -Pbenchmark".
+ * 
+ */
+public class ModelMetaDatastoreBenchmark extends AppEngineTestCase {
+
+    private HogeMeta meta = new HogeMeta();
+
+    private HogeMeta cipherPerPropertyMeta = new HogeMeta() {
+
+        @Override
+        protected Cipher getCipher() {
+            return CipherFactory.getFactory().createCipher();
+        }
+    };
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        CipherFactory.getFactory().setGlobalKey("xxxxxxxxxxxxxxxx");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        CipherFactory.getFactory().clearGlobalKey();
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void cipherProperties() throws Exception {
+        List<Entity> entities = new ArrayList<Entity>();
+        for (int i = 0; i < 10000; i++) {
+            Hoge hoge = new Hoge();
+            hoge.setMyCipherString("hoge" + i);
+            hoge.setMyCipherText(new Text("hogehoge" + i));
+            hoge.setMyCipherLobString("hogehogehoge" + i);
+            entities.add(meta.modelToEntity(hoge));
+        }
+        long cipherPerPropertyTime =
+            entitiesToModels(cipherPerPropertyMeta, entities);
+        long reusedCipherTime = entitiesToModels(meta, entities);
+        System.out.println("entities: "
+            + entities.size()
+            + ", cipher per property: "
+            + cipherPerPropertyTime
+            + "ms, reused cipher: "
+            + reusedCipherTime
+            + "ms");
+    }
+
+    private long entitiesToModels(HogeMeta hogeMeta, List<Entity> entities) {
+        long start = System.nanoTime();
+        for (Entity e : entities) {
+            hogeMeta.entityToModel(e);
+        }
+        long time = (System.nanoTime() - start) / 1000000;
+        assertThat(
+            hogeMeta.entityToModel(entities.get(0)).getMyCipherString(),
+            is("hoge0"));
+        return time;
+    }
+}
\ No newline at end of file
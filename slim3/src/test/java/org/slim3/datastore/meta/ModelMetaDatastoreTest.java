@@ -543,4 +543,5 @@ public class ModelMetaDatastoreTest extends AppEngineTestCase {
         Bbb bbb2 = bbbMeta.entityToModel(bbbEntity2);
         assertThat(bbb2.getHogeRef().getKey(), is(key));
     }
+
 }
@@ -18,9 +18,17 @@ package org.slim3.gwt.server.rpc;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.lang.reflect.Method;
+
+import org.junit.After;
 import org.junit.Test;
+import org.slim3.controller.HotReloadingClassLoader;
 import org.slim3.gwt.client.service.HogeService;
+import org.slim3.gwt.client.service.SingletonHogeService;
+import org.slim3.gwt.server.rpc.GWTServiceServlet.ServiceDesc;
 import org.slim3.gwt.server.service.HogeServiceImpl;
+import org.slim3.gwt.server.service.SingletonHogeServiceImpl;
+import org.slim3.util.Cleaner;
 
 /**
  * @author higa
@@ -30,6 +38,14 @@ public class GWTServiceServletTest {
 
     private GWTServiceServlet servlet = new GWTServiceServlet();
 
+    /**
+     * @throws Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        Cleaner.cleanAll();
+    }
+
     /**
      * @throws Exception
      */
@@ -47,4 +63,133 @@ public class GWTServiceServletTest {
     public void testGetClass() throws Exception {
         assertThat(servlet.getClass("I").getName(), is(int.class.getName()));
     }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getServiceDesc() throws Exception {
+        ServiceDesc serviceDesc =
+            servlet.getServiceDesc(HogeService.class.getName());
+        assertThat(
+            serviceDesc.serviceClass.getName(),
+            is(HogeServiceImpl.class.getName()));
+        assertThat(serviceDesc.singleton, is(nullValue()));
+        assertThat(
+            servlet.getServiceDesc(HogeService.class.getName()),
+            is(sameInstance(serviceDesc)));
+        assertThat(servlet.serviceCacheInitialized, is(true));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getServiceDescAfterCleaning() throws Exception {
+        ServiceDesc serviceDesc =
+            servlet.getServiceDesc(HogeService.class.getName());
+        Cleaner.cleanAll();
+        assertThat(servlet.serviceCacheInitialized, is(false));
+        assertThat(servlet.serviceDescCache.size(), is(0));
+        assertThat(
+            servlet.getServiceDesc(HogeService.class.getName()),
+            is(not(sameInstance(serviceDesc))));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getServiceDescForHotReloading() throws Exception {
+        ClassLoader previousLoader =
+            Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(
+            new HotReloadingClassLoader(
+                previousLoader,
+                "org.slim3.gwt.server.service",
+                "cool"));
+        try {
+            ServiceDesc serviceDesc =
+                servlet.getServiceDesc(HogeService.class.getName());
+            assertThat(serviceDesc.serviceClass == HogeServiceImpl.class, is(false));
+            assertThat(servlet.serviceDescCache.size(), is(0));
+        } finally {
+            Thread.currentThread().setContextClassLoader(previousLoader);
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getServiceMethod() throws Exception {
+        ServiceDesc serviceDesc =
+            servlet.getServiceDesc(HogeService.class.getName());
+        Method method =
+            servlet.getServiceMethod(serviceDesc, "greet", new String[0]);
+        assertThat(method.getName(), is("greet"));
+        assertThat(
+            servlet.getServiceMethod(serviceDesc, "greet", new String[0]),
+            is(sameInstance(method)));
+        assertThat(serviceDesc.methods.containsKey("greet()"), is(true));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getService() throws Exception {
+        ServiceDesc serviceDesc =
+            servlet.getServiceDesc(HogeService.class.getName());
+        Object service = servlet.getService(serviceDesc);
+        assertThat(service, is(HogeServiceImpl.class));
+        assertThat(
+            servlet.getService(serviceDesc),
+            is(not(sameInstance(service))));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getServiceUsesOverriddenGetService() throws Exception {
+        final HogeServiceImpl hogeService = new HogeServiceImpl();
+        servlet = new GWTServiceServlet() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected Object getService(Class<?> serviceClass) {
+                return hogeService;
+            }
+        };
+        ServiceDesc serviceDesc =
+            servlet.getServiceDesc(HogeService.class.getName());
+        assertThat(
+            servlet.getService(serviceDesc),
+            is(sameInstance((Object) hogeService)));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getServiceForSingleton() throws Exception {
+        ServiceDesc serviceDesc =
+            servlet.getServiceDesc(SingletonHogeService.class.getName());
+        Object service = servlet.getService(serviceDesc);
+        assertThat(service, is(SingletonHogeServiceImpl.class));
+        assertThat(servlet.getService(serviceDesc), is(sameInstance(service)));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void toSignature() throws Exception {
+        assertThat(ServiceDesc.toSignature("greet", new String[0]), is("greet()"));
+        assertThat(ServiceDesc.toSignature("put", new String[] {
+            "java.lang.String",
+            "I" }), is("put(java.lang.String,I)"));
+    }
 }
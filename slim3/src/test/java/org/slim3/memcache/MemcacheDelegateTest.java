@@ -23,15 +23,24 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import org.junit.Test;
+import org.slim3.datastore.model.Aaa;
 import org.slim3.tester.AppEngineTestCase;
+import org.slim3.util.LazyFuture;
 
 import com.google.appengine.api.NamespaceManager;
+import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.memcache.ErrorHandler;
 import com.google.appengine.api.memcache.LogAndContinueErrorHandler;
 import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceException;
+import com.google.appengine.api.memcache.StrictErrorHandler;
+import com.google.appengine.repackaged.com.google.protobuf.Message;
+import com.google.apphosting.api.ApiProxy;
 
 /**
  * @author higa
@@ -164,6 +173,126 @@ public class MemcacheDelegateTest extends AppEngineTestCase {
         assertThat((Integer) map.get("aaa"), is(1));
     }
 
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getAsync() throws Exception {
+        MemcacheDelegate cache = new MemcacheDelegate();
+        assertThat(cache.getAsync("aaa").get(), is(nullValue()));
+        NamespaceManager.set("hoge");
+        cache.put("aaa", "1");
+        Future<Object> future = cache.getAsync("aaa");
+        assertThat((String) future.get(), is("1"));
+        NamespaceManager.set(null);
+        assertThat(cache.getAsync("aaa").get(), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getAllAsync() throws Exception {
+        MemcacheDelegate cache = new MemcacheDelegate();
+        assertThat(
+            cache.getAllAsync(Arrays.asList("aaa")).get().isEmpty(),
+            is(true));
+        cache.ms.put("aaa", 1);
+        cache.ms.put("bbb", "2");
+        Map<?, ?> map =
+            cache.getAllAsync(Arrays.asList("aaa", "bbb", "ccc")).get();
+        assertThat(map.size(), is(2));
+        assertThat((Integer) map.get("aaa"), is(1));
+        assertThat((String) map.get("bbb"), is("2"));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getAllAsyncForServiceError() throws Exception {
+        MemcacheDelegate cache = new MemcacheDelegate() {
+            @Override
+            protected Future<byte[]> makeAsyncCall(String methodName,
+                    Message request) {
+                return new LazyFuture<byte[]>() {
+                    @Override
+                    protected byte[] compute() throws Exception {
+                        throw new ApiProxy.ApiProxyException("error");
+                    }
+                };
+            }
+        };
+        cache.errorHandler(new LogAndContinueErrorHandler(Level.FINE));
+        assertThat(
+            cache.getAllAsync(Arrays.asList("aaa")).get().isEmpty(),
+            is(true));
+        cache.errorHandler(new StrictErrorHandler());
+        try {
+            cache.getAllAsync(Arrays.asList("aaa")).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(MemcacheServiceException.class));
+        }
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putAllAsync() throws Exception {
+        MemcacheDelegate cache = new MemcacheDelegate();
+        Map<Object, Object> values = new HashMap<Object, Object>();
+        values.put("aaa", 1);
+        NamespaceManager.set("hoge");
+        cache.putAllAsync(values).get();
+        assertThat((Integer) cache.get("aaa"), is(1));
+        values.put("aaa", 2);
+        values.put("bbb", 3);
+        Set<Object> keys =
+            cache.putAllAsync(
+                values,
+                null,
+                SetPolicy.ADD_ONLY_IF_NOT_PRESENT).get();
+        assertThat(keys.size(), is(1));
+        assertThat(keys.contains("bbb"), is(true));
+        NamespaceManager.set(null);
+        assertThat(cache.contains("aaa"), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void incrementAllAsync() throws Exception {
+        MemcacheDelegate cache = new MemcacheDelegate();
+        cache.ms.put("aaa", 1);
+        Map<Object, Long> map =
+            cache.incrementAllAsync(Arrays.asList("aaa", "bbb"), 2).get();
+        assertThat(map.get("aaa"), is(3L));
+        assertThat(map.get("bbb"), is(nullValue()));
+        map = cache.incrementAllAsync(Arrays.asList("bbb"), 2, 10).get();
+        assertThat(map.get("bbb"), is(12L));
+        Map<Object, Long> offsets = new HashMap<Object, Long>();
+        offsets.put("aaa", 10L);
+        map = cache.incrementAllAsync(offsets).get();
+        assertThat(map.get("aaa"), is(13L));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void deleteAllAsync() throws Exception {
+        MemcacheDelegate cache = new MemcacheDelegate();
+        cache.ms.put("aaa", 1);
+        Set<Object> keys =
+            cache.deleteAllAsync(Arrays.asList("aaa", "bbb")).get();
+        assertThat(keys.size(), is(1));
+        assertThat(keys.contains("aaa"), is(true));
+        assertThat(cache.contains("aaa"), is(false));
+    }
+
     /**
      * @throws Exception
      */
@@ -267,6 +396,30 @@ public class MemcacheDelegateTest extends AppEngineTestCase {
         assertThat((Integer) cache.ms.get("aaa"), is(1));
     }
 
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putUsingCodec() throws Exception {
+        S3MemcacheSerialization.registerCodec(new ModelMemcacheCodec());
+        try {
+            MemcacheDelegate cache = new MemcacheDelegate();
+            Aaa aaa = new Aaa();
+            aaa.setKey(KeyFactory.createKey("Aaa", 1));
+            cache.put("aaa", aaa);
+            assertThat(cache.ms.get("aaa"), is(byte[].class));
+            Aaa aaa2 = (Aaa) cache.get("aaa");
+            assertThat(aaa2.getKey(), is(aaa.getKey()));
+            Map<Object, Object> values = new HashMap<Object, Object>();
+            values.put("bbb", aaa);
+            cache.putAll(values);
+            aaa2 = (Aaa) cache.getAll(Arrays.asList("bbb")).get("bbb");
+            assertThat(aaa2.getKey(), is(aaa.getKey()));
+        } finally {
+            S3MemcacheSerialization.unregisterCodec(ModelMemcacheCodec.ID);
+        }
+    }
+
     /**
      * @throws Exception
      */
@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import org.junit.Test;
@@ -146,6 +147,60 @@ public class MemcacheTest extends AppEngineTestCase {
         assertThat((Integer) map.get("aaa"), is(1));
     }
 
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getAsync() throws Exception {
+        ms.put("aaa", 1);
+        Future<Integer> future = Memcache.getAsync("aaa");
+        assertThat(future.get(), is(1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getAllAsync() throws Exception {
+        ms.put("aaa", 1);
+        Map<?, ?> map = Memcache.getAllAsync(Arrays.asList("aaa")).get();
+        assertThat(map.size(), is(1));
+        assertThat((Integer) map.get("aaa"), is(1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void putAllAsync() throws Exception {
+        Map<Object, Object> values = new HashMap<Object, Object>();
+        values.put("aaa", 1);
+        Memcache.putAllAsync(values).get();
+        assertThat((Integer) ms.get("aaa"), is(1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void incrementAllAsync() throws Exception {
+        ms.put("aaa", 1);
+        Map<Object, Long> map =
+            Memcache.incrementAllAsync(Arrays.asList("aaa"), 2).get();
+        assertThat(map.get("aaa"), is(3L));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void deleteAllAsync() throws Exception {
+        ms.put("aaa", 1);
+        Set<Object> keys = Memcache.deleteAllAsync(Arrays.asList("aaa")).get();
+        assertThat(keys.size(), is(1));
+        assertThat(ms.contains("aaa"), is(false));
+    }
+
     /**
      * @throws Exception
      */
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.memcache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+import org.slim3.datastore.model.Aaa;
+import org.slim3.tester.AppEngineTestCase;
+
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.memcache.MemcacheSerialization;
+
+/**
+ * Run by "mvn test -Pbenchmark".
+ * 
+ */
+public class ModelMemcacheCodecBenchmark extends AppEngineTestCase {
+
+    private ModelMemcacheCodec codec = new ModelMemcacheCodec();
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void encodeAndDecode() throws Exception {
+        int count = 10000;
+        Aaa aaa = createAaa(1);
+        byte[] encoded = codec.encode(aaa);
+        byte[] serialized = serialize(aaa);
+        for (int i = 0; i < 1000; i++) {
+            codec.decode(codec.encode(createAaa(i + 1)), 0);
+            S3MemcacheSerialization.deserialize(
+                serialize(createAaa(i + 1)),
+                MemcacheSerialization.Flag.OBJECT.ordinal());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            codec.decode(codec.encode(createAaa(i + 1)), 0);
+        }
+        long codecTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            S3MemcacheSerialization.deserialize(
+                serialize(createAaa(i + 1)),
+                MemcacheSerialization.Flag.OBJECT.ordinal());
+        }
+        long serializationTime = System.nanoTime() - start;
+        System.out.println("codec: "
+            + encoded.length
+            + "bytes, "
+            + codecTime
+            / count
+            + "ns/model, Java serialization: "
+            + serialized.length
+            + "bytes, "
+            + serializationTime
+            / count
+            + "ns/model");
+    }
+
+    private Aaa createAaa(long id) {
+        Aaa aaa = new Aaa();
+        aaa.setKey(KeyFactory.createKey("Aaa", id));
+        aaa.setVersion(id);
+        return aaa;
+    }
+
+    private byte[] serialize(Object value) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(value);
+        oos.close();
+        return baos.toByteArray();
+    }
+}
\ No newline at end of file
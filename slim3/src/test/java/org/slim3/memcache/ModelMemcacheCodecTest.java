@@ -0,0 +1,101 @@
+/*
+ * Copyright 2004-2010 the Seasar Foundation and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.memcache;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.slim3.datastore.model.Aaa;
+import org.slim3.datastore.model.Bbb;
+import org.slim3.datastore.model.Hoge;
+import org.slim3.tester.AppEngineTestCase;
+
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.memcache.MemcacheSerialization;
+import com.google.appengine.api.memcache.MemcacheSerialization.ValueAndFlags;
+
+public class ModelMemcacheCodecTest extends AppEngineTestCase {
+
+    private ModelMemcacheCodec codec = new ModelMemcacheCodec();
+
+    @Override
+    public void tearDown() throws Exception {
+        S3MemcacheSerialization.unregisterCodec(ModelMemcacheCodec.ID);
+        super.tearDown();
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void accepts() throws Exception {
+        assertThat(codec.accepts(new Aaa()), is(true));
+        assertThat(codec.accepts("aaa"), is(false));
+        assertThat(codec.accepts(null), is(false));
+        assertThat(codec.accepts(new Hoge()), is(false));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void encodeAndDecode() throws Exception {
+        Bbb bbb = new Bbb();
+        bbb.setKey(KeyFactory.createKey("Aaa", 1));
+        bbb.setVersion(2L);
+        Object decoded = codec.decode(codec.encode(bbb), 0);
+        assertThat(decoded, is(Bbb.class));
+        Bbb bbb2 = (Bbb) decoded;
+        assertThat(bbb2.getKey(), is(bbb.getKey()));
+        assertThat(bbb2.getVersion(), is(2L));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void encodeAndDecodeForNullKey() throws Exception {
+        Bbb bbb = new Bbb();
+        Bbb bbb2 = (Bbb) codec.decode(codec.encode(bbb), 0);
+        assertThat(bbb2.getKey(), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void serialize() throws Exception {
+        S3MemcacheSerialization.registerCodec(codec);
+        Aaa aaa = createAaa(1);
+        ValueAndFlags valueAndFlags =
+            MemcacheSerialization.serialize(S3MemcacheSerialization
+                .encode(aaa));
+        Object value =
+            S3MemcacheSerialization.deserialize(
+                valueAndFlags.value,
+                valueAndFlags.flags.ordinal());
+        assertThat(value, is(Aaa.class));
+        assertThat(((Aaa) value).getKey(), is(aaa.getKey()));
+    }
+
+    private Aaa createAaa(long id) {
+        Aaa aaa = new Aaa();
+        aaa.setKey(KeyFactory.createKey("Aaa", id));
+        aaa.setVersion(id);
+        return aaa;
+    }
+}
@@ -18,6 +18,8 @@ package org.slim3.memcache;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+
 import org.junit.Test;
 import org.slim3.tester.AppEngineTestCase;
 
@@ -30,6 +32,12 @@ import com.google.appengine.api.memcache.MemcacheSerialization.ValueAndFlags;
  */
 public class S3MemcacheSerializationTest extends AppEngineTestCase {
 
+    @Override
+    public void tearDown() throws Exception {
+        S3MemcacheSerialization.unregisterCodec((byte) 100);
+        super.tearDown();
+    }
+
     /**
      * @throws Exception
      */
@@ -101,4 +109,119 @@ public class S3MemcacheSerializationTest extends AppEngineTestCase {
             valueAndFlags.value,
             valueAndFlags.flags.ordinal()), is(value));
     }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void codec() throws Exception {
+        S3MemcacheSerialization.registerCodec(new StringBuilderCodec());
+        assertThat(S3MemcacheSerialization.hasCodecs(), is(true));
+        Object encoded =
+            S3MemcacheSerialization.encode(new StringBuilder("abc"));
+        assertThat(encoded, is(byte[].class));
+        ValueAndFlags valueAndFlags = MemcacheSerialization.serialize(encoded);
+        Object value =
+            S3MemcacheSerialization.deserialize(
+                valueAndFlags.value,
+                valueAndFlags.flags.ordinal());
+        assertThat(value.toString(), is("abc"));
+        assertThat(value, is(StringBuilder.class));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void encodeForNotAccepted() throws Exception {
+        S3MemcacheSerialization.registerCodec(new StringBuilderCodec());
+        assertThat(S3MemcacheSerialization.encode("abc"), is((Object) "abc"));
+        assertThat(S3MemcacheSerialization.encode(null), is(nullValue()));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void unregisterCodec() throws Exception {
+        S3MemcacheSerialization.registerCodec(new StringBuilderCodec());
+        byte[] encoded =
+            (byte[]) S3MemcacheSerialization.encode(new StringBuilder("abc"));
+        S3MemcacheSerialization.unregisterCodec((byte) 100);
+        assertThat(S3MemcacheSerialization.encode(new StringBuilder("abc")),
+            is(not(byte[].class)));
+        ValueAndFlags valueAndFlags = MemcacheSerialization.serialize(encoded);
+        assertThat((byte[]) S3MemcacheSerialization.deserialize(
+            valueAndFlags.value,
+            valueAndFlags.flags.ordinal()), is(encoded));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void decodeForFailedCodec() throws Exception {
+        S3MemcacheSerialization.registerCodec(new StringBuilderCodec() {
+            @Override
+            public Object decode(byte[] bytes, int offset) throws IOException {
+                throw new IOException();
+            }
+        });
+        byte[] bytes =
+            new byte[] {
+                S3MemcacheSerialization.CODEC_MAGIC[0],
+                S3MemcacheSerialization.CODEC_MAGIC[1],
+                S3MemcacheSerialization.CODEC_MAGIC[2],
+                S3MemcacheSerialization.CODEC_MAGIC[3],
+                100,
+                1 };
+        ValueAndFlags valueAndFlags = MemcacheSerialization.serialize(bytes);
+        assertThat((byte[]) S3MemcacheSerialization.deserialize(
+            valueAndFlags.value,
+            valueAndFlags.flags.ordinal()), is(bytes));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = NullPointerException.class)
+    public void registerCodecForNull() throws Exception {
+        S3MemcacheSerialization.registerCodec(null);
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void registerCodecForIllegalId() throws Exception {
+        S3MemcacheSerialization.registerCodec(new StringBuilderCodec() {
+            @Override
+            public byte getId() {
+                return 0;
+            }
+        });
+    }
+
+    private static class StringBuilderCodec implements MemcacheCodec {
+
+        public byte getId() {
+            return 100;
+        }
+
+        public boolean accepts(Object value) {
+            return value instanceof StringBuilder;
+        }
+
+        public byte[] encode(Object value) throws IOException {
+            return value.toString().getBytes("UTF-8");
+        }
+
+        public Object decode(byte[] bytes, int offset) throws IOException {
+            return new StringBuilder(new String(
+                bytes,
+                offset,
+                bytes.length - offset,
+                "UTF-8"));
+        }
+    }
 }
\ No newline at end of file
@@ -73,4 +73,22 @@ public class AesCipherFactoryTest {
         factory.clearGlobalKey();
         assertThat(AesCipherFactory.globalKey, is(nullValue()));
     }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void isReusable() throws Exception {
+        AesCipherFactory factory = new AesCipherFactory();
+        factory.setGlobalKey("xxxxxxxxxxxxxxxx");
+        Cipher cipher = factory.createCipher();
+        assertThat(factory.isReusable(cipher), is(true));
+        factory.setLimitedKey("yyyyyyyyyyyyyyyy");
+        assertThat(factory.isReusable(cipher), is(false));
+        factory.clearLimitedKey();
+        assertThat(factory.isReusable(cipher), is(true));
+        factory.clearGlobalKey();
+        assertThat(factory.isReusable(cipher), is(false));
+        assertThat(factory.isReusable(new AesCipher()), is(false));
+    }
 }
\ No newline at end of file
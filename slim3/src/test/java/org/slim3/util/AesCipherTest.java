@@ -37,4 +37,68 @@ public class AesCipherTest {
         String value = "abc";
         assertThat(cipher.decrypt(cipher.encrypt(value)), is(value));
     }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void encryptAndDecryptWithCachedCipher() throws Exception {
+        AesCipher.clearCache();
+        String key = "xxxxxxxxxxxxxxxx";
+        String key2 = "yyyyyyyyyyyyyyyy";
+        AesCipher cipher = new AesCipher();
+        String encrypted = cipher.encrypt(key, "abc");
+        assertThat(cipher.encrypt(key, "abc"), is(encrypted));
+        assertThat(cipher.encrypt(key2, "abc"), is(not(encrypted)));
+        assertThat(cipher.decrypt(key, encrypted), is("abc"));
+        assertThat(AesCipher.encryptCiphers.get().size(), is(2));
+        assertThat(AesCipher.decryptCiphers.get().size(), is(1));
+        assertThat(AesCipher.getKeySpec(key), is(sameInstance(AesCipher
+            .getKeySpec(key))));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void decryptForInvalidText() throws Exception {
+        String key = "xxxxxxxxxxxxxxxx";
+        AesCipher cipher = new AesCipher();
+        String encrypted = cipher.encrypt(key, "abc");
+        assertThat(cipher.decrypt(key, "abcd"), is(nullValue()));
+        assertThat(cipher.decrypt(key, encrypted), is("abc"));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void encryptInThreads() throws Exception {
+        final String key = "xxxxxxxxxxxxxxxx";
+        final AesCipher cipher = new AesCipher();
+        final String encrypted = cipher.encrypt(key, "abc");
+        final boolean[] results = new boolean[4];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    boolean result = true;
+                    for (int j = 0; j < 100; j++) {
+                        result &= encrypted.equals(cipher.encrypt(key, "abc"));
+                        result &= "abc".equals(cipher.decrypt(key, encrypted));
+                    }
+                    results[index] = result;
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        for (boolean result : results) {
+            assertThat(result, is(true));
+        }
+    }
 }
\ No newline at end of file
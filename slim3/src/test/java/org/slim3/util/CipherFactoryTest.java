@@ -45,6 +45,38 @@ public class CipherFactoryTest {
         assertThat(factory, is(AesCipherFactory.class));
     }
 
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getFactoryUsingCache() throws Exception {
+        CipherFactory factory = CipherFactory.getFactory();
+        assertThat(CipherFactory.getFactory(), is(sameInstance(factory)));
+        System.setProperty(
+            CipherFactory.CIPHER_FACTORY_KEY,
+            MyCipherFactory.class.getName());
+        assertThat(CipherFactory.getFactory(), is(MyCipherFactory.class));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getFactoryForAnotherClassLoader() throws Exception {
+        CipherFactory factory = CipherFactory.getFactory();
+        Thread thread = Thread.currentThread();
+        ClassLoader loader = thread.getContextClassLoader();
+        thread.setContextClassLoader(new ClassLoader(loader) {
+        });
+        try {
+            assertThat(
+                CipherFactory.getFactory(),
+                is(not(sameInstance(factory))));
+        } finally {
+            thread.setContextClassLoader(loader);
+        }
+    }
+
     /**
      * @throws Exception
      */
@@ -18,6 +18,8 @@ package org.slim3.util;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.lang.reflect.Constructor;
+
 import org.junit.Test;
 
 /**
@@ -68,4 +70,31 @@ public class ClassUtilTest {
         ClassUtil
             .forName("xxx", Thread.currentThread().getContextClassLoader());
     }
-}
\ No newline at end of file
+
+    /**
+     * 
+     */
+    @Test
+    public void getConstructor() {
+        Constructor<String> constructor = ClassUtil.getConstructor(String.class);
+        assertThat(constructor, is(notNullValue()));
+        assertThat(constructor.getParameterTypes().length, is(0));
+    }
+
+    /**
+     * 
+     */
+    @Test(expected = WrapRuntimeException.class)
+    public void getConstructorForNoDefaultConstructor() {
+        ClassUtil.getConstructor(Integer.class);
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void newInstanceForConstructor() {
+        String s = ClassUtil.newInstance(ClassUtil.getConstructor(String.class));
+        assertThat(s, is(""));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2004-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.slim3.util;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+public class LazyFutureTest {
+
+    private int count = 0;
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void get() throws Exception {
+        LazyFuture<String> future = new LazyFuture<String>() {
+            @Override
+            protected String compute() throws Exception {
+                count++;
+                return "hoge";
+            }
+        };
+        assertThat(count, is(0));
+        assertThat(future.isDone(), is(false));
+        assertThat(future.get(), is("hoge"));
+        assertThat(future.get(), is("hoge"));
+        assertThat(future.isDone(), is(true));
+        assertThat(count, is(1));
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Test
+    public void getForException() throws Exception {
+        final IllegalStateException cause = new IllegalStateException();
+        LazyFuture<String> future = new LazyFuture<String>() {
+            @Override
+            protected String compute() throws Exception {
+                throw cause;
+            }
+        };
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is((Throwable) cause));
+        }
+    }
+}